@@ -0,0 +1,104 @@
+package com.teste.rotinapagamento.benchmark;
+
+import java.lang.reflect.Field;
+
+import com.teste.rotinapagamento.auxiliar.OperationType;
+import com.teste.rotinapagamento.auxiliar.SourceMessage;
+import com.teste.rotinapagamento.dto.AccountDTO;
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.repository.AccountCache;
+import com.teste.rotinapagamento.service.AccountService;
+import com.teste.rotinapagamento.service.TransactionService;
+
+/**
+ * Monta os serviços da camada de negócio sobre os repositórios em memória, sem subir o contexto do Spring.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class BenchmarkContext {
+
+    public static final double OPEN_TRANSACTION_AMOUNT = -100.00;
+
+    private static final int ACCOUNT_CACHE_SIZE = 10000;
+
+    private static final long ACCOUNT_CACHE_TTL_SECONDS = 30;
+
+    private final InMemoryTransactionRepository transactionRepository = new InMemoryTransactionRepository();
+
+    private final InMemoryAccountRepository accountRepository = new InMemoryAccountRepository();
+
+    private final AccountCache accountCache = new AccountCache(ACCOUNT_CACHE_SIZE, ACCOUNT_CACHE_TTL_SECONDS);
+
+    private final AccountService accountService = new AccountService();
+
+    private final TransactionService transactionService = new TransactionService();
+
+    public BenchmarkContext() {
+        SourceMessage sourceMessage = new SourceMessage() {
+            @Override
+            public String getMessage(String id) {
+                return id;
+            }
+        };
+
+        inject(accountService, "sourceMessage", sourceMessage);
+        inject(accountService, "accountRepository", accountRepository);
+        inject(accountService, "accountCache", accountCache);
+
+        inject(transactionService, "sourceMessage", sourceMessage);
+        inject(transactionService, "transactionRepository", transactionRepository);
+        inject(transactionService, "accountService", accountService);
+    }
+
+    /**
+     * Recria a base em memória com contas contendo, cada uma, a quantidade passada de compras em aberto.
+     *
+     * @param accounts         quantidade de contas criadas
+     * @param openTransactions quantidade de transações em aberto em cada conta
+     * @return int[] identificadores das contas criadas
+     */
+    public int[] reset(int accounts, int openTransactions) {
+        transactionRepository.clear();
+        accountRepository.clear();
+        accountCache.clear();
+
+        OperationType[] operations = {OperationType.COMPRA_A_VISTA, OperationType.COMPRA_PARCELADA, OperationType.SAQUE};
+        int[] accountIds = new int[accounts];
+        for (int a = 0; a < accounts; a++) {
+            AccountDTO account = accountRepository.insertAccount(Double.MAX_VALUE / 4, Double.MAX_VALUE / 4);
+            Integer accountId = account.getAccountId();
+
+            for (int i = 0; i < openTransactions; i++) {
+                OperationType operation = operations[i % operations.length];
+                transactionRepository.insertTransaction(accountId, operation.getId(), OPEN_TRANSACTION_AMOUNT, OPEN_TRANSACTION_AMOUNT, null);
+                accountRepository.updateBalances(accountId, null, null, null, OPEN_TRANSACTION_AMOUNT);
+            }
+            accountIds[a] = accountId;
+        }
+
+        return accountIds;
+    }
+
+    public static TransactionDTO transaction(Integer accountId, OperationType operation, double amount) {
+        TransactionDTO transaction = new TransactionDTO();
+        transaction.setAccountId(accountId);
+        transaction.setOperationTypeId(operation.getId());
+        transaction.setAmount(amount);
+        return transaction;
+    }
+
+    public TransactionService getTransactionService() {
+        return transactionService;
+    }
+
+    private static void inject(Object target, String fieldName, Object value) {
+        try {
+            Field field = target.getClass().getDeclaredField(fieldName);
+            field.setAccessible(true);
+            field.set(target, value);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.teste.rotinapagamento.benchmark;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import com.teste.rotinapagamento.dto.AccountDTO;
+import com.teste.rotinapagamento.dto.AvailableLimitDTO;
+import com.teste.rotinapagamento.repository.AccountRepository;
+
+/**
+ * Substituto em memória do AccountRepository, usado para medir apenas o custo da camada de negócio.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class InMemoryAccountRepository extends AccountRepository {
+
+    private static final int CREDIT_LIMIT = 0;
+    private static final int WITHDRAWAL_LIMIT = 1;
+    private static final int CREDIT_BALANCE = 2;
+    private static final int DEBT_BALANCE = 3;
+
+    private final Map<Integer, double[]> accounts = new HashMap<>();
+
+    private int nextAccountId;
+
+    public void clear() {
+        accounts.clear();
+        nextAccountId = 0;
+    }
+
+    @Override
+    public AccountDTO insertAccount(Double availableCreditLimit, Double availableWithdrawalLimit) {
+        int accountId = ++nextAccountId;
+        accounts.put(accountId, new double[]{availableCreditLimit, availableWithdrawalLimit, 0, 0});
+        return findAccount(accountId);
+    }
+
+    @Override
+    public AccountDTO findAccount(Integer accountId) {
+        double[] balances = accounts.get(accountId);
+        if (balances == null)
+            return null;
+
+        AccountDTO account = new AccountDTO();
+        account.setAccountId(accountId);
+        account.setAvailableCreditLimit(new AvailableLimitDTO(balances[CREDIT_LIMIT]));
+        account.setAvailableWithdrawalLimit(new AvailableLimitDTO(balances[WITHDRAWAL_LIMIT]));
+        return account;
+    }
+
+    @Override
+    public AccountDTO updateAccount(Integer accountId, Double availableCreditLimitAmount, Double availableWithdrawalLimitAmount) {
+        updateBalances(accountId, availableCreditLimitAmount, availableWithdrawalLimitAmount, null, null);
+        return findAccount(accountId);
+    }
+
+    @Override
+    public void updateLimits(Integer accountId, Double availableCreditLimitAmount, Double availableWithdrawalLimitAmount) {
+        updateBalances(accountId, availableCreditLimitAmount, availableWithdrawalLimitAmount, null, null);
+    }
+
+    @Override
+    public AccountDTO updateBalances(Integer accountId, Double availableCreditLimitAmount, Double availableWithdrawalLimitAmount,
+                                     Double creditBalanceAmount, Double debtBalanceAmount) {
+        double[] balances = accounts.get(accountId);
+        if (balances == null)
+            return null;
+
+        if (availableCreditLimitAmount != null) balances[CREDIT_LIMIT] += availableCreditLimitAmount;
+        if (availableWithdrawalLimitAmount != null) balances[WITHDRAWAL_LIMIT] += availableWithdrawalLimitAmount;
+        if (creditBalanceAmount != null) balances[CREDIT_BALANCE] += creditBalanceAmount;
+        if (debtBalanceAmount != null) balances[DEBT_BALANCE] += debtBalanceAmount;
+
+        return findAccount(accountId);
+    }
+
+    @Override
+    public Double findCreditBalance(Integer accountId) {
+        double[] balances = accounts.get(accountId);
+        return balances != null ? balances[CREDIT_BALANCE] : null;
+    }
+}
@@ -0,0 +1,125 @@
+package com.teste.rotinapagamento.benchmark;
+
+import java.sql.Date;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.teste.rotinapagamento.auxiliar.OperationType;
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.repository.TransactionRepository;
+
+/**
+ * Substituto em memória do TransactionRepository, usado para medir apenas o custo da camada de negócio.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class InMemoryTransactionRepository extends TransactionRepository {
+
+    private static final Map<Integer, Integer> CHARGE_ORDER = new HashMap<>();
+
+    static {
+        CHARGE_ORDER.put(OperationType.COMPRA_A_VISTA.getId(), 2);
+        CHARGE_ORDER.put(OperationType.COMPRA_PARCELADA.getId(), 1);
+        CHARGE_ORDER.put(OperationType.SAQUE.getId(), 0);
+        CHARGE_ORDER.put(OperationType.PAGAMENTO.getId(), 0);
+    }
+
+    private final Map<Integer, TransactionDTO> transactions = new HashMap<>();
+
+    /**
+     * As mesmas transações de transactions, indexadas pela conta, para que o custo das consultas de uma conta não
+     * dependa da quantidade de contas da base em memória.
+     */
+    private final Map<Integer, Map<Integer, TransactionDTO>> accountTransactions = new HashMap<>();
+
+    private int nextTransactionId;
+
+    private long clock;
+
+    public void clear() {
+        transactions.clear();
+        accountTransactions.clear();
+        nextTransactionId = 0;
+        clock = 0;
+    }
+
+    @Override
+    public List<TransactionDTO> findTransactionsToDownPayment(Integer accountId) {
+        List<TransactionDTO> result = new ArrayList<>();
+        for (TransactionDTO transaction : transactions(accountId)) {
+            if (transaction.getBalance() != 0)
+                result.add(copy(transaction));
+        }
+
+        result.sort(Comparator.<TransactionDTO, Integer>comparing(t -> CHARGE_ORDER.get(t.getOperationTypeId()))
+                .thenComparing(TransactionDTO::getEventDate));
+        return result;
+    }
+
+    @Override
+    public TransactionDTO insertTransaction(Integer accountId, Integer operationTypeId, Double amount, Double balance, Date dueDate) {
+        TransactionDTO transaction = new TransactionDTO();
+        transaction.setTransactionId(++nextTransactionId);
+        transaction.setAccountId(accountId);
+        transaction.setOperationTypeId(operationTypeId);
+        transaction.setAmount(amount);
+        transaction.setBalance(balance);
+        transaction.setEventDate(++clock);
+        transaction.setDueDate(dueDate != null ? dueDate.getTime() : null);
+
+        transactions.put(transaction.getTransactionId(), transaction);
+        accountTransactions.computeIfAbsent(accountId, id -> new LinkedHashMap<>()).put(transaction.getTransactionId(), transaction);
+        return copy(transaction);
+    }
+
+    @Override
+    public void updateBalanceByTransaction(Integer accountId, Integer transactionId, Double balance) {
+        TransactionDTO transaction = transactions.get(transactionId);
+        transaction.setBalance(transaction.getBalance() + balance);
+    }
+
+    @Override
+    public void updateBalanceByTransactions(Integer accountId, Map<Integer, Double> balances) {
+        for (Map.Entry<Integer, Double> balance : balances.entrySet()) {
+            updateBalanceByTransaction(accountId, balance.getKey(), balance.getValue());
+        }
+    }
+
+    @Override
+    public void downCreditBalance(Integer accountId, Double amount) {
+        double remaining = amount;
+        for (TransactionDTO transaction : transactions(accountId)) {
+            if (remaining <= 0)
+                return;
+
+            if (transaction.getOperationTypeId() == OperationType.PAGAMENTO.getId() && transaction.getBalance() > 0) {
+                double down = Math.min(transaction.getBalance(), remaining);
+                transaction.setBalance(transaction.getBalance() - down);
+                remaining -= down;
+            }
+        }
+    }
+
+    private Iterable<TransactionDTO> transactions(Integer accountId) {
+        Map<Integer, TransactionDTO> account = accountTransactions.get(accountId);
+        return account != null ? account.values() : Collections.<TransactionDTO>emptyList();
+    }
+
+    private TransactionDTO copy(TransactionDTO source) {
+        TransactionDTO transaction = new TransactionDTO();
+        transaction.setTransactionId(source.getTransactionId());
+        transaction.setAccountId(source.getAccountId());
+        transaction.setOperationTypeId(source.getOperationTypeId());
+        transaction.setAmount(source.getAmount());
+        transaction.setBalance(source.getBalance());
+        transaction.setEventDate(source.getEventDate());
+        transaction.setDueDate(source.getDueDate());
+        return transaction;
+    }
+}
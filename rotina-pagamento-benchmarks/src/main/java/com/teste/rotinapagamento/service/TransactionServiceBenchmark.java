@@ -0,0 +1,128 @@
+package com.teste.rotinapagamento.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.teste.rotinapagamento.auxiliar.OperationType;
+import com.teste.rotinapagamento.benchmark.BenchmarkContext;
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Microbenchmarks dos caminhos críticos da camada de negócio: inserção de compras, abatimento de pagamentos
+ * e inserção de pagamentos em lote. Os repositórios são substituídos por implementações em memória para
+ * que o resultado reflita apenas o custo do código de negócio.
+ *
+ * Cada chamada altera a conta usada (insere compras ou quita as transações em aberto), então cada chamada recebe uma
+ * conta nova. As ACCOUNTS contas são criadas antes de cada invocação e a invocação percorre todas elas, contando como
+ * ACCOUNTS operações: a recriação da base e a leitura do relógio ficam diluídas em centenas de chamadas, em vez de
+ * precederem cada chamada de microssegundos.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TransactionServiceBenchmark {
+
+    private static final int ACCOUNTS = 500;
+
+    @Param({"1", "10", "100", "1000"})
+    private int openTransactions;
+
+    private BenchmarkContext context;
+
+    private TransactionService transactionService;
+
+    private int[] accountIds;
+
+    private TransactionDTO[] purchases;
+
+    private TransactionDTO[] payments;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        context = new BenchmarkContext();
+        transactionService = context.getTransactionService();
+    }
+
+    /**
+     * Recria as contas antes de cada invocação. Cada invocação executa ACCOUNTS chamadas, o que mantém o custo desta
+     * preparação fora da medição sem que ele pese sobre cada chamada.
+     */
+    @Setup(Level.Invocation)
+    public void setUpAccounts() {
+        accountIds = context.reset(ACCOUNTS, openTransactions);
+        purchases = new TransactionDTO[ACCOUNTS];
+        payments = new TransactionDTO[ACCOUNTS];
+
+        for (int i = 0; i < ACCOUNTS; i++) {
+            purchases[i] = BenchmarkContext.transaction(accountIds[i], OperationType.COMPRA_A_VISTA, 10.00);
+            payments[i] = BenchmarkContext.transaction(accountIds[i], OperationType.PAGAMENTO,
+                    openTransactions * Math.abs(BenchmarkContext.OPEN_TRANSACTION_AMOUNT));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCOUNTS)
+    public void insertPurchase(Blackhole blackhole) {
+        for (TransactionDTO purchase : purchases) {
+            blackhole.consume(transactionService.insertTransaction(purchase));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCOUNTS)
+    public void downPaymentInTransactions(Blackhole blackhole) {
+        for (TransactionDTO payment : payments) {
+            blackhole.consume(transactionService.downPaymentInTransactions(payment));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ACCOUNTS)
+    public void insertPayments(PaymentBatch batch, Blackhole blackhole) {
+        for (int accountId : accountIds) {
+            blackhole.consume(transactionService.insertPayments(batch.payments(accountId, openTransactions)));
+        }
+    }
+
+    /**
+     * Tamanho do lote de pagamentos. Cada pagamento do lote tem o mesmo valor e a soma deles quita
+     * exatamente as transações em aberto, para que nenhum pagamento seja recusado por saldo credor.
+     */
+    @State(Scope.Thread)
+    public static class PaymentBatch {
+
+        @Param({"1", "10", "100"})
+        private int batchSize;
+
+        List<TransactionDTO> payments(Integer accountId, int openTransactions) {
+            double amount = openTransactions * Math.abs(BenchmarkContext.OPEN_TRANSACTION_AMOUNT) / batchSize;
+
+            List<TransactionDTO> payments = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                payments.add(BenchmarkContext.transaction(accountId, OperationType.PAGAMENTO, amount));
+            }
+            return payments;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.teste.rotinapagamento.auxiliar;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.teste.rotinapagamento.exception.ResourceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+
+/**
+ * Executor particionado por conta. Cada conta é associada (por hash) a uma fila com uma única thread,
+ * de forma que as escritas de uma mesma conta são executadas em série e as de contas diferentes em paralelo.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Component
+public class AccountLaneExecutor {
+
+	@Autowired
+	private SourceMessage sourceMessage;
+
+	@Value("${payment-routine.account-lanes:0}")
+	private int laneCount;
+
+	private ExecutorService[] lanes;
+
+	private final Object submitLock = new Object();
+
+	private final ThreadLocal<Set<Integer>> ownedLanes = ThreadLocal.withInitial(HashSet::new);
+
+	@PostConstruct
+	public void init() {
+		start(laneCount > 0 ? laneCount : Runtime.getRuntime().availableProcessors());
+	}
+
+	void start(int count) {
+		lanes = new ExecutorService[count];
+		for (int i = 0; i < count; i++) {
+			final int lane = i;
+			lanes[i] = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(() -> {
+					ownedLanes.get().add(lane);
+					runnable.run();
+				}, "account-lane-" + lane);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		for (ExecutorService lane : lanes) {
+			lane.shutdown();
+		}
+	}
+
+	/**
+	 * Executa a tarefa na fila da conta passada e aguarda o seu resultado.
+	 *
+	 * @param accountId identificador da conta
+	 * @param task      tarefa que será executada
+	 * @return T
+	 */
+	public <T> T execute(Integer accountId, Callable<T> task) {
+		int lane = laneOf(accountId);
+		if (ownedLanes.get().contains(lane))
+			return call(task);
+
+		return await(lanes[lane].submit(QueryStatistics.propagate(task)));
+	}
+
+	/**
+	 * Envia a tarefa para a fila da conta passada sem aguardar o seu resultado, que deve ser lido com await. Se a
+	 * thread corrente já for a da fila da conta, a tarefa é executada de imediato.
+	 *
+	 * @param accountId identificador da conta
+	 * @param task      tarefa que será executada
+	 * @return Future<T>
+	 */
+	public <T> Future<T> submit(Integer accountId, Callable<T> task) {
+		int lane = laneOf(accountId);
+		if (ownedLanes.get().contains(lane)) {
+			FutureTask<T> future = new FutureTask<>(task);
+			future.run();
+			return future;
+		}
+
+		return lanes[lane].submit(QueryStatistics.propagate(task));
+	}
+
+	/**
+	 * Executa a tarefa com exclusividade sobre as filas de todas as contas passadas. As filas envolvidas são
+	 * bloqueadas em ordem, sob um único lock de submissão, para que duas tarefas concorrentes nunca se
+	 * aguardem mutuamente.
+	 *
+	 * @param accountIds identificadores das contas
+	 * @param task       tarefa que será executada
+	 * @return T
+	 */
+	public <T> T execute(Collection<Integer> accountIds, Callable<T> task) {
+		SortedSet<Integer> indexes = new TreeSet<>();
+		for (Integer accountId : accountIds) {
+			indexes.add(laneOf(accountId));
+		}
+
+		indexes.removeAll(ownedLanes.get());
+		if (indexes.isEmpty())
+			return call(task);
+
+		if (indexes.size() == 1)
+			return await(lanes[indexes.first()].submit(QueryStatistics.propagate(task)));
+
+		CountDownLatch parked = new CountDownLatch(indexes.size());
+		CountDownLatch done = new CountDownLatch(1);
+
+		synchronized (submitLock) {
+			for (Integer index : indexes) {
+				lanes[index].submit(() -> {
+					parked.countDown();
+					done.await();
+					return null;
+				});
+			}
+		}
+
+		try {
+			parked.await();
+			ownedLanes.get().addAll(indexes);
+			return call(task);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		} finally {
+			ownedLanes.get().removeAll(indexes);
+			done.countDown();
+		}
+	}
+
+	int laneOf(Integer accountId) {
+		return accountId == null ? 0 : Math.floorMod(accountId.hashCode(), lanes.length);
+	}
+
+	/**
+	 * Aguarda o resultado de uma tarefa enviada com submit, relançando a exceção da tarefa.
+	 *
+	 * @param future resultado da tarefa
+	 * @return T
+	 */
+	public <T> T await(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		}
+	}
+
+	private <T> T call(Callable<T> task) {
+		try {
+			return task.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		}
+	}
+}
@@ -0,0 +1,418 @@
+package com.teste.rotinapagamento.auxiliar;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.teste.rotinapagamento.exception.ResourceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Agrupa as tarefas enviadas por várias threads em uma única transação da base de dados (group commit). Cada uma
+ * das payment-routine.group-commit.threads threads coleta as tarefas que chegam em uma janela de
+ * payment-routine.group-commit.max-wait-micros ou até payment-routine.group-commit.max-size tarefas, executa as tarefas
+ * do grupo em ordem de conta e faz um único commit, respondendo a todas as tarefas do grupo em seguida. As inserções
+ * de transações das tarefas são adiadas para o commit e gravadas em um único batch (ver TransactionRepository).
+ *
+ * As tarefas são executadas sem savepoint. Se uma delas falhar, o grupo é desfeito e executado de novo com um
+ * savepoint por tarefa, de modo que a falha desfaz apenas o savepoint da tarefa. Se o commit do grupo falhar (por
+ * exemplo, em um deadlock com outra transação), cada tarefa do grupo é executada de novo em uma transação própria.
+ * Dentro de uma tarefa, a falha de um participante (um método @Transactional que lança uma exceção) não marca a
+ * transação do grupo como rollback-only (ver GroupCommitTransactionManager): é a tarefa que falha. Cada tarefa deve
+ * alterar uma única conta, e um grupo não tem duas tarefas da mesma conta: a segunda fica para o grupo seguinte.
+ * Desabilitado, ou com o livro-razão em memória, executa a tarefa na thread que a enviou.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Component
+@ManagedResource(objectName = "com.teste.rotinapagamento:type=GroupCommitExecutor")
+public class GroupCommitExecutor {
+
+	private static final Logger log = LoggerFactory.getLogger(GroupCommitExecutor.class);
+
+	/**
+	 * Indica se um participante da tarefa em execução na thread do grupo falhou (null fora de uma tarefa).
+	 */
+	private static final ThreadLocal<AtomicBoolean> participantFailure = new ThreadLocal<>();
+
+	private static final Comparator<Task<?>> ACCOUNT_ORDER = Comparator.comparing(task -> task.accountId, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+	@Autowired
+	private SourceMessage sourceMessage;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Value("${payment-routine.group-commit.enabled:false}")
+	private boolean enabled;
+
+	@Value("${payment-routine.group-commit.threads:2}")
+	private int threadCount;
+
+	@Value("${payment-routine.group-commit.max-size:64}")
+	private int maxSize;
+
+	@Value("${payment-routine.group-commit.max-wait-micros:1000}")
+	private long maxWaitMicros;
+
+	@Value("${payment-routine.ledger.mode:database}")
+	private String ledgerMode;
+
+	private final BlockingQueue<Task<?>> queue = new LinkedBlockingQueue<>();
+
+	private final LongAdder groups = new LongAdder();
+
+	private final LongAdder tasks = new LongAdder();
+
+	private final LongAdder retriedGroups = new LongAdder();
+
+	private final LongAdder splitGroups = new LongAdder();
+
+	private volatile boolean running;
+
+	private final List<Thread> threads = new ArrayList<>();
+
+	@PostConstruct
+	public void init() {
+		if (enabled && "memory".equals(ledgerMode)) {
+			log.info("Group commit desabilitado: o livro-razão em memória já grava as transações em segundo plano.");
+			return;
+		}
+
+		if (enabled)
+			start(threadCount, maxSize, maxWaitMicros);
+	}
+
+	void start(int threadCount, int maxSize, long maxWaitMicros) {
+		this.maxSize = maxSize;
+		this.maxWaitMicros = maxWaitMicros;
+		running = true;
+		for (int i = 0; i < Math.max(threadCount, 1); i++) {
+			Thread thread = new Thread(this::run, "group-commit-" + i);
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		for (Thread thread : threads) {
+			thread.join(TimeUnit.SECONDS.toMillis(5));
+		}
+	}
+
+	/**
+	 * Executa a tarefa na transação do próximo grupo e aguarda o commit do grupo. Sem group commit, executa a
+	 * tarefa na thread corrente.
+	 *
+	 * @param accountId identificador da conta alterada pela tarefa
+	 * @param task      tarefa que será executada
+	 * @return T
+	 */
+	public <T> T execute(Integer accountId, Callable<T> task) {
+		if (!running)
+			return call(task);
+
+		Task<T> submitted = new Task<>(accountId, QueryStatistics.propagate(task));
+		queue.add(submitted);
+
+		try {
+			return submitted.future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		}
+	}
+
+	/**
+	 * Indica se a thread corrente está executando uma tarefa de um grupo, cujas escritas podem ser adiadas para o
+	 * commit do grupo.
+	 *
+	 * @return boolean
+	 */
+	public static boolean isRunningTask() {
+		return participantFailure.get() != null;
+	}
+
+	@ManagedAttribute(description = "Transações de grupo confirmadas")
+	public long getGroups() {
+		return groups.sum();
+	}
+
+	@ManagedAttribute(description = "Tarefas executadas em transações de grupo")
+	public long getTasks() {
+		return tasks.sum();
+	}
+
+	@ManagedAttribute(description = "Quantidade média de tarefas por transação de grupo")
+	public double getAverageGroupSize() {
+		long count = getGroups();
+		return count == 0 ? 0 : (double) getTasks() / count;
+	}
+
+	@ManagedAttribute(description = "Grupos desfeitos pela falha de uma tarefa e executados de novo com um savepoint por tarefa")
+	public long getRetriedGroups() {
+		return retriedGroups.sum();
+	}
+
+	@ManagedAttribute(description = "Grupos cujo commit falhou, com as tarefas executadas de novo em transações próprias")
+	public long getSplitGroups() {
+		return splitGroups.sum();
+	}
+
+	private void run() {
+		TransactionTemplate groupTemplate = new TransactionTemplate(transactionManager);
+		TransactionTemplate taskTemplate = new TransactionTemplate(transactionManager);
+		taskTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_NESTED);
+
+		List<Task<?>> postponed = new ArrayList<>();
+		while (running || !queue.isEmpty() || !postponed.isEmpty()) {
+			try {
+				List<Task<?>> group = new ArrayList<>();
+				Set<Integer> accounts = new HashSet<>();
+				List<Task<?>> carried = postponed;
+				postponed = new ArrayList<>();
+				for (Task<?> task : carried) {
+					add(task, group, accounts, postponed);
+				}
+
+				if (group.isEmpty()) {
+					Task<?> first = queue.poll(100, TimeUnit.MILLISECONDS);
+					if (first == null)
+						continue;
+
+					add(first, group, accounts, postponed);
+				}
+
+				long deadline = System.nanoTime() + TimeUnit.MICROSECONDS.toNanos(maxWaitMicros);
+				while (group.size() < maxSize) {
+					Task<?> next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+					if (next == null)
+						break;
+
+					add(next, group, accounts, postponed);
+				}
+
+				commit(group, groupTemplate, taskTemplate);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Adiciona a tarefa ao grupo ou, se o grupo já tiver uma tarefa da mesma conta, a adia para o grupo seguinte.
+	 */
+	private void add(Task<?> task, List<Task<?>> group, Set<Integer> accounts, List<Task<?>> postponed) {
+		if (task.accountId != null && !accounts.add(task.accountId)) {
+			postponed.add(task);
+			return;
+		}
+
+		group.add(task);
+	}
+
+	/**
+	 * Executa as tarefas do grupo em ordem de conta, para que grupos e transações concorrentes bloqueiem as contas
+	 * sempre na mesma ordem, e confirma o grupo.
+	 */
+	private void commit(List<Task<?>> group, TransactionTemplate groupTemplate, TransactionTemplate taskTemplate) {
+		group.sort(ACCOUNT_ORDER);
+
+		try {
+			Boolean completed = groupTemplate.execute(status -> {
+				for (Task<?> task : group) {
+					if (!task.run()) {
+						status.setRollbackOnly();
+						return false;
+					}
+				}
+				return true;
+			});
+
+			if (!completed) {
+				retriedGroups.increment();
+				groupTemplate.execute(status -> {
+					for (Task<?> task : group) {
+						task.run(taskTemplate);
+					}
+					return null;
+				});
+			}
+		} catch (RuntimeException e) {
+			log.warn("Falha no commit de um grupo de {} tarefas; as tarefas serão executadas em transações próprias.", group.size(), e);
+			splitGroups.increment();
+			for (Task<?> task : group) {
+				task.runAlone(groupTemplate);
+				task.complete();
+			}
+			return;
+		}
+
+		groups.increment();
+		tasks.add(group.size());
+		for (Task<?> task : group) {
+			task.complete();
+		}
+	}
+
+	/**
+	 * Registra a falha de um participante da tarefa em execução na thread corrente, que é então desfeita junto com
+	 * a tarefa.
+	 *
+	 * @return boolean false quando a thread corrente não está executando uma tarefa de um grupo
+	 */
+	static boolean recordParticipantFailure() {
+		AtomicBoolean failure = participantFailure.get();
+		if (failure == null)
+			return false;
+
+		failure.set(true);
+		return true;
+	}
+
+	private <T> T call(Callable<T> task) {
+		try {
+			return task.call();
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		}
+	}
+
+	/**
+	 * Tarefa de um grupo, com o seu resultado guardado até o commit do grupo.
+	 */
+	private class Task<T> {
+
+		private final Integer accountId;
+
+		private final Callable<T> callable;
+
+		private final CompletableFuture<T> future = new CompletableFuture<>();
+
+		private T result;
+
+		private RuntimeException error;
+
+		Task(Integer accountId, Callable<T> callable) {
+			this.accountId = accountId;
+			this.callable = callable;
+		}
+
+		/**
+		 * Executa a tarefa diretamente na transação corrente. As escritas pendentes da tarefa (ver UnitOfWork) ficam
+		 * para o commit da transação.
+		 *
+		 * @return boolean false quando a tarefa falhou e a transação deve ser desfeita
+		 */
+		boolean run() {
+			AtomicBoolean failure = new AtomicBoolean();
+			participantFailure.set(failure);
+			result = null;
+			error = null;
+			try {
+				result = call(callable);
+
+				// Um participante falhou e a tarefa ignorou o erro: as suas escritas não podem ser confirmadas.
+				if (failure.get())
+					throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+
+				return true;
+			} catch (RuntimeException e) {
+				error = e;
+				return false;
+			} finally {
+				participantFailure.remove();
+			}
+		}
+
+		/**
+		 * Executa a tarefa em um savepoint da transação do grupo, gravando as suas escritas pendentes ao final do
+		 * savepoint; a falha da tarefa desfaz apenas o savepoint.
+		 */
+		void run(TransactionTemplate taskTemplate) {
+			AtomicBoolean failure = new AtomicBoolean();
+			participantFailure.set(failure);
+			result = null;
+			error = null;
+			try {
+				result = taskTemplate.execute(status -> {
+					T value = call(callable);
+
+					if (failure.get())
+						throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+
+					UnitOfWork unitOfWork = UnitOfWork.current();
+					if (unitOfWork != null)
+						unitOfWork.flush();
+					return value;
+				});
+			} catch (RuntimeException e) {
+				error = e;
+				UnitOfWork unitOfWork = UnitOfWork.current();
+				if (unitOfWork != null)
+					unitOfWork.discard();
+			} finally {
+				participantFailure.remove();
+			}
+		}
+
+		/**
+		 * Executa a tarefa em uma transação própria, fora do grupo.
+		 */
+		void runAlone(TransactionTemplate template) {
+			try {
+				template.execute(status -> {
+					if (!run())
+						status.setRollbackOnly();
+					return null;
+				});
+			} catch (RuntimeException e) {
+				log.error("Falha no commit de uma tarefa executada fora do grupo.", e);
+				error = new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+			}
+		}
+
+		void complete() {
+			if (error != null) {
+				future.completeExceptionally(error);
+			} else {
+				future.complete(result);
+			}
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package com.teste.rotinapagamento.auxiliar;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+/**
+ * Gerenciador de transações da aplicação. Em uma tarefa do group commit (GroupCommitExecutor), a falha de um
+ * participante não marca a conexão do grupo como rollback-only, pois a marcação não é desfeita pelo rollback do
+ * savepoint da tarefa e faria o commit de todo o grupo falhar; a falha é registrada na tarefa, que falha e é desfeita
+ * sozinha. Fora de uma tarefa do group commit, o comportamento é o do DataSourceTransactionManager.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Component
+public class GroupCommitTransactionManager extends DataSourceTransactionManager {
+
+	@Autowired
+	public GroupCommitTransactionManager(DataSource dataSource) {
+		super(dataSource);
+	}
+
+	@Override
+	protected void doSetRollbackOnly(DefaultTransactionStatus status) {
+		if (!GroupCommitExecutor.recordParticipantFailure())
+			super.doSetRollbackOnly(status);
+	}
+}
@@ -0,0 +1,59 @@
+package com.teste.rotinapagamento.auxiliar;
+
+import java.util.Objects;
+
+/**
+ * Chave de idempotência recebida no cabeçalho Idempotency-Key, restrita à operação (scope) em que foi usada e
+ * acompanhada da impressão digital do corpo da requisição, para que a mesma chave não seja reaproveitada em uma
+ * requisição diferente.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class IdempotencyKey {
+
+	private final String scope;
+
+	private final String key;
+
+	private final String fingerprint;
+
+	public IdempotencyKey(String scope, String key, String fingerprint) {
+		this.scope = scope;
+		this.key = key;
+		this.fingerprint = fingerprint;
+	}
+
+	public String getScope() {
+		return scope;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (this == other)
+			return true;
+		if (!(other instanceof IdempotencyKey))
+			return false;
+
+		IdempotencyKey idempotencyKey = (IdempotencyKey) other;
+		return scope.equals(idempotencyKey.scope) && key.equals(idempotencyKey.key);
+	}
+
+	@Override
+	public int hashCode() {
+		return 31 * scope.hashCode() + key.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return scope + " " + key;
+	}
+}
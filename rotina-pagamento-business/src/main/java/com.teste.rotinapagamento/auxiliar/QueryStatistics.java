@@ -0,0 +1,126 @@
+package com.teste.rotinapagamento.auxiliar;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Contadores dos comandos SQL executados durante uma requisição: quantidade de comandos, linhas lidas ou
+ * alteradas, tempo gasto na base de dados e quantas vezes cada comando foi repetido.
+ *
+ * As estatísticas ficam associadas à thread que iniciou a requisição e podem ser propagadas para as
+ * threads que executam partes dela (ver propagate).
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class QueryStatistics {
+
+	private static final ThreadLocal<QueryStatistics> CURRENT = new ThreadLocal<>();
+
+	private final LongAdder statements = new LongAdder();
+
+	private final LongAdder rows = new LongAdder();
+
+	private final LongAdder nanos = new LongAdder();
+
+	private final ConcurrentMap<String, LongAdder> executions = new ConcurrentHashMap<>();
+
+	/**
+	 * Inicia a contagem dos comandos executados pela thread corrente.
+	 *
+	 * @return QueryStatistics
+	 */
+	public static QueryStatistics begin() {
+		QueryStatistics statistics = new QueryStatistics();
+		CURRENT.set(statistics);
+		return statistics;
+	}
+
+	/**
+	 * Encerra a contagem dos comandos executados pela thread corrente.
+	 */
+	public static void end() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * Retorna as estatísticas da requisição em execução na thread corrente ou null quando não há contagem.
+	 *
+	 * @return QueryStatistics
+	 */
+	public static QueryStatistics current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Envolve a tarefa para que os comandos executados por ela, em qualquer thread, sejam contabilizados
+	 * nas estatísticas da thread corrente.
+	 *
+	 * @param task tarefa que será executada
+	 * @return Callable<T>
+	 */
+	public static <T> Callable<T> propagate(Callable<T> task) {
+		QueryStatistics statistics = CURRENT.get();
+		if (statistics == null)
+			return task;
+
+		return () -> {
+			QueryStatistics previous = CURRENT.get();
+			CURRENT.set(statistics);
+			try {
+				return task.call();
+			} finally {
+				if (previous != null) {
+					CURRENT.set(previous);
+				} else {
+					CURRENT.remove();
+				}
+			}
+		};
+	}
+
+	public void recordStatement(String sql, long elapsedNanos) {
+		statements.increment();
+		nanos.add(elapsedNanos);
+
+		if (sql != null)
+			executions.computeIfAbsent(sql, key -> new LongAdder()).increment();
+	}
+
+	public void recordRows(long count) {
+		if (count > 0)
+			rows.add(count);
+	}
+
+	public long getStatements() {
+		return statements.sum();
+	}
+
+	public long getRows() {
+		return rows.sum();
+	}
+
+	public long getElapsedMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+	}
+
+	/**
+	 * Retorna o comando executado mais vezes na requisição, indício de consultas N+1, ou null quando não há comandos.
+	 *
+	 * @return Map.Entry<String, Long>
+	 */
+	public Map.Entry<String, Long> getMostRepeatedStatement() {
+		Map.Entry<String, Long> mostRepeated = null;
+		for (Map.Entry<String, LongAdder> execution : executions.entrySet()) {
+			long count = execution.getValue().sum();
+			if (mostRepeated == null || count > mostRepeated.getValue())
+				mostRepeated = new AbstractMap.SimpleImmutableEntry<>(execution.getKey(), count);
+		}
+		return mostRepeated;
+	}
+}
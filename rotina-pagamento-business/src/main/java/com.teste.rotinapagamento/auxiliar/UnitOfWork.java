@@ -0,0 +1,184 @@
+package com.teste.rotinapagamento.auxiliar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Contexto de uma chamada aos serviços, associado à transação corrente: memoriza as leituras feitas nos
+ * repositórios e acumula as escritas pendentes, que são gravadas juntas imediatamente antes do commit.
+ *
+ * O contexto existe apenas durante a transação e é descartado ao final dela, portanto nenhuma leitura
+ * memorizada é reaproveitada entre requisições. Escritas pendentes de uma mesma chave são combinadas em
+ * uma só; se a transação for desfeita, elas são descartadas sem chegar à base de dados.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class UnitOfWork {
+
+	private final Map<Key, Object> reads = new HashMap<>();
+
+	private final Map<Key, PendingWrite<?>> writes = new LinkedHashMap<>();
+
+	/**
+	 * Retorna o contexto da transação corrente, criando-o no primeiro acesso, ou null quando não há uma
+	 * transação em andamento (as leituras e escritas devem, então, ir direto aos repositórios).
+	 *
+	 * @return UnitOfWork
+	 */
+	public static UnitOfWork current() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive())
+			return null;
+
+		UnitOfWork unitOfWork = (UnitOfWork) TransactionSynchronizationManager.getResource(UnitOfWork.class);
+		if (unitOfWork != null)
+			return unitOfWork;
+
+		UnitOfWork created = new UnitOfWork();
+		TransactionSynchronizationManager.bindResource(UnitOfWork.class, created);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void beforeCommit(boolean readOnly) {
+				created.flush();
+			}
+
+			@Override
+			public void afterCompletion(int status) {
+				TransactionSynchronizationManager.unbindResourceIfPossible(UnitOfWork.class);
+			}
+		});
+
+		return created;
+	}
+
+	/**
+	 * Retorna o valor já lido para a chave ou, na primeira leitura, o valor lido pelo loader, que passa a
+	 * ser memorizado (inclusive quando nulo).
+	 *
+	 * @param name   nome da leitura
+	 * @param id     identificador do registro lido
+	 * @param loader leitura no repositório
+	 * @return T
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T read(String name, Object id, Supplier<T> loader) {
+		Key key = new Key(name, id);
+		if (reads.containsKey(key))
+			return (T) reads.get(key);
+
+		T value = loader.get();
+		reads.put(key, value);
+		return value;
+	}
+
+	/**
+	 * Registra uma escrita pendente. Se já houver uma escrita pendente para a chave, as duas são combinadas
+	 * pelo merge e gravadas pelo flusher da primeira.
+	 *
+	 * @param name    nome da escrita
+	 * @param id      identificador do registro escrito
+	 * @param value   valor a ser escrito
+	 * @param merge   combinação da escrita pendente com a nova
+	 * @param flusher gravação do valor no repositório
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> void write(String name, Object id, T value, BinaryOperator<T> merge, Consumer<T> flusher) {
+		Key key = new Key(name, id);
+		PendingWrite<T> pending = (PendingWrite<T>) writes.get(key);
+		if (pending == null) {
+			writes.put(key, new PendingWrite<>(value, flusher));
+		} else {
+			pending.value = merge.apply(pending.value, value);
+		}
+	}
+
+	/**
+	 * Retorna o valor da escrita pendente para a chave ou null quando não há escrita pendente.
+	 *
+	 * @param name nome da escrita
+	 * @param id   identificador do registro escrito
+	 * @return T
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T pending(String name, Object id) {
+		PendingWrite<T> pending = (PendingWrite<T>) writes.get(new Key(name, id));
+		return pending != null ? pending.value : null;
+	}
+
+	/**
+	 * Grava as escritas pendentes, na ordem em que foram registradas, e descarta as leituras memorizadas,
+	 * que deixam de refletir a base de dados.
+	 */
+	public void flush() {
+		List<PendingWrite<?>> pendingWrites = new ArrayList<>(writes.values());
+		writes.clear();
+		reads.clear();
+
+		for (PendingWrite<?> pending : pendingWrites) {
+			pending.flush();
+		}
+	}
+
+	/**
+	 * Descarta as escritas pendentes e as leituras memorizadas sem gravá-las, quando a parte da transação que
+	 * as produziu é desfeita (por exemplo, ao voltar para um savepoint).
+	 */
+	public void discard() {
+		writes.clear();
+		reads.clear();
+	}
+
+	private static class PendingWrite<T> {
+
+		private T value;
+
+		private final Consumer<T> flusher;
+
+		PendingWrite(T value, Consumer<T> flusher) {
+			this.value = value;
+			this.flusher = flusher;
+		}
+
+		void flush() {
+			flusher.accept(value);
+		}
+	}
+
+	private static class Key {
+
+		private final String name;
+
+		private final Object id;
+
+		Key(String name, Object id) {
+			this.name = name;
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (this == other)
+				return true;
+			if (!(other instanceof Key))
+				return false;
+
+			Key key = (Key) other;
+			return name.equals(key.name) && Objects.equals(id, key.id);
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * name.hashCode() + Objects.hashCode(id);
+		}
+	}
+}
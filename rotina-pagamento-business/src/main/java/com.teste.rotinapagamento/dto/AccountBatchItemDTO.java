@@ -0,0 +1,71 @@
+package com.teste.rotinapagamento.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.teste.rotinapagamento.auxiliar.ErrorMessage;
+
+/**
+ * Resultado de um item do cadastro ou da atualização de contas em lote: a conta gravada ou o erro que impediu a
+ * gravação do item.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class AccountBatchItemDTO {
+
+    @JsonProperty("index")
+    private Integer index;
+
+    @JsonProperty("status")
+    private Integer status;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("account")
+    private AccountDTO account;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("error")
+    private ErrorMessage error;
+
+    public AccountBatchItemDTO() {
+    }
+
+    public AccountBatchItemDTO(Integer index, Integer status, AccountDTO account, ErrorMessage error) {
+        this.index = index;
+        this.status = status;
+        this.account = account;
+        this.error = error;
+    }
+
+    public Integer getIndex() {
+        return index;
+    }
+
+    public void setIndex(Integer index) {
+        this.index = index;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    public AccountDTO getAccount() {
+        return account;
+    }
+
+    public void setAccount(AccountDTO account) {
+        this.account = account;
+    }
+
+    public ErrorMessage getError() {
+        return error;
+    }
+
+    public void setError(ErrorMessage error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,61 @@
+package com.teste.rotinapagamento.dto;
+
+/**
+ * Resposta de uma requisição feita com o cabeçalho Idempotency-Key. Quando a requisição acabou de ser executada,
+ * body guarda o objeto devolvido pelo serviço; quando é repetida, apenas a resposta gravada (response, em JSON).
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class IdempotentResponseDTO {
+
+    private String fingerprint;
+
+    private Integer httpStatus;
+
+    private String response;
+
+    private Object body;
+
+    private Long createdAt;
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public Integer getHttpStatus() {
+        return httpStatus;
+    }
+
+    public void setHttpStatus(Integer httpStatus) {
+        this.httpStatus = httpStatus;
+    }
+
+    public String getResponse() {
+        return response;
+    }
+
+    public void setResponse(String response) {
+        this.response = response;
+    }
+
+    public Object getBody() {
+        return body;
+    }
+
+    public void setBody(Object body) {
+        this.body = body;
+    }
+
+    public Long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Long createdAt) {
+        this.createdAt = createdAt;
+    }
+}
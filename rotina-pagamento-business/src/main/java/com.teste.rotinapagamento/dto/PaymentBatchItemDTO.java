@@ -0,0 +1,71 @@
+package com.teste.rotinapagamento.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.teste.rotinapagamento.auxiliar.ErrorMessage;
+
+/**
+ * Resultado de um item do abatimento de pagamentos em lote: o pagamento registrado ou o erro que impediu o registro
+ * dos pagamentos da conta do item.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class PaymentBatchItemDTO {
+
+    @JsonProperty("index")
+    private Integer index;
+
+    @JsonProperty("status")
+    private Integer status;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("transaction")
+    private TransactionDTO transaction;
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    @JsonProperty("error")
+    private ErrorMessage error;
+
+    public PaymentBatchItemDTO() {
+    }
+
+    public PaymentBatchItemDTO(Integer index, Integer status, TransactionDTO transaction, ErrorMessage error) {
+        this.index = index;
+        this.status = status;
+        this.transaction = transaction;
+        this.error = error;
+    }
+
+    public Integer getIndex() {
+        return index;
+    }
+
+    public void setIndex(Integer index) {
+        this.index = index;
+    }
+
+    public Integer getStatus() {
+        return status;
+    }
+
+    public void setStatus(Integer status) {
+        this.status = status;
+    }
+
+    public TransactionDTO getTransaction() {
+        return transaction;
+    }
+
+    public void setAccount(TransactionDTO transaction) {
+        this.transaction = transaction;
+    }
+
+    public ErrorMessage getError() {
+        return error;
+    }
+
+    public void setError(ErrorMessage error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,54 @@
+package com.teste.rotinapagamento.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Resultado da importação em lote de transações.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class TransactionImportDTO {
+
+    @JsonProperty("imported_transactions")
+    private Long importedTransactions;
+
+    @JsonProperty("updated_accounts")
+    private Integer updatedAccounts;
+
+    @JsonProperty("elapsed_ms")
+    private Long elapsedMs;
+
+    public TransactionImportDTO() {
+    }
+
+    public TransactionImportDTO(Long importedTransactions, Integer updatedAccounts, Long elapsedMs) {
+        this.importedTransactions = importedTransactions;
+        this.updatedAccounts = updatedAccounts;
+        this.elapsedMs = elapsedMs;
+    }
+
+    public Long getImportedTransactions() {
+        return importedTransactions;
+    }
+
+    public void setImportedTransactions(Long importedTransactions) {
+        this.importedTransactions = importedTransactions;
+    }
+
+    public Integer getUpdatedAccounts() {
+        return updatedAccounts;
+    }
+
+    public void setUpdatedAccounts(Integer updatedAccounts) {
+        this.updatedAccounts = updatedAccounts;
+    }
+
+    public Long getElapsedMs() {
+        return elapsedMs;
+    }
+
+    public void setElapsedMs(Long elapsedMs) {
+        this.elapsedMs = elapsedMs;
+    }
+}
@@ -0,0 +1,129 @@
+package com.teste.rotinapagamento.dto;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+/**
+ * Requisição de transação ou de lista de pagamentos aceita para processamento assíncrono. Enquanto o status é
+ * PENDING, a requisição aguarda na fila; ao final, response guarda o corpo que seria devolvido pela chamada síncrona.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class TransactionRequestDTO {
+
+    public static final String TRANSACTION = "TRANSACTION";
+
+    public static final String PAYMENTS = "PAYMENTS";
+
+    public static final String PENDING = "PENDING";
+
+    public static final String COMPLETED = "COMPLETED";
+
+    public static final String REJECTED = "REJECTED";
+
+    public static final String FAILED = "FAILED";
+
+    @JsonProperty("request_id")
+    private Integer requestId;
+
+    @JsonProperty("request_type")
+    private String requestType;
+
+    @JsonIgnore
+    private Integer accountId;
+
+    @JsonIgnore
+    private String payload;
+
+    @JsonProperty("status")
+    private String status;
+
+    @JsonProperty("http_status")
+    private Integer httpStatus;
+
+    @JsonRawValue
+    @JsonProperty("response")
+    private String response;
+
+    @JsonProperty("created_at")
+    private Long createdAt;
+
+    @JsonProperty("completed_at")
+    private Long completedAt;
+
+    public Integer getRequestId() {
+        return requestId;
+    }
+
+    public void setRequestId(Integer requestId) {
+        this.requestId = requestId;
+    }
+
+    public String getRequestType() {
+        return requestType;
+    }
+
+    public void setRequestType(String requestType) {
+        this.requestType = requestType;
+    }
+
+    public Integer getAccountId() {
+        return accountId;
+    }
+
+    public void setAccountId(Integer accountId) {
+        this.accountId = accountId;
+    }
+
+    public String getPayload() {
+        return payload;
+    }
+
+    public void setPayload(String payload) {
+        this.payload = payload;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Integer getHttpStatus() {
+        return httpStatus;
+    }
+
+    public void setHttpStatus(Integer httpStatus) {
+        this.httpStatus = httpStatus;
+    }
+
+    public String getResponse() {
+        return response;
+    }
+
+    public void setResponse(String response) {
+        this.response = response;
+    }
+
+    public Long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public Long getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(Long completedAt) {
+        this.completedAt = completedAt;
+    }
+}
@@ -0,0 +1,274 @@
+package com.teste.rotinapagamento.repository;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import com.teste.rotinapagamento.dto.AccountDTO;
+import com.teste.rotinapagamento.dto.AvailableLimitDTO;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Cache limitado por tamanho e por tempo de vida dos limites das contas, indexado pelo identificador da conta.
+ *
+ * As escritas feitas dentro de uma transação invalidam a conta imediatamente; a conta só volta ao cache, com os
+ * valores retornados pela escrita, depois do commit. Até lá, as leituras da conta na própria transação vão direto
+ * à base de dados. As leituras e escritas de uma mesma conta são serializadas pelo AccountLaneExecutor, de forma
+ * que o tempo de vida só limita a defasagem em relação a escritas feitas por outras instâncias da aplicação.
+ *
+ * Uma leitura feita fora da fila da conta pode carregar a conta antes do commit de uma escrita concorrente. Por isso,
+ * cada escrita e invalidação incrementa a versão da conta, e a conta carregada só é mantida no cache se a versão
+ * não mudou durante a leitura. As versões ficam em VERSION_STRIPES posições indexadas pelo identificador da conta;
+ * contas na mesma posição apenas deixam de guardar algumas leituras no cache.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Component
+@ManagedResource(objectName = "com.teste.rotinapagamento:type=AccountCache", description = "Cache de limites das contas")
+public class AccountCache {
+
+	private static final int VERSION_STRIPES = 4096;
+
+	private final int maxSize;
+
+	private final long ttlNanos;
+
+	private final LongSupplier clock;
+
+	private final LinkedHashMap<Integer, Snapshot> snapshots;
+
+	private final long[] versions = new long[VERSION_STRIPES];
+
+	private final LongAdder hits = new LongAdder();
+
+	private final LongAdder misses = new LongAdder();
+
+	private final LongAdder evictions = new LongAdder();
+
+	private final LongAdder expirations = new LongAdder();
+
+	@Autowired
+	public AccountCache(@Value("${payment-routine.account-cache.max-size:10000}") int maxSize,
+						@Value("${payment-routine.account-cache.ttl-seconds:30}") long ttlSeconds) {
+		this(maxSize, ttlSeconds, System::nanoTime);
+	}
+
+	AccountCache(int maxSize, long ttlSeconds, LongSupplier clock) {
+		this.maxSize = maxSize;
+		this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+		this.clock = clock;
+		this.snapshots = new LinkedHashMap<Integer, Snapshot>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, Snapshot> eldest) {
+				if (size() <= AccountCache.this.maxSize)
+					return false;
+
+				evictions.increment();
+				return true;
+			}
+		};
+	}
+
+	/**
+	 * Retorna a conta do cache ou, na ausência dela, a conta lida pelo loader, que passa a ser mantida no cache.
+	 *
+	 * @param accountId identificador da conta
+	 * @param loader    leitura da conta na base de dados
+	 * @return AccountDTO
+	 */
+	public AccountDTO get(Integer accountId, Function<Integer, AccountDTO> loader) {
+		if (!isEnabled() || accountId == null || pendingWrites().containsKey(accountId))
+			return loader.apply(accountId);
+
+		Snapshot snapshot = find(accountId);
+		if (snapshot != null) {
+			hits.increment();
+			return snapshot.toAccount(accountId);
+		}
+
+		misses.increment();
+		long version = version(accountId);
+		AccountDTO account = loader.apply(accountId);
+		if (account != null)
+			putIfUnchanged(accountId, account, version);
+
+		return account;
+	}
+
+	/**
+	 * Registra uma escrita na conta. A conta é invalidada imediatamente e, após o commit da transação corrente
+	 * (ou de imediato, fora de uma transação), volta ao cache com os valores retornados pela escrita.
+	 *
+	 * @param accountId identificador da conta
+	 * @param account   conta retornada pela escrita ou null quando os valores atualizados não são conhecidos
+	 */
+	public void write(Integer accountId, AccountDTO account) {
+		if (!isEnabled() || accountId == null)
+			return;
+
+		invalidate(accountId);
+
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			if (account != null) store(accountId, account);
+			return;
+		}
+
+		Map<Integer, AccountDTO> pendingWrites = pendingWrites();
+		if (pendingWrites.isEmpty()) {
+			Map<Integer, AccountDTO> writes = new HashMap<>();
+			TransactionSynchronizationManager.bindResource(this, writes);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(AccountCache.this);
+
+					for (Map.Entry<Integer, AccountDTO> write : writes.entrySet()) {
+						if (status == STATUS_COMMITTED && write.getValue() != null) {
+							store(write.getKey(), write.getValue());
+						} else {
+							invalidate(write.getKey());
+						}
+					}
+				}
+			});
+			pendingWrites = writes;
+		}
+
+		pendingWrites.put(accountId, account);
+	}
+
+	@ManagedOperation(description = "Remove a conta do cache")
+	public synchronized void invalidate(Integer accountId) {
+		snapshots.remove(accountId);
+		versions[stripe(accountId)]++;
+	}
+
+	@ManagedOperation(description = "Remove todas as contas do cache")
+	public synchronized void clear() {
+		snapshots.clear();
+		for (int i = 0; i < versions.length; i++) {
+			versions[i]++;
+		}
+	}
+
+	@ManagedAttribute(description = "Quantidade de contas no cache")
+	public synchronized int getSize() {
+		return snapshots.size();
+	}
+
+	@ManagedAttribute(description = "Quantidade máxima de contas no cache")
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	@ManagedAttribute(description = "Leituras atendidas pelo cache")
+	public long getHits() {
+		return hits.sum();
+	}
+
+	@ManagedAttribute(description = "Leituras que foram à base de dados")
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	@ManagedAttribute(description = "Proporção de leituras atendidas pelo cache")
+	public double getHitRatio() {
+		long hits = getHits();
+		long total = hits + getMisses();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	@ManagedAttribute(description = "Contas removidas por falta de espaço")
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	@ManagedAttribute(description = "Contas removidas por tempo de vida expirado")
+	public long getExpirations() {
+		return expirations.sum();
+	}
+
+	private boolean isEnabled() {
+		return maxSize > 0 && ttlNanos > 0;
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<Integer, AccountDTO> pendingWrites() {
+		Object writes = TransactionSynchronizationManager.getResource(this);
+		return writes != null ? (Map<Integer, AccountDTO>) writes : Collections.emptyMap();
+	}
+
+	private synchronized Snapshot find(Integer accountId) {
+		Snapshot snapshot = snapshots.get(accountId);
+		if (snapshot != null && clock.getAsLong() - snapshot.loadedAt > ttlNanos) {
+			snapshots.remove(accountId);
+			expirations.increment();
+			return null;
+		}
+		return snapshot;
+	}
+
+	private synchronized long version(Integer accountId) {
+		return versions[stripe(accountId)];
+	}
+
+	/**
+	 * Mantém no cache a conta carregada por uma leitura, se nenhuma escrita da conta ocorreu durante a leitura.
+	 */
+	private synchronized void putIfUnchanged(Integer accountId, AccountDTO account, long version) {
+		if (versions[stripe(accountId)] == version)
+			snapshots.put(accountId, new Snapshot(account, clock.getAsLong()));
+	}
+
+	/**
+	 * Mantém no cache a conta retornada por uma escrita, descartando as leituras da conta ainda em andamento.
+	 */
+	private synchronized void store(Integer accountId, AccountDTO account) {
+		versions[stripe(accountId)]++;
+		snapshots.put(accountId, new Snapshot(account, clock.getAsLong()));
+	}
+
+	private static int stripe(Integer accountId) {
+		return Math.floorMod(accountId, VERSION_STRIPES);
+	}
+
+	/**
+	 * Cópia imutável dos limites da conta, para que alterações nos DTOs devolvidos não afetem o cache.
+	 */
+	private static class Snapshot {
+
+		private final Double availableCreditLimit;
+
+		private final Double availableWithdrawalLimit;
+
+		private final long loadedAt;
+
+		Snapshot(AccountDTO account, long loadedAt) {
+			this.availableCreditLimit = account.getAvailableCreditLimit() != null ? account.getAvailableCreditLimit().getAmount() : null;
+			this.availableWithdrawalLimit = account.getAvailableWithdrawalLimit() != null ? account.getAvailableWithdrawalLimit().getAmount() : null;
+			this.loadedAt = loadedAt;
+		}
+
+		AccountDTO toAccount(Integer accountId) {
+			AccountDTO account = new AccountDTO();
+			account.setAccountId(accountId);
+			account.setAvailableCreditLimit(new AvailableLimitDTO(availableCreditLimit));
+			account.setAvailableWithdrawalLimit(new AvailableLimitDTO(availableWithdrawalLimit));
+			return account;
+		}
+	}
+}
@@ -0,0 +1,627 @@
+package com.teste.rotinapagamento.repository;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import com.teste.rotinapagamento.auxiliar.OperationType;
+import com.teste.rotinapagamento.auxiliar.SourceMessage;
+import com.teste.rotinapagamento.dto.AccountDTO;
+import com.teste.rotinapagamento.dto.AvailableLimitDTO;
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.exception.ResourceException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Livro-razão das contas mantido em memória quando payment-routine.ledger.mode = memory: limites, saldos e
+ * transações em aberto de cada conta, reconstruídos da base de dados na subida da aplicação.
+ *
+ * O livro-razão é a fonte de verdade das escritas e deve pertencer a um único nó: a reconstrução obtém um advisory
+ * lock de sessão da base de dados, mantido em uma conexão própria enquanto a aplicação estiver em execução, e a
+ * aplicação não é iniciada se outro nó já o tiver obtido. As alterações feitas dentro de
+ * uma transação são aplicadas de imediato em memória, desfeitas se a transação for desfeita e, após o commit,
+ * entregues ao LedgerWriter, que as grava na base de dados em segundo plano e na mesma ordem.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Component
+@ConditionalOnProperty(name = "payment-routine.ledger.mode", havingValue = "memory")
+@ManagedResource(objectName = "com.teste.rotinapagamento:type=AccountLedger")
+public class AccountLedger {
+
+	private static final Logger log = LoggerFactory.getLogger(AccountLedger.class);
+
+	private static final String LOCK_NAME = "payment-routine.ledger.memory";
+
+	@Autowired
+	private SourceMessage sourceMessage;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private LedgerWriter ledgerWriter;
+
+	@Autowired
+	private ChargeOrders chargeOrders;
+
+	@Value("${payment-routine.stream-fetch-size:500}")
+	private int streamFetchSize;
+
+	private final ConcurrentMap<Integer, LedgerAccount> accounts = new ConcurrentHashMap<>();
+
+	private final ConcurrentMap<Integer, Integer> transactionAccounts = new ConcurrentHashMap<>();
+
+	private volatile boolean ready;
+
+	private Connection lockConnection;
+
+	/**
+	 * Reconstrói o livro-razão a partir das tabelas accounts, operations_types e das transações com balanço
+	 * diferente de zero. Deve ser chamado depois que o esquema da base de dados estiver criado e antes de
+	 * qualquer escrita.
+	 */
+	public void rebuild() {
+		lock();
+
+		ready = false;
+		accounts.clear();
+		transactionAccounts.clear();
+
+		log.info("Reconstruindo o livro-razão das contas em memória.");
+
+		new TransactionTemplate(transactionManager).execute(status -> {
+			// A ordem de cobrança é lida antes das transações, que são indexadas por ela.
+			chargeOrders.load();
+
+			stream("SELECT account_id, available_credit_limit, available_withdrawal_limit, credit_balance, debt_balance FROM public.accounts",
+					resultSet -> {
+						LedgerAccount account = new LedgerAccount(resultSet.getDouble("available_credit_limit"), resultSet.getDouble("available_withdrawal_limit"),
+								chargeOrders.comparator());
+						account.creditBalance = resultSet.getDouble("credit_balance");
+						account.debtBalance = resultSet.getDouble("debt_balance");
+						accounts.put(resultSet.getInt("account_id"), account);
+					});
+
+			stream("SELECT transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date FROM public.transactions " +
+							"WHERE balance <> 0 ORDER BY event_date, transaction_id",
+					resultSet -> {
+						TransactionDTO transaction = new TransactionDTO();
+						transaction.setTransactionId(resultSet.getInt("transaction_id"));
+						transaction.setAccountId(resultSet.getInt("account_id"));
+						transaction.setOperationTypeId(resultSet.getInt("operation_type_id"));
+						transaction.setAmount(resultSet.getDouble("amount"));
+						transaction.setBalance(resultSet.getDouble("balance"));
+						transaction.setEventDate(resultSet.getTimestamp("event_date").getTime());
+						if (resultSet.getTimestamp("due_date") != null)
+							transaction.setDueDate(resultSet.getTimestamp("due_date").getTime());
+
+						LedgerAccount account = accounts.get(transaction.getAccountId());
+						if (account != null) {
+							account.addTransaction(transaction);
+							transactionAccounts.put(transaction.getTransactionId(), transaction.getAccountId());
+						}
+					});
+			return null;
+		});
+
+		ready = true;
+		log.info("Livro-razão reconstruído com {} contas e {} transações em aberto.", accounts.size(), transactionAccounts.size());
+	}
+
+	/**
+	 * Libera o advisory lock do livro-razão ao encerrar a aplicação.
+	 */
+	@PreDestroy
+	public synchronized void unlock() {
+		if (lockConnection == null)
+			return;
+
+		try {
+			lockConnection.close();
+		} catch (SQLException e) {
+			log.warn("Não foi possível liberar o lock do livro-razão em memória.", e);
+		}
+		lockConnection = null;
+	}
+
+	/**
+	 * Obtém o advisory lock de sessão do livro-razão, recusando a subida quando outro nó já o mantém.
+	 */
+	private synchronized void lock() {
+		if (lockConnection != null)
+			return;
+
+		try {
+			Connection connection = dataSource.getConnection();
+			boolean locked;
+			try (Statement statement = connection.createStatement();
+				 ResultSet resultSet = statement.executeQuery("SELECT pg_try_advisory_lock(hashtext('" + LOCK_NAME + "'))")) {
+				locked = resultSet.next() && resultSet.getBoolean(1);
+			} catch (SQLException e) {
+				connection.close();
+				throw e;
+			}
+
+			if (!locked) {
+				connection.close();
+				throw new IllegalStateException("O livro-razão em memória já pertence a outro nó em execução " +
+						"(payment-routine.ledger.mode = memory); apenas um nó pode usar esse modo.");
+			}
+
+			lockConnection = connection;
+		} catch (SQLException e) {
+			throw new IllegalStateException("Não foi possível obter o lock do livro-razão em memória.", e);
+		}
+	}
+
+	void start(Map<Integer, Integer> orders) {
+		chargeOrders.set(orders);
+		ready = true;
+	}
+
+	/**
+	 * Retorna a conta com os limites atuais ou null quando a conta não existe. Recusa a consulta com 503 enquanto o
+	 * livro-razão é reconstruído, para que uma conta ainda não carregada não seja tratada como inexistente.
+	 *
+	 * @param accountId identificador da conta
+	 * @return AccountDTO
+	 */
+	public AccountDTO findAccount(Integer accountId) {
+		checkReady();
+
+		LedgerAccount account = accountId != null ? accounts.get(accountId) : null;
+		if (account == null)
+			return null;
+
+		synchronized (account) {
+			return account.toAccount(accountId);
+		}
+	}
+
+	/**
+	 * Retorna o saldo credor da conta ou null quando a conta não existe. Recusa a consulta com 503 enquanto o
+	 * livro-razão é reconstruído.
+	 *
+	 * @param accountId identificador da conta
+	 * @return Double
+	 */
+	public Double findCreditBalance(Integer accountId) {
+		checkReady();
+
+		LedgerAccount account = accountId != null ? accounts.get(accountId) : null;
+		if (account == null)
+			return null;
+
+		synchronized (account) {
+			return account.creditBalance;
+		}
+	}
+
+	/**
+	 * Retorna cópias das transações da conta com balanço diferente de zero, na ordem de cobrança usada pela
+	 * consulta findTransactionsToDownPayment da base de dados. As transações já são mantidas nessa ordem
+	 * (ver LedgerAccount.openDebts), sem ordenação a cada pagamento.
+	 *
+	 * @param accountId identificador da conta
+	 * @return List<TransactionDTO>
+	 */
+	public List<TransactionDTO> findOpenTransactions(Integer accountId) {
+		checkReady();
+
+		List<TransactionDTO> transactions = new ArrayList<>();
+		LedgerAccount account = accountId != null ? accounts.get(accountId) : null;
+		if (account == null)
+			return transactions;
+
+		synchronized (account) {
+			for (TransactionDTO transaction : account.openDebts) {
+				if (transaction.getBalance() != 0)
+					transactions.add(copy(transaction));
+			}
+		}
+
+		return transactions;
+	}
+
+	/**
+	 * Registra uma conta já persistida na base de dados.
+	 *
+	 * @param account conta persistida
+	 */
+	public void registerAccount(AccountDTO account) {
+		checkWritable();
+
+		Integer accountId = account.getAccountId();
+		accounts.put(accountId, new LedgerAccount(amount(account.getAvailableCreditLimit()), amount(account.getAvailableWithdrawalLimit()),
+				chargeOrders.comparator()));
+		record(accountId, () -> accounts.remove(accountId), null);
+	}
+
+	/**
+	 * Soma os valores passados aos limites e saldos da conta e retorna a conta com os limites atualizados.
+	 *
+	 * @param accountId       identificador da conta
+	 * @param creditLimit     valor a ser somado ao limite de crédito
+	 * @param withdrawalLimit valor a ser somado ao limite de retirada
+	 * @param creditBalance   valor a ser somado ao saldo credor
+	 * @param debtBalance     valor a ser somado ao saldo devedor
+	 * @param persist         gravação da alteração na base de dados
+	 * @return AccountDTO
+	 */
+	public AccountDTO addBalances(Integer accountId, Double creditLimit, Double withdrawalLimit, Double creditBalance, Double debtBalance, Runnable persist) {
+		LedgerAccount account = account(accountId);
+
+		synchronized (account) {
+			account.add(creditLimit, withdrawalLimit, creditBalance, debtBalance, 1);
+			record(accountId, () -> {
+				synchronized (account) {
+					account.add(creditLimit, withdrawalLimit, creditBalance, debtBalance, -1);
+				}
+			}, persist);
+
+			return account.toAccount(accountId);
+		}
+	}
+
+	/**
+	 * Inclui uma transação na conta.
+	 *
+	 * @param transaction transação com identificador e data do evento já atribuídos
+	 * @param persist     gravação da transação na base de dados
+	 */
+	public void addTransaction(TransactionDTO transaction, Runnable persist) {
+		Integer accountId = transaction.getAccountId();
+		Integer transactionId = transaction.getTransactionId();
+		LedgerAccount account = account(accountId);
+
+		synchronized (account) {
+			account.addTransaction(copy(transaction));
+			transactionAccounts.put(transactionId, accountId);
+			record(accountId, () -> {
+				synchronized (account) {
+					account.removeTransaction(transactionId);
+					transactionAccounts.remove(transactionId);
+				}
+			}, persist);
+		}
+	}
+
+	/**
+	 * Soma os valores passados aos balanços das transações.
+	 *
+	 * @param balances valor a ser somado ao balanço, indexado pelo identificador da transação
+	 * @param persist  gravação da alteração na base de dados
+	 */
+	public void addTransactionBalances(Map<Integer, Double> balances, Runnable persist) {
+		Map<Integer, Double> applied = new LinkedHashMap<>();
+		Set<Integer> accountIds = new HashSet<>();
+
+		for (Map.Entry<Integer, Double> balance : balances.entrySet()) {
+			TransactionDTO transaction = findOpenTransaction(balance.getKey());
+			if (transaction == null)
+				continue;
+
+			LedgerAccount account = accounts.get(transaction.getAccountId());
+			synchronized (account) {
+				transaction.setBalance(transaction.getBalance() + balance.getValue());
+			}
+			applied.put(balance.getKey(), balance.getValue());
+			accountIds.add(transaction.getAccountId());
+		}
+
+		for (Integer accountId : accountIds) {
+			record(accountId, null, null);
+		}
+		record(null, () -> undoTransactionBalances(applied), persist);
+	}
+
+	/**
+	 * Abate o valor passado dos pagamentos da conta que ainda guardam saldo credor, do mais antigo para o mais novo,
+	 * sem deixar nenhum deles com balanço negativo.
+	 *
+	 * @param accountId identificador da conta
+	 * @param amount    valor a ser abatido do saldo credor
+	 * @param persist   gravação da alteração na base de dados
+	 */
+	public void downCreditBalance(Integer accountId, Double amount, Runnable persist) {
+		LedgerAccount account = account(accountId);
+
+		synchronized (account) {
+			List<TransactionDTO> payments = new ArrayList<>();
+			for (TransactionDTO transaction : account.transactions.values()) {
+				if (transaction.getOperationTypeId() == OperationType.PAGAMENTO.getId() && transaction.getBalance() > 0)
+					payments.add(transaction);
+			}
+			payments.sort(Comparator.comparing(TransactionDTO::getTransactionId));
+
+			Map<TransactionDTO, Double> applied = new LinkedHashMap<>();
+			double remaining = amount;
+			for (TransactionDTO payment : payments) {
+				if (remaining <= 0)
+					break;
+
+				double down = Math.min(payment.getBalance(), remaining);
+				payment.setBalance(payment.getBalance() - down);
+				applied.put(payment, down);
+				remaining -= down;
+			}
+
+			if (applied.isEmpty()) {
+				record(accountId, null, persist);
+				return;
+			}
+
+			record(accountId, () -> {
+				synchronized (account) {
+					for (Map.Entry<TransactionDTO, Double> down : applied.entrySet()) {
+						down.getKey().setBalance(down.getKey().getBalance() + down.getValue());
+					}
+				}
+			}, persist);
+		}
+	}
+
+	@ManagedAttribute(description = "Quantidade de contas no livro-razão")
+	public int getAccounts() {
+		return accounts.size();
+	}
+
+	@ManagedAttribute(description = "Quantidade de transações com balanço diferente de zero no livro-razão")
+	public int getOpenTransactions() {
+		return transactionAccounts.size();
+	}
+
+	@ManagedAttribute(description = "Indica se o livro-razão já foi reconstruído")
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * Registra a alteração na transação corrente: ela é desfeita se a transação for desfeita e a gravação é
+	 * entregue ao LedgerWriter após o commit. Fora de uma transação, a gravação é entregue de imediato.
+	 */
+	private void record(Integer accountId, Runnable undo, Runnable persist) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			if (persist != null)
+				ledgerWriter.enqueue(Collections.singletonList(persist));
+			if (accountId != null)
+				prune(accountId);
+			return;
+		}
+
+		Changes changes = (Changes) TransactionSynchronizationManager.getResource(this);
+		if (changes == null) {
+			Changes created = new Changes();
+			TransactionSynchronizationManager.bindResource(this, created);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(AccountLedger.this);
+
+					if (status == STATUS_COMMITTED) {
+						if (!created.persists.isEmpty())
+							ledgerWriter.enqueue(created.persists);
+					} else {
+						for (int i = created.undos.size() - 1; i >= 0; i--) {
+							created.undos.get(i).run();
+						}
+					}
+
+					for (Integer touched : created.accountIds) {
+						prune(touched);
+					}
+				}
+			});
+			changes = created;
+		}
+
+		if (accountId != null)
+			changes.accountIds.add(accountId);
+		if (undo != null)
+			changes.undos.add(undo);
+		if (persist != null)
+			changes.persists.add(persist);
+	}
+
+	/**
+	 * Remove da conta as transações que ficaram com balanço zero, que não participam mais de abatimentos.
+	 */
+	private void prune(Integer accountId) {
+		LedgerAccount account = accounts.get(accountId);
+		if (account == null)
+			return;
+
+		synchronized (account) {
+			Iterator<TransactionDTO> iterator = account.transactions.values().iterator();
+			while (iterator.hasNext()) {
+				TransactionDTO transaction = iterator.next();
+				if (transaction.getBalance() == 0) {
+					iterator.remove();
+					account.openDebts.remove(transaction);
+					transactionAccounts.remove(transaction.getTransactionId());
+				}
+			}
+		}
+	}
+
+	private void undoTransactionBalances(Map<Integer, Double> applied) {
+		for (Map.Entry<Integer, Double> balance : applied.entrySet()) {
+			TransactionDTO transaction = findOpenTransaction(balance.getKey());
+			if (transaction == null)
+				continue;
+
+			LedgerAccount account = accounts.get(transaction.getAccountId());
+			synchronized (account) {
+				transaction.setBalance(transaction.getBalance() - balance.getValue());
+			}
+		}
+	}
+
+	private TransactionDTO findOpenTransaction(Integer transactionId) {
+		Integer accountId = transactionAccounts.get(transactionId);
+		LedgerAccount account = accountId != null ? accounts.get(accountId) : null;
+		if (account == null)
+			return null;
+
+		synchronized (account) {
+			return account.transactions.get(transactionId);
+		}
+	}
+
+	private LedgerAccount account(Integer accountId) {
+		checkWritable();
+
+		LedgerAccount account = accountId != null ? accounts.get(accountId) : null;
+		if (account == null)
+			throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("conta.nao.existente"));
+
+		return account;
+	}
+
+	private void checkReady() {
+		if (!ready)
+			throw new ResourceException(HttpStatus.SERVICE_UNAVAILABLE, sourceMessage.getMessage("livro.razao.indisponivel"));
+	}
+
+	/**
+	 * Recusa a escrita enquanto o livro-razão não foi reconstruído ou a gravação na base de dados não aceita novas
+	 * alterações (fila cheia ou gravação interrompida), para que o estado em memória não se afaste da base de dados.
+	 */
+	private void checkWritable() {
+		checkReady();
+
+		if (!ledgerWriter.isAccepting())
+			throw new ResourceException(HttpStatus.SERVICE_UNAVAILABLE, sourceMessage.getMessage("livro.razao.gravacao.interrompida"));
+	}
+
+	private void stream(String sql, RowCallbackHandler handler) {
+		jdbcTemplate.query(connection -> {
+			PreparedStatement statement = connection.prepareStatement(sql);
+			statement.setFetchSize(streamFetchSize);
+			return statement;
+		}, handler);
+	}
+
+	private static double amount(AvailableLimitDTO limit) {
+		return limit != null && limit.getAmount() != null ? limit.getAmount() : 0.00;
+	}
+
+	private static TransactionDTO copy(TransactionDTO source) {
+		TransactionDTO transaction = new TransactionDTO();
+		transaction.setTransactionId(source.getTransactionId());
+		transaction.setAccountId(source.getAccountId());
+		transaction.setOperationTypeId(source.getOperationTypeId());
+		transaction.setAmount(source.getAmount());
+		transaction.setBalance(source.getBalance());
+		transaction.setEventDate(source.getEventDate());
+		transaction.setDueDate(source.getDueDate());
+		return transaction;
+	}
+
+	/**
+	 * Estado de uma conta no livro-razão. Acessado sempre com o lock da própria conta.
+	 */
+	private static class LedgerAccount {
+
+		private double creditLimit;
+
+		private double withdrawalLimit;
+
+		private double creditBalance;
+
+		private double debtBalance;
+
+		private final Map<Integer, TransactionDTO> transactions = new LinkedHashMap<>();
+
+		/**
+		 * As mesmas transações de transactions, na ordem de cobrança. Os campos da ordem (tipo de operação, data do
+		 * evento e identificador) não mudam, por isso a posição de cada transação é fixa enquanto o balanço muda.
+		 */
+		private final NavigableSet<TransactionDTO> openDebts;
+
+		LedgerAccount(double creditLimit, double withdrawalLimit, Comparator<TransactionDTO> chargeOrder) {
+			this.creditLimit = creditLimit;
+			this.withdrawalLimit = withdrawalLimit;
+			this.openDebts = new TreeSet<>(chargeOrder);
+		}
+
+		void addTransaction(TransactionDTO transaction) {
+			transactions.put(transaction.getTransactionId(), transaction);
+			openDebts.add(transaction);
+		}
+
+		void removeTransaction(Integer transactionId) {
+			TransactionDTO transaction = transactions.remove(transactionId);
+			if (transaction != null)
+				openDebts.remove(transaction);
+		}
+
+		void add(Double creditLimit, Double withdrawalLimit, Double creditBalance, Double debtBalance, int signal) {
+			if (creditLimit != null) this.creditLimit += signal * creditLimit;
+			if (withdrawalLimit != null) this.withdrawalLimit += signal * withdrawalLimit;
+			if (creditBalance != null) this.creditBalance += signal * creditBalance;
+			if (debtBalance != null) this.debtBalance += signal * debtBalance;
+		}
+
+		AccountDTO toAccount(Integer accountId) {
+			AccountDTO account = new AccountDTO();
+			account.setAccountId(accountId);
+			account.setAvailableCreditLimit(new AvailableLimitDTO(creditLimit));
+			account.setAvailableWithdrawalLimit(new AvailableLimitDTO(withdrawalLimit));
+			return account;
+		}
+	}
+
+	/**
+	 * Alterações feitas no livro-razão durante a transação corrente.
+	 */
+	private static class Changes {
+
+		private final Set<Integer> accountIds = new HashSet<>();
+
+		private final List<Runnable> undos = new ArrayList<>();
+
+		private final List<Runnable> persists = new ArrayList<>();
+	}
+}
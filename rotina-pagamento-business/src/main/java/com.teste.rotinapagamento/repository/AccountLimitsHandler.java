@@ -0,0 +1,13 @@
+package com.teste.rotinapagamento.repository;
+
+/**
+ * Recebe os limites de cada conta lida do cursor da base de dados, sem a montagem de DTOs por linha.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@FunctionalInterface
+public interface AccountLimitsHandler {
+
+    void handle(int accountId, double availableCreditLimit, double availableWithdrawalLimit, double creditBalance);
+}
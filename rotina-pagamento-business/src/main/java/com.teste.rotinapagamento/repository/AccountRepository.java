@@ -1,9 +1,15 @@
 package com.teste.rotinapagamento.repository;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PostConstruct;
 
 import com.teste.rotinapagamento.auxiliar.SourceMessage;
 import com.teste.rotinapagamento.dto.AccountDTO;
@@ -11,10 +17,14 @@ import com.teste.rotinapagamento.dto.AvailableLimitDTO;
 import com.teste.rotinapagamento.exception.ResourceException;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ParameterizedPreparedStatementSetter;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
@@ -25,38 +35,86 @@ import org.springframework.stereotype.Repository;
 @Repository
 public class AccountRepository {
 
+	private static final String[] BALANCE_COLUMNS = {"available_credit_limit", "available_withdrawal_limit", "credit_balance", "debt_balance"};
+
 	@Autowired
 	private SourceMessage sourceMessage;
 
 	@Autowired
 	private JdbcTemplate jdbcTemplate;
 
+	@Value("${payment-routine.stream-fetch-size:500}")
+	private int streamFetchSize;
+
+	@Value("${payment-routine.account-batch.chunk-size:1000}")
+	private int batchChunkSize;
+
+	private SequenceIdAllocator accountIdAllocator;
+
+	private final RowMapper<AccountDTO> accountMapper = (resultSet, i) -> {
+		AccountDTO account = new AccountDTO();
+		account.setAccountId(resultSet.getInt("account_id"));
+		account.setAvailableCreditLimit(new AvailableLimitDTO(resultSet.getDouble("available_credit_limit")));
+		account.setAvailableWithdrawalLimit(new AvailableLimitDTO(resultSet.getDouble("available_withdrawal_limit")));
+
+		return account;
+	};
+
+	private final ResultSetExtractor<AccountDTO> accountExtractor = new ResultSetExtractor<AccountDTO>() {
+		@Override
+		public AccountDTO extractData(ResultSet resultSet) throws SQLException, DataAccessException {
+			return resultSet.next() ? accountMapper.mapRow(resultSet, 0) : null;
+		}
+	};
+
+	@PostConstruct
+	public void init() {
+		accountIdAllocator = new SequenceIdAllocator(jdbcTemplate, "public", "accounts_seq");
+	}
+
 	/**
-	 * Busca na base de dados todas as contas registradas com os limites de crédito e saque atualizados.
+	 * Percorre as contas registradas com os limites de crédito e saque atualizados, ordenadas pelo identificador,
+	 * lendo-as de um cursor na base de dados. Deve ser chamado dentro de uma transação.
 	 *
-	 * @return List<AccountDTO>
+	 * @param after   identificador da última conta já lida
+	 * @param limit   quantidade máxima de contas lidas
+	 * @param handler receptor dos limites de cada conta
 	 */
-	public List<AccountDTO> findAccounts() {
+	public void streamAccounts(Integer after, Integer limit, AccountLimitsHandler handler) {
+		List<Object> params = new ArrayList<>();
 		StringBuilder sql = new StringBuilder();
-		sql.append("SELECT a.account_id, a.available_credit_limit, ")
-				.append("a.available_withdrawal_limit, credit_balance.balance AS credit_balance ")
-				.append("FROM public.accounts a ")
-				.append("LEFT JOIN ( ")
-				.append("  SELECT account_id, balance FROM public.transactions WHERE 1=1 AND operation_type_id=4 AND balance > 0 ")
-				.append(") AS credit_balance ON (credit_balance.account_id = a.account_id) ");
-
-		return jdbcTemplate.query(sql.toString(), new RowMapper<AccountDTO>() {
-			@Override
-			public AccountDTO mapRow(ResultSet resultSet, int i) throws SQLException {
-				AccountDTO account = new AccountDTO();
-				account.setAccountId(resultSet.getInt("account_id"));
-				account.setAvailableCreditLimit(new AvailableLimitDTO(resultSet.getDouble("available_credit_limit")));
-				account.setAvailableWithdrawalLimit(new AvailableLimitDTO(resultSet.getDouble("available_withdrawal_limit")));
-				account.setCreditBalance(new AvailableLimitDTO(resultSet.getDouble("credit_balance")));
-
-				return account;
-			}
-		});
+		sql.append("SELECT a.account_id, a.available_credit_limit, a.available_withdrawal_limit, a.credit_balance ")
+				.append("FROM ").append(accountsTable()).append(" a ")
+				.append("WHERE 1=1 ");
+
+		if (after != null) {
+			sql.append("AND a.account_id > ? ");
+			params.add(after);
+		}
+
+		sql.append("ORDER BY a.account_id ");
+
+		if (limit != null) {
+			sql.append("LIMIT ? ");
+			params.add(limit);
+		}
+
+		try {
+			jdbcTemplate.query(connection -> {
+				PreparedStatement statement = connection.prepareStatement(sql.toString());
+				statement.setFetchSize(streamFetchSize);
+				for (int i = 0; i < params.size(); i++) {
+					statement.setObject(i + 1, params.get(i));
+				}
+
+				return statement;
+			}, (RowCallbackHandler) resultSet -> handler.handle(resultSet.getInt("account_id"),
+					resultSet.getDouble("available_credit_limit"),
+					resultSet.getDouble("available_withdrawal_limit"),
+					resultSet.getDouble("credit_balance")));
+		} catch (Exception e) {
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		}
 	}
 
 	/**
@@ -66,27 +124,44 @@ public class AccountRepository {
 	 * @return AccountDTO
 	 */
 	public AccountDTO findAccount(Integer accountId) {
-		String sql = "SELECT * FROM public.accounts WHERE account_id=?";
-
-		return jdbcTemplate.query(sql, new Object[] {accountId}, new ResultSetExtractor<AccountDTO>() {
-			@Override
-			public AccountDTO extractData(ResultSet resultSet) throws SQLException, DataAccessException {
-				if (resultSet.next()) {
-					AccountDTO account = new AccountDTO();
-					account.setAccountId(resultSet.getInt("account_id"));
-					account.setAvailableCreditLimit(new AvailableLimitDTO(resultSet.getDouble("available_credit_limit")));
-					account.setAvailableWithdrawalLimit(new AvailableLimitDTO(resultSet.getDouble("available_withdrawal_limit")));
-
-					return account;
-				}
+		String sql = "SELECT * FROM " + accountsTable() + " WHERE account_id=?";
+
+		return jdbcTemplate.query(sql, new Object[] {accountId}, accountExtractor);
+	}
 
-				return null;
+	/**
+	 * Busca na base de dados as contas que correspondam aos identificadores passados, em uma consulta a cada
+	 * payment-routine.account-batch.chunk-size identificadores. Identificadores sem conta ficam fora do mapa.
+	 *
+	 * @param accountIds identificadores das contas
+	 * @return Map<Integer, AccountDTO>
+	 */
+	public Map<Integer, AccountDTO> findAccounts(Collection<Integer> accountIds) {
+		String sql = "SELECT * FROM " + accountsTable() + " WHERE account_id = ANY(?)";
+		List<Integer> ids = new ArrayList<>(accountIds);
+		Map<Integer, AccountDTO> accounts = new HashMap<>();
+
+		try {
+			for (int from = 0; from < ids.size(); from += batchChunkSize) {
+				Object[] chunk = ids.subList(from, Math.min(from + batchChunkSize, ids.size())).toArray();
+				jdbcTemplate.query(connection -> {
+					PreparedStatement statement = connection.prepareStatement(sql);
+					statement.setArray(1, connection.createArrayOf("integer", chunk));
+					return statement;
+				}, (RowCallbackHandler) resultSet -> {
+					AccountDTO account = accountMapper.mapRow(resultSet, 0);
+					accounts.put(account.getAccountId(), account);
+				});
 			}
-		});
+		} catch (Exception e) {
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		}
+
+		return accounts;
 	}
 
 	/**
-	 * Realiza o update de contas na base de dados.
+	 * Realiza o update de contas na base de dados e retorna a conta com os limites já atualizados.
 	 *
 	 * @param accountId                      identificador da conta
 	 * @param availableCreditLimitAmount     limite de crédito disponível
@@ -94,51 +169,209 @@ public class AccountRepository {
 	 * @return AccountDTO
 	 */
 	public AccountDTO updateAccount(Integer accountId, Double availableCreditLimitAmount, Double availableWithdrawalLimitAmount) {
+		if (availableCreditLimitAmount == null && availableWithdrawalLimitAmount == null)
+			return findAccount(accountId);
+
 		List<Object> params = new ArrayList<>();
-		StringBuilder sql = new StringBuilder();
+		StringBuilder sql = balancesUpdateSql(accountId, params, availableCreditLimitAmount, availableWithdrawalLimitAmount);
+		sql.append(" RETURNING *;");
 
-		sql.append("UPDATE public.accounts ").append("SET ");
+        try {
+            return jdbcTemplate.query(sql.toString(), params.toArray(), accountExtractor);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+	}
 
-		boolean creditLimitNotNull = availableCreditLimitAmount != null;
-		if (creditLimitNotNull) {
-			sql.append("available_credit_limit=available_credit_limit + ? ");
-			params.add(availableCreditLimitAmount);
-		}
+	/**
+	 * Soma os valores passados aos limites de crédito e saque da conta, sem reler a conta atualizada.
+	 *
+	 * @param accountId                      identificador da conta
+	 * @param availableCreditLimitAmount     valor a ser somado ao limite de crédito
+	 * @param availableWithdrawalLimitAmount valor a ser somado ao limite de retirada
+	 */
+	public void updateLimits(Integer accountId, Double availableCreditLimitAmount, Double availableWithdrawalLimitAmount) {
+		updateBalances(accountId, availableCreditLimitAmount, availableWithdrawalLimitAmount, null, null);
+	}
 
-		if (availableWithdrawalLimitAmount != null) {
-			sql.append(creditLimitNotNull ? "," : "").append(" available_withdrawal_limit=available_withdrawal_limit + ? ");
-			params.add(availableWithdrawalLimitAmount);
-		}
+	/**
+	 * Soma os valores passados aos limites e aos saldos mantidos na conta, em um único update, e retorna a conta
+	 * com os limites já atualizados. Se todos os valores forem nulos, nada é escrito e retorna null.
+	 *
+	 * @param accountId                      identificador da conta
+	 * @param availableCreditLimitAmount     valor a ser somado ao limite de crédito
+	 * @param availableWithdrawalLimitAmount valor a ser somado ao limite de retirada
+	 * @param creditBalanceAmount            valor a ser somado ao saldo credor
+	 * @param debtBalanceAmount              valor a ser somado ao saldo devedor
+	 * @return AccountDTO
+	 */
+	public AccountDTO updateBalances(Integer accountId, Double availableCreditLimitAmount, Double availableWithdrawalLimitAmount,
+							   Double creditBalanceAmount, Double debtBalanceAmount) {
+		List<Object> params = new ArrayList<>();
+		StringBuilder sql = balancesUpdateSql(accountId, params, availableCreditLimitAmount, availableWithdrawalLimitAmount, creditBalanceAmount, debtBalanceAmount);
+		if (sql == null)
+			return null;
 
-		sql.append("WHERE account_id=?;");
-		params.add(accountId);
+		sql.append(" RETURNING *;");
 
         try {
-            jdbcTemplate.update(sql.toString(), params.toArray());
+            return jdbcTemplate.query(sql.toString(), params.toArray(), accountExtractor);
         } catch (Exception e) {
             throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
         }
+	}
 
-		return findAccount(accountId);
+	/**
+	 * Monta o update que soma os valores passados às colunas de saldo da conta, na ordem de BALANCE_COLUMNS.
+	 * Valores nulos são ignorados; se todos forem nulos, retorna null.
+	 *
+	 * @param accountId identificador da conta
+	 * @param params    lista que receberá os parâmetros do update
+	 * @param amounts   valores a serem somados a cada coluna
+	 * @return StringBuilder
+	 */
+	private StringBuilder balancesUpdateSql(Integer accountId, List<Object> params, Double... amounts) {
+		StringBuilder sql = new StringBuilder();
+
+		sql.append("UPDATE public.accounts ").append("SET ");
+
+		boolean hasColumn = false;
+		for (int i = 0; i < amounts.length; i++) {
+			if (amounts[i] == null)
+				continue;
+
+			String column = BALANCE_COLUMNS[i];
+			sql.append(hasColumn ? ", " : "").append(column).append("=").append(column).append(" + ? ");
+			params.add(amounts[i]);
+			hasColumn = true;
+		}
+
+		if (!hasColumn)
+			return null;
+
+		sql.append("WHERE account_id=?");
+		params.add(accountId);
+
+		return sql;
+	}
+
+	/**
+	 * Busca o saldo credor mantido na conta.
+	 *
+	 * @param accountId identificador da conta
+	 * @return Double
+	 */
+	public Double findCreditBalance(Integer accountId) {
+		String sql = "SELECT credit_balance FROM " + accountsTable() + " WHERE account_id=?";
+
+		try {
+			List<Double> balances = jdbcTemplate.queryForList(sql, new Object[]{accountId}, Double.class);
+			return balances.isEmpty() ? null : balances.get(0);
+		} catch (Exception e) {
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		}
 	}
 
 	/**
-	 * Insere uma conta na base de dados.
+	 * Insere uma conta na base de dados e retorna a linha persistida.
 	 *
-	 * @return
+	 * @return AccountDTO
 	 */
 	public AccountDTO insertAccount(Double availableCreditLimit, Double availableWithdrawalLimit) {
-		Integer accountId;
-		String sql = "INSERT INTO public.accounts(account_id, available_credit_limit, available_withdrawal_limit) VALUES (?, ?, ?);";
+		String sql = "INSERT INTO public.accounts(account_id, available_credit_limit, available_withdrawal_limit) VALUES (?, ?, ?) RETURNING *;";
 
         try {
-            accountId = getNextAccountId();
-            jdbcTemplate.update(sql, new Object[]{accountId, availableCreditLimit, availableWithdrawalLimit});
+            Integer accountId = getNextAccountId();
+            return jdbcTemplate.query(sql, new Object[]{accountId, availableCreditLimit, availableWithdrawalLimit}, accountExtractor);
         } catch (Exception e) {
             throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
         }
+	}
+
+	/**
+	 * Insere as contas na base de dados em comandos em lote de payment-routine.account-batch.chunk-size contas. Os
+	 * identificadores de todas as contas são reservados de uma só vez e atribuídos às contas passadas, na ordem da lista.
+	 *
+	 * @param accounts contas com os limites que serão persistidos
+	 * @return List<AccountDTO>
+	 */
+	public List<AccountDTO> insertAccounts(List<AccountDTO> accounts) {
+		String sql = "INSERT INTO public.accounts(account_id, available_credit_limit, available_withdrawal_limit) VALUES (?, ?, ?);";
+
+		try {
+			int[] accountIds = accountIdAllocator.nextIds(accounts.size());
+			for (int i = 0; i < accounts.size(); i++) {
+				accounts.get(i).setAccountId(accountIds[i]);
+			}
+
+			batchUpdate(sql, accounts, (statement, account) -> {
+				statement.setInt(1, account.getAccountId());
+				statement.setDouble(2, account.getAvailableCreditLimit().getAmount());
+				statement.setDouble(3, account.getAvailableWithdrawalLimit().getAmount());
+			});
+		} catch (Exception e) {
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		}
+
+		return accounts;
+	}
+
+	/**
+	 * Soma os limites de cada conta passada aos limites de crédito e saque da conta de mesmo identificador, em
+	 * comandos em lote de payment-routine.account-batch.chunk-size contas. Limites nulos não alteram a coluna.
+	 *
+	 * @param accounts valores a serem somados aos limites de cada conta
+	 */
+	public void updateAccounts(List<AccountDTO> accounts) {
+		String sql = "UPDATE public.accounts SET available_credit_limit = available_credit_limit + ?, " +
+				"available_withdrawal_limit = available_withdrawal_limit + ? WHERE account_id=?;";
+
+		try {
+			batchUpdate(sql, accounts, (statement, account) -> {
+				statement.setDouble(1, amountOrZero(account.getAvailableCreditLimit()));
+				statement.setDouble(2, amountOrZero(account.getAvailableWithdrawalLimit()));
+				statement.setInt(3, account.getAccountId());
+			});
+		} catch (Exception e) {
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		}
+	}
 
-		return findAccount(accountId);
+	/**
+	 * Executa o comando em lote para os itens passados, em lotes de payment-routine.account-batch.chunk-size itens.
+	 *
+	 * @param sql    comando executado para cada item
+	 * @param items  itens do lote
+	 * @param setter preenche os parâmetros do comando de cada item
+	 */
+	protected <T> void batchUpdate(String sql, List<T> items, ParameterizedPreparedStatementSetter<T> setter) {
+		for (int from = 0; from < items.size(); from += batchChunkSize) {
+			List<T> chunk = items.subList(from, Math.min(from + batchChunkSize, items.size()));
+			jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+				@Override
+				public void setValues(PreparedStatement statement, int i) throws SQLException {
+					setter.setValues(statement, chunk.get(i));
+				}
+
+				@Override
+				public int getBatchSize() {
+					return chunk.size();
+				}
+			});
+		}
+	}
+
+	protected static double amountOrZero(AvailableLimitDTO limit) {
+		return limit != null && limit.getAmount() != null ? limit.getAmount() : 0.00;
+	}
+
+	/**
+	 * Tabela (ou visão) de onde são lidos os limites e saldos das contas.
+	 *
+	 * @return String
+	 */
+	protected String accountsTable() {
+		return "public.accounts";
 	}
 
 	/**
@@ -147,6 +380,6 @@ public class AccountRepository {
 	 * @return Integer
 	 */
 	private Integer getNextAccountId() {
-		return jdbcTemplate.queryForObject("SELECT NEXTVAL('public.accounts_seq');", Integer.class);
+		return accountIdAllocator.nextId();
 	}
 }
@@ -0,0 +1,92 @@
+package com.teste.rotinapagamento.repository;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.teste.rotinapagamento.dto.TransactionDTO;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+
+/**
+ * Ordem de cobrança (charge_order) de cada tipo de operação, lida da tabela operations_types e mantida em memória, para
+ * que as transações em aberto sejam ordenadas sem juntar a tabela operations_types a cada pagamento. Os comparadores
+ * trabalham sobre as ordens já em memória e nunca consultam a base de dados durante a ordenação.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Component
+public class ChargeOrders {
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private volatile Map<Integer, Integer> orders = Collections.emptyMap();
+
+	/**
+	 * Comparador na ordem de cobrança com as ordens mantidas em memória neste momento. As ordens são fixadas na criação,
+	 * então o comparador pode ordenar um TreeSet de longa duração mesmo que a tabela seja relida depois.
+	 *
+	 * @return Comparator<TransactionDTO>
+	 */
+	public Comparator<TransactionDTO> comparator() {
+		return comparator(orders);
+	}
+
+	/**
+	 * Comparador na ordem de cobrança para as transações passadas. Se alguma delas tiver um tipo de operação ainda
+	 * desconhecido, a tabela é relida uma única vez, antes da ordenação.
+	 *
+	 * @param transactions transações a serem ordenadas
+	 * @return Comparator<TransactionDTO>
+	 */
+	public Comparator<TransactionDTO> comparator(Collection<TransactionDTO> transactions) {
+		Map<Integer, Integer> current = orders;
+		for (TransactionDTO transaction : transactions) {
+			if (!current.containsKey(transaction.getOperationTypeId())) {
+				current = load();
+				break;
+			}
+		}
+
+		return comparator(current);
+	}
+
+	/**
+	 * Lê a ordem de cobrança de todos os tipos de operação da tabela operations_types.
+	 *
+	 * @return Map<Integer, Integer> ordem de cobrança indexada pelo identificador do tipo de operação
+	 */
+	public synchronized Map<Integer, Integer> load() {
+		Map<Integer, Integer> loaded = new HashMap<>();
+		jdbcTemplate.query("SELECT operation_type_id, charge_order FROM public.operations_types",
+				(RowCallbackHandler) resultSet -> loaded.put(resultSet.getInt("operation_type_id"), resultSet.getInt("charge_order")));
+		orders = loaded;
+		return loaded;
+	}
+
+	/**
+	 * Substitui as ordens de cobrança mantidas em memória.
+	 *
+	 * @param orders ordem de cobrança indexada pelo identificador do tipo de operação
+	 */
+	public void set(Map<Integer, Integer> orders) {
+		this.orders = new HashMap<>(orders);
+	}
+
+	/**
+	 * Ordem de cobrança das transações em aberto: ordem de cobrança do tipo de operação (0 quando o tipo não existe),
+	 * data do evento e identificador.
+	 */
+	private static Comparator<TransactionDTO> comparator(Map<Integer, Integer> orders) {
+		return Comparator.<TransactionDTO>comparingInt(transaction -> orders.getOrDefault(transaction.getOperationTypeId(), 0))
+				.thenComparingLong(TransactionDTO::getEventDate)
+				.thenComparingInt(TransactionDTO::getTransactionId);
+	}
+}
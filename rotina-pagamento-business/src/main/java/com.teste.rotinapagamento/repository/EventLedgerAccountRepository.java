@@ -0,0 +1,54 @@
+package com.teste.rotinapagamento.repository;
+
+import java.util.List;
+
+import com.teste.rotinapagamento.dto.AccountDTO;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+/**
+ * AccountRepository usado quando payment-routine.ledger.mode = events: as alterações de limites e saldos são
+ * gravadas como lançamentos na tabela ledger_entries e as contas são lidas da visão ledger_accounts, que soma à
+ * última consolidação os lançamentos feitos depois dela (ver LedgerEntryRepository).
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Primary
+@Repository
+@ConditionalOnProperty(name = "payment-routine.ledger.mode", havingValue = "events")
+public class EventLedgerAccountRepository extends AccountRepository {
+
+	@Autowired
+	private LedgerEntryRepository ledgerEntryRepository;
+
+	@Override
+	protected String accountsTable() {
+		return "public.ledger_accounts";
+	}
+
+	@Override
+	public AccountDTO updateAccount(Integer accountId, Double availableCreditLimitAmount, Double availableWithdrawalLimitAmount) {
+		if (availableCreditLimitAmount == null && availableWithdrawalLimitAmount == null)
+			return findAccount(accountId);
+
+		return ledgerEntryRepository.appendAccountEntry(accountId, availableCreditLimitAmount, availableWithdrawalLimitAmount, null, null);
+	}
+
+	@Override
+	public AccountDTO updateBalances(Integer accountId, Double availableCreditLimitAmount, Double availableWithdrawalLimitAmount,
+									 Double creditBalanceAmount, Double debtBalanceAmount) {
+		if (availableCreditLimitAmount == null && availableWithdrawalLimitAmount == null && creditBalanceAmount == null && debtBalanceAmount == null)
+			return null;
+
+		return ledgerEntryRepository.appendAccountEntry(accountId, availableCreditLimitAmount, availableWithdrawalLimitAmount, creditBalanceAmount, debtBalanceAmount);
+	}
+
+	@Override
+	public void updateAccounts(List<AccountDTO> accounts) {
+		ledgerEntryRepository.appendAccountEntries(accounts);
+	}
+}
@@ -0,0 +1,52 @@
+package com.teste.rotinapagamento.repository;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * TransactionRepository usado quando payment-routine.ledger.mode = events: as alterações de balanço das transações
+ * são gravadas como lançamentos na tabela ledger_entries e as transações são lidas da visão ledger_transactions (e o
+ * histórico, da visão ledger_transactions_history).
+ * A inserção de transações não muda.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Primary
+@Repository
+@ConditionalOnProperty(name = "payment-routine.ledger.mode", havingValue = "events")
+public class EventLedgerTransactionRepository extends TransactionRepository {
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Override
+    protected String transactionsTable() {
+        return "public.ledger_transactions";
+    }
+
+    @Override
+    protected String transactionsHistoryTable() {
+        return "public.ledger_transactions_history";
+    }
+
+    @Override
+    public void updateBalanceByTransaction(Integer accountId, Integer transactionId, Double balance) {
+        updateBalanceByTransactions(accountId, Collections.singletonMap(transactionId, balance));
+    }
+
+    @Override
+    public void updateBalanceByTransactions(Integer accountId, Map<Integer, Double> balances) {
+        ledgerEntryRepository.appendTransactionEntries(accountId, balances);
+    }
+
+    @Override
+    public void downCreditBalance(Integer accountId, Double amount) {
+        ledgerEntryRepository.appendCreditBalanceEntry(accountId, amount);
+    }
+}
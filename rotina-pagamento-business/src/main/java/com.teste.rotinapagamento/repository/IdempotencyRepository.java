@@ -0,0 +1,127 @@
+package com.teste.rotinapagamento.repository;
+
+import com.teste.rotinapagamento.auxiliar.IdempotencyKey;
+import com.teste.rotinapagamento.auxiliar.SourceMessage;
+import com.teste.rotinapagamento.dto.IdempotentResponseDTO;
+import com.teste.rotinapagamento.exception.ResourceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.List;
+
+/**
+ * Respostas gravadas das requisições feitas com o cabeçalho Idempotency-Key (tabela idempotency_keys).
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Repository
+public class IdempotencyRepository {
+
+    @Autowired
+    private SourceMessage sourceMessage;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private final RowMapper<IdempotentResponseDTO> responseRowMapper = new RowMapper<IdempotentResponseDTO>() {
+        @Override
+        public IdempotentResponseDTO mapRow(ResultSet resultSet, int rownumber) throws SQLException {
+            IdempotentResponseDTO response = new IdempotentResponseDTO();
+            response.setFingerprint(resultSet.getString("fingerprint"));
+            response.setHttpStatus(resultSet.getInt("http_status"));
+            response.setResponse(resultSet.getString("response"));
+            response.setCreatedAt(resultSet.getTimestamp("created_at").getTime());
+
+            return response;
+        }
+    };
+
+    /**
+     * Busca a resposta gravada para a chave, desconsiderando as gravadas antes de expiredBefore.
+     *
+     * @param key           chave de idempotência
+     * @param expiredBefore data a partir da qual as respostas gravadas ainda são válidas
+     * @return IdempotentResponseDTO
+     */
+    public IdempotentResponseDTO findResponse(IdempotencyKey key, Timestamp expiredBefore) {
+        String sql = "SELECT * FROM public.idempotency_keys WHERE scope=? AND idempotency_key=? AND created_at >= ?;";
+
+        try {
+            List<IdempotentResponseDTO> responses = jdbcTemplate.query(sql, new Object[]{key.getScope(), key.getKey(), expiredBefore}, responseRowMapper);
+            return responses.isEmpty() ? null : responses.get(0);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Reserva a chave para a requisição corrente, substituindo uma resposta já expirada. Retorna false quando a chave
+     * já tem uma resposta válida; como a linha fica bloqueada até o commit de quem a reservou, uma requisição
+     * concorrente com a mesma chave aguarda o término da primeira e então recebe false.
+     *
+     * @param key           chave de idempotência
+     * @param httpStatus    status HTTP da resposta da requisição
+     * @param expiredBefore data antes da qual uma resposta gravada pode ser substituída
+     * @return boolean
+     */
+    public boolean insertKey(IdempotencyKey key, Integer httpStatus, Timestamp expiredBefore) {
+        String sql = "INSERT INTO public.idempotency_keys(scope, idempotency_key, fingerprint, http_status, response, created_at) " +
+                "VALUES (?, ?, ?, ?, NULL, CURRENT_TIMESTAMP) " +
+                "ON CONFLICT (scope, idempotency_key) DO UPDATE SET fingerprint=EXCLUDED.fingerprint, http_status=EXCLUDED.http_status, " +
+                "response=NULL, created_at=EXCLUDED.created_at WHERE idempotency_keys.created_at < ?;";
+
+        try {
+            return jdbcTemplate.update(sql, key.getScope(), key.getKey(), key.getFingerprint(), httpStatus, expiredBefore) > 0;
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Grava a resposta da chave reservada pela requisição corrente.
+     *
+     * @param key      chave de idempotência
+     * @param response resposta da requisição, em JSON
+     */
+    public void updateResponse(IdempotencyKey key, String response) {
+        try {
+            jdbcTemplate.update("UPDATE public.idempotency_keys SET response=? WHERE scope=? AND idempotency_key=?;", response, key.getScope(), key.getKey());
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Libera a chave reservada pela requisição corrente enquanto ela ainda não tem resposta gravada.
+     *
+     * @param key chave de idempotência
+     */
+    public void deleteKey(IdempotencyKey key) {
+        try {
+            jdbcTemplate.update("DELETE FROM public.idempotency_keys WHERE scope=? AND idempotency_key=? AND response IS NULL;", key.getScope(), key.getKey());
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Remove as respostas gravadas antes de expiredBefore.
+     *
+     * @param expiredBefore data antes da qual as respostas gravadas são removidas
+     * @return int
+     */
+    public int deleteExpiredResponses(Timestamp expiredBefore) {
+        try {
+            return jdbcTemplate.update("DELETE FROM public.idempotency_keys WHERE created_at < ?;", expiredBefore);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+}
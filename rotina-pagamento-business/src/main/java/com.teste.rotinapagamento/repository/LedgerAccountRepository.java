@@ -0,0 +1,101 @@
+package com.teste.rotinapagamento.repository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.teste.rotinapagamento.dto.AccountDTO;
+import com.teste.rotinapagamento.dto.AvailableLimitDTO;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+/**
+ * AccountRepository usado quando payment-routine.ledger.mode = memory: limites e saldos são lidos e alterados no
+ * livro-razão em memória e as escritas chegam à base de dados pelo LedgerWriter. O cadastro de contas continua
+ * sendo gravado de imediato, pois o identificador da conta é gerado na base de dados.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Primary
+@Repository
+@ConditionalOnProperty(name = "payment-routine.ledger.mode", havingValue = "memory")
+public class LedgerAccountRepository extends AccountRepository {
+
+	@Autowired
+	private AccountLedger accountLedger;
+
+	@Override
+	public AccountDTO findAccount(Integer accountId) {
+		return accountLedger.findAccount(accountId);
+	}
+
+	@Override
+	public Map<Integer, AccountDTO> findAccounts(Collection<Integer> accountIds) {
+		Map<Integer, AccountDTO> accounts = new HashMap<>();
+		for (Integer accountId : accountIds) {
+			AccountDTO account = accountLedger.findAccount(accountId);
+			if (account != null)
+				accounts.put(accountId, account);
+		}
+
+		return accounts;
+	}
+
+	@Override
+	public Double findCreditBalance(Integer accountId) {
+		return accountLedger.findCreditBalance(accountId);
+	}
+
+	@Override
+	public AccountDTO updateAccount(Integer accountId, Double availableCreditLimitAmount, Double availableWithdrawalLimitAmount) {
+		if (availableCreditLimitAmount == null && availableWithdrawalLimitAmount == null)
+			return findAccount(accountId);
+
+		return updateBalances(accountId, availableCreditLimitAmount, availableWithdrawalLimitAmount, null, null);
+	}
+
+	@Override
+	public AccountDTO updateBalances(Integer accountId, Double availableCreditLimitAmount, Double availableWithdrawalLimitAmount,
+									 Double creditBalanceAmount, Double debtBalanceAmount) {
+		if (availableCreditLimitAmount == null && availableWithdrawalLimitAmount == null && creditBalanceAmount == null && debtBalanceAmount == null)
+			return null;
+
+		return accountLedger.addBalances(accountId, availableCreditLimitAmount, availableWithdrawalLimitAmount, creditBalanceAmount, debtBalanceAmount,
+				() -> super.updateBalances(accountId, availableCreditLimitAmount, availableWithdrawalLimitAmount, creditBalanceAmount, debtBalanceAmount));
+	}
+
+	@Override
+	public AccountDTO insertAccount(Double availableCreditLimit, Double availableWithdrawalLimit) {
+		AccountDTO account = super.insertAccount(availableCreditLimit, availableWithdrawalLimit);
+		if (account != null)
+			accountLedger.registerAccount(account);
+
+		return account;
+	}
+
+	@Override
+	public List<AccountDTO> insertAccounts(List<AccountDTO> accounts) {
+		List<AccountDTO> inserted = super.insertAccounts(accounts);
+		for (AccountDTO account : inserted) {
+			accountLedger.registerAccount(account);
+		}
+
+		return inserted;
+	}
+
+	@Override
+	public void updateAccounts(List<AccountDTO> accounts) {
+		for (AccountDTO account : accounts) {
+			updateAccount(account.getAccountId(), amountOrNull(account.getAvailableCreditLimit()), amountOrNull(account.getAvailableWithdrawalLimit()));
+		}
+	}
+
+	private static Double amountOrNull(AvailableLimitDTO limit) {
+		return limit != null ? limit.getAmount() : null;
+	}
+}
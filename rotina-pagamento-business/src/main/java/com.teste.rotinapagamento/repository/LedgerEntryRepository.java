@@ -0,0 +1,208 @@
+package com.teste.rotinapagamento.repository;
+
+import com.teste.rotinapagamento.auxiliar.OperationType;
+import com.teste.rotinapagamento.auxiliar.SourceMessage;
+import com.teste.rotinapagamento.dto.AccountDTO;
+import com.teste.rotinapagamento.dto.AvailableLimitDTO;
+import com.teste.rotinapagamento.exception.ResourceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lançamentos do livro-razão por eventos (tabela ledger_entries). Cada alteração dos limites e saldos de uma conta,
+ * ou do balanço de uma transação, é gravada como um novo lançamento, sem alterar as linhas de accounts e
+ * transactions. Os valores correntes são os das linhas acrescidos dos lançamentos ainda não consolidados (visões
+ * ledger_accounts e ledger_transactions); a consolidação (snapshot) soma os lançamentos às linhas e os marca como
+ * consolidados.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Repository
+public class LedgerEntryRepository {
+
+    @Autowired
+    private SourceMessage sourceMessage;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Grava um lançamento com os valores a serem somados aos limites e saldos da conta e retorna a conta com os
+     * limites já atualizados.
+     *
+     * @param accountId                      identificador da conta
+     * @param availableCreditLimitAmount     valor a ser somado ao limite de crédito
+     * @param availableWithdrawalLimitAmount valor a ser somado ao limite de retirada
+     * @param creditBalanceAmount            valor a ser somado ao saldo credor
+     * @param debtBalanceAmount              valor a ser somado ao saldo devedor
+     * @return AccountDTO
+     */
+    public AccountDTO appendAccountEntry(Integer accountId, Double availableCreditLimitAmount, Double availableWithdrawalLimitAmount,
+                                        Double creditBalanceAmount, Double debtBalanceAmount) {
+        // A consulta principal não enxerga o lançamento inserido no WITH, por isso os valores dele são somados à visão.
+        StringBuilder sql = new StringBuilder();
+        sql.append("WITH entry AS ( ")
+                .append("  INSERT INTO public.ledger_entries(account_id, available_credit_limit, available_withdrawal_limit, credit_balance, debt_balance, created_at) ")
+                .append("  VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP) ")
+                .append("  RETURNING account_id, available_credit_limit, available_withdrawal_limit ")
+                .append(") ")
+                .append("SELECT a.account_id, ")
+                .append("  a.available_credit_limit + e.available_credit_limit AS available_credit_limit, ")
+                .append("  a.available_withdrawal_limit + e.available_withdrawal_limit AS available_withdrawal_limit ")
+                .append("FROM public.ledger_accounts a JOIN entry e ON (e.account_id = a.account_id);");
+
+        try {
+            List<AccountDTO> accounts = jdbcTemplate.query(sql.toString(), new Object[]{accountId, valueOrZero(availableCreditLimitAmount),
+                    valueOrZero(availableWithdrawalLimitAmount), valueOrZero(creditBalanceAmount), valueOrZero(debtBalanceAmount)}, (resultSet, i) -> {
+                AccountDTO account = new AccountDTO();
+                account.setAccountId(resultSet.getInt("account_id"));
+                account.setAvailableCreditLimit(new AvailableLimitDTO(resultSet.getDouble("available_credit_limit")));
+                account.setAvailableWithdrawalLimit(new AvailableLimitDTO(resultSet.getDouble("available_withdrawal_limit")));
+
+                return account;
+            });
+
+            return accounts.isEmpty() ? null : accounts.get(0);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Grava em lote um lançamento por conta com os valores a serem somados aos seus limites de crédito e saque.
+     *
+     * @param accounts valores a serem somados aos limites de cada conta
+     */
+    public void appendAccountEntries(List<AccountDTO> accounts) {
+        String sql = "INSERT INTO public.ledger_entries(account_id, available_credit_limit, available_withdrawal_limit, credit_balance, debt_balance, created_at) " +
+                "VALUES (?, ?, ?, 0, 0, CURRENT_TIMESTAMP);";
+
+        List<Object[]> params = new ArrayList<>();
+        for (AccountDTO account : accounts) {
+            params.add(new Object[]{account.getAccountId(), amountOrZero(account.getAvailableCreditLimit()), amountOrZero(account.getAvailableWithdrawalLimit())});
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(sql, params);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Grava em lote um lançamento por transação da conta com o valor a ser somado ao seu balanço.
+     *
+     * @param accountId identificador da conta associada às transações
+     * @param balances  valor a ser somado ao balanço, indexado pelo identificador da transação
+     */
+    public void appendTransactionEntries(Integer accountId, Map<Integer, Double> balances) {
+        String sql = "INSERT INTO public.ledger_entries(account_id, transaction_id, balance, created_at) " +
+                "SELECT t.account_id, t.transaction_id, ?, CURRENT_TIMESTAMP FROM public.transactions t WHERE t.transaction_id=? AND t.account_id=?;";
+
+        List<Object[]> params = new ArrayList<>();
+        for (Map.Entry<Integer, Double> balance : balances.entrySet()) {
+            params.add(new Object[]{balance.getValue(), balance.getKey(), accountId});
+        }
+
+        try {
+            jdbcTemplate.batchUpdate(sql, params);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Grava os lançamentos que abatem o valor passado dos pagamentos que guardam o saldo credor da conta, do mais
+     * antigo para o mais novo, sem deixar nenhum deles com balanço negativo.
+     *
+     * @param accountId identificador da conta
+     * @param amount    valor a ser abatido do saldo credor
+     */
+    public void appendCreditBalanceEntry(Integer accountId, Double amount) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("INSERT INTO public.ledger_entries(account_id, transaction_id, balance, created_at) ")
+                .append("SELECT c.account_id, c.transaction_id, -LEAST(c.balance, ? - c.consumed), CURRENT_TIMESTAMP FROM ( ")
+                .append("  SELECT t.account_id, t.transaction_id, t.balance, ")
+                .append("         SUM(t.balance) OVER (ORDER BY t.transaction_id) - t.balance AS consumed ")
+                .append("  FROM public.ledger_transactions t ")
+                .append("  WHERE t.account_id=? AND t.operation_type_id=? AND t.balance > 0 ")
+                .append(") c ")
+                .append("WHERE c.consumed < ?;");
+
+        try {
+            jdbcTemplate.update(sql.toString(), amount, accountId, OperationType.PAGAMENTO.getId(), amount);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Busca as contas com pelo menos minEntries lançamentos ainda não consolidados.
+     *
+     * @param minEntries quantidade mínima de lançamentos não consolidados
+     * @return List<Integer>
+     */
+    public List<Integer> findAccountsToSnapshot(int minEntries) {
+        String sql = "SELECT account_id FROM public.ledger_entries WHERE snapshot_at IS NULL GROUP BY account_id HAVING COUNT(*) >= ?;";
+
+        try {
+            return jdbcTemplate.queryForList(sql, new Object[]{minEntries}, Integer.class);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Consolida os lançamentos da conta: soma-os aos limites e saldos da conta e aos balanços das suas transações e
+     * os marca como consolidados, em um único comando. Lançamentos de transações ainda não confirmadas não são
+     * vistos pelo comando e ficam para a próxima consolidação; os valores lidos nas visões não mudam.
+     *
+     * @param accountId identificador da conta
+     * @return int quantidade de lançamentos consolidados
+     */
+    public int snapshot(Integer accountId) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("WITH entries AS ( ")
+                .append("  UPDATE public.ledger_entries SET snapshot_at = CURRENT_TIMESTAMP ")
+                .append("  WHERE account_id=? AND snapshot_at IS NULL ")
+                .append("  RETURNING transaction_id, available_credit_limit, available_withdrawal_limit, credit_balance, debt_balance, balance ")
+                .append("), transactions_snapshot AS ( ")
+                .append("  UPDATE public.transactions t SET balance = t.balance + e.balance ")
+                .append("  FROM (SELECT transaction_id, SUM(balance) AS balance FROM entries WHERE transaction_id IS NOT NULL GROUP BY transaction_id) e ")
+                .append("  WHERE t.transaction_id = e.transaction_id AND t.account_id=? ")
+                .append("), account_snapshot AS ( ")
+                .append("  UPDATE public.accounts a SET ")
+                .append("    available_credit_limit = a.available_credit_limit + e.available_credit_limit, ")
+                .append("    available_withdrawal_limit = a.available_withdrawal_limit + e.available_withdrawal_limit, ")
+                .append("    credit_balance = a.credit_balance + e.credit_balance, ")
+                .append("    debt_balance = a.debt_balance + e.debt_balance ")
+                .append("  FROM (SELECT COUNT(*) AS entries, COALESCE(SUM(available_credit_limit), 0) AS available_credit_limit, ")
+                .append("          COALESCE(SUM(available_withdrawal_limit), 0) AS available_withdrawal_limit, ")
+                .append("          COALESCE(SUM(credit_balance), 0) AS credit_balance, COALESCE(SUM(debt_balance), 0) AS debt_balance ")
+                .append("        FROM entries WHERE transaction_id IS NULL) e ")
+                .append("  WHERE a.account_id=? AND e.entries > 0 ")
+                .append(") ")
+                .append("SELECT COUNT(*) FROM entries;");
+
+        try {
+            return jdbcTemplate.queryForObject(sql.toString(), new Object[]{accountId, accountId, accountId}, Integer.class);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    private static double valueOrZero(Double value) {
+        return value != null ? value : 0.00;
+    }
+
+    private static double amountOrZero(AvailableLimitDTO limit) {
+        return limit != null ? valueOrZero(limit.getAmount()) : 0.00;
+    }
+}
@@ -0,0 +1,130 @@
+package com.teste.rotinapagamento.repository;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Consolida periodicamente os lançamentos do livro-razão por eventos. A cada
+ * payment-routine.ledger.snapshot-interval-seconds, as contas com pelo menos payment-routine.ledger.snapshot-min-entries
+ * lançamentos não consolidados têm os lançamentos somados às suas linhas, o que limita a quantidade de lançamentos
+ * lidos pelas visões ledger_accounts e ledger_transactions.
+ *
+ * Na subida da aplicação, em qualquer modo, todos os lançamentos pendentes são consolidados (ver snapshotAll), para
+ * que os modos database e memory, que leem apenas as linhas, encontrem os valores gravados no modo events.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Component
+@ManagedResource(objectName = "com.teste.rotinapagamento:type=LedgerSnapshotter")
+public class LedgerSnapshotter {
+
+	private static final Logger log = LoggerFactory.getLogger(LedgerSnapshotter.class);
+
+	@Autowired
+	private LedgerEntryRepository ledgerEntryRepository;
+
+	@Value("${payment-routine.ledger.mode:database}")
+	private String ledgerMode;
+
+	@Value("${payment-routine.ledger.snapshot-interval-seconds:30}")
+	private long intervalSeconds;
+
+	@Value("${payment-routine.ledger.snapshot-min-entries:20}")
+	private int minEntries;
+
+	private final LongAdder snapshots = new LongAdder();
+
+	private final LongAdder entries = new LongAdder();
+
+	private ScheduledExecutorService scheduler;
+
+	@PostConstruct
+	public void init() {
+		if (!"events".equals(ledgerMode))
+			return;
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ledger-snapshot");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::snapshotPending, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (scheduler != null)
+			scheduler.shutdownNow();
+	}
+
+	/**
+	 * Consolida os lançamentos das contas que atingiram payment-routine.ledger.snapshot-min-entries lançamentos
+	 * não consolidados.
+	 */
+	public void snapshotPending() {
+		snapshot(minEntries);
+	}
+
+	/**
+	 * Consolida todos os lançamentos pendentes, de todas as contas.
+	 *
+	 * @return int quantidade de lançamentos consolidados
+	 */
+	@ManagedOperation(description = "Consolida todos os lançamentos pendentes do livro-razão por eventos")
+	public int snapshotAll() {
+		return snapshot(1);
+	}
+
+	@ManagedAttribute(description = "Consolidações de contas realizadas")
+	public long getSnapshots() {
+		return snapshots.sum();
+	}
+
+	@ManagedAttribute(description = "Lançamentos consolidados")
+	public long getEntries() {
+		return entries.sum();
+	}
+
+	int snapshot(int minEntries) {
+		List<Integer> accountIds;
+		try {
+			accountIds = ledgerEntryRepository.findAccountsToSnapshot(minEntries);
+		} catch (RuntimeException e) {
+			log.warn("Não foi possível buscar as contas com lançamentos a consolidar.", e);
+			return 0;
+		}
+
+		int total = 0;
+		for (Integer accountId : accountIds) {
+			try {
+				int consolidated = ledgerEntryRepository.snapshot(accountId);
+				snapshots.increment();
+				entries.add(consolidated);
+				total += consolidated;
+			} catch (RuntimeException e) {
+				log.warn("Não foi possível consolidar os lançamentos da conta {}.", accountId, e);
+			}
+		}
+
+		if (total > 0)
+			log.debug("{} lançamentos de {} contas consolidados.", total, accountIds.size());
+
+		return total;
+	}
+}
@@ -0,0 +1,67 @@
+package com.teste.rotinapagamento.repository;
+
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * TransactionRepository usado quando payment-routine.ledger.mode = memory: as transações em aberto são lidas e
+ * alteradas no livro-razão em memória e as escritas chegam à base de dados pelo LedgerWriter. As consultas de
+ * transações continuam sendo feitas na base de dados e podem não refletir as últimas escritas.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Primary
+@Repository
+@ConditionalOnProperty(name = "payment-routine.ledger.mode", havingValue = "memory")
+public class LedgerTransactionRepository extends TransactionRepository {
+
+    @Autowired
+    private AccountLedger accountLedger;
+
+    @Override
+    public List<TransactionDTO> findTransactionsToDownPayment(Integer accountId) {
+        return accountLedger.findOpenTransactions(accountId);
+    }
+
+    @Override
+    public TransactionDTO insertTransaction(Integer accountId, Integer operationTypeId, Double amount, Double balance, Date dueDate) {
+        TransactionDTO transaction = new TransactionDTO();
+        transaction.setTransactionId(getNextTransactionId());
+        transaction.setAccountId(accountId);
+        transaction.setOperationTypeId(operationTypeId);
+        transaction.setAmount(amount);
+        transaction.setBalance(balance);
+        transaction.setEventDate(System.currentTimeMillis());
+        transaction.setDueDate(dueDate != null ? dueDate.getTime() : null);
+
+        accountLedger.addTransaction(transaction, () -> super.insertTransaction(transaction));
+        return transaction;
+    }
+
+    @Override
+    public void updateBalanceByTransaction(Integer accountId, Integer transactionId, Double balance) {
+        Map<Integer, Double> balances = new LinkedHashMap<>();
+        balances.put(transactionId, balance);
+        updateBalanceByTransactions(accountId, balances);
+    }
+
+    @Override
+    public void updateBalanceByTransactions(Integer accountId, Map<Integer, Double> balances) {
+        Map<Integer, Double> copy = new LinkedHashMap<>(balances);
+        accountLedger.addTransactionBalances(copy, () -> super.updateBalanceByTransactions(accountId, copy));
+    }
+
+    @Override
+    public void downCreditBalance(Integer accountId, Double amount) {
+        accountLedger.downCreditBalance(accountId, amount, () -> super.downCreditBalance(accountId, amount));
+    }
+}
@@ -0,0 +1,217 @@
+package com.teste.rotinapagamento.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Grava na base de dados, em segundo plano, as alterações confirmadas no livro-razão em memória. Uma única thread
+ * consome a fila, de forma que as alterações chegam à base de dados na ordem em que foram confirmadas; as
+ * alterações acumuladas na fila são gravadas juntas em uma transação. Em caso de erro, o lote é repetido, sem que
+ * as alterações seguintes o ultrapassem.
+ *
+ * A fila guarda no máximo payment-routine.ledger.queue-capacity lotes. Com a fila cheia, ou depois de
+ * payment-routine.ledger.max-write-attempts tentativas seguidas sem gravar um lote, a gravação deixa de aceitar
+ * alterações e o livro-razão passa a recusar as escritas com 503. Com a gravação interrompida, o lote que falhou só
+ * volta a ser tentado pela operação JMX resume, depois de corrigida a causa do erro.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Component
+@ConditionalOnProperty(name = "payment-routine.ledger.mode", havingValue = "memory")
+@ManagedResource(objectName = "com.teste.rotinapagamento:type=LedgerWriter")
+public class LedgerWriter {
+
+	private static final Logger log = LoggerFactory.getLogger(LedgerWriter.class);
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Value("${payment-routine.ledger.write-batch-size:500}")
+	private int batchSize;
+
+	@Value("${payment-routine.ledger.retry-millis:1000}")
+	private long retryMillis;
+
+	@Value("${payment-routine.ledger.shutdown-seconds:30}")
+	private long shutdownSeconds;
+
+	@Value("${payment-routine.ledger.max-write-attempts:10}")
+	private int maxWriteAttempts;
+
+	@Value("${payment-routine.ledger.queue-capacity:100000}")
+	private int queueCapacity;
+
+	private BlockingQueue<List<Runnable>> queue;
+
+	private final LongAdder written = new LongAdder();
+
+	private final LongAdder failures = new LongAdder();
+
+	private volatile boolean running;
+
+	private volatile boolean stopped;
+
+	private Thread thread;
+
+	@PostConstruct
+	public void start() {
+		queue = new LinkedBlockingQueue<>(queueCapacity);
+		running = true;
+		thread = new Thread(this::run, "ledger-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Encerra a gravação após esvaziar a fila, aguardando no máximo payment-routine.ledger.shutdown-seconds.
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		running = false;
+		thread.join(TimeUnit.SECONDS.toMillis(shutdownSeconds));
+
+		if (!queue.isEmpty())
+			log.error("Encerrando com {} lotes do livro-razão não gravados na base de dados.", queue.size());
+	}
+
+	/**
+	 * Enfileira as alterações de uma transação confirmada, que serão gravadas juntas e na ordem da lista. Com a fila
+	 * cheia, aguarda espaço enquanto a gravação não for interrompida.
+	 *
+	 * @param changes gravações das alterações na base de dados
+	 */
+	public void enqueue(List<Runnable> changes) {
+		try {
+			while (!queue.offer(changes, retryMillis, TimeUnit.MILLISECONDS)) {
+				if (stopped) {
+					log.error("Gravação do livro-razão interrompida com a fila cheia; {} alterações confirmadas não serão gravadas na base de dados.",
+							changes.size());
+					return;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			log.error("Enfileiramento interrompido; {} alterações confirmadas não serão gravadas na base de dados.", changes.size());
+		}
+	}
+
+	/**
+	 * Indica se a gravação aceita novas alterações: ela não foi interrompida e a fila ainda tem espaço.
+	 *
+	 * @return boolean
+	 */
+	public boolean isAccepting() {
+		return !stopped && queue.remainingCapacity() > 0;
+	}
+
+	/**
+	 * Retoma a gravação interrompida, repetindo o lote que falhou.
+	 */
+	@ManagedOperation(description = "Retoma a gravação interrompida, repetindo o lote que falhou")
+	public void resume() {
+		if (stopped)
+			log.info("Gravação do livro-razão retomada.");
+
+		stopped = false;
+	}
+
+	@ManagedAttribute(description = "Indica se a gravação foi interrompida após payment-routine.ledger.max-write-attempts falhas seguidas")
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	@ManagedAttribute(description = "Lotes confirmados aguardando gravação na base de dados")
+	public int getPending() {
+		return queue.size();
+	}
+
+	@ManagedAttribute(description = "Lotes gravados na base de dados")
+	public long getWritten() {
+		return written.sum();
+	}
+
+	@ManagedAttribute(description = "Tentativas de gravação que falharam")
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	private void run() {
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+		List<List<Runnable>> batch = new ArrayList<>();
+
+		while (running || !queue.isEmpty()) {
+			try {
+				List<Runnable> first = queue.poll(100, TimeUnit.MILLISECONDS);
+				if (first == null)
+					continue;
+
+				batch.add(first);
+				queue.drainTo(batch, batchSize - 1);
+				write(transactionTemplate, batch);
+				batch.clear();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			}
+		}
+	}
+
+	private void write(TransactionTemplate transactionTemplate, List<List<Runnable>> batch) throws InterruptedException {
+		int attempts = 0;
+		while (true) {
+			while (stopped) {
+				if (!running) {
+					log.error("Encerrando com a gravação interrompida; {} lotes do livro-razão não gravados na base de dados.", batch.size());
+					return;
+				}
+
+				Thread.sleep(retryMillis);
+				attempts = 0;
+			}
+
+			try {
+				transactionTemplate.execute(status -> {
+					for (List<Runnable> changes : batch) {
+						for (Runnable change : changes) {
+							change.run();
+						}
+					}
+					return null;
+				});
+				written.add(batch.size());
+				return;
+			} catch (RuntimeException e) {
+				failures.increment();
+				if (++attempts >= maxWriteAttempts) {
+					stopped = true;
+					log.error("Gravação do livro-razão interrompida após {} tentativas sem gravar {} lotes; as escritas serão recusadas até a " +
+							"gravação ser retomada (operação JMX resume).", attempts, batch.size(), e);
+					continue;
+				}
+
+				log.error("Falha ao gravar {} lotes do livro-razão; nova tentativa em {} ms.", batch.size(), retryMillis, e);
+				Thread.sleep(retryMillis);
+			}
+		}
+	}
+}
@@ -0,0 +1,13 @@
+package com.teste.rotinapagamento.repository;
+
+/**
+ * Recebe cada abatimento calculado pela função allocate_payment da base de dados, na ordem de cobrança.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@FunctionalInterface
+public interface PaymentAllocationHandler {
+
+    void handle(int transactionId, int operationTypeId, double downValue, double paymentBalance);
+}
@@ -0,0 +1,161 @@
+package com.teste.rotinapagamento.repository;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import com.teste.rotinapagamento.auxiliar.QueryStatistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.CallableStatementCallback;
+import org.springframework.jdbc.core.CallableStatementCreator;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCallback;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.SqlProvider;
+import org.springframework.jdbc.core.StatementCallback;
+import org.springframework.stereotype.Component;
+
+/**
+ * JdbcTemplate que contabiliza, nas estatísticas da requisição corrente, cada comando executado, o tempo gasto
+ * nele e as linhas lidas ou alteradas. Quando não há requisição sendo contabilizada, comporta-se como o JdbcTemplate.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Component
+public class QueryCountingJdbcTemplate extends JdbcTemplate {
+
+    @Autowired
+    public QueryCountingJdbcTemplate(DataSource dataSource) {
+        super(dataSource);
+    }
+
+    @Override
+    public <T> T execute(StatementCallback<T> action) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return super.execute(action);
+        } finally {
+            recordStatement(action, start);
+        }
+    }
+
+    @Override
+    public <T> T execute(PreparedStatementCreator psc, PreparedStatementCallback<T> action) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return super.execute(psc, action);
+        } finally {
+            recordStatement(psc, start);
+        }
+    }
+
+    @Override
+    public <T> T execute(CallableStatementCreator csc, CallableStatementCallback<T> action) throws DataAccessException {
+        long start = System.nanoTime();
+        try {
+            return super.execute(csc, action);
+        } finally {
+            recordStatement(csc, start);
+        }
+    }
+
+    @Override
+    public <T> T query(String sql, ResultSetExtractor<T> rse) throws DataAccessException {
+        return super.query(sql, countingExtractor(rse));
+    }
+
+    @Override
+    public <T> T query(PreparedStatementCreator psc, PreparedStatementSetter pss, ResultSetExtractor<T> rse) throws DataAccessException {
+        return super.query(psc, pss, countingExtractor(rse));
+    }
+
+    @Override
+    public int update(String sql) throws DataAccessException {
+        return recordRows(super.update(sql));
+    }
+
+    @Override
+    protected int update(PreparedStatementCreator psc, PreparedStatementSetter pss) throws DataAccessException {
+        return recordRows(super.update(psc, pss));
+    }
+
+    @Override
+    public int[] batchUpdate(String... sql) throws DataAccessException {
+        return recordRows(super.batchUpdate(sql));
+    }
+
+    @Override
+    public int[] batchUpdate(String sql, BatchPreparedStatementSetter pss) throws DataAccessException {
+        return recordRows(super.batchUpdate(sql, pss));
+    }
+
+    private static void recordStatement(Object sqlProvider, long start) {
+        QueryStatistics statistics = QueryStatistics.current();
+        if (statistics == null)
+            return;
+
+        String sql = sqlProvider instanceof SqlProvider ? ((SqlProvider) sqlProvider).getSql() : null;
+        statistics.recordStatement(sql, System.nanoTime() - start);
+    }
+
+    private static int recordRows(int count) {
+        QueryStatistics statistics = QueryStatistics.current();
+        if (statistics != null)
+            statistics.recordRows(count);
+
+        return count;
+    }
+
+    private static int[] recordRows(int[] counts) {
+        QueryStatistics statistics = QueryStatistics.current();
+        if (statistics != null) {
+            for (int count : counts) {
+                statistics.recordRows(count);
+            }
+        }
+
+        return counts;
+    }
+
+    /**
+     * Envolve o extrator para contar as linhas percorridas no ResultSet, sem alterar a forma como elas são lidas.
+     *
+     * @param rse extrator original
+     * @return ResultSetExtractor<T>
+     */
+    private static <T> ResultSetExtractor<T> countingExtractor(ResultSetExtractor<T> rse) {
+        QueryStatistics statistics = QueryStatistics.current();
+        if (statistics == null)
+            return rse;
+
+        return resultSet -> {
+            LongAdder rows = new LongAdder();
+            ResultSet countingResultSet = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[]{ResultSet.class},
+                    (proxy, method, args) -> {
+                        try {
+                            Object result = method.invoke(resultSet, args);
+                            if ("next".equals(method.getName()) && Boolean.TRUE.equals(result))
+                                rows.increment();
+
+                            return result;
+                        } catch (InvocationTargetException e) {
+                            throw e.getCause();
+                        }
+                    });
+
+            try {
+                return rse.extractData(countingResultSet);
+            } finally {
+                statistics.recordRows(rows.sum());
+            }
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package com.teste.rotinapagamento.repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.BeansException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+/**
+ * Envolve o DataSource da aplicação em um ReplicaRoutingDataSource quando payment-routine.datasource.replicas lista
+ * réplicas de leitura. O pool da base primária continua sendo o configurado em spring.datasource; cada réplica recebe
+ * um pool próprio, com o mesmo usuário e senha, e o seu atraso de replicação é medido a cada
+ * payment-routine.datasource.replica-check-interval-millis.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Component
+@ManagedResource(objectName = "com.teste.rotinapagamento:type=ReplicaRoutingDataSource")
+public class ReplicaDataSourcePostProcessor implements BeanPostProcessor {
+
+	private static final Logger log = LoggerFactory.getLogger(ReplicaDataSourcePostProcessor.class);
+
+	@Value("${payment-routine.datasource.replicas:}")
+	private String replicaUrls;
+
+	@Value("${payment-routine.datasource.replica-max-lag-millis:1000}")
+	private long maxLagMillis;
+
+	@Value("${payment-routine.datasource.replica-check-interval-millis:1000}")
+	private long checkIntervalMillis;
+
+	@Value("${spring.datasource.driver-class-name:org.postgresql.Driver}")
+	private String driverClassName;
+
+	@Value("${spring.datasource.username:}")
+	private String username;
+
+	@Value("${spring.datasource.password:}")
+	private String password;
+
+	private final List<org.apache.tomcat.jdbc.pool.DataSource> pools = new ArrayList<>();
+
+	private ReplicaRoutingDataSource routingDataSource;
+
+	private ScheduledExecutorService scheduler;
+
+	@Override
+	public Object postProcessBeforeInitialization(Object bean, String beanName) throws BeansException {
+		return bean;
+	}
+
+	@Override
+	public Object postProcessAfterInitialization(Object bean, String beanName) throws BeansException {
+		if (!"dataSource".equals(beanName) || !(bean instanceof DataSource) || routingDataSource != null)
+			return bean;
+
+		String[] urls = StringUtils.tokenizeToStringArray(replicaUrls, ",");
+		if (urls.length == 0)
+			return bean;
+
+		List<DataSource> replicas = new ArrayList<>();
+		for (String url : urls) {
+			replicas.add(replicaPool(url));
+		}
+
+		routingDataSource = new ReplicaRoutingDataSource((DataSource) bean, replicas, maxLagMillis);
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "replica-lag-check");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(routingDataSource::checkReplicas, 0, checkIntervalMillis, TimeUnit.MILLISECONDS);
+
+		log.info("Leituras somente leitura distribuídas entre {} réplica(s).", replicas.size());
+		return new LazyConnectionDataSourceProxy(routingDataSource);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (scheduler != null)
+			scheduler.shutdownNow();
+
+		for (org.apache.tomcat.jdbc.pool.DataSource pool : pools) {
+			pool.close();
+		}
+	}
+
+	@ManagedAttribute(description = "Atraso de replicação de cada réplica, em milissegundos (vazio = réplica sem resposta)")
+	public String getReplicaLags() {
+		return routingDataSource != null ? StringUtils.arrayToCommaDelimitedString(routingDataSource.getLags()) : "";
+	}
+
+	@ManagedAttribute(description = "Réplicas disponíveis para leitura")
+	public int getAvailableReplicas() {
+		return routingDataSource != null ? routingDataSource.getAvailableReplicas() : 0;
+	}
+
+	@ManagedAttribute(description = "Conexões de transações somente leitura abertas nas réplicas")
+	public long getReplicaConnections() {
+		return routingDataSource != null ? routingDataSource.getReplicaConnections() : 0;
+	}
+
+	@ManagedAttribute(description = "Conexões de transações somente leitura abertas na primária por falta de réplica disponível")
+	public long getPrimaryFallbacks() {
+		return routingDataSource != null ? routingDataSource.getPrimaryFallbacks() : 0;
+	}
+
+	private DataSource replicaPool(String url) {
+		org.apache.tomcat.jdbc.pool.DataSource pool = new org.apache.tomcat.jdbc.pool.DataSource();
+		pool.setDriverClassName(driverClassName);
+		pool.setUrl(url);
+		pool.setUsername(username);
+		pool.setPassword(password);
+		pool.setDefaultReadOnly(true);
+		pool.setTestOnBorrow(true);
+		pool.setValidationQuery("SELECT 1");
+		pools.add(pool);
+
+		return pool;
+	}
+}
@@ -0,0 +1,156 @@
+package com.teste.rotinapagamento.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * DataSource que envia as transações somente leitura (@Transactional(readOnly = true)) para as réplicas de leitura,
+ * em rodízio, e todo o restante para a base primária. Réplicas inacessíveis, desconectadas da primária ou com atraso
+ * de replicação acima de maxLagMillis, segundo a última verificação (ver checkReplicas), ficam fora do rodízio até
+ * voltarem ao normal; sem réplicas disponíveis, as leituras vão para a primária.
+ *
+ * A escolha é feita quando a conexão é aberta e depende do flag somente leitura da transação corrente, por isso este
+ * DataSource deve ser usado por trás de um LazyConnectionDataSourceProxy (ver ReplicaDataSourcePostProcessor).
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+	private static final Logger log = LoggerFactory.getLogger(ReplicaRoutingDataSource.class);
+
+	static final String PRIMARY = "primary";
+
+	private static final String REPLICA = "replica-";
+
+	// Réplicas cujo receptor de WAL não está conectado à primária não têm atraso conhecido (null): já aplicaram todo o
+	// WAL recebido, mas deixaram de receber. As demais, sem WAL pendente de aplicação, não têm atraso, mesmo que a
+	// última transação replicada seja antiga.
+	private static final String LAG_SQL = "SELECT CASE WHEN NOT pg_is_in_recovery() THEN 0 " +
+			"WHEN NOT EXISTS (SELECT 1 FROM pg_stat_wal_receiver WHERE status = 'streaming') THEN NULL " +
+			"WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0 " +
+			"ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) * 1000, 0) END::bigint;";
+
+	private final List<DataSource> replicas;
+
+	private final long maxLagMillis;
+
+	private final Long[] lags;
+
+	private volatile int[] available = new int[0];
+
+	private final AtomicInteger next = new AtomicInteger();
+
+	private final LongAdder replicaConnections = new LongAdder();
+
+	private final LongAdder primaryFallbacks = new LongAdder();
+
+	public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas, long maxLagMillis) {
+		this.replicas = replicas;
+		this.maxLagMillis = maxLagMillis;
+		this.lags = new Long[replicas.size()];
+
+		Map<Object, Object> targets = new HashMap<>();
+		targets.put(PRIMARY, primary);
+		for (int i = 0; i < replicas.size(); i++) {
+			targets.put(REPLICA + i, replicas.get(i));
+		}
+
+		setTargetDataSources(targets);
+		setDefaultTargetDataSource(primary);
+		afterPropertiesSet();
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+		if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly())
+			return PRIMARY;
+
+		int[] current = available;
+		if (current.length == 0) {
+			primaryFallbacks.increment();
+			return PRIMARY;
+		}
+
+		replicaConnections.increment();
+		return REPLICA + current[Math.floorMod(next.getAndIncrement(), current.length)];
+	}
+
+	/**
+	 * Mede o atraso de replicação de cada réplica e atualiza as réplicas disponíveis para leitura.
+	 */
+	public void checkReplicas() {
+		for (int i = 0; i < replicas.size(); i++) {
+			Long lag;
+			try {
+				JdbcTemplate jdbcTemplate = new JdbcTemplate(replicas.get(i));
+				jdbcTemplate.setQueryTimeout(5);
+				lag = jdbcTemplate.queryForObject(LAG_SQL, Long.class);
+			} catch (RuntimeException e) {
+				log.debug("Não foi possível medir o atraso da réplica {}.", i, e);
+				lag = null;
+			}
+
+			updateLag(i, lag);
+		}
+	}
+
+	/**
+	 * Registra o atraso medido na réplica, em milissegundos, ou null quando ela não respondeu ou não está recebendo WAL
+	 * da primária.
+	 *
+	 * @param replica  índice da réplica
+	 * @param lagMillis atraso de replicação
+	 */
+	synchronized void updateLag(int replica, Long lagMillis) {
+		boolean wasAvailable = isAvailable(lags[replica]);
+		lags[replica] = lagMillis;
+
+		boolean isAvailable = isAvailable(lagMillis);
+		if (wasAvailable && !isAvailable) {
+			log.warn("Réplica {} fora do rodízio de leituras (atraso: {} ms).", replica, lagMillis);
+		} else if (!wasAvailable && isAvailable) {
+			log.info("Réplica {} disponível para leituras (atraso: {} ms).", replica, lagMillis);
+		}
+
+		List<Integer> indexes = new ArrayList<>();
+		for (int i = 0; i < lags.length; i++) {
+			if (isAvailable(lags[i]))
+				indexes.add(i);
+		}
+
+		available = indexes.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	private boolean isAvailable(Long lagMillis) {
+		return lagMillis != null && lagMillis <= maxLagMillis;
+	}
+
+	public synchronized Long[] getLags() {
+		return lags.clone();
+	}
+
+	public int getAvailableReplicas() {
+		return available.length;
+	}
+
+	public long getReplicaConnections() {
+		return replicaConnections.sum();
+	}
+
+	public long getPrimaryFallbacks() {
+		return primaryFallbacks.sum();
+	}
+}
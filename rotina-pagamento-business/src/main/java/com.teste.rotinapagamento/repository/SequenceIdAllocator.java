@@ -0,0 +1,114 @@
+package com.teste.rotinapagamento.repository;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/**
+ * Alocador de identificadores em blocos (hi-lo). Cada NEXTVAL reserva um bloco inteiro de identificadores,
+ * do tamanho do INCREMENT BY da sequence, que depois são entregues em memória. Como o bloco é reservado
+ * pela própria sequence, várias instâncias da aplicação podem alocar identificadores ao mesmo tempo.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class SequenceIdAllocator {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final String schema;
+
+    private final String sequence;
+
+    private volatile Block block;
+
+    private volatile long blockSize;
+
+    public SequenceIdAllocator(JdbcTemplate jdbcTemplate, String schema, String sequence) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schema = schema;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Entrega o próximo identificador do bloco corrente, reservando um novo bloco quando ele se esgota. Falha com
+     * ArithmeticException quando a sequence passa do maior valor de Integer, em vez de entregar um identificador negativo.
+     *
+     * @return Integer
+     */
+    public Integer nextId() {
+        while (true) {
+            Block current = block;
+            if (current != null) {
+                long id = current.next.getAndIncrement();
+                if (id < current.end) return Math.toIntExact(id);
+            }
+
+            synchronized (this) {
+                if (block == current) block = reserve();
+            }
+        }
+    }
+
+    /**
+     * Reserva, em uma única consulta, os blocos necessários para count identificadores e os entrega em ordem. Os
+     * identificadores que sobram no último bloco são descartados, sem afetar o bloco corrente de nextId.
+     *
+     * @param count quantidade de identificadores
+     * @return int[]
+     */
+    public int[] nextIds(int count) {
+        int[] ids = new int[count];
+        if (count == 0)
+            return ids;
+
+        long size = blockSize();
+        List<Long> starts = jdbcTemplate.queryForList("SELECT NEXTVAL('" + schema + "." + sequence + "') FROM generate_series(1, ?);",
+                new Object[]{(count + size - 1) / size}, Long.class);
+
+        for (int i = 0; i < count; i++) {
+            ids[i] = Math.toIntExact(starts.get((int) (i / size)) + i % size);
+        }
+
+        return ids;
+    }
+
+    /**
+     * Reserva um novo bloco de identificadores na sequence.
+     *
+     * @return Block
+     */
+    private Block reserve() {
+        long size = blockSize();
+        Long start = jdbcTemplate.queryForObject("SELECT NEXTVAL('" + schema + "." + sequence + "');", Long.class);
+        return new Block(start, start + size);
+    }
+
+    /**
+     * Tamanho do bloco, lido da própria sequence para que nunca seja maior que o intervalo realmente reservado. Pode
+     * ser guardado porque a subida da aplicação não reduz o INCREMENT BY de uma sequence que já reserva blocos.
+     *
+     * @return long
+     */
+    private long blockSize() {
+        if (blockSize <= 0) {
+            blockSize = jdbcTemplate.queryForObject("SELECT increment_by FROM pg_sequences WHERE schemaname=? AND sequencename=?;",
+                    new Object[]{schema, sequence}, Long.class);
+        }
+
+        return blockSize;
+    }
+
+    private static class Block {
+
+        private final AtomicLong next;
+
+        private final long end;
+
+        private Block(long start, long end) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.teste.rotinapagamento.repository;
+
+import java.sql.Timestamp;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+
+/**
+ * Arquiva periodicamente as transações quitadas. A cada payment-routine.archive.interval-seconds, as transações com
+ * balanço zero e data do evento anterior a payment-routine.archive.min-age-days dias são movidas da tabela
+ * transactions para a tabela transactions_archive, em blocos de payment-routine.archive.chunk-size transações (cada
+ * bloco em uma transação da base de dados). Assim, a tabela transactions, lida a cada transação e pagamento, guarda
+ * apenas as transações em aberto e as recentes; o histórico completo continua disponível na visão transactions_history.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Component
+@ManagedResource(objectName = "com.teste.rotinapagamento:type=TransactionArchiver")
+public class TransactionArchiver {
+
+	private static final Logger log = LoggerFactory.getLogger(TransactionArchiver.class);
+
+	@Autowired
+	private TransactionRepository transactionRepository;
+
+	@Value("${payment-routine.archive.enabled:false}")
+	private boolean enabled;
+
+	@Value("${payment-routine.archive.min-age-days:90}")
+	private int minAgeDays;
+
+	@Value("${payment-routine.archive.interval-seconds:300}")
+	private long intervalSeconds;
+
+	@Value("${payment-routine.archive.chunk-size:1000}")
+	private int chunkSize;
+
+	private final LongAdder runs = new LongAdder();
+
+	private final LongAdder archived = new LongAdder();
+
+	private ScheduledExecutorService scheduler;
+
+	@PostConstruct
+	public void init() {
+		if (!enabled)
+			return;
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "transaction-archive");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::archive, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (scheduler != null)
+			scheduler.shutdownNow();
+	}
+
+	/**
+	 * Move para a tabela transactions_archive todas as transações quitadas há mais de
+	 * payment-routine.archive.min-age-days dias, bloco a bloco. Transações bloqueadas no momento ficam para a
+	 * próxima execução.
+	 *
+	 * @return int quantidade de transações arquivadas
+	 */
+	@ManagedOperation(description = "Arquiva as transações quitadas há mais de payment-routine.archive.min-age-days dias")
+	public int archive() {
+		Timestamp before = new Timestamp(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(minAgeDays));
+		long start = System.currentTimeMillis();
+
+		int total = 0;
+		Integer after = 0;
+		while (!Thread.currentThread().isInterrupted()) {
+			List<Integer> transactionIds;
+			try {
+				transactionIds = transactionRepository.archiveTransactions(after, before, chunkSize);
+			} catch (RuntimeException e) {
+				log.warn("Não foi possível arquivar as transações posteriores à transação {}.", after, e);
+				break;
+			}
+
+			archived.add(transactionIds.size());
+			total += transactionIds.size();
+
+			if (transactionIds.size() < chunkSize)
+				break;
+
+			after = transactionIds.get(transactionIds.size() - 1);
+		}
+
+		runs.increment();
+		if (total > 0)
+			log.info("{} transações quitadas arquivadas em {} ms.", total, System.currentTimeMillis() - start);
+
+		return total;
+	}
+
+	@ManagedAttribute(description = "Execuções do arquivamento")
+	public long getRuns() {
+		return runs.sum();
+	}
+
+	@ManagedAttribute(description = "Transações arquivadas")
+	public long getArchivedTransactions() {
+		return archived.sum();
+	}
+}
@@ -0,0 +1,191 @@
+package com.teste.rotinapagamento.repository;
+
+import com.teste.rotinapagamento.auxiliar.OperationType;
+import com.teste.rotinapagamento.auxiliar.SourceMessage;
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.exception.ResourceException;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Repository;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Importação em lote de transações. As transações são gravadas com COPY em uma tabela temporária
+ * (transactions_import), descartada no commit, e dela passam para public.transactions e para os limites e saldos
+ * das contas em comandos únicos. Deve ser usado dentro de uma transação da base de dados.
+ *
+ * Os identificadores são atribuídos no INSERT, e não durante a cópia: enquanto o COPY está aberto, a conexão não
+ * aceita outros comandos, como o NEXTVAL de SequenceIdAllocator.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Repository
+public class TransactionImportRepository {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    @Autowired
+    private SourceMessage sourceMessage;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    /**
+     * Cria a tabela temporária que recebe as transações importadas na transação corrente.
+     */
+    public void createImportTable() {
+        try {
+            jdbcTemplate.execute("CREATE TEMPORARY TABLE transactions_import ( " +
+                    "    row_id bigserial, " +
+                    "    account_id integer NOT NULL, " +
+                    "    operation_type_id integer NOT NULL, " +
+                    "    amount double precision NOT NULL, " +
+                    "    balance double precision NOT NULL, " +
+                    "    event_date timestamp NOT NULL, " +
+                    "    due_date timestamp ) ON COMMIT DROP;");
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Grava as transações na tabela temporária com COPY, à medida que são lidas. Erros de validação lançados pelas
+     * transações interrompem a cópia.
+     *
+     * @param transactions transações a importar, já validadas
+     * @return long quantidade de transações gravadas
+     */
+    public long copyTransactions(Iterator<TransactionDTO> transactions) {
+        Connection connection = DataSourceUtils.getConnection(jdbcTemplate.getDataSource());
+        CopyIn copyIn = null;
+        try {
+            copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn("COPY transactions_import " +
+                    "(account_id, operation_type_id, amount, balance, event_date, due_date) FROM STDIN;");
+
+            StringBuilder rows = new StringBuilder(COPY_BUFFER_SIZE + 256);
+            while (transactions.hasNext()) {
+                TransactionDTO transaction = transactions.next();
+                rows.append(transaction.getAccountId()).append('\t')
+                        .append(transaction.getOperationTypeId()).append('\t')
+                        .append(transaction.getAmount()).append('\t')
+                        .append(transaction.getBalance()).append('\t')
+                        .append(new Timestamp(transaction.getEventDate())).append('\t')
+                        .append(transaction.getDueDate() != null ? new Timestamp(transaction.getDueDate()).toString() : "\\N").append('\n');
+
+                if (rows.length() >= COPY_BUFFER_SIZE)
+                    flush(copyIn, rows);
+            }
+
+            flush(copyIn, rows);
+            return copyIn.endCopy();
+        } catch (SQLException e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        } finally {
+            cancel(copyIn);
+            DataSourceUtils.releaseConnection(connection, jdbcTemplate.getDataSource());
+        }
+    }
+
+    /**
+     * Busca uma das contas das transações importadas que não está cadastrada.
+     *
+     * @return Integer identificador da conta ou null quando todas as contas existem
+     */
+    public Integer findMissingAccount() {
+        String sql = "SELECT i.account_id FROM transactions_import i " +
+                "WHERE NOT EXISTS (SELECT 1 FROM public.accounts a WHERE a.account_id = i.account_id) LIMIT 1;";
+
+        try {
+            List<Integer> accountIds = jdbcTemplate.queryForList(sql, Integer.class);
+            return accountIds.isEmpty() ? null : accountIds.get(0);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Passa as transações da tabela temporária para public.transactions. Os identificadores são reservados em blocos
+     * da sequence transactions_seq, um NEXTVAL para cada bloco de linhas do tamanho do seu INCREMENT BY, como em
+     * SequenceIdAllocator.
+     *
+     * @return int quantidade de transações inseridas
+     */
+    public int insertImportedTransactions() {
+        StringBuilder sql = new StringBuilder();
+        sql.append("WITH blocks AS ( ")
+                .append("  SELECT s.increment_by AS block_size, array_agg(NEXTVAL('public.transactions_seq') ORDER BY b.block) AS first_ids ")
+                .append("  FROM pg_sequences s, generate_series(0, (SELECT (MAX(row_id) - 1) / s.increment_by FROM transactions_import)) AS b(block) ")
+                .append("  WHERE s.schemaname = 'public' AND s.sequencename = 'transactions_seq' ")
+                .append("  GROUP BY s.increment_by ")
+                .append(") ")
+                .append("INSERT INTO public.transactions(transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date) ")
+                .append("SELECT b.first_ids[(i.row_id - 1) / b.block_size + 1] + (i.row_id - 1) % b.block_size, ")
+                .append("  i.account_id, i.operation_type_id, i.amount, i.balance, i.event_date, i.due_date ")
+                .append("FROM transactions_import i CROSS JOIN blocks b;");
+
+        try {
+            return jdbcTemplate.update(sql.toString());
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Soma às contas, em um único update, os balanços das transações importadas: compras reduzem o limite de crédito,
+     * saques o limite de retirada, pagamentos com saldo aumentam o saldo credor e as demais transações compõem o saldo
+     * devedor, como no cadastro de cada transação.
+     *
+     * @return List<Integer> identificadores das contas atualizadas
+     */
+    public List<Integer> updateImportedAccounts() {
+        StringBuilder sql = new StringBuilder();
+        sql.append("UPDATE public.accounts a SET ")
+                .append("  available_credit_limit = a.available_credit_limit + i.credit_limit, ")
+                .append("  available_withdrawal_limit = a.available_withdrawal_limit + i.withdrawal_limit, ")
+                .append("  credit_balance = a.credit_balance + i.credit_balance, ")
+                .append("  debt_balance = a.debt_balance + i.debt_balance ")
+                .append("FROM ( ")
+                .append("  SELECT account_id, ")
+                .append("    SUM(CASE WHEN operation_type_id IN (?, ?) THEN balance ELSE 0 END) AS credit_limit, ")
+                .append("    SUM(CASE WHEN operation_type_id = ? THEN balance ELSE 0 END) AS withdrawal_limit, ")
+                .append("    SUM(CASE WHEN operation_type_id = ? AND balance > 0 THEN balance ELSE 0 END) AS credit_balance, ")
+                .append("    SUM(CASE WHEN operation_type_id <> ? THEN balance ELSE 0 END) AS debt_balance ")
+                .append("  FROM transactions_import GROUP BY account_id ")
+                .append(") i ")
+                .append("WHERE a.account_id = i.account_id ")
+                .append("RETURNING a.account_id;");
+
+        try {
+            return jdbcTemplate.queryForList(sql.toString(), new Object[]{OperationType.COMPRA_A_VISTA.getId(), OperationType.COMPRA_PARCELADA.getId(),
+                    OperationType.SAQUE.getId(), OperationType.PAGAMENTO.getId(), OperationType.PAGAMENTO.getId()}, Integer.class);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    private static void flush(CopyIn copyIn, StringBuilder rows) throws SQLException {
+        byte[] bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        rows.setLength(0);
+    }
+
+    private static void cancel(CopyIn copyIn) {
+        try {
+            if (copyIn != null && copyIn.isActive())
+                copyIn.cancelCopy();
+        } catch (SQLException e) {
+            // A transação será desfeita; a falha ao cancelar a cópia não altera o resultado.
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package com.teste.rotinapagamento.repository;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Mantém as subpartições por event_date da tabela transactions (payment-routine.transactions.event-date-interval igual
+ * a month ou year). Na subida e a cada payment-routine.transactions.partition-maintenance-interval-seconds, cria em cada
+ * partição as subpartições do período corrente e dos payment-routine.transactions.event-date-periods-ahead períodos
+ * seguintes que ainda não existem, de modo que a virada de um período não depende de reiniciar a aplicação.
+ *
+ * Quando a subpartição padrão da partição já tem transações do período (por exemplo, importadas antes da subpartição
+ * existir), ela é desanexada, a subpartição do período é criada, as transações do período são movidas para ela e a
+ * subpartição padrão é anexada de volta, tudo em uma única transação da base de dados. Uma falha não é ignorada: na
+ * subida, a aplicação não é iniciada; nas execuções periódicas, a falha é registrada no log e contada em JMX.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Component
+@ManagedResource(objectName = "com.teste.rotinapagamento:type=TransactionPartitionMaintainer")
+public class TransactionPartitionMaintainer {
+
+	private static final Logger log = LoggerFactory.getLogger(TransactionPartitionMaintainer.class);
+
+	private static final String COLUMNS = "transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date";
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Value("${payment-routine.transactions.event-date-interval:none}")
+	private String eventDateInterval;
+
+	@Value("${payment-routine.transactions.event-date-periods-ahead:3}")
+	private int eventDatePeriodsAhead;
+
+	@Value("${payment-routine.transactions.partition-maintenance-interval-seconds:3600}")
+	private long intervalSeconds;
+
+	private final LongAdder runs = new LongAdder();
+
+	private final LongAdder created = new LongAdder();
+
+	private final LongAdder moved = new LongAdder();
+
+	private final LongAdder failures = new LongAdder();
+
+	private ScheduledExecutorService scheduler;
+
+	@PostConstruct
+	public void init() {
+		if ("none".equals(eventDateInterval))
+			return;
+
+		scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "transaction-partition-maintenance");
+			thread.setDaemon(true);
+			return thread;
+		});
+		scheduler.scheduleWithFixedDelay(this::maintain, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (scheduler != null)
+			scheduler.shutdownNow();
+	}
+
+	/**
+	 * Execução periódica de createUpcomingPartitions: a falha é registrada e a subpartição é tentada de novo na
+	 * execução seguinte.
+	 */
+	private void maintain() {
+		try {
+			createUpcomingPartitions();
+		} catch (RuntimeException e) {
+			failures.increment();
+			log.error("Não foi possível criar as subpartições da tabela transactions.", e);
+		}
+	}
+
+	/**
+	 * Cria, em cada partição de transactions subparticionada por event_date, as subpartições do período corrente e dos
+	 * payment-routine.transactions.event-date-periods-ahead períodos seguintes que ainda não existem. É executado em
+	 * uma transação, sob o mesmo advisory lock da criação da tabela, e participa da transação corrente, se houver.
+	 *
+	 * @return int quantidade de subpartições criadas
+	 */
+	@ManagedOperation(description = "Cria as subpartições por event_date dos próximos períodos da tabela transactions")
+	public int createUpcomingPartitions() {
+		if ("none".equals(eventDateInterval))
+			return 0;
+
+		boolean monthly = "month".equals(eventDateInterval);
+		if (!monthly && !"year".equals(eventDateInterval))
+			throw new IllegalStateException("payment-routine.transactions.event-date-interval inválido: " + eventDateInterval);
+
+		Integer total = new TransactionTemplate(transactionManager).execute(status -> {
+			jdbcTemplate.execute("SELECT pg_advisory_xact_lock(hashtext('payment-routine.transactions'));");
+
+			List<String> partitions = jdbcTemplate.queryForList("SELECT c.relname::text FROM pg_inherits i JOIN pg_class c ON (c.oid = i.inhrelid) " +
+					"WHERE i.inhparent = 'public.transactions'::regclass AND c.relkind = 'p' ORDER BY c.relname;", String.class);
+			if (partitions.isEmpty()) {
+				log.warn("As partições da tabela transactions não são subparticionadas por event_date e serão mantidas assim.");
+				return 0;
+			}
+
+			LocalDate today = LocalDate.now();
+			LocalDate period = monthly ? today.withDayOfMonth(1) : today.withDayOfYear(1);
+
+			int count = 0;
+			for (int i = 0; i <= eventDatePeriodsAhead; i++) {
+				LocalDate next = monthly ? period.plusMonths(1) : period.plusYears(1);
+				String suffix = monthly ? String.format("%d_%02d", period.getYear(), period.getMonthValue()) : String.valueOf(period.getYear());
+
+				for (String partition : partitions) {
+					if (createPartition(partition, partition + "_" + suffix, period, next))
+						count++;
+				}
+
+				period = next;
+			}
+			return count;
+		});
+
+		runs.increment();
+		created.add(total);
+		if (total > 0)
+			log.info("{} subpartições da tabela transactions criadas.", total);
+
+		return total;
+	}
+
+	/**
+	 * Cria a subpartição [from, to) da partição, se ela ainda não existir. As transações do período que estão na
+	 * subpartição padrão são movidas para a nova subpartição: o PostgreSQL não cria a subpartição enquanto a padrão
+	 * tiver linhas do seu intervalo.
+	 *
+	 * @return boolean se a subpartição foi criada
+	 */
+	private boolean createPartition(String partition, String name, LocalDate from, LocalDate to) {
+		Boolean exists = jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL;", Boolean.class, "public." + name);
+		if (exists)
+			return false;
+
+		List<String> defaults = jdbcTemplate.queryForList("SELECT c.relname::text FROM pg_partitioned_table p JOIN pg_class c ON (c.oid = p.partdefid) " +
+				"WHERE p.partrelid = ?::regclass;", String.class, "public." + partition);
+		String range = "FOR VALUES FROM ('" + from + "') TO ('" + to + "')";
+		String filter = "event_date >= '" + from + "' AND event_date < '" + to + "'";
+
+		boolean hasRows = !defaults.isEmpty() && jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM public." + defaults.get(0) + " WHERE " + filter + ");", Boolean.class);
+		if (!hasRows) {
+			jdbcTemplate.execute("CREATE TABLE public." + name + " PARTITION OF public." + partition + " " + range + ";");
+			return true;
+		}
+
+		String defaultPartition = "public." + defaults.get(0);
+		jdbcTemplate.execute("ALTER TABLE public." + partition + " DETACH PARTITION " + defaultPartition + ";");
+		jdbcTemplate.execute("CREATE TABLE public." + name + " PARTITION OF public." + partition + " " + range + ";");
+		int rows = jdbcTemplate.update("WITH moved AS (DELETE FROM " + defaultPartition + " WHERE " + filter + " RETURNING " + COLUMNS + ") " +
+				"INSERT INTO public." + name + "(" + COLUMNS + ") SELECT " + COLUMNS + " FROM moved;");
+		jdbcTemplate.execute("ALTER TABLE public." + partition + " ATTACH PARTITION " + defaultPartition + " DEFAULT;");
+
+		moved.add(rows);
+		log.info("{} transações movidas de {} para a subpartição public.{}.", rows, defaultPartition, name);
+		return true;
+	}
+
+	@ManagedAttribute(description = "Execuções da manutenção das subpartições")
+	public long getRuns() {
+		return runs.sum();
+	}
+
+	@ManagedAttribute(description = "Subpartições criadas")
+	public long getCreatedPartitions() {
+		return created.sum();
+	}
+
+	@ManagedAttribute(description = "Transações movidas da subpartição padrão para subpartições criadas")
+	public long getMovedTransactions() {
+		return moved.sum();
+	}
+
+	@ManagedAttribute(description = "Execuções periódicas que falharam")
+	public long getFailures() {
+		return failures.sum();
+	}
+}
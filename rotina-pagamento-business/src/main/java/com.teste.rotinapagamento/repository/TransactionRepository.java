@@ -1,24 +1,32 @@
 package com.teste.rotinapagamento.repository;
 
+import com.teste.rotinapagamento.auxiliar.GroupCommitExecutor;
 import com.teste.rotinapagamento.auxiliar.SourceMessage;
 import com.teste.rotinapagamento.auxiliar.OperationType;
+import com.teste.rotinapagamento.auxiliar.UnitOfWork;
 import com.teste.rotinapagamento.dto.TransactionDTO;
 import com.teste.rotinapagamento.exception.ResourceException;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
-import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.stereotype.Repository;
 
+import javax.annotation.PostConstruct;
 import java.sql.Date;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.function.Consumer;
 
 /**
  * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
@@ -27,12 +35,47 @@ import java.util.stream.Collectors;
 @Repository
 public class TransactionRepository {
 
+    private static final String PENDING_TRANSACTIONS = "pendingTransactions";
+
     @Autowired
     private SourceMessage sourceMessage;
 
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private ChargeOrders chargeOrders;
+
+    @Value("${payment-routine.stream-fetch-size:500}")
+    private int streamFetchSize;
+
+    private SequenceIdAllocator transactionIdAllocator;
+
+    private final RowMapper<TransactionDTO> transactionRowMapper = new RowMapper<TransactionDTO>() {
+        @Override
+        public TransactionDTO mapRow(ResultSet resultSet, int rownumber) throws SQLException {
+            TransactionDTO transaction = new TransactionDTO();
+            transaction.setTransactionId(resultSet.getInt("transaction_id"));
+            transaction.setAccountId(resultSet.getInt("account_id"));
+            transaction.setOperationTypeId(resultSet.getInt("operation_type_id"));
+            transaction.setAmount(resultSet.getDouble("amount"));
+            transaction.setBalance(resultSet.getDouble("balance"));
+
+            if (resultSet.getDate("event_date") != null)
+                transaction.setEventDate(resultSet.getDate("event_date").getTime());
+
+            if (resultSet.getDate("due_date") != null)
+                transaction.setDueDate(resultSet.getDate("due_date").getTime());
+
+            return transaction;
+        }
+    };
+
+    @PostConstruct
+    public void init() {
+        transactionIdAllocator = new SequenceIdAllocator(jdbcTemplate, "public", "transactions_seq");
+    }
+
     /**
      * Busca na base de dados uma transação que corresponda aos parâmetros passados.
      *
@@ -52,13 +95,78 @@ public class TransactionRepository {
     }
 
     /**
-     * Delega a busca das transações cadastradas na base de dados.
+     * Busca uma página de transações cadastradas na base de dados, ordenadas pelo identificador (paginação por chave).
      *
-     * @param account_id identificador da conta associada a transação
+     * @param accountId identificador da conta associada a transação
+     * @param after     identificador da última transação da página anterior
+     * @param limit     quantidade máxima de transações da página
      * @return List<TransactionDTO>
      */
-    public List<TransactionDTO> getTransactions(Integer account_id) {
-        return findTransactions(null, account_id, null, null);
+    public List<TransactionDTO> getTransactions(Integer accountId, Integer after, Integer limit) {
+        List<Object> params = new ArrayList<>();
+        StringBuilder sql = transactionsPageSql(accountId, after, params);
+        sql.append(" LIMIT ?");
+        params.add(limit);
+
+        try {
+            return jdbcTemplate.query(sql.toString(), params.toArray(), transactionRowMapper);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Percorre as transações cadastradas na base de dados com um cursor no servidor, entregando uma transação por vez
+     * ao consumidor. Apenas fetchSize linhas ficam em memória; deve ser chamado dentro de uma transação.
+     *
+     * @param accountId identificador da conta associada a transação
+     * @param after     identificador da última transação já lida
+     * @param consumer  consumidor de cada transação lida
+     */
+    public void streamTransactions(Integer accountId, Integer after, Consumer<TransactionDTO> consumer) {
+        List<Object> params = new ArrayList<>();
+        String sql = transactionsPageSql(accountId, after, params).toString();
+
+        try {
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(sql);
+                statement.setFetchSize(streamFetchSize);
+                for (int i = 0; i < params.size(); i++) {
+                    statement.setObject(i + 1, params.get(i));
+                }
+
+                return statement;
+            }, (RowCallbackHandler) resultSet -> consumer.accept(transactionRowMapper.mapRow(resultSet, resultSet.getRow())));
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Monta a consulta do histórico de transações (em aberto e arquivadas) ordenada pelo identificador, a partir de uma
+     * transação opcional.
+     *
+     * @param accountId identificador da conta associada a transação
+     * @param after     identificador da última transação já lida
+     * @param params    lista que receberá os parâmetros da consulta
+     * @return StringBuilder
+     */
+    private StringBuilder transactionsPageSql(Integer accountId, Integer after, List<Object> params) {
+        StringBuilder sql = new StringBuilder("SELECT * FROM " + transactionsHistoryTable() + " WHERE 1=1 ");
+
+        if (accountId != null) {
+            sql.append(" AND account_id=?");
+            params.add(accountId);
+        }
+
+        if (after != null) {
+            sql.append(" AND transaction_id > ?");
+            params.add(after);
+        }
+
+        sql.append(" ORDER BY transaction_id");
+
+        return sql;
     }
 
     /**
@@ -72,7 +180,7 @@ public class TransactionRepository {
      */
     private List<TransactionDTO> findTransactions(Integer transactionId, Integer accountId, Integer operationTypeId, Boolean hasCreditBalance) {
         List<Object> params = new ArrayList<>();
-        StringBuilder sql = new StringBuilder("SELECT * FROM public.transactions WHERE 1=1 ");
+        StringBuilder sql = new StringBuilder("SELECT * FROM " + transactionsTable() + " WHERE 1=1 ");
 
         if (transactionId != null) {
             sql.append(" AND transaction_id=?");
@@ -94,25 +202,7 @@ public class TransactionRepository {
         }
 
         try {
-            List<TransactionDTO> transactions = jdbcTemplate.query(sql.toString(), params.toArray(), new RowMapper<TransactionDTO>() {
-                @Override
-                public TransactionDTO mapRow(ResultSet resultSet, int rownumber) throws SQLException {
-                    TransactionDTO transaction = new TransactionDTO();
-                    transaction.setTransactionId(resultSet.getInt("transaction_id"));
-                    transaction.setAccountId(resultSet.getInt("account_id"));
-                    transaction.setOperationTypeId(resultSet.getInt("operation_type_id"));
-                    transaction.setAmount(resultSet.getDouble("amount"));
-                    transaction.setBalance(resultSet.getDouble("balance"));
-
-                    if (resultSet.getDate("event_date") != null)
-                        transaction.setEventDate(resultSet.getDate("event_date").getTime());
-
-                    if (resultSet.getDate("due_date") != null)
-                        transaction.setDueDate(resultSet.getDate("due_date").getTime());
-
-                    return transaction;
-                }
-            });
+            List<TransactionDTO> transactions = jdbcTemplate.query(sql.toString(), params.toArray(), transactionRowMapper);
 
             return transactions;
         } catch (Exception e){
@@ -123,22 +213,19 @@ public class TransactionRepository {
 
     /**
      * Busca as transações que possuem balanços negativo para descontar pagamentos e positivos
-     * para utilização no pagamento de outras transações.
+     * para utilização no pagamento de outras transações, na ordem de cobrança. A ordenação é feita em memória, com a
+     * ordem de cobrança dos tipos de operação mantida em ChargeOrders, em vez de juntar operations_types na consulta.
      *
      * @param accountId identificador da conta
      * @return List<TransactionDTO>
      */
     public List<TransactionDTO> findTransactionsToDownPayment(Integer accountId) {
-        StringBuilder sql = new StringBuilder();
-        sql.append("SELECT t.transaction_id, t.account_id, t.operation_type_id, t.amount, t.balance ")
-                .append("FROM public.transactions t ")
-                .append("JOIN public.operations_types ot ON (ot.operation_type_id = t.operation_type_id) ")
-                .append("WHERE (t.balance <> 0 or (ot.operation_type_id = ? and t.balance <> 0)) ")
-                .append(" AND t.account_id=? ")
-                .append("ORDER BY ot.charge_order ASC, t.event_date ASC ");
+        String sql = "SELECT transaction_id, account_id, operation_type_id, amount, balance, event_date " +
+                "FROM " + transactionsTable() + " WHERE account_id=? AND balance <> 0";
 
+        List<TransactionDTO> transactions;
         try {
-            return jdbcTemplate.query(sql.toString(), new Object[]{OperationType.PAGAMENTO.getId(), accountId}, new RowMapper<TransactionDTO>() {
+            transactions = jdbcTemplate.query(sql, new Object[]{accountId}, new RowMapper<TransactionDTO>() {
                 @Override
                 public TransactionDTO mapRow(ResultSet resultSet, int i) throws SQLException {
                     TransactionDTO transaction = new TransactionDTO();
@@ -147,6 +234,7 @@ public class TransactionRepository {
                     transaction.setBalance(resultSet.getDouble("balance"));
                     transaction.setAmount(resultSet.getDouble("amount"));
                     transaction.setOperationTypeId(resultSet.getInt("operation_type_id"));
+                    transaction.setEventDate(resultSet.getTimestamp("event_date").getTime());
 
                     return transaction;
                 }
@@ -154,41 +242,225 @@ public class TransactionRepository {
         } catch (Exception e) {
             throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
         }
+
+        transactions.sort(chargeOrders.comparator(transactions));
+        return transactions;
+    }
+
+    /**
+     * Abate o pagamento nas transações pendentes da conta com a função allocate_payment, que lê as transações na
+     * ordem de cobrança e atualiza os seus balanços em uma única chamada à base de dados.
+     *
+     * @param accountId identificador da conta
+     * @param amount    valor do pagamento
+     * @param handler   receptor de cada abatimento realizado
+     */
+    public void allocatePayment(Integer accountId, Double amount, PaymentAllocationHandler handler) {
+        try {
+            jdbcTemplate.query("SELECT * FROM public.allocate_payment(?, ?, true);", new Object[]{accountId, amount},
+                    (RowCallbackHandler) resultSet -> handler.handle(resultSet.getInt("transaction_id"), resultSet.getInt("operation_type_id"),
+                            resultSet.getDouble("down_value"), resultSet.getDouble("payment_balance")));
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
     }
 
     /**
-     * Insere transações na base de dados.
+     * Insere transações na base de dados e retorna a linha persistida, incluindo a data do evento gerada pelo banco.
+     * Em uma tarefa do group commit, a inserção é adiada para o commit do grupo (ver deferTransaction).
      *
      * @param accountId       identificador da conta
      * @param operationTypeId identificador do tipo de operação
      * @param amount          valor devido
-     * @return Integer
+     * @return TransactionDTO
+     */
+    public TransactionDTO insertTransaction(Integer accountId, Integer operationTypeId, Double amount, Double balance, Date dueDate) {
+        UnitOfWork unitOfWork = UnitOfWork.current();
+        if (unitOfWork != null && GroupCommitExecutor.isRunningTask())
+            return deferTransaction(unitOfWork, accountId, operationTypeId, amount, balance, dueDate);
+
+        String sql = "INSERT INTO public.transactions(transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date) " +
+                "VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP, ?) RETURNING *;";
+
+        try {
+            Integer transactionId = getNextTransactionId();
+            return jdbcTemplate.queryForObject(sql, new Object[]{transactionId, accountId, operationTypeId, amount, balance, dueDate}, transactionRowMapper);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Insere na base de dados uma transação que já tem identificador e data do evento atribuídos.
+     *
+     * @param transaction transação que será persistida
      */
-    public Integer insertTransaction(Integer accountId, Integer operationTypeId, Double amount, Double balance, Date dueDate) {
-        Integer transactionId;
-        String sql = "INSERT INTO public.transactions(transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date) VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP, ?);";
+    public void insertTransaction(TransactionDTO transaction) {
+        String sql = "INSERT INTO public.transactions(transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?);";
 
         try {
-            transactionId = getNextTransactionId();
-            jdbcTemplate.update(sql, new Object[]{transactionId, accountId, operationTypeId, amount, balance, dueDate});
+            jdbcTemplate.update(sql, transaction.getTransactionId(), transaction.getAccountId(), transaction.getOperationTypeId(),
+                    transaction.getAmount(), transaction.getBalance(), new Timestamp(transaction.getEventDate()),
+                    transaction.getDueDate() != null ? new Date(transaction.getDueDate()) : null);
         } catch (Exception e) {
             throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
         }
+    }
 
-        return transactionId;
+    /**
+     * Registra a inserção da transação como escrita pendente da transação corrente: as transações de todas as tarefas
+     * de um grupo são inseridas juntas, em um único batch, no commit do grupo. O identificador e a data do evento são
+     * atribuídos aqui, e as datas da transação retornada são as que seriam lidas da linha persistida.
+     *
+     * @return TransactionDTO
+     */
+    private TransactionDTO deferTransaction(UnitOfWork unitOfWork, Integer accountId, Integer operationTypeId, Double amount, Double balance, Date dueDate) {
+        TransactionDTO transaction = new TransactionDTO();
+        transaction.setTransactionId(getNextTransactionId());
+        transaction.setAccountId(accountId);
+        transaction.setOperationTypeId(operationTypeId);
+        transaction.setAmount(amount);
+        transaction.setBalance(balance);
+        transaction.setEventDate(System.currentTimeMillis());
+        transaction.setDueDate(dueDate != null ? dueDate.getTime() : null);
+
+        List<TransactionDTO> transactions = new ArrayList<>();
+        transactions.add(transaction);
+        unitOfWork.write(PENDING_TRANSACTIONS, null, transactions, (pending, added) -> {
+            pending.addAll(added);
+            return pending;
+        }, this::insertTransactions);
+
+        TransactionDTO persisted = new TransactionDTO();
+        persisted.setTransactionId(transaction.getTransactionId());
+        persisted.setAccountId(accountId);
+        persisted.setOperationTypeId(operationTypeId);
+        persisted.setAmount(amount);
+        persisted.setBalance(balance);
+        persisted.setEventDate(Date.valueOf(new Date(transaction.getEventDate()).toLocalDate()).getTime());
+        persisted.setDueDate(dueDate != null ? Date.valueOf(dueDate.toLocalDate()).getTime() : null);
+        return persisted;
+    }
+
+    /**
+     * Insere na base de dados, em um único batch, transações que já têm identificador e data do evento atribuídos.
+     *
+     * @param transactions transações que serão persistidas
+     */
+    public void insertTransactions(List<TransactionDTO> transactions) {
+        String sql = "INSERT INTO public.transactions(transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?);";
+
+        try {
+            jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    TransactionDTO transaction = transactions.get(i);
+                    ps.setInt(1, transaction.getTransactionId());
+                    ps.setInt(2, transaction.getAccountId());
+                    ps.setInt(3, transaction.getOperationTypeId());
+                    ps.setDouble(4, transaction.getAmount());
+                    ps.setDouble(5, transaction.getBalance());
+                    ps.setTimestamp(6, new Timestamp(transaction.getEventDate()));
+                    ps.setDate(7, transaction.getDueDate() != null ? new Date(transaction.getDueDate()) : null);
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return transactions.size();
+                }
+            });
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
     }
 
     /**
      * Atualiza o valor do balanço da transação na base de dados.
      *
-     * @param transactionId
-     * @param balance
+     * @param accountId     identificador da conta associada a transação
+     * @param transactionId identificador da transação
+     * @param balance       valor a ser somado ao balanço
+     */
+    public void updateBalanceByTransaction(Integer accountId, Integer transactionId, Double balance) {
+        String sql = "UPDATE public.transactions SET balance=balance + ? WHERE transaction_id=? AND account_id=?;";
+
+        try {
+            jdbcTemplate.update(sql, new Object[]{balance, transactionId, accountId});
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Atualiza em lote o valor do balanço das transações da conta na base de dados. O filtro pela conta limita cada
+     * update à partição da conta quando a tabela transactions é particionada.
+     *
+     * @param accountId identificador da conta associada às transações
+     * @param balances  valor a ser somado ao balanço, indexado pelo identificador da transação
      */
-    public void updateBalanceByTransaction(Integer transactionId, Double balance) {
-        String sql = "UPDATE public.transactions SET balance=balance + ? WHERE transaction_id=?;";
+    public void updateBalanceByTransactions(Integer accountId, Map<Integer, Double> balances) {
+        String sql = "UPDATE public.transactions SET balance=balance + ? WHERE transaction_id=? AND account_id=?;";
+
+        List<Object[]> params = new ArrayList<>();
+        for (Map.Entry<Integer, Double> balance : balances.entrySet()) {
+            params.add(new Object[]{balance.getValue(), balance.getKey(), accountId});
+        }
 
         try {
-            jdbcTemplate.update(sql, new Object[]{balance, transactionId});
+            jdbcTemplate.batchUpdate(sql, params);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Tabela (ou visão) de onde são lidas as transações e os seus balanços.
+     *
+     * @return String
+     */
+    protected String transactionsTable() {
+        return "public.transactions";
+    }
+
+    /**
+     * Visão de onde é lido o histórico completo de transações: as da tabela transactions e as arquivadas.
+     *
+     * @return String
+     */
+    protected String transactionsHistoryTable() {
+        return "public.transactions_history";
+    }
+
+    /**
+     * Move para a tabela transactions_archive um bloco de transações quitadas (balanço zero) com data do evento
+     * anterior a before, percorrendo as transações pelo identificador a partir de after. Transações com lançamentos
+     * do livro-razão por eventos ainda não consolidados, ou bloqueadas por outra transação da base de dados, ficam
+     * para a próxima execução.
+     *
+     * @param after  identificador da última transação já percorrida
+     * @param before data do evento a partir da qual as transações não são arquivadas
+     * @param limit  quantidade máxima de transações movidas
+     * @return List<Integer> identificadores das transações arquivadas, em ordem crescente
+     */
+    public List<Integer> archiveTransactions(Integer after, Timestamp before, int limit) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("WITH moved AS ( ")
+                .append("  DELETE FROM public.transactions t WHERE (t.transaction_id, t.account_id) IN ( ")
+                .append("    SELECT s.transaction_id, s.account_id FROM public.transactions s ")
+                .append("    WHERE s.transaction_id > ? AND s.balance = 0 AND s.event_date < ? ")
+                .append("      AND NOT EXISTS (SELECT 1 FROM public.ledger_entries le WHERE le.transaction_id = s.transaction_id AND le.snapshot_at IS NULL) ")
+                .append("    ORDER BY s.transaction_id LIMIT ? FOR UPDATE SKIP LOCKED ")
+                .append("  ) RETURNING t.* ")
+                .append("), archived AS ( ")
+                .append("  INSERT INTO public.transactions_archive(transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date) ")
+                .append("  SELECT transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date FROM moved ")
+                .append("  RETURNING transaction_id ")
+                .append(") SELECT transaction_id FROM archived ORDER BY transaction_id;");
+
+        try {
+            return jdbcTemplate.queryForList(sql.toString(), new Object[]{after, before, limit}, Integer.class);
         } catch (Exception e) {
             throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
         }
@@ -199,31 +471,29 @@ public class TransactionRepository {
      *
      * @return Integer
      */
-    private Integer getNextTransactionId() {
-        return jdbcTemplate.queryForObject("SELECT NEXTVAL('public.transactions_seq');", Integer.class);
+    protected Integer getNextTransactionId() {
+        return transactionIdAllocator.nextId();
     }
 
     /**
-     * Indica se há saldo (positivo ou negativo) na conta passada por parâmetro.
+     * Abate o valor passado dos pagamentos que guardam o saldo credor da conta, do mais antigo para o mais novo e
+     * sem deixar nenhum deles com balanço negativo, sem precisar lê-los antes.
      *
-     * @return boolean
+     * @param accountId identificador da conta
+     * @param amount    valor a ser abatido do saldo credor
      */
-    public boolean hasBalanceByOperation(Integer accountId, List<Object> operations) {
+    public void downCreditBalance(Integer accountId, Double amount) {
         StringBuilder sql = new StringBuilder();
-        sql.append("SELECT ABS(SUM(balance)) > 0 ")
-                .append("FROM public.transactions ")
-                .append("WHERE account_id=? ")
-                .append("AND operation_type_id IN (")
-                .append(operations.stream()
-                        .map(n -> n.toString())
-                        .collect(Collectors.joining(",")))
-                .append(") ")
-                .append("GROUP BY account_id LIMIT 1;");
+        sql.append("UPDATE public.transactions t SET balance=t.balance - LEAST(c.balance, ? - c.consumed) ")
+                .append("FROM ( ")
+                .append("  SELECT transaction_id, balance, SUM(balance) OVER (ORDER BY transaction_id) - balance AS consumed ")
+                .append("  FROM public.transactions ")
+                .append("  WHERE account_id=? AND operation_type_id=? AND balance > 0 ")
+                .append(") c ")
+                .append("WHERE t.account_id=? AND t.transaction_id=c.transaction_id AND c.consumed < ?;");
 
         try {
-            return jdbcTemplate.queryForObject(sql.toString(), new Object[]{accountId}, Boolean.class);
-        } catch (EmptyResultDataAccessException e1) {
-            return false;
+            jdbcTemplate.update(sql.toString(), new Object[]{amount, accountId, OperationType.PAGAMENTO.getId(), accountId, amount});
         } catch (Exception e) {
             throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
         }
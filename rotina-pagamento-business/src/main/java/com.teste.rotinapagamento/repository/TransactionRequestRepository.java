@@ -0,0 +1,131 @@
+package com.teste.rotinapagamento.repository;
+
+import com.teste.rotinapagamento.auxiliar.SourceMessage;
+import com.teste.rotinapagamento.dto.TransactionRequestDTO;
+import com.teste.rotinapagamento.exception.ResourceException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import javax.annotation.PostConstruct;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Fila durável das requisições aceitas para processamento assíncrono (tabela transaction_requests).
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Repository
+public class TransactionRequestRepository {
+
+    @Autowired
+    private SourceMessage sourceMessage;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private SequenceIdAllocator requestIdAllocator;
+
+    private final RowMapper<TransactionRequestDTO> requestRowMapper = new RowMapper<TransactionRequestDTO>() {
+        @Override
+        public TransactionRequestDTO mapRow(ResultSet resultSet, int rownumber) throws SQLException {
+            TransactionRequestDTO request = new TransactionRequestDTO();
+            request.setRequestId(resultSet.getInt("request_id"));
+            request.setRequestType(resultSet.getString("request_type"));
+            request.setAccountId((Integer) resultSet.getObject("account_id"));
+            request.setPayload(resultSet.getString("payload"));
+            request.setStatus(resultSet.getString("status"));
+            request.setHttpStatus((Integer) resultSet.getObject("http_status"));
+            request.setResponse(resultSet.getString("response"));
+
+            if (resultSet.getTimestamp("created_at") != null)
+                request.setCreatedAt(resultSet.getTimestamp("created_at").getTime());
+
+            if (resultSet.getTimestamp("completed_at") != null)
+                request.setCompletedAt(resultSet.getTimestamp("completed_at").getTime());
+
+            return request;
+        }
+    };
+
+    @PostConstruct
+    public void init() {
+        requestIdAllocator = new SequenceIdAllocator(jdbcTemplate, "public", "transaction_requests_seq");
+    }
+
+    /**
+     * Grava uma nova requisição pendente e retorna a linha persistida.
+     *
+     * @param requestType tipo da requisição (TRANSACTION ou PAYMENTS)
+     * @param accountId   conta que define a ordem de processamento da requisição
+     * @param payload     corpo da requisição, em JSON
+     * @return TransactionRequestDTO
+     */
+    public TransactionRequestDTO insertRequest(String requestType, Integer accountId, String payload) {
+        String sql = "INSERT INTO public.transaction_requests(request_id, request_type, account_id, payload, status, created_at) " +
+                "VALUES (?, ?, ?, ?, ?, CURRENT_TIMESTAMP) RETURNING *;";
+
+        try {
+            Integer requestId = requestIdAllocator.nextId();
+            return jdbcTemplate.queryForObject(sql, new Object[]{requestId, requestType, accountId, payload, TransactionRequestDTO.PENDING}, requestRowMapper);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Busca a requisição pelo identificador.
+     *
+     * @param requestId identificador da requisição
+     * @return TransactionRequestDTO
+     */
+    public TransactionRequestDTO findRequest(Integer requestId) {
+        try {
+            List<TransactionRequestDTO> requests = jdbcTemplate.query("SELECT * FROM public.transaction_requests WHERE request_id=?;",
+                    new Object[]{requestId}, requestRowMapper);
+
+            return requests.isEmpty() ? null : requests.get(0);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Busca as requisições ainda pendentes, na ordem em que foram aceitas.
+     *
+     * @return List<TransactionRequestDTO>
+     */
+    public List<TransactionRequestDTO> findPendingRequests() {
+        try {
+            return jdbcTemplate.query("SELECT * FROM public.transaction_requests WHERE status=? ORDER BY created_at, request_id;",
+                    new Object[]{TransactionRequestDTO.PENDING}, requestRowMapper);
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+
+    /**
+     * Registra o resultado de uma requisição pendente. Requisições que já foram concluídas não são alteradas.
+     *
+     * @param requestId  identificador da requisição
+     * @param status     status final da requisição
+     * @param httpStatus status HTTP que seria devolvido pela chamada síncrona
+     * @param response   corpo que seria devolvido pela chamada síncrona, em JSON
+     * @return boolean
+     */
+    public boolean completeRequest(Integer requestId, String status, Integer httpStatus, String response) {
+        String sql = "UPDATE public.transaction_requests SET status=?, http_status=?, response=?, completed_at=CURRENT_TIMESTAMP " +
+                "WHERE request_id=? AND status=?;";
+
+        try {
+            return jdbcTemplate.update(sql, status, httpStatus, response, requestId, TransactionRequestDTO.PENDING) > 0;
+        } catch (Exception e) {
+            throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+        }
+    }
+}
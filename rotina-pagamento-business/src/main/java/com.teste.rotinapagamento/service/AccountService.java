@@ -1,15 +1,24 @@
 package com.teste.rotinapagamento.service;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import com.teste.rotinapagamento.auxiliar.SourceMessage;
 import com.teste.rotinapagamento.auxiliar.OperationType;
+import com.teste.rotinapagamento.auxiliar.UnitOfWork;
+import com.teste.rotinapagamento.dto.AccountBatchItemDTO;
 import com.teste.rotinapagamento.dto.AccountDTO;
 import com.teste.rotinapagamento.dto.AvailableLimitDTO;
 import com.teste.rotinapagamento.dto.TransactionDTO;
 import com.teste.rotinapagamento.exception.ResourceException;
+import com.teste.rotinapagamento.repository.AccountCache;
+import com.teste.rotinapagamento.repository.AccountLimitsHandler;
 import com.teste.rotinapagamento.repository.AccountRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -22,12 +31,24 @@ import org.springframework.transaction.annotation.Transactional;
 @Service
 public class AccountService {
 
+    private static final String ACCOUNT = "account";
+
+    private static final String CREDIT_BALANCE = "creditBalance";
+
+    private static final String BALANCES = "balances";
+
     @Autowired
     private SourceMessage sourceMessage;
 
     @Autowired
     private AccountRepository accountRepository;
 
+    @Autowired
+    private AccountCache accountCache;
+
+    @Value("${payment-routine.account-batch.max-size:100000}")
+    private int batchMaxSize = 100000;
+
     /**
      * Delega a operação de inserção de contas para o método insert da classe repository.
      *
@@ -35,6 +56,58 @@ public class AccountService {
      * @return AccountDTO
      */
     public AccountDTO insertAccount(AccountDTO account) {
+        AccountDTO limits = newAccountLimits(account);
+
+        AccountDTO insertedAccount = accountRepository.insertAccount(limits.getAvailableCreditLimit().getAmount(), limits.getAvailableWithdrawalLimit().getAmount());
+        if (insertedAccount != null)
+            accountCache.write(insertedAccount.getAccountId(), insertedAccount);
+
+        return insertedAccount;
+    }
+
+    /**
+     * Cadastra as contas da lista em lote. A lista inteira é validada antes da gravação; as contas válidas são
+     * inseridas juntas, com os identificadores reservados de uma só vez, e as inválidas retornam o erro no seu item.
+     * As contas cadastradas não são colocadas no cache de contas, para não deslocar as contas mais lidas.
+     *
+     * @param accounts contas que serão persistidas
+     * @return List<AccountBatchItemDTO>
+     */
+    public List<AccountBatchItemDTO> insertAccounts(List<AccountDTO> accounts) {
+        batchValidate(accounts);
+
+        List<AccountBatchItemDTO> results = new ArrayList<>(accounts.size());
+        List<AccountDTO> valid = new ArrayList<>(accounts.size());
+        List<AccountBatchItemDTO> validResults = new ArrayList<>(accounts.size());
+        for (int i = 0; i < accounts.size(); i++) {
+            try {
+                AccountDTO limits = newAccountLimits(accounts.get(i));
+                AccountBatchItemDTO result = new AccountBatchItemDTO(i, HttpStatus.CREATED.value(), limits, null);
+                valid.add(limits);
+                validResults.add(result);
+                results.add(result);
+            } catch (ResourceException e) {
+                results.add(new AccountBatchItemDTO(i, e.getHttpStatus().value(), null, e.getError()));
+            }
+        }
+
+        if (!valid.isEmpty()) {
+            List<AccountDTO> inserted = accountRepository.insertAccounts(valid);
+            for (int i = 0; i < validResults.size(); i++) {
+                validResults.get(i).setAccount(inserted.get(i));
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Valida os limites de uma nova conta e retorna uma conta com os limites de crédito e saque preenchidos.
+     *
+     * @param account conta que será persistida
+     * @return AccountDTO
+     */
+    private AccountDTO newAccountLimits(AccountDTO account) {
         if(account == null || (account.getAvailableCreditLimit() == null && account.getAvailableWithdrawalLimit() == null))
             throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("conta.limite.nao.informado"));
 
@@ -53,7 +126,11 @@ public class AccountService {
         if(availableCreditLimitAmount == 0 && availableWithdrawalLimitAmount == 0)
             throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("conta.limite.nao.informado"));
 
-        return accountRepository.insertAccount(availableCreditLimitAmount, availableWithdrawalLimitAmount);
+        AccountDTO limits = new AccountDTO();
+        limits.setAvailableCreditLimit(new AvailableLimitDTO(availableCreditLimitAmount));
+        limits.setAvailableWithdrawalLimit(new AvailableLimitDTO(availableWithdrawalLimitAmount));
+
+        return limits;
     }
 
     /**
@@ -67,6 +144,10 @@ public class AccountService {
         if(accountId == null || account == null)
             throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("conta.nao.existente"));
 
+        UnitOfWork unitOfWork = UnitOfWork.current();
+        if (unitOfWork != null)
+            unitOfWork.flush();
+
         AccountDTO accountDB = accountRepository.findAccount(accountId);
         if(accountDB == null)
             throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("conta.nao.existente"));
@@ -86,19 +167,151 @@ public class AccountService {
     }
 
     /**
-     * Abate o valor do pagamento no limite de crédito ou de retirada da conta.
+     * Atualiza em lote os limites das contas da lista. Todas as contas são lidas de uma só vez e cada item é
+     * validado contra os limites resultantes dos itens anteriores da lista, como se as atualizações fossem feitas
+     * uma a uma; os itens válidos são gravados juntos e os inválidos retornam o erro no seu item.
+     *
+     * @param accounts contas com os valores a serem somados aos seus limites
+     * @return List<AccountBatchItemDTO>
+     */
+    public List<AccountBatchItemDTO> updateAccounts(List<AccountDTO> accounts) {
+        batchValidate(accounts);
+
+        UnitOfWork unitOfWork = UnitOfWork.current();
+        if (unitOfWork != null)
+            unitOfWork.flush();
+
+        Set<Integer> accountIds = new HashSet<>();
+        for (AccountDTO account : accounts) {
+            if (account != null && account.getAccountId() != null)
+                accountIds.add(account.getAccountId());
+        }
+
+        Map<Integer, AccountDTO> accountsDB = accountRepository.findAccounts(accountIds);
+
+        List<AccountBatchItemDTO> results = new ArrayList<>(accounts.size());
+        List<AccountDTO> valid = new ArrayList<>(accounts.size());
+        for (int i = 0; i < accounts.size(); i++) {
+            AccountDTO account = accounts.get(i);
+            AccountDTO accountDB = account != null ? accountsDB.get(account.getAccountId()) : null;
+            try {
+                if (accountDB == null)
+                    throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("conta.nao.existente"));
+
+                double creditAmount = limitAmount(account.getAvailableCreditLimit());
+                double withdrawalAmount = limitAmount(account.getAvailableWithdrawalLimit());
+                double creditAmountDB = limitAmount(accountDB.getAvailableCreditLimit());
+                double withdrawalAmountDB = limitAmount(accountDB.getAvailableWithdrawalLimit());
+
+                if(creditAmount < 0 && creditAmountDB < Math.abs(creditAmount))
+                    throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("conta.limite.credito.insuficiente"));
+
+                if(withdrawalAmount < 0 && withdrawalAmountDB < Math.abs(withdrawalAmount))
+                    throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("conta.limite.saque.insuficiente"));
+
+                AccountDTO updated = new AccountDTO();
+                updated.setAccountId(accountDB.getAccountId());
+                updated.setAvailableCreditLimit(new AvailableLimitDTO(creditAmountDB + creditAmount));
+                updated.setAvailableWithdrawalLimit(new AvailableLimitDTO(withdrawalAmountDB + withdrawalAmount));
+                accountsDB.put(updated.getAccountId(), updated);
+
+                valid.add(account);
+                results.add(new AccountBatchItemDTO(i, HttpStatus.CREATED.value(), updated, null));
+            } catch (ResourceException e) {
+                results.add(new AccountBatchItemDTO(i, e.getHttpStatus().value(), null, e.getError()));
+            }
+        }
+
+        if (!valid.isEmpty()) {
+            accountRepository.updateAccounts(valid);
+            for (AccountDTO account : valid) {
+                accountCache.write(account.getAccountId(), null);
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Método utilizado para validar o tamanho de uma lista de contas cadastradas ou atualizadas em lote.
+     *
+     * @param accounts contas do lote
+     */
+    private void batchValidate(List<AccountDTO> accounts) {
+        if (accounts == null || accounts.isEmpty() || accounts.size() > batchMaxSize)
+            throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("conta.lote.invalido"));
+    }
+
+    private static double limitAmount(AvailableLimitDTO limit) {
+        return limit != null ? valueOrZero(limit.getAmount()) : 0.00;
+    }
+
+    /**
+     * Abate o valor da transação no limite de crédito ou de retirada da conta e no seu saldo devedor.
      *
      * @param transaction transação corrente
      */
     public void updateLimitAccount(TransactionDTO transaction, Double amount) {
         Integer accountId = transaction.getAccountId();
         if (transaction.getOperationTypeId() == OperationType.SAQUE.getId()) {
-            updateAccount(accountId, null, amount);
+            updateLimitAccount(accountId, null, amount, null, amount);
         } else {
-            updateAccount(accountId, amount, null);
+            updateLimitAccount(accountId, amount, null, null, amount);
         }
     }
 
+    /**
+     * Soma de uma só vez os valores abatidos aos limites de crédito e de retirada e aos saldos credor e devedor da conta.
+     * Dentro de uma transação, os valores são acumulados e gravados em um único update antes do commit.
+     *
+     * @param accountId             identificador da conta
+     * @param creditLimitDelta      valor a ser somado ao limite de crédito
+     * @param withdrawalLimitDelta  valor a ser somado ao limite de retirada
+     * @param creditBalanceDelta    valor a ser somado ao saldo credor
+     * @param debtBalanceDelta      valor a ser somado ao saldo devedor
+     */
+    public void updateLimitAccount(Integer accountId, Double creditLimitDelta, Double withdrawalLimitDelta, Double creditBalanceDelta, Double debtBalanceDelta) {
+        BalanceDeltas deltas = new BalanceDeltas(creditLimitDelta, withdrawalLimitDelta, creditBalanceDelta, debtBalanceDelta);
+
+        UnitOfWork unitOfWork = UnitOfWork.current();
+        if (unitOfWork == null) {
+            writeBalances(accountId, deltas);
+            return;
+        }
+
+        unitOfWork.write(BALANCES, accountId, deltas, BalanceDeltas::plus, pending -> writeBalances(accountId, pending));
+    }
+
+    /**
+     * Retorna o saldo credor mantido na conta, somado aos valores ainda não gravados na transação corrente.
+     *
+     * @param accountId identificador da conta
+     * @return Double
+     */
+    public Double getCreditBalance(Integer accountId) {
+        UnitOfWork unitOfWork = UnitOfWork.current();
+        if (unitOfWork == null)
+            return valueOrZero(accountRepository.findCreditBalance(accountId));
+
+        Double creditBalance = valueOrZero(unitOfWork.read(CREDIT_BALANCE, accountId, () -> accountRepository.findCreditBalance(accountId)));
+        BalanceDeltas pending = unitOfWork.pending(BALANCES, accountId);
+
+        return pending != null ? creditBalance + valueOrZero(pending.creditBalance) : creditBalance;
+    }
+
+    /**
+     * Grava os valores acumulados nos limites e saldos da conta e atualiza a conta no cache de contas.
+     *
+     * @param accountId identificador da conta
+     * @param deltas    valores a serem somados aos limites e saldos
+     */
+    private void writeBalances(Integer accountId, BalanceDeltas deltas) {
+        AccountDTO account = accountRepository.updateBalances(accountId, deltas.creditLimit, deltas.withdrawalLimit, deltas.creditBalance, deltas.debtBalance);
+
+        if (deltas.creditLimit != null || deltas.withdrawalLimit != null)
+            accountCache.write(accountId, account);
+    }
+
     /**
      * Delega a operação de update de contas para o método update da classe repository.
      *
@@ -108,25 +321,103 @@ public class AccountService {
      * @return AccountDTO
      */
     private AccountDTO updateAccount(Integer accountId, Double availableCreditLimitAmount, Double availableWithdrawalLimitAmount){
-        return accountRepository.updateAccount(accountId, availableCreditLimitAmount, availableWithdrawalLimitAmount);
+        AccountDTO account = accountRepository.updateAccount(accountId, availableCreditLimitAmount, availableWithdrawalLimitAmount);
+        accountCache.write(accountId, null);
+
+        return account;
     }
 
     /**
-     * Delega a operação de busca de contas para o método find da classe repository.
+     * Delega a leitura das contas, conta a conta, para o método stream da classe repository.
      *
-     * @return List<AccountDTO>
+     * @param after   identificador da última conta já lida
+     * @param limit   quantidade máxima de contas lidas
+     * @param handler receptor dos limites de cada conta
      */
-    public List<AccountDTO> getAccounts(){
-        return accountRepository.findAccounts();
+    @Transactional(readOnly = true)
+    public void getAccounts(Integer after, Integer limit, AccountLimitsHandler handler){
+        pageValidate(limit);
+
+        accountRepository.streamAccounts(after, limit, handler);
     }
 
     /**
-     * Delega a operação de busca de uma conta para o método find da classe repository.
+     * Método utilizado para validar o limite de uma página de contas antes do início da leitura.
+     *
+     * @param limit quantidade máxima de contas lidas
+     */
+    public void pageValidate(Integer limit) {
+        if (limit != null && limit <= 0)
+            throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("conta.paginacao.invalida"));
+    }
+
+    /**
+     * Busca a conta no cache de contas, delegando para o método find da classe repository quando ela não está no cache.
+     * Dentro de uma transação, a conta é lida uma única vez e os limites devolvidos incluem os valores ainda não gravados.
      *
      * @param accountId identificador da conta
      * @return AccountDTO
      */
     public AccountDTO getAccount(Integer accountId) {
-        return accountRepository.findAccount(accountId);
+        UnitOfWork unitOfWork = UnitOfWork.current();
+        if (unitOfWork == null)
+            return accountCache.get(accountId, accountRepository::findAccount);
+
+        AccountDTO account = unitOfWork.read(ACCOUNT, accountId, () -> accountCache.get(accountId, accountRepository::findAccount));
+        if (account == null)
+            return null;
+
+        BalanceDeltas pending = unitOfWork.pending(BALANCES, accountId);
+        AccountDTO copy = new AccountDTO();
+        copy.setAccountId(account.getAccountId());
+        copy.setAvailableCreditLimit(pendingLimit(account.getAvailableCreditLimit(), pending != null ? pending.creditLimit : null));
+        copy.setAvailableWithdrawalLimit(pendingLimit(account.getAvailableWithdrawalLimit(), pending != null ? pending.withdrawalLimit : null));
+
+        return copy;
+    }
+
+    private static AvailableLimitDTO pendingLimit(AvailableLimitDTO limit, Double delta) {
+        if (limit == null || limit.getAmount() == null)
+            return limit != null ? new AvailableLimitDTO(limit.getAmount()) : null;
+
+        return new AvailableLimitDTO(limit.getAmount() + valueOrZero(delta));
+    }
+
+    private static double valueOrZero(Double value) {
+        return value != null ? value : 0.00;
+    }
+
+    /**
+     * Valores a serem somados aos limites e saldos da conta, na ordem das colunas atualizadas pelo repository.
+     * Valores nulos indicam colunas que não serão alteradas.
+     */
+    private static class BalanceDeltas {
+
+        private final Double creditLimit;
+
+        private final Double withdrawalLimit;
+
+        private final Double creditBalance;
+
+        private final Double debtBalance;
+
+        BalanceDeltas(Double creditLimit, Double withdrawalLimit, Double creditBalance, Double debtBalance) {
+            this.creditLimit = creditLimit;
+            this.withdrawalLimit = withdrawalLimit;
+            this.creditBalance = creditBalance;
+            this.debtBalance = debtBalance;
+        }
+
+        BalanceDeltas plus(BalanceDeltas other) {
+            return new BalanceDeltas(sum(creditLimit, other.creditLimit), sum(withdrawalLimit, other.withdrawalLimit),
+                    sum(creditBalance, other.creditBalance), sum(debtBalance, other.debtBalance));
+        }
+
+        private static Double sum(Double value, Double other) {
+            if (value == null)
+                return other;
+
+            return other == null ? value : value + other;
+        }
     }
 }
@@ -0,0 +1,358 @@
+package com.teste.rotinapagamento.service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teste.rotinapagamento.auxiliar.IdempotencyKey;
+import com.teste.rotinapagamento.auxiliar.SourceMessage;
+import com.teste.rotinapagamento.dto.IdempotentResponseDTO;
+import com.teste.rotinapagamento.exception.ResourceException;
+import com.teste.rotinapagamento.repository.IdempotencyRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Execução idempotente das requisições feitas com o cabeçalho Idempotency-Key. A primeira requisição com uma chave
+ * reserva a chave e grava a sua resposta na mesma transação da base de dados em que é efetivada; as repetições
+ * recebem a resposta gravada sem executar a operação novamente. As respostas mais recentes ficam também em um
+ * cache em memória, limitado por payment-routine.idempotency.cache-size.
+ *
+ * Apenas as requisições efetivadas têm a resposta gravada: uma requisição recusada não altera nada e pode ser
+ * repetida com a mesma chave. As respostas gravadas expiram após payment-routine.idempotency.retention-hours.
+ *
+ * As operações que confirmam as suas alterações em transações próprias (por exemplo, POST /payments/batch) usam
+ * executeOutsideTransaction: a chave é reservada e confirmada antes da operação e a resposta é gravada depois, em
+ * outra transação. Enquanto a resposta não é gravada, as repetições recebem 409.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Service
+@ManagedResource(objectName = "com.teste.rotinapagamento:type=IdempotencyService")
+public class IdempotencyService {
+
+	private static final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+	private static final int MAX_KEY_LENGTH = 255;
+
+	@Autowired
+	private SourceMessage sourceMessage;
+
+	@Autowired
+	private IdempotencyRepository idempotencyRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private final int cacheSize;
+
+	private final long retentionMillis;
+
+	private final LinkedHashMap<IdempotencyKey, IdempotentResponseDTO> responses;
+
+	private final LongAdder replays = new LongAdder();
+
+	private TransactionTemplate transactionTemplate;
+
+	private ScheduledExecutorService purger;
+
+	@Autowired
+	public IdempotencyService(@Value("${payment-routine.idempotency.cache-size:10000}") int cacheSize,
+							  @Value("${payment-routine.idempotency.retention-hours:24}") long retentionHours) {
+		this.cacheSize = cacheSize;
+		this.retentionMillis = TimeUnit.HOURS.toMillis(retentionHours);
+		this.responses = new LinkedHashMap<IdempotencyKey, IdempotentResponseDTO>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<IdempotencyKey, IdempotentResponseDTO> eldest) {
+				return size() > IdempotencyService.this.cacheSize;
+			}
+		};
+	}
+
+	@PostConstruct
+	public void init() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+
+		purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "idempotency-purge");
+			thread.setDaemon(true);
+			return thread;
+		});
+		purger.scheduleWithFixedDelay(this::purgeExpired, 1, 1, TimeUnit.HOURS);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		purger.shutdownNow();
+	}
+
+	/**
+	 * Monta a chave de idempotência da requisição ou retorna null quando o cabeçalho Idempotency-Key não foi enviado.
+	 *
+	 * @param scope   operação em que a chave foi usada (por exemplo, "POST /transactions")
+	 * @param key     valor do cabeçalho Idempotency-Key
+	 * @param request corpo da requisição
+	 * @return IdempotencyKey
+	 */
+	public IdempotencyKey key(String scope, String key, Object request) {
+		if (key == null)
+			return null;
+
+		if (key.trim().isEmpty() || key.length() > MAX_KEY_LENGTH)
+			throw new ResourceException(HttpStatus.BAD_REQUEST, sourceMessage.getMessage("idempotencia.chave.invalida"));
+
+		return new IdempotencyKey(scope, key, fingerprint(request));
+	}
+
+	/**
+	 * Retorna a resposta gravada para a chave ou null quando a chave ainda não foi usada (ou não foi informada).
+	 *
+	 * @param key chave de idempotência
+	 * @return IdempotentResponseDTO
+	 */
+	public IdempotentResponseDTO find(IdempotencyKey key) {
+		if (key == null)
+			return null;
+
+		IdempotentResponseDTO response = cached(key);
+		if (response == null) {
+			response = idempotencyRepository.findResponse(key, expiredBefore());
+			if (response == null || response.getResponse() == null)
+				return null;
+
+			cache(key, response);
+		}
+
+		if (!response.getFingerprint().equals(key.getFingerprint()))
+			throw new ResourceException(HttpStatus.UNPROCESSABLE_ENTITY, sourceMessage.getMessage("idempotencia.chave.reutilizada"));
+
+		replays.increment();
+		return response;
+	}
+
+	/**
+	 * Executa a operação uma única vez por chave: reserva a chave, executa a operação e grava a sua resposta na mesma
+	 * transação. Se a chave já tiver sido usada (por exemplo, por uma requisição concorrente), retorna a resposta
+	 * gravada sem executar a operação. Sem chave, apenas executa a operação.
+	 *
+	 * @param key        chave de idempotência
+	 * @param httpStatus status HTTP da resposta da operação
+	 * @param action     operação que será executada
+	 * @return IdempotentResponseDTO
+	 */
+	public IdempotentResponseDTO execute(IdempotencyKey key, HttpStatus httpStatus, Supplier<?> action) {
+		if (key == null) {
+			IdempotentResponseDTO response = new IdempotentResponseDTO();
+			response.setHttpStatus(httpStatus.value());
+			response.setBody(action.get());
+			return response;
+		}
+
+		IdempotentResponseDTO response = transactionTemplate.execute(status -> {
+			if (!idempotencyRepository.insertKey(key, httpStatus.value(), expiredBefore()))
+				return null;
+
+			Object body = action.get();
+			String json = toJson(body);
+			idempotencyRepository.updateResponse(key, json);
+
+			IdempotentResponseDTO executed = executed(key, httpStatus, json);
+			if (TransactionSynchronizationManager.isSynchronizationActive()) {
+				TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+					@Override
+					public void afterCommit() {
+						cache(key, executed);
+					}
+				});
+			} else {
+				cache(key, executed);
+			}
+
+			return withBody(httpStatus, json, body);
+		});
+
+		if (response != null)
+			return response;
+
+		// A chave foi usada por uma requisição concorrente, já confirmada.
+		return stored(key);
+	}
+
+	/**
+	 * Executa uma operação que confirma as suas alterações em transações próprias uma única vez por chave, sem
+	 * manter uma transação aberta durante a operação: a chave é reservada e confirmada antes da operação e a sua
+	 * resposta é gravada depois, em outra transação. Se a operação for recusada (erro 4xx), a chave é liberada; em
+	 * qualquer outra falha, a chave continua reservada e sem resposta, para que uma repetição não execute a operação
+	 * novamente, e as repetições recebem 409 até a chave expirar. Sem chave, apenas executa a operação.
+	 *
+	 * @param key        chave de idempotência
+	 * @param httpStatus status HTTP da resposta da operação
+	 * @param action     operação que será executada; deve lançar um erro 4xx apenas antes de alterar algo
+	 * @return IdempotentResponseDTO
+	 */
+	public IdempotentResponseDTO executeOutsideTransaction(IdempotencyKey key, HttpStatus httpStatus, Supplier<?> action) {
+		if (key == null)
+			return execute(null, httpStatus, action);
+
+		Boolean claimed = transactionTemplate.execute(status -> idempotencyRepository.insertKey(key, httpStatus.value(), expiredBefore()));
+		if (!Boolean.TRUE.equals(claimed))
+			return stored(key);
+
+		Object body;
+		try {
+			body = action.get();
+		} catch (ResourceException e) {
+			if (e.getHttpStatus().is4xxClientError())
+				transactionTemplate.execute(status -> {
+					idempotencyRepository.deleteKey(key);
+					return null;
+				});
+			throw e;
+		}
+
+		String json = toJson(body);
+		try {
+			transactionTemplate.execute(status -> {
+				idempotencyRepository.updateResponse(key, json);
+				return null;
+			});
+		} catch (RuntimeException e) {
+			log.error("Não foi possível gravar a resposta da chave de idempotência {} ({}); a chave continua reservada.", key.getKey(), key.getScope(), e);
+			throw e;
+		}
+
+		cache(key, executed(key, httpStatus, json));
+		return withBody(httpStatus, json, body);
+	}
+
+	@ManagedOperation(description = "Remove as respostas expiradas da base de dados e do cache")
+	public int purgeExpired() {
+		synchronized (this) {
+			long expiredBefore = System.currentTimeMillis() - retentionMillis;
+			responses.values().removeIf(response -> response.getCreatedAt() < expiredBefore);
+		}
+
+		try {
+			int purged = idempotencyRepository.deleteExpiredResponses(expiredBefore());
+			if (purged > 0)
+				log.info("{} chaves de idempotência expiradas removidas.", purged);
+
+			return purged;
+		} catch (RuntimeException e) {
+			log.warn("Não foi possível remover as chaves de idempotência expiradas.", e);
+			return 0;
+		}
+	}
+
+	@ManagedAttribute(description = "Quantidade de respostas no cache")
+	public synchronized int getSize() {
+		return responses.size();
+	}
+
+	@ManagedAttribute(description = "Quantidade máxima de respostas no cache")
+	public int getCacheSize() {
+		return cacheSize;
+	}
+
+	@ManagedAttribute(description = "Requisições repetidas respondidas com a resposta gravada")
+	public long getReplays() {
+		return replays.sum();
+	}
+
+	private synchronized IdempotentResponseDTO cached(IdempotencyKey key) {
+		IdempotentResponseDTO response = responses.get(key);
+		if (response != null && response.getCreatedAt() < System.currentTimeMillis() - retentionMillis) {
+			responses.remove(key);
+			return null;
+		}
+
+		return response;
+	}
+
+	private synchronized void cache(IdempotencyKey key, IdempotentResponseDTO response) {
+		if (cacheSize > 0)
+			responses.put(key, response);
+	}
+
+	/**
+	 * Retorna a resposta gravada para uma chave já reservada por outra requisição, ou 409 enquanto ela não tem resposta.
+	 */
+	private IdempotentResponseDTO stored(IdempotencyKey key) {
+		IdempotentResponseDTO stored = find(key);
+		if (stored == null)
+			throw new ResourceException(HttpStatus.CONFLICT, sourceMessage.getMessage("idempotencia.requisicao.concorrente"));
+
+		return stored;
+	}
+
+	private IdempotentResponseDTO executed(IdempotencyKey key, HttpStatus httpStatus, String json) {
+		IdempotentResponseDTO executed = new IdempotentResponseDTO();
+		executed.setFingerprint(key.getFingerprint());
+		executed.setHttpStatus(httpStatus.value());
+		executed.setResponse(json);
+		executed.setCreatedAt(System.currentTimeMillis());
+		return executed;
+	}
+
+	private IdempotentResponseDTO withBody(HttpStatus httpStatus, String json, Object body) {
+		IdempotentResponseDTO withBody = new IdempotentResponseDTO();
+		withBody.setHttpStatus(httpStatus.value());
+		withBody.setResponse(json);
+		withBody.setBody(body);
+		return withBody;
+	}
+
+	private Timestamp expiredBefore() {
+		return new Timestamp(System.currentTimeMillis() - retentionMillis);
+	}
+
+	private String fingerprint(Object request) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(toJson(request).getBytes(StandardCharsets.UTF_8));
+
+			StringBuilder fingerprint = new StringBuilder();
+			for (byte b : digest) {
+				fingerprint.append(String.format("%02x", b));
+			}
+			return fingerprint.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		}
+	}
+
+	private String toJson(Object value) {
+		try {
+			return objectMapper.writeValueAsString(value);
+		} catch (IOException e) {
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package com.teste.rotinapagamento.service;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.teste.rotinapagamento.auxiliar.OperationType;
+import com.teste.rotinapagamento.dto.TransactionDTO;
+
+/**
+ * Plano de abatimento de um pagamento nas transações pendentes de uma conta. O plano é calculado
+ * inteiramente em memória e depois aplicado na base de dados de uma só vez.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class PaymentAllocation {
+
+    private final Integer accountId;
+
+    private Double paymentBalance;
+
+    private final Map<Integer, Double> transactionDeltas = new LinkedHashMap<>();
+
+    private Double creditLimitDelta;
+
+    private Double withdrawalLimitDelta;
+
+    private double creditBalanceDelta;
+
+    private double debtBalanceDelta;
+
+    private PaymentAllocation(Integer accountId, Double paymentBalance) {
+        this.accountId = accountId;
+        this.paymentBalance = paymentBalance;
+    }
+
+    /**
+     * Calcula o abatimento do pagamento nas transações passadas, que devem estar na ordem de cobrança.
+     *
+     * @param payment      transação de pagamento
+     * @param transactions transações pendentes de pagamento da conta
+     * @return PaymentAllocation
+     */
+    public static PaymentAllocation plan(TransactionDTO payment, List<TransactionDTO> transactions) {
+        PaymentAllocation allocation = new PaymentAllocation(payment.getAccountId(), payment.getAmount());
+
+        if (transactions != null) {
+            for (TransactionDTO transaction : transactions) {
+                if (allocation.paymentBalance <= 0) break;
+
+                allocation.allocate(transaction);
+            }
+        }
+
+        return allocation;
+    }
+
+    /**
+     * Realiza o abatimento do pagamento em uma transação pendente de pagamento.
+     *
+     * @param transaction transação que terá valor descontado
+     */
+    private void allocate(TransactionDTO transaction) {
+        Double transactionBalance = transaction.getBalance();
+        Double balance = paymentBalance;
+        Double downValue = 0.0;
+        if (transactionBalance > 0) {
+            balance += transactionBalance;
+            downValue -= transactionBalance;
+        } else {
+            downValue = Math.abs(transactionBalance) >= Math.abs(paymentBalance) ? paymentBalance : Math.abs(transactionBalance);
+        }
+
+        record(transaction.getTransactionId(), transaction.getOperationTypeId(), downValue, balance - downValue);
+    }
+
+    /**
+     * Registra o abatimento de uma transação, calculado por allocate ou pela função allocate_payment da base de
+     * dados, e o saldo do pagamento após o abatimento.
+     *
+     * @param transactionId   identificador da transação abatida
+     * @param operationTypeId tipo de operação da transação abatida
+     * @param downValue       valor somado ao balanço da transação
+     * @param paymentBalance  saldo do pagamento após o abatimento
+     */
+    public void record(Integer transactionId, Integer operationTypeId, double downValue, double paymentBalance) {
+        transactionDeltas.merge(transactionId, downValue, Double::sum);
+
+        if (operationTypeId == OperationType.SAQUE.getId()) {
+            withdrawalLimitDelta = withdrawalLimitDelta != null ? withdrawalLimitDelta + downValue : downValue;
+        } else {
+            creditLimitDelta = creditLimitDelta != null ? creditLimitDelta + downValue : downValue;
+        }
+
+        if (operationTypeId == OperationType.PAGAMENTO.getId()) {
+            creditBalanceDelta += downValue;
+        } else {
+            debtBalanceDelta += downValue;
+        }
+
+        this.paymentBalance = paymentBalance;
+    }
+
+    public Integer getAccountId() {
+        return accountId;
+    }
+
+    public Double getPaymentBalance() {
+        return paymentBalance;
+    }
+
+    public Map<Integer, Double> getTransactionDeltas() {
+        return Collections.unmodifiableMap(transactionDeltas);
+    }
+
+    public Double getCreditLimitDelta() {
+        return creditLimitDelta;
+    }
+
+    public Double getWithdrawalLimitDelta() {
+        return withdrawalLimitDelta;
+    }
+
+    /**
+     * Variação do saldo credor da conta, já incluindo o valor que restará no próprio pagamento.
+     *
+     * @return Double
+     */
+    public Double getCreditBalanceDelta() {
+        double delta = creditBalanceDelta + paymentBalance;
+        return delta != 0 ? delta : null;
+    }
+
+    /**
+     * Variação do saldo devedor da conta, isto é, da soma dos balanços das compras e saques.
+     *
+     * @return Double
+     */
+    public Double getDebtBalanceDelta() {
+        return debtBalanceDelta != 0 ? debtBalanceDelta : null;
+    }
+
+    public boolean isEmpty() {
+        return transactionDeltas.isEmpty();
+    }
+}
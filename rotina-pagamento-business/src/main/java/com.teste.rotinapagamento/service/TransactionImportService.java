@@ -0,0 +1,287 @@
+package com.teste.rotinapagamento.service;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teste.rotinapagamento.auxiliar.OperationType;
+import com.teste.rotinapagamento.auxiliar.SourceMessage;
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.dto.TransactionImportDTO;
+import com.teste.rotinapagamento.exception.ResourceException;
+import com.teste.rotinapagamento.repository.AccountCache;
+import com.teste.rotinapagamento.repository.TransactionImportRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Importação em lote de transações históricas, em CSV ou NDJSON (um objeto JSON por linha, com os mesmos campos de
+ * POST /transactions). As transações são lidas e gravadas com COPY à medida que chegam, sem passar pelas regras de
+ * abatimento: o balanço informado (ou o próprio valor, quando omitido) é gravado como está e, ao final, os limites e
+ * saldos das contas são atualizados em um único comando. A importação é atômica: um erro em qualquer linha desfaz
+ * todas as transações importadas.
+ *
+ * O CSV deve ter cabeçalho com as colunas account_id, operation_type_id e amount e, opcionalmente, balance,
+ * event_date e due_date (datas em milissegundos, como na API).
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Service
+@Transactional
+public class TransactionImportService {
+
+	public static final String CSV = "csv";
+
+	public static final String NDJSON = "ndjson";
+
+	private static final Logger log = LoggerFactory.getLogger(TransactionImportService.class);
+
+	@Autowired
+	private SourceMessage sourceMessage;
+
+	@Autowired
+	private TransactionImportRepository transactionImportRepository;
+
+	@Autowired
+	private AccountCache accountCache;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Value("${payment-routine.ledger.mode:database}")
+	private String ledgerMode;
+
+	/**
+	 * Importa as transações recebidas pela API. Com o livro-razão em memória, que não enxergaria as transações
+	 * importadas, a importação só é feita pela linha de comando (ver importFile).
+	 *
+	 * @param input  conteúdo a importar
+	 * @param format formato do conteúdo (csv ou ndjson)
+	 * @return TransactionImportDTO
+	 */
+	public TransactionImportDTO importTransactions(InputStream input, String format) {
+		if ("memory".equals(ledgerMode))
+			throw new ResourceException(HttpStatus.CONFLICT, sourceMessage.getMessage("transacao.importacao.indisponivel"));
+
+		return importStream(input, format);
+	}
+
+	/**
+	 * Importa as transações de um arquivo, com o formato definido pela extensão (.csv ou .ndjson/.jsonl). Usado
+	 * pela linha de comando na subida da aplicação, antes da carga do livro-razão em memória.
+	 *
+	 * @param path caminho do arquivo
+	 * @return TransactionImportDTO
+	 * @throws IOException quando o arquivo não pode ser lido
+	 */
+	public TransactionImportDTO importFile(String path) throws IOException {
+		String format = path.toLowerCase().endsWith(".csv") ? CSV : NDJSON;
+		try (InputStream input = Files.newInputStream(Paths.get(path))) {
+			return importStream(input, format);
+		}
+	}
+
+	private TransactionImportDTO importStream(InputStream input, String format) {
+		long start = System.currentTimeMillis();
+		BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 64 * 1024);
+
+		transactionImportRepository.createImportTable();
+		long copied;
+		try {
+			copied = transactionImportRepository.copyTransactions(CSV.equals(format) ? new CsvReader(reader) : new NdjsonReader(reader));
+		} catch (UncheckedIOException e) {
+			throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("transacao.importacao.arquivo.invalido"));
+		}
+
+		Integer missingAccount = transactionImportRepository.findMissingAccount();
+		if (missingAccount != null)
+			throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("conta.nao.existente"));
+
+		transactionImportRepository.insertImportedTransactions();
+		List<Integer> accountIds = transactionImportRepository.updateImportedAccounts();
+		for (Integer accountId : accountIds) {
+			accountCache.write(accountId, null);
+		}
+
+		long elapsed = System.currentTimeMillis() - start;
+		log.info("{} transações importadas em {} ms ({} contas atualizadas).", copied, elapsed, accountIds.size());
+
+		return new TransactionImportDTO(copied, accountIds.size(), elapsed);
+	}
+
+	/**
+	 * Valida a transação lida na linha passada e completa o balanço e a data do evento, quando omitidos.
+	 *
+	 * @param transaction transação lida
+	 * @param line        linha do conteúdo importado
+	 * @return TransactionDTO
+	 */
+	private TransactionDTO validate(TransactionDTO transaction, long line) {
+		if (transaction == null || transaction.getAccountId() == null || transaction.getAccountId() <= 0
+				|| transaction.getOperationTypeId() == null || transaction.getAmount() == null)
+			throw invalidLine(line);
+
+		if (transaction.getBalance() == null)
+			transaction.setBalance(transaction.getAmount());
+
+		if (transaction.getEventDate() == null)
+			transaction.setEventDate(System.currentTimeMillis());
+
+		double amount = transaction.getAmount();
+		double balance = transaction.getBalance();
+		if (transaction.getOperationTypeId() == OperationType.PAGAMENTO.getId()) {
+			if (amount <= 0 || balance < 0 || balance > amount)
+				throw invalidLine(line);
+		} else if (OperationType.isCompra(transaction.getOperationTypeId()) || OperationType.isSaque(transaction.getOperationTypeId())) {
+			if (amount >= 0 || balance > 0 || balance < amount)
+				throw invalidLine(line);
+		} else {
+			throw invalidLine(line);
+		}
+
+		return transaction;
+	}
+
+	private ResourceException invalidLine(long line) {
+		return new ResourceException(HttpStatus.NOT_ACCEPTABLE, String.format(sourceMessage.getMessage("transacao.importacao.linha.invalida"), line));
+	}
+
+	/**
+	 * Lê uma transação por vez do conteúdo importado, validando cada uma antes de entregá-la.
+	 */
+	private abstract class TransactionReader implements Iterator<TransactionDTO> {
+
+		protected long line;
+
+		private TransactionDTO next;
+
+		protected abstract TransactionDTO read() throws IOException;
+
+		@Override
+		public boolean hasNext() {
+			if (next == null) {
+				try {
+					next = read();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			return next != null;
+		}
+
+		@Override
+		public TransactionDTO next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+
+			TransactionDTO transaction = validate(next, line);
+			next = null;
+			return transaction;
+		}
+	}
+
+	private class CsvReader extends TransactionReader {
+
+		private final BufferedReader reader;
+
+		private int accountId = -1, operationTypeId = -1, amount = -1, balance = -1, eventDate = -1, dueDate = -1;
+
+		private CsvReader(BufferedReader reader) {
+			this.reader = reader;
+			readHeader();
+		}
+
+		private void readHeader() {
+			String header;
+			try {
+				header = reader.readLine();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+
+			line++;
+			List<String> columns = header == null ? Collections.<String>emptyList() : Arrays.asList(header.trim().split(","));
+			accountId = columns.indexOf("account_id");
+			operationTypeId = columns.indexOf("operation_type_id");
+			amount = columns.indexOf("amount");
+			balance = columns.indexOf("balance");
+			eventDate = columns.indexOf("event_date");
+			dueDate = columns.indexOf("due_date");
+
+			if (accountId < 0 || operationTypeId < 0 || amount < 0)
+				throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("transacao.importacao.arquivo.invalido"));
+		}
+
+		@Override
+		protected TransactionDTO read() throws IOException {
+			String row;
+			do {
+				row = reader.readLine();
+				line++;
+			} while (row != null && row.trim().isEmpty());
+
+			if (row == null)
+				return null;
+
+			String[] fields = row.split(",", -1);
+			try {
+				TransactionDTO transaction = new TransactionDTO();
+				transaction.setAccountId(Integer.valueOf(fields[accountId].trim()));
+				transaction.setOperationTypeId(Integer.valueOf(fields[operationTypeId].trim()));
+				transaction.setAmount(Double.valueOf(fields[amount].trim()));
+				transaction.setBalance(balance >= 0 && !fields[balance].trim().isEmpty() ? Double.valueOf(fields[balance].trim()) : null);
+				transaction.setEventDate(eventDate >= 0 && !fields[eventDate].trim().isEmpty() ? Long.valueOf(fields[eventDate].trim()) : null);
+				transaction.setDueDate(dueDate >= 0 && !fields[dueDate].trim().isEmpty() ? Long.valueOf(fields[dueDate].trim()) : null);
+				return transaction;
+			} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+				throw invalidLine(line);
+			}
+		}
+	}
+
+	private class NdjsonReader extends TransactionReader {
+
+		private final MappingIterator<TransactionDTO> transactions;
+
+		private NdjsonReader(BufferedReader reader) {
+			try {
+				this.transactions = objectMapper.readerFor(TransactionDTO.class).readValues(reader);
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+
+		@Override
+		protected TransactionDTO read() throws IOException {
+			try {
+				if (!transactions.hasNextValue())
+					return null;
+
+				TransactionDTO transaction = transactions.nextValue();
+				line++;
+				return transaction;
+			} catch (IOException e) {
+				throw invalidLine(line + 1);
+			}
+		}
+	}
+}
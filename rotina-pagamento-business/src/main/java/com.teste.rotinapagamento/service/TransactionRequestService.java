@@ -0,0 +1,325 @@
+package com.teste.rotinapagamento.service;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teste.rotinapagamento.auxiliar.AccountLaneExecutor;
+import com.teste.rotinapagamento.auxiliar.GroupCommitExecutor;
+import com.teste.rotinapagamento.auxiliar.SourceMessage;
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.dto.TransactionRequestDTO;
+import com.teste.rotinapagamento.exception.ResourceException;
+import com.teste.rotinapagamento.repository.TransactionRequestRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Processamento assíncrono de transações e listas de pagamentos. A requisição é validada, gravada na tabela
+ * transaction_requests e respondida de imediato; um conjunto de workers a processa depois, pelo mesmo caminho
+ * da chamada síncrona, e grava o resultado na mesma transação da base de dados que efetiva a requisição.
+ *
+ * As requisições de uma mesma conta são processadas por um mesmo worker, na ordem em que foram aceitas (listas
+ * de pagamentos seguem a conta do primeiro pagamento). Requisições ainda pendentes quando a aplicação é
+ * encerrada são processadas novamente na próxima subida (ver recover).
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Service
+@ManagedResource(objectName = "com.teste.rotinapagamento:type=TransactionRequestService")
+public class TransactionRequestService {
+
+	private static final Logger log = LoggerFactory.getLogger(TransactionRequestService.class);
+
+	@Autowired
+	private SourceMessage sourceMessage;
+
+	@Autowired
+	private TransactionService transactionService;
+
+	@Autowired
+	private TransactionRequestRepository transactionRequestRepository;
+
+	@Autowired
+	private AccountLaneExecutor accountLaneExecutor;
+
+	@Autowired
+	private GroupCommitExecutor groupCommitExecutor;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Value("${payment-routine.async.enabled:false}")
+	private boolean enabled;
+
+	@Value("${payment-routine.async.workers:4}")
+	private int workerCount;
+
+	@Value("${payment-routine.async.queue-capacity:10000}")
+	private int queueCapacity;
+
+	private ExecutorService[] workers;
+
+	private Semaphore permits;
+
+	private TransactionTemplate transactionTemplate;
+
+	private final Set<Integer> queued = ConcurrentHashMap.newKeySet();
+
+	private volatile boolean stopping;
+
+	@PostConstruct
+	public void init() {
+		if (enabled)
+			start(workerCount, queueCapacity);
+	}
+
+	void start(int count, int capacity) {
+		permits = new Semaphore(capacity);
+		transactionTemplate = new TransactionTemplate(transactionManager);
+		workers = new ExecutorService[count];
+		for (int i = 0; i < count; i++) {
+			final int worker = i;
+			workers[i] = Executors.newSingleThreadExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "transaction-request-" + worker);
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * Encerra os workers. As requisições que ainda não começaram a ser processadas permanecem pendentes na base de
+	 * dados e são retomadas na próxima subida; as que estão em processamento têm alguns segundos para terminar.
+	 */
+	@PreDestroy
+	public void shutdown() throws InterruptedException {
+		if (workers == null)
+			return;
+
+		stopping = true;
+		for (ExecutorService worker : workers) {
+			worker.shutdown();
+		}
+
+		for (ExecutorService worker : workers) {
+			worker.awaitTermination(5, TimeUnit.SECONDS);
+		}
+	}
+
+	public boolean isEnabled() {
+		return workers != null;
+	}
+
+	/**
+	 * Valida a transação e a grava na fila para processamento assíncrono.
+	 *
+	 * @param transaction transação que será cadastrada
+	 * @return TransactionRequestDTO
+	 */
+	public TransactionRequestDTO acceptTransaction(TransactionDTO transaction) {
+		transactionService.validateTransaction(transaction);
+		return accept(TransactionRequestDTO.TRANSACTION, transaction.getAccountId(), transaction);
+	}
+
+	/**
+	 * Valida a lista de pagamentos e a grava na fila para processamento assíncrono.
+	 *
+	 * @param payments transações de pagamento
+	 * @return TransactionRequestDTO
+	 */
+	public TransactionRequestDTO acceptPayments(List<TransactionDTO> payments) {
+		transactionService.validatePayments(payments);
+		return accept(TransactionRequestDTO.PAYMENTS, payments.get(0).getAccountId(), payments);
+	}
+
+	/**
+	 * Retorna o status da requisição aceita para processamento assíncrono.
+	 *
+	 * @param requestId identificador da requisição
+	 * @return TransactionRequestDTO
+	 */
+	public TransactionRequestDTO getRequest(Integer requestId) {
+		TransactionRequestDTO request = requestId != null ? transactionRequestRepository.findRequest(requestId) : null;
+		if (request == null)
+			throw new ResourceException(HttpStatus.NOT_FOUND, sourceMessage.getMessage("transacao.requisicao.nao.existente"));
+
+		return request;
+	}
+
+	/**
+	 * Devolve à fila as requisições que ficaram pendentes na base de dados, por exemplo após uma parada da aplicação.
+	 * Deve ser chamado depois que o esquema da base de dados estiver pronto.
+	 */
+	public void recover() {
+		if (!isEnabled())
+			return;
+
+		List<TransactionRequestDTO> requests = transactionRequestRepository.findPendingRequests();
+		if (!requests.isEmpty())
+			log.info("Retomando {} requisições assíncronas pendentes.", requests.size());
+
+		for (TransactionRequestDTO request : requests) {
+			if (!queued.add(request.getRequestId()))
+				continue;
+
+			permits.acquireUninterruptibly();
+			submit(request);
+		}
+	}
+
+	@ManagedAttribute(description = "Requisições aceitas aguardando processamento")
+	public int getPending() {
+		return queued.size();
+	}
+
+	@ManagedAttribute(description = "Quantidade máxima de requisições aguardando processamento")
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	private TransactionRequestDTO accept(String requestType, Integer accountId, Object body) {
+		if (!permits.tryAcquire())
+			throw new ResourceException(HttpStatus.SERVICE_UNAVAILABLE, sourceMessage.getMessage("transacao.fila.cheia"));
+
+		TransactionRequestDTO request;
+		try {
+			request = transactionRequestRepository.insertRequest(requestType, accountId, toJson(body));
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+
+		queued.add(request.getRequestId());
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			submit(request);
+			return request;
+		}
+
+		// Aceita dentro de uma transação (por exemplo, com Idempotency-Key): entra na fila somente após o commit.
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+			@Override
+			public void afterCompletion(int status) {
+				if (status == STATUS_COMMITTED) {
+					submit(request);
+				} else {
+					queued.remove(request.getRequestId());
+					permits.release();
+				}
+			}
+		});
+		return request;
+	}
+
+	private void submit(TransactionRequestDTO request) {
+		int worker = request.getAccountId() == null ? 0 : Math.floorMod(request.getAccountId().hashCode(), workers.length);
+		workers[worker].execute(() -> {
+			try {
+				if (!stopping)
+					process(request);
+			} finally {
+				queued.remove(request.getRequestId());
+				permits.release();
+			}
+		});
+	}
+
+	/**
+	 * Processa a requisição pelo mesmo caminho da chamada síncrona. O resultado é gravado na mesma transação que
+	 * efetiva a requisição; recusas e falhas são gravadas depois que a transação é desfeita.
+	 *
+	 * @param request requisição pendente
+	 */
+	void process(TransactionRequestDTO request) {
+		try {
+			if (TransactionRequestDTO.TRANSACTION.equals(request.getRequestType())) {
+				TransactionDTO transaction = objectMapper.readValue(request.getPayload(), TransactionDTO.class);
+				accountLaneExecutor.execute(request.getAccountId(),
+						() -> groupCommitExecutor.execute(request.getAccountId(), () -> settle(request, () -> transactionService.insertTransaction(transaction))));
+			} else {
+				List<TransactionDTO> payments = objectMapper.readValue(request.getPayload(), new TypeReference<List<TransactionDTO>>() {});
+				List<Integer> accountIds = payments.stream().map(TransactionDTO::getAccountId).collect(Collectors.toList());
+				accountLaneExecutor.execute(accountIds, () -> settle(request, () -> transactionService.insertPayments(payments)));
+			}
+		} catch (ResourceException e) {
+			if (e.getHttpStatus().is5xxServerError()) {
+				fail(request, e);
+			} else {
+				complete(request, TransactionRequestDTO.REJECTED, e);
+			}
+		} catch (IOException | RuntimeException e) {
+			fail(request, e);
+		}
+	}
+
+	/**
+	 * Registra a falha da requisição. Falhas causadas pelo encerramento da aplicação não são registradas, para que a
+	 * requisição seja processada novamente na próxima subida.
+	 *
+	 * @param request requisição pendente
+	 * @param e       erro ocorrido no processamento
+	 */
+	private void fail(TransactionRequestDTO request, Exception e) {
+		if (stopping) {
+			log.warn("Requisição assíncrona {} interrompida pelo encerramento da aplicação; ela será processada na próxima subida.",
+					request.getRequestId());
+			return;
+		}
+
+		log.error("Falha no processamento da requisição assíncrona {}.", request.getRequestId(), e);
+		complete(request, TransactionRequestDTO.FAILED, new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado")));
+	}
+
+	private Object settle(TransactionRequestDTO request, Supplier<Object> settlement) {
+		return transactionTemplate.execute(status -> {
+			Object response = settlement.get();
+			if (!transactionRequestRepository.completeRequest(request.getRequestId(), TransactionRequestDTO.COMPLETED, HttpStatus.CREATED.value(), toJson(response)))
+				throw new IllegalStateException("Requisição " + request.getRequestId() + " já processada.");
+
+			return response;
+		});
+	}
+
+	private void complete(TransactionRequestDTO request, String status, ResourceException e) {
+		try {
+			transactionRequestRepository.completeRequest(request.getRequestId(), status, e.getHttpStatus().value(), toJson(e.getError()));
+		} catch (RuntimeException completionError) {
+			log.error("Não foi possível gravar o resultado da requisição assíncrona {}; ela será processada novamente na próxima subida.",
+					request.getRequestId(), completionError);
+		}
+	}
+
+	private String toJson(Object value) {
+		try {
+			return objectMapper.writeValueAsString(value);
+		} catch (IOException e) {
+			throw new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+		}
+	}
+}
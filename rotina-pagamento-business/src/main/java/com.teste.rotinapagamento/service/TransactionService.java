@@ -2,20 +2,35 @@ package com.teste.rotinapagamento.service;
 
 import java.sql.Date;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+
+import com.teste.rotinapagamento.auxiliar.AccountLaneExecutor;
 import com.teste.rotinapagamento.auxiliar.SourceMessage;
 import com.teste.rotinapagamento.auxiliar.OperationType;
 import com.teste.rotinapagamento.dto.AccountDTO;
+import com.teste.rotinapagamento.dto.PaymentBatchItemDTO;
 import com.teste.rotinapagamento.dto.TransactionDTO;
 import com.teste.rotinapagamento.exception.ResourceException;
 import com.teste.rotinapagamento.repository.TransactionRepository;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
@@ -25,6 +40,10 @@ import org.springframework.transaction.annotation.Transactional;
 @Transactional
 public class TransactionService {
 
+	public static final int MAX_PAGE_SIZE = 1000;
+
+	private static final Logger log = LoggerFactory.getLogger(TransactionService.class);
+
 	@Autowired
 	private SourceMessage sourceMessage;
 
@@ -34,6 +53,37 @@ public class TransactionService {
 	@Autowired
 	private AccountService accountService;
 
+	@Autowired
+	private AccountLaneExecutor accountLaneExecutor;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Value("${payment-routine.payment-batch.max-size:100000}")
+	private int paymentBatchMaxSize;
+
+	private TransactionTemplate transactionTemplate;
+
+	@Value("${payment-routine.payment-allocation.mode:java}")
+	private String allocationMode;
+
+	@Value("${payment-routine.ledger.mode:database}")
+	private String ledgerMode;
+
+	private boolean databaseAllocation;
+
+	@PostConstruct
+	public void init() {
+		transactionTemplate = new TransactionTemplate(transactionManager);
+
+		if ("sql".equals(allocationMode) && !"database".equals(ledgerMode)) {
+			log.info("Abatimento de pagamentos na base de dados desabilitado: disponível apenas com payment-routine.ledger.mode = database.");
+			return;
+		}
+
+		databaseAllocation = "sql".equals(allocationMode);
+	}
+
 	/**
 	 * Delega a inserção de transações para o método insert da classe repository.
 	 *
@@ -62,11 +112,10 @@ public class TransactionService {
 
 		Double balance = transaction.getBalance();
 		Date dueDate = transaction.getDueDate() != null ? new Date(transaction.getDueDate()) : null;
-		Integer transactionId = transactionRepository.insertTransaction(transaction.getAccountId(), transaction.getOperationTypeId(), transaction.getAmount(), balance, dueDate);
+		TransactionDTO transactionDB = transactionRepository.insertTransaction(transaction.getAccountId(), transaction.getOperationTypeId(), transaction.getAmount(), balance, dueDate);
 		accountService.updateLimitAccount(transaction, balance);
 
-		transaction = transactionRepository.getTransaction(transactionId, null, null, null);
-		return transaction;
+		return transactionDB;
 	}
 
 	/**
@@ -91,9 +140,7 @@ public class TransactionService {
 		paymentValidate(payment);
 
 		Double balance = downPaymentInTransactions(payment);
-		Integer transactionId = transactionRepository.insertTransaction(payment.getAccountId(), OperationType.PAGAMENTO.getId(), payment.getAmount(), balance, null);
-
-		return transactionRepository.getTransaction(transactionId, null, null, null);
+		return transactionRepository.insertTransaction(payment.getAccountId(), OperationType.PAGAMENTO.getId(), payment.getAmount(), balance, null);
 	}
 
 	/**
@@ -116,6 +163,81 @@ public class TransactionService {
 		return transactions;
 	}
 
+	/**
+	 * Abate os pagamentos da listagem agrupados por conta. Os pagamentos de cada conta são abatidos em ordem, em uma
+	 * transação própria, na fila da conta (AccountLaneExecutor), e os de contas diferentes em paralelo. Se um pagamento
+	 * falhar, nenhum pagamento da sua conta é registrado e todos eles recebem o erro, sem afetar as demais contas.
+	 * Não participa da transação corrente: cada conta usa a sua.
+	 *
+	 * @param payments transações de pagamento
+	 * @return List<PaymentBatchItemDTO> resultado de cada pagamento, na ordem da listagem
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public List<PaymentBatchItemDTO> settlePayments(List<TransactionDTO> payments) {
+		if (payments == null || payments.isEmpty() || payments.size() > paymentBatchMaxSize)
+			throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("transacao.lote.pagamento.invalido"));
+
+		Map<Integer, List<Integer>> indexesByAccount = new LinkedHashMap<>();
+		for (int i = 0; i < payments.size(); i++) {
+			TransactionDTO payment = payments.get(i);
+			indexesByAccount.computeIfAbsent(payment != null ? payment.getAccountId() : null, accountId -> new ArrayList<>()).add(i);
+		}
+
+		Map<Integer, Future<List<TransactionDTO>>> settlements = new LinkedHashMap<>();
+		for (Map.Entry<Integer, List<Integer>> account : indexesByAccount.entrySet()) {
+			List<TransactionDTO> accountPayments = account.getValue().stream().map(payments::get).collect(Collectors.toList());
+			settlements.put(account.getKey(), accountLaneExecutor.submit(account.getKey(),
+					() -> transactionTemplate.execute(status -> insertPayments(accountPayments))));
+		}
+
+		PaymentBatchItemDTO[] results = new PaymentBatchItemDTO[payments.size()];
+		for (Map.Entry<Integer, List<Integer>> account : indexesByAccount.entrySet()) {
+			List<Integer> indexes = account.getValue();
+			try {
+				List<TransactionDTO> settled = accountLaneExecutor.await(settlements.get(account.getKey()));
+				for (int i = 0; i < indexes.size(); i++) {
+					results[indexes.get(i)] = new PaymentBatchItemDTO(indexes.get(i), HttpStatus.CREATED.value(), settled.get(i), null);
+				}
+			} catch (RuntimeException e) {
+				ResourceException error = e instanceof ResourceException ? (ResourceException) e
+						: new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, sourceMessage.getMessage("erro.inesperado"));
+				if (!(e instanceof ResourceException))
+					log.warn("Não foi possível abater os pagamentos da conta {}.", account.getKey(), e);
+
+				for (Integer index : indexes) {
+					results[index] = new PaymentBatchItemDTO(index, error.getHttpStatus().value(), null, error.getError());
+				}
+			}
+		}
+
+		return Arrays.asList(results);
+	}
+
+	/**
+	 * Valida os dados obrigatórios da transação sem cadastrá-la, para que ela possa ser aceita e processada depois.
+	 * A transação não é somente leitura, para que a conta seja lida na base primária e não em uma réplica atrasada.
+	 *
+	 * @param transaction transação que será cadastrada
+	 */
+	public void validateTransaction(TransactionDTO transaction) {
+		insertTransactionValidate(transaction);
+	}
+
+	/**
+	 * Valida os dados obrigatórios de cada pagamento da listagem sem cadastrá-los, para que eles possam ser aceitos
+	 * e processados depois.
+	 *
+	 * @param payments transações de pagamento
+	 */
+	public void validatePayments(List<TransactionDTO> payments) {
+		if (payments == null || payments.size() <= 0)
+			throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("transacao.lista.pagamento.nula"));
+
+		for (TransactionDTO payment : payments) {
+			insertTransactionValidate(payment);
+		}
+	}
+
 	/**
 	 * Realiza o abatimento do pagamento nas transações pendentes de pagamento.
 	 *
@@ -124,44 +246,54 @@ public class TransactionService {
 	 * @throws ResourceException
 	 */
 	protected Double downPaymentInTransactions(TransactionDTO payment) throws ResourceException {
-		Double paymentBalance = payment.getAmount();
+		if (databaseAllocation)
+			return downPaymentInDatabase(payment);
 
 		List<TransactionDTO> transactions = transactionRepository.findTransactionsToDownPayment(payment.getAccountId());
-		if(transactions != null){
-			for (TransactionDTO transaction : transactions) {
-				if (paymentBalance <= 0) break;
+		PaymentAllocation allocation = PaymentAllocation.plan(payment, transactions);
 
-				paymentBalance = downPaymentInTransactionBalance(transaction, paymentBalance);
-			}
-		}
+		applyPaymentAllocation(allocation);
 
-		return paymentBalance;
+		return allocation.getPaymentBalance();
 	}
 
 	/**
-	 * Realiza o abatimento do pagamento em uma transação pendente de pagamento.
+	 * Realiza o abatimento do pagamento com a função allocate_payment da base de dados, que aplica as mesmas regras de
+	 * PaymentAllocation e atualiza os balanços das transações em uma única chamada. Os limites e saldos da conta são
+	 * atualizados como no abatimento calculado em memória.
 	 *
-	 * @param transaction transação que terá valor descontado
-	 * @param paymentBalance valor do pagamento
+	 * @param payment transação de pagamento
 	 * @return Double
 	 */
-	@Async
-	protected Double downPaymentInTransactionBalance(TransactionDTO transaction, Double paymentBalance) {
-		Double transactionBalance = transaction.getBalance();
-		Double downValue = 0.0;
-		if (transactionBalance > 0) {
-			paymentBalance += transactionBalance;
-			downValue -= transactionBalance;
-		} else {
-			downValue = Math.abs(transactionBalance) >= Math.abs(paymentBalance) ? paymentBalance : Math.abs(transactionBalance);
-		}
+	protected Double downPaymentInDatabase(TransactionDTO payment) {
+		PaymentAllocation allocation = PaymentAllocation.plan(payment, null);
+		transactionRepository.allocatePayment(payment.getAccountId(), payment.getAmount(), allocation::record);
 
-		transactionRepository.updateBalanceByTransaction(transaction.getTransactionId(), downValue);
-		accountService.updateLimitAccount(transaction, downValue);
+		updateAccountAllocation(allocation);
 
-		paymentBalance -= downValue;
+		return allocation.getPaymentBalance();
+	}
 
-		return paymentBalance;
+	/**
+	 * Persiste o plano de abatimento: os balanços das transações em lote e os limites e saldos da conta em um único update.
+	 *
+	 * @param allocation plano de abatimento do pagamento
+	 */
+	protected void applyPaymentAllocation(PaymentAllocation allocation) {
+		if (!allocation.isEmpty())
+			transactionRepository.updateBalanceByTransactions(allocation.getAccountId(), allocation.getTransactionDeltas());
+
+		updateAccountAllocation(allocation);
+	}
+
+	/**
+	 * Soma à conta, de uma só vez, os limites e saldos abatidos pelo pagamento.
+	 *
+	 * @param allocation plano de abatimento do pagamento
+	 */
+	private void updateAccountAllocation(PaymentAllocation allocation) {
+		accountService.updateLimitAccount(allocation.getAccountId(), allocation.getCreditLimitDelta(), allocation.getWithdrawalLimitDelta(),
+				allocation.getCreditBalanceDelta(), allocation.getDebtBalanceDelta());
 	}
 
 	/**
@@ -170,16 +302,11 @@ public class TransactionService {
 	 * @param transaction transação que terá valor descontado pelo saldo credor
 	 */
 	protected void downCreditBalance(TransactionDTO transaction) {
-		TransactionDTO transactionWithCreditBalance = transactionRepository.getTransaction(null, transaction.getAccountId(), OperationType.PAGAMENTO.getId(), true);
-
-        Double transactionBalance = transaction.getAmount();
-        Double newTransactionBalance = null;
+		Integer accountId = transaction.getAccountId();
+		Double creditBalance = accountService.getCreditBalance(accountId);
 
-		if(transactionWithCreditBalance != null)
-            newTransactionBalance = downTransactionBalanceInCreditBalance(transactionWithCreditBalance, transactionBalance);
-
-		if(newTransactionBalance != null){
-			transaction.setBalance(newTransactionBalance);
+		if (creditBalance != null && creditBalance > 0) {
+			transaction.setBalance(downTransactionBalanceInCreditBalance(accountId, creditBalance, transaction.getAmount()));
 		} else {
 			transaction.setBalance(transaction.getAmount());
 		}
@@ -188,16 +315,16 @@ public class TransactionService {
 	/**
 	 * Abate o balance da trasação no saldo credor da conta.
 	 *
-	 * @param transactionWithCreditBalance transação com o saldo credor da conta
+	 * @param accountId identificador da conta
+	 * @param creditBalance saldo credor da conta
 	 * @param transactionBalance transação que terá o valor descontado
 	 * @return Double
 	 */
-	@Async
-	protected Double downTransactionBalanceInCreditBalance(TransactionDTO transactionWithCreditBalance, Double transactionBalance) {
-		Double creditBalance = transactionWithCreditBalance.getBalance();
+	protected Double downTransactionBalanceInCreditBalance(Integer accountId, Double creditBalance, Double transactionBalance) {
 		Double downValue = Math.abs(transactionBalance) >= Math.abs(creditBalance) ? creditBalance : Math.abs(transactionBalance);
 
-		transactionRepository.updateBalanceByTransaction(transactionWithCreditBalance.getTransactionId(), downValue*(-1));
+		transactionRepository.downCreditBalance(accountId, downValue);
+		accountService.updateLimitAccount(accountId, null, null, downValue*(-1), null);
 		transactionBalance += downValue;
 
 		return transactionBalance;
@@ -213,12 +340,13 @@ public class TransactionService {
 			throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("transacao.cadastro.valor.nulo"));
 
 		AccountDTO account = accountService.getAccount(transaction.getAccountId());
+		Double creditBalance = accountService.getCreditBalance(account.getAccountId());
 
-		Double totalCredit = getTotalCredit(account.getAccountId(), account.getAvailableCreditLimit().getAmount());
+		Double totalCredit = getTotalCredit(creditBalance, account.getAvailableCreditLimit().getAmount());
 		if (OperationType.isCompra(transaction.getOperationTypeId()) && totalCredit < Math.abs(transaction.getAmount()))
 			throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("conta.limite.credito.insuficiente"));
 
-		totalCredit = getTotalCredit(account.getAccountId(), account.getAvailableWithdrawalLimit().getAmount());
+		totalCredit = getTotalCredit(creditBalance, account.getAvailableWithdrawalLimit().getAmount());
 		if (OperationType.isSaque(transaction.getOperationTypeId()) && totalCredit < Math.abs(transaction.getAmount()))
 			throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("conta.limite.saque.insuficiente"));
 	}
@@ -226,14 +354,13 @@ public class TransactionService {
 	/**
 	 * Calcula o valor total de crédito para compra ou saque de uma conta.
 	 *
-	 * @param accountId identificador da conta
+	 * @param creditBalance saldo credor da conta
 	 * @param creditLimitByOperation limite de crédito da conta para uma determinada operação
 	 * @return Double
 	 */
-	private Double getTotalCredit(Integer accountId, Double creditLimitByOperation){
-		TransactionDTO transactionWithCreditBalance = transactionRepository.getTransaction(null, accountId, OperationType.PAGAMENTO.getId(), true);
-		if(transactionWithCreditBalance != null && transactionWithCreditBalance.getBalance() > 0){
-			return creditLimitByOperation + transactionWithCreditBalance.getBalance();
+	private Double getTotalCredit(Double creditBalance, Double creditLimitByOperation){
+		if(creditBalance != null && creditBalance > 0){
+			return creditLimitByOperation + creditBalance;
 		} else {
 			return creditLimitByOperation;
 		}
@@ -268,18 +395,36 @@ public class TransactionService {
 		if (payment.getAmount() <= 0)
 			throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("transacao.pagamento.nulo"));
 
-		boolean hasPositiveBalance = transactionRepository.hasBalanceByOperation(payment.getAccountId(), OperationType.getPositiveOperations());
-		if (hasPositiveBalance)
+		Double creditBalance = accountService.getCreditBalance(payment.getAccountId());
+		if (creditBalance != null && creditBalance > 0)
 			throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("transacao.saldo.credor.existente"));
 	}
 
 	/**
-	 * Retorna a lista de transações cadastradas na base de dados.
+	 * Retorna uma página das transações cadastradas na base de dados, a partir da transação passada.
 	 *
-	 * @param account_id identificador da conta associada a transação
+	 * @param accountId identificador da conta associada a transação
+	 * @param after     identificador da última transação da página anterior
+	 * @param limit     quantidade máxima de transações da página
 	 * @return List<TransactionDTO>
 	 */
-	public List<TransactionDTO> getTransactions(Integer account_id) {
-		return transactionRepository.getTransactions(account_id);
+	@Transactional(readOnly = true)
+	public List<TransactionDTO> getTransactions(Integer accountId, Integer after, Integer limit) {
+		if (limit == null || limit <= 0)
+			throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, sourceMessage.getMessage("transacao.paginacao.invalida"));
+
+		return transactionRepository.getTransactions(accountId, after, Math.min(limit, MAX_PAGE_SIZE));
+	}
+
+	/**
+	 * Entrega ao consumidor, uma a uma, todas as transações cadastradas na base de dados sem carregá-las em memória.
+	 *
+	 * @param accountId identificador da conta associada a transação
+	 * @param after     identificador da última transação já lida
+	 * @param consumer  consumidor de cada transação lida
+	 */
+	@Transactional(readOnly = true)
+	public void streamTransactions(Integer accountId, Integer after, Consumer<TransactionDTO> consumer) {
+		transactionRepository.streamTransactions(accountId, after, consumer);
 	}
 }
@@ -0,0 +1,51 @@
+-- Function: public.allocate_payment(integer, double precision, boolean)
+
+-- DROP FUNCTION public.allocate_payment(integer, double precision, boolean);
+
+-- Abate o pagamento nas transações pendentes da conta com as mesmas regras de PaymentAllocation: as transações são
+-- percorridas por charge_order, event_date e transaction_id até que o pagamento se esgote. Retorna uma linha por
+-- transação abatida, com o valor somado ao balanço da transação e o saldo do pagamento após o abatimento. Com
+-- p_apply, os balanços das transações também são atualizados.
+
+CREATE OR REPLACE FUNCTION public.allocate_payment(p_account_id integer, p_amount double precision, p_apply boolean)
+    RETURNS TABLE(transaction_id integer, operation_type_id integer, down_value double precision, payment_balance double precision) AS
+$$
+#variable_conflict use_column
+DECLARE
+    t record;
+    v_payment_balance double precision := p_amount;
+    v_down_value double precision;
+BEGIN
+    FOR t IN
+        SELECT tr.transaction_id, tr.operation_type_id, tr.balance
+        FROM public.transactions tr
+        JOIN public.operations_types ot ON (ot.operation_type_id = tr.operation_type_id)
+        WHERE tr.balance <> 0 AND tr.account_id = p_account_id
+        ORDER BY ot.charge_order ASC, tr.event_date ASC, tr.transaction_id ASC
+    LOOP
+        EXIT WHEN v_payment_balance <= 0;
+
+        IF t.balance > 0 THEN
+            v_payment_balance := v_payment_balance + t.balance;
+            v_down_value := -t.balance;
+        ELSIF abs(t.balance) >= abs(v_payment_balance) THEN
+            v_down_value := v_payment_balance;
+        ELSE
+            v_down_value := abs(t.balance);
+        END IF;
+
+        v_payment_balance := v_payment_balance - v_down_value;
+
+        IF p_apply THEN
+            UPDATE public.transactions SET balance = balance + v_down_value
+            WHERE transaction_id = t.transaction_id AND account_id = p_account_id;
+        END IF;
+
+        transaction_id := t.transaction_id;
+        operation_type_id := t.operation_type_id;
+        down_value := v_down_value;
+        payment_balance := v_payment_balance;
+        RETURN NEXT;
+    END LOOP;
+END;
+$$ LANGUAGE plpgsql;
@@ -5,7 +5,7 @@
 -- DROP SEQUENCE public.accounts_seq;
 
 CREATE SEQUENCE public.accounts_seq
-	INCREMENT BY 1
+	INCREMENT BY 1000
 	MINVALUE 1
 	MAXVALUE 99999999999999
 	START 1
@@ -23,6 +23,8 @@ CREATE TABLE public.accounts
     account_id integer NOT NULL,
     available_credit_limit double precision DEFAULT 0,
     available_withdrawal_limit double precision DEFAULT 0,
+    credit_balance double precision NOT NULL DEFAULT 0,
+    debt_balance double precision NOT NULL DEFAULT 0,
     CONSTRAINT account_id_pk PRIMARY KEY (account_id)
 )
 
@@ -47,7 +49,7 @@ CREATE TABLE public.operations_types
 -- DROP SEQUENCE public.transactions_seq;
 
 CREATE SEQUENCE public.transactions_seq
-	INCREMENT BY 1
+	INCREMENT BY 1000
 	MINVALUE 1
 	MAXVALUE 99999999999999
 	START 1
@@ -80,6 +82,248 @@ CREATE TABLE public.transactions
         ON DELETE NO ACTION
 )
 
+-- Alternativa particionada (payment-routine.transactions.partitions = 4), com subpartições mensais de event_date
+-- (payment-routine.transactions.event-date-interval = month):
+--
+-- CREATE TABLE public.transactions
+-- (
+--     ... mesmas colunas e chaves estrangeiras ...
+--     CONSTRAINT transaction_id_pk PRIMARY KEY (transaction_id, account_id, event_date),
+-- ) PARTITION BY HASH (account_id);
+--
+-- CREATE TABLE public.transactions_p0 PARTITION OF public.transactions
+--     FOR VALUES WITH (MODULUS 4, REMAINDER 0) PARTITION BY RANGE (event_date);
+-- CREATE TABLE public.transactions_p0_default PARTITION OF public.transactions_p0 DEFAULT;
+-- CREATE TABLE public.transactions_p0_2026_10 PARTITION OF public.transactions_p0
+--     FOR VALUES FROM ('2026-10-01') TO ('2026-11-01');
+-- ... idem para os restos 1 a 3 e para os meses seguintes ...
+--
+-- \ir transaction_ids.sql
+--
+-- transaction_ids.sql cria o registro de identificadores que mantém transaction_id único entre as partições.
+
+-----------------------------------------------------------------------------------------------
+
+-- Index: public.transactions_account_id_idx
+
+-- DROP INDEX public.transactions_account_id_idx;
+
+CREATE INDEX transactions_account_id_idx ON public.transactions (account_id, transaction_id);
+
+-----------------------------------------------------------------------------------------------
+
+-- SEQUENCE: public.ledger_entries_seq
+
+-- DROP SEQUENCE public.ledger_entries_seq;
+
+CREATE SEQUENCE public.ledger_entries_seq
+	INCREMENT BY 1
+	MINVALUE 1
+	START 1
+	CACHE 1
+	NO CYCLE;
+
+-----------------------------------------------------------------------------------------------
+
+-- Table: public.ledger_entries
+
+-- DROP TABLE public.ledger_entries;
+
+CREATE TABLE public.ledger_entries
+(
+    entry_id bigint NOT NULL DEFAULT nextval('public.ledger_entries_seq'),
+    account_id integer NOT NULL,
+    transaction_id integer,
+    available_credit_limit double precision NOT NULL DEFAULT 0,
+    available_withdrawal_limit double precision NOT NULL DEFAULT 0,
+    credit_balance double precision NOT NULL DEFAULT 0,
+    debt_balance double precision NOT NULL DEFAULT 0,
+    balance double precision NOT NULL DEFAULT 0,
+    created_at timestamp NOT NULL,
+    snapshot_at timestamp,
+    CONSTRAINT entry_id_pk PRIMARY KEY (entry_id),
+    CONSTRAINT ledger_entries_account_id_fk FOREIGN KEY (account_id)
+        REFERENCES public.accounts (account_id) MATCH SIMPLE
+        ON UPDATE NO ACTION
+        ON DELETE NO ACTION
+)
+
+-----------------------------------------------------------------------------------------------
+
+-- Index: public.ledger_entries_account_pending_idx
+
+-- DROP INDEX public.ledger_entries_account_pending_idx;
+
+CREATE INDEX ledger_entries_account_pending_idx ON public.ledger_entries (account_id) WHERE snapshot_at IS NULL;
+
+-----------------------------------------------------------------------------------------------
+
+-- Index: public.ledger_entries_transaction_pending_idx
+
+-- DROP INDEX public.ledger_entries_transaction_pending_idx;
+
+CREATE INDEX ledger_entries_transaction_pending_idx ON public.ledger_entries (transaction_id)
+    WHERE snapshot_at IS NULL AND transaction_id IS NOT NULL;
+
+-----------------------------------------------------------------------------------------------
+
+-- View: public.ledger_accounts
+
+-- DROP VIEW public.ledger_accounts;
+
+CREATE OR REPLACE VIEW public.ledger_accounts AS
+SELECT a.account_id,
+    a.available_credit_limit + COALESCE(e.available_credit_limit, 0) AS available_credit_limit,
+    a.available_withdrawal_limit + COALESCE(e.available_withdrawal_limit, 0) AS available_withdrawal_limit,
+    a.credit_balance + COALESCE(e.credit_balance, 0) AS credit_balance,
+    a.debt_balance + COALESCE(e.debt_balance, 0) AS debt_balance
+FROM public.accounts a
+LEFT JOIN LATERAL (
+    SELECT SUM(le.available_credit_limit) AS available_credit_limit,
+        SUM(le.available_withdrawal_limit) AS available_withdrawal_limit,
+        SUM(le.credit_balance) AS credit_balance,
+        SUM(le.debt_balance) AS debt_balance
+    FROM public.ledger_entries le
+    WHERE le.account_id = a.account_id AND le.snapshot_at IS NULL AND le.transaction_id IS NULL
+) e ON true;
+
+-----------------------------------------------------------------------------------------------
+
+-- View: public.ledger_transactions
+
+-- DROP VIEW public.ledger_transactions;
+
+CREATE OR REPLACE VIEW public.ledger_transactions AS
+SELECT t.transaction_id, t.account_id, t.operation_type_id, t.amount,
+    t.balance + COALESCE((SELECT SUM(le.balance) FROM public.ledger_entries le
+        WHERE le.transaction_id = t.transaction_id AND le.snapshot_at IS NULL), 0) AS balance,
+    t.event_date, t.due_date
+FROM public.transactions t;
+
+-----------------------------------------------------------------------------------------------
+
+-- Table: public.transactions_archive
+
+-- DROP TABLE public.transactions_archive;
+
+CREATE TABLE public.transactions_archive
+(
+    transaction_id integer NOT NULL,
+    account_id integer NOT NULL,
+    operation_type_id integer NOT NULL,
+    amount double precision NOT NULL,
+    balance double precision NOT NULL,
+    event_date timestamp NOT NULL,
+    due_date timestamp,
+    CONSTRAINT transactions_archive_pk PRIMARY KEY (transaction_id)
+);
+
+-----------------------------------------------------------------------------------------------
+
+-- Index: public.transactions_archive_account_id_idx
+
+-- DROP INDEX public.transactions_archive_account_id_idx;
+
+CREATE INDEX transactions_archive_account_id_idx ON public.transactions_archive (account_id, transaction_id);
+
+-----------------------------------------------------------------------------------------------
+
+-- View: public.transactions_history
+
+-- DROP VIEW public.transactions_history;
+
+CREATE OR REPLACE VIEW public.transactions_history AS
+SELECT transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date FROM public.transactions
+UNION ALL
+SELECT transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date FROM public.transactions_archive;
+
+-----------------------------------------------------------------------------------------------
+
+-- View: public.ledger_transactions_history
+
+-- DROP VIEW public.ledger_transactions_history;
+
+CREATE OR REPLACE VIEW public.ledger_transactions_history AS
+SELECT transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date FROM public.ledger_transactions
+UNION ALL
+SELECT transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date FROM public.transactions_archive;
+
+-----------------------------------------------------------------------------------------------
+
+-- SEQUENCE: public.transaction_requests_seq
+
+-- DROP SEQUENCE public.transaction_requests_seq;
+
+CREATE SEQUENCE public.transaction_requests_seq
+	INCREMENT BY 1000
+	MINVALUE 1
+	MAXVALUE 99999999999999
+	START 1
+	CACHE 1
+	NO CYCLE;
+
+-----------------------------------------------------------------------------------------------
+
+-- Table: public.transaction_requests
+
+-- DROP TABLE public.transaction_requests;
+
+CREATE TABLE public.transaction_requests
+(
+    request_id integer NOT NULL,
+    request_type character varying(20) NOT NULL,
+    account_id integer,
+    payload text NOT NULL,
+    status character varying(20) NOT NULL,
+    http_status integer,
+    response text,
+    created_at timestamp NOT NULL,
+    completed_at timestamp,
+    CONSTRAINT request_id_pk PRIMARY KEY (request_id)
+)
+
+-----------------------------------------------------------------------------------------------
+
+-- Index: public.transaction_requests_pending_idx
+
+-- DROP INDEX public.transaction_requests_pending_idx;
+
+CREATE INDEX transaction_requests_pending_idx ON public.transaction_requests (created_at, request_id) WHERE status = 'PENDING';
+
+-----------------------------------------------------------------------------------------------
+
+-- Table: public.idempotency_keys
+
+-- DROP TABLE public.idempotency_keys;
+
+CREATE TABLE public.idempotency_keys
+(
+    scope character varying(100) NOT NULL,
+    idempotency_key character varying(255) NOT NULL,
+    fingerprint character varying(64) NOT NULL,
+    http_status integer NOT NULL,
+    response text,
+    created_at timestamp NOT NULL,
+    CONSTRAINT idempotency_keys_pk PRIMARY KEY (scope, idempotency_key)
+)
+
+-----------------------------------------------------------------------------------------------
+
+-- Index: public.idempotency_keys_created_at_idx
+
+-- DROP INDEX public.idempotency_keys_created_at_idx;
+
+CREATE INDEX idempotency_keys_created_at_idx ON public.idempotency_keys (created_at);
+
+-----------------------------------------------------------------------------------------------
+
+-- Function: public.allocate_payment(integer, double precision, boolean)
+
+-- A definição da função fica apenas em allocate_payment.sql, o mesmo arquivo executado na subida da aplicação; no
+-- psql, \ir o inclui a partir do diretório deste script.
+
+\ir allocate_payment.sql
+
 -----------------------------------------------------------------------------------------------
 
 -- Carregar tabela public.operations_types
@@ -0,0 +1,52 @@
+-- Table: public.transaction_ids
+
+-- DROP TRIGGER transactions_register_ids ON public.transactions;
+-- DROP FUNCTION public.register_transaction_ids();
+-- DROP TABLE public.transaction_ids;
+
+-- Com a tabela transactions particionada, a chave primária inclui as colunas de partição (account_id e event_date) e
+-- não garante mais que transaction_id seja único entre partições. A tabela transaction_ids registra o identificador
+-- de toda transação inserida em transactions, na mesma transação do insert, e a sua chave primária recusa um
+-- identificador repetido. Os identificadores continuam registrados depois que as transações são arquivadas, de modo
+-- que transactions_archive também recebe no máximo uma linha por transaction_id.
+
+DO
+$$
+BEGIN
+    IF to_regclass('public.transaction_ids') IS NULL THEN
+        CREATE TABLE public.transaction_ids (
+            transaction_id integer NOT NULL,
+            CONSTRAINT transaction_ids_pk PRIMARY KEY (transaction_id)
+        );
+
+        INSERT INTO public.transaction_ids(transaction_id) SELECT transaction_id FROM public.transactions;
+
+        IF to_regclass('public.transactions_archive') IS NOT NULL THEN
+            INSERT INTO public.transaction_ids(transaction_id) SELECT transaction_id FROM public.transactions_archive;
+        END IF;
+    END IF;
+END
+$$;
+
+-- O trigger é por comando (FOR EACH STATEMENT) e lê as linhas inseridas da tabela de transição: cada insert em
+-- transactions, com uma ou muitas linhas, faz um único insert em transaction_ids.
+
+CREATE OR REPLACE FUNCTION public.register_transaction_ids()
+    RETURNS trigger AS
+$$
+BEGIN
+    INSERT INTO public.transaction_ids(transaction_id) SELECT transaction_id FROM new_transactions;
+    RETURN NULL;
+END;
+$$ LANGUAGE plpgsql;
+
+DO
+$$
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_trigger WHERE tgrelid = 'public.transactions'::regclass AND tgname = 'transactions_register_ids') THEN
+        CREATE TRIGGER transactions_register_ids AFTER INSERT ON public.transactions
+            REFERENCING NEW TABLE AS new_transactions
+            FOR EACH STATEMENT EXECUTE FUNCTION public.register_transaction_ids();
+    END IF;
+END
+$$;
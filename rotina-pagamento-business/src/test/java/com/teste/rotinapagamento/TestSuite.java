@@ -1,6 +1,25 @@
 package com.teste.rotinapagamento;
 
+import com.teste.rotinapagamento.auxiliar.AccountLaneExecutorTest;
+import com.teste.rotinapagamento.auxiliar.GroupCommitExecutorTest;
+import com.teste.rotinapagamento.auxiliar.UnitOfWorkTest;
+import com.teste.rotinapagamento.repository.AccountCacheTest;
+import com.teste.rotinapagamento.repository.AccountLedgerTest;
+import com.teste.rotinapagamento.repository.ChargeOrdersTest;
+import com.teste.rotinapagamento.repository.LedgerSnapshotterTest;
+import com.teste.rotinapagamento.repository.LedgerWriterTest;
+import com.teste.rotinapagamento.repository.PaymentAllocationFunctionTest;
+import com.teste.rotinapagamento.repository.QueryCountingJdbcTemplateTest;
+import com.teste.rotinapagamento.repository.ReplicaRoutingDataSourceTest;
+import com.teste.rotinapagamento.repository.SequenceIdAllocatorTest;
+import com.teste.rotinapagamento.repository.TransactionArchiverTest;
+import com.teste.rotinapagamento.repository.TransactionIdRegistryTest;
+import com.teste.rotinapagamento.repository.TransactionPartitionMaintainerTest;
 import com.teste.rotinapagamento.service.AccountServiceTest;
+import com.teste.rotinapagamento.service.IdempotencyServiceTest;
+import com.teste.rotinapagamento.service.PaymentAllocationTest;
+import com.teste.rotinapagamento.service.TransactionImportServiceTest;
+import com.teste.rotinapagamento.service.TransactionRequestServiceTest;
 import com.teste.rotinapagamento.service.TransactionServiceTest;
 import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
@@ -12,7 +31,26 @@ import org.junit.runners.Suite;
 @RunWith(Suite.class)
 @Suite.SuiteClasses({
         AccountServiceTest.class,
-        TransactionServiceTest.class
+        TransactionServiceTest.class,
+        PaymentAllocationTest.class,
+        AccountLaneExecutorTest.class,
+        SequenceIdAllocatorTest.class,
+        QueryCountingJdbcTemplateTest.class,
+        AccountCacheTest.class,
+        UnitOfWorkTest.class,
+        AccountLedgerTest.class,
+        GroupCommitExecutorTest.class,
+        TransactionRequestServiceTest.class,
+        IdempotencyServiceTest.class,
+        LedgerSnapshotterTest.class,
+        PaymentAllocationFunctionTest.class,
+        TransactionImportServiceTest.class,
+        ReplicaRoutingDataSourceTest.class,
+        TransactionArchiverTest.class,
+        LedgerWriterTest.class,
+        ChargeOrdersTest.class,
+        TransactionIdRegistryTest.class,
+        TransactionPartitionMaintainerTest.class
 })
 public class TestSuite {
 }
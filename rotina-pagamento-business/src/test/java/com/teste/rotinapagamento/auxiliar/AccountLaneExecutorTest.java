@@ -0,0 +1,159 @@
+package com.teste.rotinapagamento.auxiliar;
+
+import com.teste.rotinapagamento.exception.ResourceException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AccountLaneExecutorTest {
+
+    @InjectMocks
+    private AccountLaneExecutor accountLaneExecutor;
+
+    @Mock
+    private SourceMessage sourceMessage;
+
+    private ExecutorService callers;
+
+    @Before
+    public void init() {
+        when(sourceMessage.getMessage(anyString())).thenReturn("Mensagem de erro retornada!");
+
+        accountLaneExecutor.start(4);
+        callers = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void destroy() {
+        callers.shutdownNow();
+        accountLaneExecutor.shutdown();
+    }
+
+    @Test
+    public void sameAccountRunsSeriallyTest() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            futures.add(callers.submit(() -> accountLaneExecutor.execute(1, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(2);
+                return running.decrementAndGet();
+            })));
+        }
+
+        for (Future<Integer> future : futures) future.get();
+
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void multipleAccountsExcludeSingleAccountWritesTest() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            final int accountId = i % 3;
+            futures.add(callers.submit(() -> accountLaneExecutor.execute(Arrays.asList(1, accountId + 2), () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(2);
+                return running.decrementAndGet();
+            })));
+            futures.add(callers.submit(() -> accountLaneExecutor.execute(1, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(2);
+                return running.decrementAndGet();
+            })));
+        }
+
+        for (Future<Integer> future : futures) future.get();
+
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void nestedExecutionOnSameLaneTest() {
+        Integer result = accountLaneExecutor.execute(1, () -> accountLaneExecutor.execute(Arrays.asList(1, 5), () -> 10));
+        assertEquals(Integer.valueOf(10), result);
+    }
+
+    @Test
+    public void differentAccountsUseDifferentLanesTest() {
+        assertNotEquals(accountLaneExecutor.laneOf(1), accountLaneExecutor.laneOf(2));
+        assertEquals(accountLaneExecutor.laneOf(1), accountLaneExecutor.laneOf(5));
+    }
+
+    @Test
+    public void queryStatisticsArePropagatedToLaneTest() {
+        QueryStatistics statistics = QueryStatistics.begin();
+        try {
+            QueryStatistics laneStatistics = accountLaneExecutor.execute(1, QueryStatistics::current);
+            assertSame(statistics, laneStatistics);
+        } finally {
+            QueryStatistics.end();
+        }
+
+        assertNull(accountLaneExecutor.execute(1, QueryStatistics::current));
+    }
+
+    @Test(expected = ResourceException.class)
+    public void taskExceptionIsPropagatedTest() {
+        accountLaneExecutor.execute(1, () -> {
+            throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, "erro");
+        });
+    }
+
+    @Test
+    public void submittedTasksOfDifferentLanesRunInParallelTest() throws Exception {
+        CountDownLatch bothRunning = new CountDownLatch(2);
+
+        Future<Boolean> first = accountLaneExecutor.submit(1, () -> {
+            bothRunning.countDown();
+            return bothRunning.await(5, TimeUnit.SECONDS);
+        });
+        Future<Boolean> second = accountLaneExecutor.submit(2, () -> {
+            bothRunning.countDown();
+            return bothRunning.await(5, TimeUnit.SECONDS);
+        });
+
+        assertEquals(true, accountLaneExecutor.await(first));
+        assertEquals(true, accountLaneExecutor.await(second));
+    }
+
+    @Test(expected = ResourceException.class)
+    public void awaitRethrowsSubmittedTaskErrorTest() {
+        Future<Object> future = accountLaneExecutor.submit(1, () -> {
+            throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, "Erro");
+        });
+
+        accountLaneExecutor.await(future);
+    }
+}
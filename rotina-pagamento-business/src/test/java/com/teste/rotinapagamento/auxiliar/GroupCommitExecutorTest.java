@@ -0,0 +1,303 @@
+package com.teste.rotinapagamento.auxiliar;
+
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.exception.ResourceException;
+import com.teste.rotinapagamento.repository.SequenceIdAllocator;
+import com.teste.rotinapagamento.repository.TransactionRepository;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class GroupCommitExecutorTest {
+
+    @InjectMocks
+    private GroupCommitExecutor groupCommitExecutor;
+
+    @Mock
+    private SourceMessage sourceMessage;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private ExecutorService callers;
+
+    @Before
+    public void init() {
+        when(sourceMessage.getMessage(anyString())).thenReturn("Mensagem de erro retornada!");
+        when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenAnswer(invocation -> new SimpleTransactionStatus());
+
+        callers = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void destroy() throws InterruptedException {
+        callers.shutdownNow();
+        groupCommitExecutor.shutdown();
+    }
+
+    @Test
+    public void disabledRunsTaskInlineTest() {
+        Thread caller = Thread.currentThread();
+
+        assertEquals(caller, groupCommitExecutor.execute(1, Thread::currentThread));
+        assertFalse(groupCommitExecutor.execute(1, GroupCommitExecutor::isRunningTask));
+        verify(transactionManager, never()).getTransaction(any(TransactionDefinition.class));
+    }
+
+    @Test
+    public void concurrentTasksShareOneTransactionWithoutSavepointsTest() throws Exception {
+        groupCommitExecutor.start(1, 8, TimeUnit.MILLISECONDS.toMicros(500));
+
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            final int value = i;
+            futures.add(callers.submit(() -> groupCommitExecutor.execute(value, () -> GroupCommitExecutor.isRunningTask() ? value : -1)));
+        }
+
+        for (int i = 0; i < 8; i++) assertEquals(Integer.valueOf(i), futures.get(i).get());
+
+        ArgumentCaptor<TransactionDefinition> definitions = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager, atLeastOnce()).getTransaction(definitions.capture());
+        assertTrue(definitions.getAllValues().stream()
+                .allMatch(definition -> definition.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRED));
+        long groups = definitions.getAllValues().size();
+        assertTrue(groups < 8);
+        assertEquals(groups, groupCommitExecutor.getGroups());
+        assertEquals(8, groupCommitExecutor.getTasks());
+        assertEquals(0, groupCommitExecutor.getRetriedGroups());
+    }
+
+    @Test
+    public void tasksRunInAccountOrderTest() throws Exception {
+        groupCommitExecutor.start(1, 4, TimeUnit.SECONDS.toMicros(5));
+
+        List<Integer> accounts = Collections.synchronizedList(new ArrayList<>());
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int accountId = 4; accountId > 0; accountId--) {
+            final int account = accountId;
+            futures.add(callers.submit(() -> groupCommitExecutor.execute(account, () -> accounts.add(account))));
+        }
+
+        for (Future<Boolean> future : futures) assertTrue(future.get());
+
+        assertEquals(Arrays.asList(1, 2, 3, 4), accounts);
+        assertEquals(1, groupCommitExecutor.getGroups());
+    }
+
+    @Test
+    public void tasksOfSameAccountRunInSeparateGroupsTest() throws Exception {
+        groupCommitExecutor.start(1, 2, TimeUnit.MILLISECONDS.toMicros(200));
+
+        Future<Integer> first = callers.submit(() -> groupCommitExecutor.execute(1, () -> 1));
+        Future<Integer> second = callers.submit(() -> groupCommitExecutor.execute(1, () -> 2));
+
+        assertEquals(Integer.valueOf(1), first.get());
+        assertEquals(Integer.valueOf(2), second.get());
+        assertEquals(2, groupCommitExecutor.getGroups());
+        assertEquals(2, groupCommitExecutor.getTasks());
+    }
+
+    @Test
+    public void failedTaskDoesNotFailGroupTest() throws Exception {
+        groupCommitExecutor.start(1, 2, TimeUnit.MILLISECONDS.toMicros(500));
+
+        Future<Integer> failed = callers.submit(() -> groupCommitExecutor.execute(1, () -> {
+            throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, "erro");
+        }));
+        Future<Integer> succeeded = callers.submit(() -> groupCommitExecutor.execute(2, () -> 10));
+
+        assertEquals(Integer.valueOf(10), succeeded.get());
+        try {
+            failed.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(HttpStatus.NOT_ACCEPTABLE, ((ResourceException) e.getCause()).getHttpStatus());
+        }
+
+        verify(transactionManager, times(1)).rollback(any(TransactionStatus.class));
+        verify(transactionManager, atLeast(2)).commit(any(TransactionStatus.class));
+        assertEquals(1, groupCommitExecutor.getRetriedGroups());
+    }
+
+    @Test
+    public void participantFailureDoesNotFailGroupTest() throws Exception {
+        Connection connection = groupConnection();
+        Participant participant = transactionalParticipant();
+        groupCommitExecutor.start(1, 2, TimeUnit.SECONDS.toMicros(5));
+
+        Future<Integer> failed = callers.submit(() -> groupCommitExecutor.execute(1, () -> participant.insert(-1)));
+        Future<Integer> succeeded = callers.submit(() -> groupCommitExecutor.execute(2, () -> participant.insert(10)));
+
+        assertEquals(Integer.valueOf(10), succeeded.get());
+        try {
+            failed.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(HttpStatus.NOT_ACCEPTABLE, ((ResourceException) e.getCause()).getHttpStatus());
+        }
+
+        verify(connection, times(1)).rollback();
+        verify(connection, times(1)).rollback(any(Savepoint.class));
+        verify(connection, times(1)).commit();
+        assertEquals(1, groupCommitExecutor.getRetriedGroups());
+    }
+
+    @Test
+    public void ignoredParticipantFailureFailsOnlyItsTaskTest() throws Exception {
+        Connection connection = groupConnection();
+        Participant participant = transactionalParticipant();
+        groupCommitExecutor.start(1, 2, TimeUnit.SECONDS.toMicros(5));
+
+        Future<Integer> ignored = callers.submit(() -> groupCommitExecutor.execute(1, () -> {
+            try {
+                return participant.insert(-1);
+            } catch (ResourceException e) {
+                return 0;
+            }
+        }));
+        Future<Integer> succeeded = callers.submit(() -> groupCommitExecutor.execute(2, () -> participant.insert(10)));
+
+        assertEquals(Integer.valueOf(10), succeeded.get());
+        try {
+            ignored.get();
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, ((ResourceException) e.getCause()).getHttpStatus());
+        }
+
+        verify(connection, times(1)).rollback(any(Savepoint.class));
+        verify(connection, times(1)).commit();
+    }
+
+    @Test
+    public void failedGroupCommitRunsTasksInOwnTransactionsTest() throws Exception {
+        doThrow(new TransactionSystemException("deadlock detected")).doNothing().when(transactionManager).commit(any(TransactionStatus.class));
+        groupCommitExecutor.start(1, 2, TimeUnit.SECONDS.toMicros(5));
+
+        AtomicInteger calls = new AtomicInteger();
+        Future<Integer> first = callers.submit(() -> groupCommitExecutor.execute(1, () -> calls.incrementAndGet() > 0 ? 1 : 0));
+        Future<Integer> second = callers.submit(() -> groupCommitExecutor.execute(2, () -> calls.incrementAndGet() > 0 ? 2 : 0));
+
+        assertEquals(Integer.valueOf(1), first.get());
+        assertEquals(Integer.valueOf(2), second.get());
+        assertEquals(4, calls.get());
+        verify(transactionManager, times(3)).commit(any(TransactionStatus.class));
+        assertEquals(1, groupCommitExecutor.getSplitGroups());
+        assertEquals(0, groupCommitExecutor.getGroups());
+    }
+
+    @Test
+    public void groupInsertsAreBatchedTest() throws Exception {
+        Connection connection = groupConnection();
+        JdbcTemplate jdbcTemplate = mock(JdbcTemplate.class);
+        SequenceIdAllocator transactionIdAllocator = mock(SequenceIdAllocator.class);
+        when(transactionIdAllocator.nextId()).thenReturn(7, 8);
+        TransactionRepository transactionRepository = new TransactionRepository();
+        ReflectionTestUtils.setField(transactionRepository, "jdbcTemplate", jdbcTemplate);
+        ReflectionTestUtils.setField(transactionRepository, "transactionIdAllocator", transactionIdAllocator);
+        groupCommitExecutor.start(1, 2, TimeUnit.SECONDS.toMicros(5));
+
+        Future<TransactionDTO> first = callers.submit(() -> groupCommitExecutor.execute(1,
+                () -> transactionRepository.insertTransaction(1, OperationType.COMPRA_A_VISTA.getId(), -10.00, -10.00, null)));
+        Future<TransactionDTO> second = callers.submit(() -> groupCommitExecutor.execute(2,
+                () -> transactionRepository.insertTransaction(2, OperationType.COMPRA_A_VISTA.getId(), -20.00, -20.00, null)));
+
+        assertEquals(-10.00, first.get().getAmount(), 0);
+        assertEquals(-20.00, second.get().getAmount(), 0);
+        assertEquals(Long.valueOf(Date.valueOf(LocalDate.now()).getTime()), first.get().getEventDate());
+
+        ArgumentCaptor<BatchPreparedStatementSetter> batch = ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+        verify(jdbcTemplate, times(1)).batchUpdate(startsWith("INSERT INTO public.transactions"), batch.capture());
+        verify(jdbcTemplate, never()).queryForObject(anyString(), any(Object[].class), any(RowMapper.class));
+        assertEquals(2, batch.getValue().getBatchSize());
+        verify(connection, times(1)).commit();
+    }
+
+    /**
+     * Troca o gerenciador de transações simulado pelo GroupCommitTransactionManager, sobre uma conexão simulada.
+     */
+    private Connection groupConnection() throws SQLException {
+        Connection connection = mock(Connection.class);
+        DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+        when(metaData.supportsSavepoints()).thenReturn(true);
+        when(connection.getMetaData()).thenReturn(metaData);
+        when(connection.setSavepoint(anyString())).thenAnswer(invocation -> mock(Savepoint.class));
+
+        DataSource dataSource = mock(DataSource.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+
+        ReflectionTestUtils.setField(groupCommitExecutor, "transactionManager", new GroupCommitTransactionManager(dataSource));
+        return connection;
+    }
+
+    /**
+     * Participante @Transactional, chamado pelo proxy transacional, como os services da aplicação.
+     */
+    private Participant transactionalParticipant() {
+        PlatformTransactionManager manager = (PlatformTransactionManager) ReflectionTestUtils.getField(groupCommitExecutor, "transactionManager");
+
+        ProxyFactory proxyFactory = new ProxyFactory(new Participant());
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new TransactionInterceptor(manager, new AnnotationTransactionAttributeSource()));
+        return (Participant) proxyFactory.getProxy();
+    }
+
+    @Transactional
+    public static class Participant {
+
+        public Integer insert(Integer value) {
+            if (value < 0)
+                throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, "Limite insuficiente");
+
+            return value;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.teste.rotinapagamento.auxiliar;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class UnitOfWorkTest {
+
+    @After
+    public void finish() {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+
+        TransactionSynchronizationManager.unbindResourceIfPossible(UnitOfWork.class);
+    }
+
+    @Test
+    public void noUnitOfWorkOutsideTransactionTest() {
+        assertNull(UnitOfWork.current());
+    }
+
+    @Test
+    public void readsAreMemoizedWithinTransactionTest() {
+        TransactionSynchronizationManager.initSynchronization();
+        AtomicInteger loads = new AtomicInteger();
+
+        UnitOfWork unitOfWork = UnitOfWork.current();
+        assertSame(unitOfWork, UnitOfWork.current());
+
+        assertNull(unitOfWork.read("creditBalance", 1, () -> { loads.incrementAndGet(); return null; }));
+        assertNull(unitOfWork.read("creditBalance", 1, () -> { loads.incrementAndGet(); return 10.00; }));
+        assertEquals(1, loads.get());
+
+        unitOfWork.flush();
+        assertEquals(10.00, unitOfWork.read("creditBalance", 1, () -> { loads.incrementAndGet(); return 10.00; }), 0.001);
+        assertEquals(2, loads.get());
+
+        completeTransaction(true);
+        TransactionSynchronizationManager.initSynchronization();
+        assertNotSame(unitOfWork, UnitOfWork.current());
+    }
+
+    @Test
+    public void pendingWritesAreMergedAndFlushedBeforeCommitTest() {
+        TransactionSynchronizationManager.initSynchronization();
+        List<Double> flushed = new ArrayList<>();
+
+        UnitOfWork unitOfWork = UnitOfWork.current();
+        unitOfWork.write("balances", 1, 10.00, Double::sum, flushed::add);
+        unitOfWork.write("balances", 1, 5.00, Double::sum, flushed::add);
+        unitOfWork.write("balances", 2, 1.00, Double::sum, flushed::add);
+
+        assertEquals(15.00, unitOfWork.<Double>pending("balances", 1), 0.001);
+        assertEquals(0, flushed.size());
+
+        completeTransaction(true);
+
+        assertEquals(2, flushed.size());
+        assertEquals(15.00, flushed.get(0), 0.001);
+        assertEquals(1.00, flushed.get(1), 0.001);
+    }
+
+    @Test
+    public void pendingWritesAreDiscardedOnRollbackTest() {
+        TransactionSynchronizationManager.initSynchronization();
+        List<Double> flushed = new ArrayList<>();
+
+        UnitOfWork.current().write("balances", 1, 10.00, Double::sum, flushed::add);
+        completeTransaction(false);
+
+        assertEquals(0, flushed.size());
+        assertNull(TransactionSynchronizationManager.getResource(UnitOfWork.class));
+    }
+
+    private void completeTransaction(boolean commit) {
+        List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+        if (commit) {
+            for (TransactionSynchronization synchronization : synchronizations) {
+                synchronization.beforeCommit(false);
+            }
+        }
+
+        for (TransactionSynchronization synchronization : synchronizations) {
+            synchronization.afterCompletion(commit ? TransactionSynchronization.STATUS_COMMITTED : TransactionSynchronization.STATUS_ROLLED_BACK);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+}
@@ -0,0 +1,161 @@
+package com.teste.rotinapagamento.repository;
+
+import com.teste.rotinapagamento.dto.AccountDTO;
+import com.teste.rotinapagamento.util.AccountBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class AccountCacheTest {
+
+    private AtomicLong clock;
+
+    private AtomicInteger loads;
+
+    private Function<Integer, AccountDTO> loader;
+
+    private AccountCache accountCache;
+
+    @Before
+    public void init() {
+        clock = new AtomicLong();
+        loads = new AtomicInteger();
+        loader = accountId -> {
+            loads.incrementAndGet();
+            return new AccountBuilder().withAccountId(accountId).withAvailableCreditLimit(100.00).withAvailableWithdrawalLimit(50.00).build();
+        };
+
+        accountCache = new AccountCache(2, 30, clock::get);
+    }
+
+    @After
+    public void finish() {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+
+        TransactionSynchronizationManager.unbindResourceIfPossible(accountCache);
+    }
+
+    @Test
+    public void secondReadIsServedFromCacheTest() {
+        accountCache.get(1, loader);
+        AccountDTO account = accountCache.get(1, loader);
+
+        assertEquals(1, loads.get());
+        assertEquals(100.00, account.getAvailableCreditLimit().getAmount(), 0.001);
+        assertEquals(0.5, accountCache.getHitRatio(), 0.001);
+    }
+
+    @Test
+    public void leastRecentlyUsedAccountIsEvictedTest() {
+        accountCache.get(1, loader);
+        accountCache.get(2, loader);
+        accountCache.get(1, loader);
+        accountCache.get(3, loader);
+        accountCache.get(2, loader);
+
+        assertEquals(4, loads.get());
+        assertEquals(2, accountCache.getEvictions());
+        assertEquals(2, accountCache.getSize());
+    }
+
+    @Test
+    public void expiredAccountIsReloadedTest() {
+        accountCache.get(1, loader);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(31));
+        accountCache.get(1, loader);
+
+        assertEquals(2, loads.get());
+        assertEquals(1, accountCache.getExpirations());
+    }
+
+    @Test
+    public void writeOutsideTransactionReplacesAccountTest() {
+        accountCache.get(1, loader);
+        accountCache.write(1, new AccountBuilder().withAccountId(1).withAvailableCreditLimit(10.00).withAvailableWithdrawalLimit(5.00).build());
+
+        AccountDTO account = accountCache.get(1, loader);
+
+        assertEquals(1, loads.get());
+        assertEquals(10.00, account.getAvailableCreditLimit().getAmount(), 0.001);
+    }
+
+    @Test
+    public void writeInsideTransactionIsCachedOnlyAfterCommitTest() {
+        accountCache.get(1, loader);
+
+        TransactionSynchronizationManager.initSynchronization();
+        accountCache.write(1, new AccountBuilder().withAccountId(1).withAvailableCreditLimit(10.00).withAvailableWithdrawalLimit(5.00).build());
+        accountCache.get(1, loader);
+        assertEquals(2, loads.get());
+
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        AccountDTO account = accountCache.get(1, loader);
+        assertEquals(2, loads.get());
+        assertEquals(10.00, account.getAvailableCreditLimit().getAmount(), 0.001);
+    }
+
+    @Test
+    public void rolledBackWriteInvalidatesAccountTest() {
+        accountCache.get(1, loader);
+
+        TransactionSynchronizationManager.initSynchronization();
+        accountCache.write(1, new AccountBuilder().withAccountId(1).withAvailableCreditLimit(10.00).withAvailableWithdrawalLimit(5.00).build());
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        AccountDTO account = accountCache.get(1, loader);
+        assertEquals(2, loads.get());
+        assertEquals(100.00, account.getAvailableCreditLimit().getAmount(), 0.001);
+    }
+
+    @Test
+    public void readLoadedBeforeConcurrentCommitIsNotCachedTest() {
+        AccountDTO stale = accountCache.get(1, accountId -> {
+            AccountDTO loaded = loader.apply(accountId);
+
+            TransactionSynchronizationManager.initSynchronization();
+            accountCache.write(1, new AccountBuilder().withAccountId(1).withAvailableCreditLimit(10.00).withAvailableWithdrawalLimit(5.00).build());
+            completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+            return loaded;
+        });
+        assertEquals(100.00, stale.getAvailableCreditLimit().getAmount(), 0.001);
+
+        AccountDTO account = accountCache.get(1, loader);
+        assertEquals(1, loads.get());
+        assertEquals(10.00, account.getAvailableCreditLimit().getAmount(), 0.001);
+    }
+
+    @Test
+    public void readLoadedDuringInvalidationIsNotCachedTest() {
+        accountCache.get(1, accountId -> {
+            AccountDTO loaded = loader.apply(accountId);
+            accountCache.invalidate(1);
+            return loaded;
+        });
+
+        accountCache.get(1, loader);
+        assertEquals(2, loads.get());
+    }
+
+    private void completeTransaction(int status) {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(status);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+}
@@ -0,0 +1,264 @@
+package com.teste.rotinapagamento.repository;
+
+import com.teste.rotinapagamento.auxiliar.OperationType;
+import com.teste.rotinapagamento.auxiliar.SourceMessage;
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.exception.ResourceException;
+import com.teste.rotinapagamento.util.AccountBuilder;
+import com.teste.rotinapagamento.util.TransactionBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class AccountLedgerTest {
+
+    @InjectMocks
+    private AccountLedger accountLedger;
+
+    @Mock
+    private LedgerWriter ledgerWriter;
+
+    @Mock
+    private SourceMessage sourceMessage;
+
+    @Mock
+    private DataSource dataSource;
+
+    @Captor
+    private ArgumentCaptor<List<Runnable>> changes;
+
+    private AtomicInteger persisted;
+
+    @Before
+    public void init() {
+        Map<Integer, Integer> chargeOrders = new HashMap<>();
+        chargeOrders.put(OperationType.COMPRA_A_VISTA.getId(), 2);
+        chargeOrders.put(OperationType.COMPRA_PARCELADA.getId(), 1);
+        chargeOrders.put(OperationType.SAQUE.getId(), 0);
+        chargeOrders.put(OperationType.PAGAMENTO.getId(), 0);
+        ReflectionTestUtils.setField(accountLedger, "chargeOrders", new ChargeOrders());
+        accountLedger.start(chargeOrders);
+        when(ledgerWriter.isAccepting()).thenReturn(true);
+
+        accountLedger.registerAccount(new AccountBuilder().withAccountId(1).withAvailableCreditLimit(1000.00).withAvailableWithdrawalLimit(500.00).build());
+        persisted = new AtomicInteger();
+        reset(ledgerWriter);
+        when(ledgerWriter.isAccepting()).thenReturn(true);
+    }
+
+    @After
+    public void finish() {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+
+        TransactionSynchronizationManager.unbindResourceIfPossible(accountLedger);
+    }
+
+    @Test
+    public void committedChangesAreEnqueuedInOrderAfterCommitTest() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        accountLedger.addTransaction(transaction(10, OperationType.COMPRA_A_VISTA, -100.00, 1L), () -> assertEquals(0, persisted.getAndIncrement()));
+        accountLedger.addBalances(1, -100.00, null, null, -100.00, () -> assertEquals(1, persisted.getAndIncrement()));
+        verify(ledgerWriter, never()).enqueue(anyListOf(Runnable.class));
+
+        completeTransaction(TransactionSynchronization.STATUS_COMMITTED);
+
+        verify(ledgerWriter, times(1)).enqueue(changes.capture());
+        for (Runnable change : changes.getValue()) {
+            change.run();
+        }
+
+        assertEquals(2, persisted.get());
+        assertEquals(900.00, accountLedger.findAccount(1).getAvailableCreditLimit().getAmount(), 0.001);
+    }
+
+    @Test
+    public void rolledBackChangesAreUndoneTest() {
+        accountLedger.addTransaction(transaction(10, OperationType.COMPRA_A_VISTA, -100.00, 1L), persisted::incrementAndGet);
+        TransactionSynchronizationManager.initSynchronization();
+
+        accountLedger.addTransaction(transaction(11, OperationType.SAQUE, -50.00, 2L), persisted::incrementAndGet);
+        accountLedger.addTransactionBalances(Collections.singletonMap(10, 100.00), persisted::incrementAndGet);
+        accountLedger.addBalances(1, 100.00, -50.00, null, 50.00, persisted::incrementAndGet);
+        assertEquals(1, accountLedger.findOpenTransactions(1).size());
+
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        verify(ledgerWriter, times(1)).enqueue(anyListOf(Runnable.class));
+        List<TransactionDTO> transactions = accountLedger.findOpenTransactions(1);
+        assertEquals(1, transactions.size());
+        assertEquals(-100.00, transactions.get(0).getBalance(), 0.001);
+        assertEquals(1000.00, accountLedger.findAccount(1).getAvailableCreditLimit().getAmount(), 0.001);
+        assertEquals(500.00, accountLedger.findAccount(1).getAvailableWithdrawalLimit().getAmount(), 0.001);
+    }
+
+    @Test
+    public void openTransactionsFollowChargeOrderTest() {
+        accountLedger.addTransaction(transaction(10, OperationType.COMPRA_A_VISTA, -100.00, 1L), persisted::incrementAndGet);
+        accountLedger.addTransaction(transaction(11, OperationType.COMPRA_PARCELADA, -100.00, 2L), persisted::incrementAndGet);
+        accountLedger.addTransaction(transaction(12, OperationType.SAQUE, -100.00, 3L), persisted::incrementAndGet);
+        accountLedger.addTransaction(transaction(13, OperationType.SAQUE, -100.00, 4L), persisted::incrementAndGet);
+        accountLedger.addTransactionBalances(Collections.singletonMap(13, 100.00), persisted::incrementAndGet);
+
+        List<TransactionDTO> transactions = accountLedger.findOpenTransactions(1);
+        assertEquals(3, transactions.size());
+        assertEquals(12, transactions.get(0).getTransactionId().intValue());
+        assertEquals(11, transactions.get(1).getTransactionId().intValue());
+        assertEquals(10, transactions.get(2).getTransactionId().intValue());
+        assertEquals(3, accountLedger.getOpenTransactions());
+        verify(ledgerWriter, times(5)).enqueue(anyListOf(Runnable.class));
+    }
+
+    @Test
+    public void settledTransactionsLeaveChargeOrderIndexTest() {
+        accountLedger.addTransaction(transaction(10, OperationType.COMPRA_A_VISTA, -100.00, 1L), persisted::incrementAndGet);
+        accountLedger.addTransaction(transaction(11, OperationType.SAQUE, -100.00, 2L), persisted::incrementAndGet);
+        accountLedger.addTransactionBalances(Collections.singletonMap(11, 100.00), persisted::incrementAndGet);
+        accountLedger.addTransaction(transaction(12, OperationType.SAQUE, -50.00, 3L), persisted::incrementAndGet);
+
+        List<TransactionDTO> transactions = accountLedger.findOpenTransactions(1);
+        assertEquals(2, transactions.size());
+        assertEquals(12, transactions.get(0).getTransactionId().intValue());
+        assertEquals(10, transactions.get(1).getTransactionId().intValue());
+        assertEquals(2, accountLedger.getOpenTransactions());
+    }
+
+    @Test
+    public void downCreditBalanceConsumesOldestPaymentTest() {
+        accountLedger.addTransaction(transaction(10, OperationType.PAGAMENTO, 100.00, 1L), persisted::incrementAndGet);
+        accountLedger.addTransaction(transaction(11, OperationType.PAGAMENTO, 100.00, 2L), persisted::incrementAndGet);
+
+        accountLedger.downCreditBalance(1, 30.00, persisted::incrementAndGet);
+
+        List<TransactionDTO> transactions = accountLedger.findOpenTransactions(1);
+        assertEquals(70.00, transactions.get(0).getBalance(), 0.001);
+        assertEquals(100.00, transactions.get(1).getBalance(), 0.001);
+        assertTrue(accountLedger.isReady());
+    }
+
+    @Test
+    public void downCreditBalanceSpreadsAcrossPaymentsTest() {
+        accountLedger.addTransaction(transaction(11, OperationType.PAGAMENTO, 100.00, 1L), persisted::incrementAndGet);
+        accountLedger.addTransaction(transaction(10, OperationType.PAGAMENTO, 100.00, 2L), persisted::incrementAndGet);
+        accountLedger.addTransaction(transaction(12, OperationType.PAGAMENTO, 100.00, 3L), persisted::incrementAndGet);
+
+        TransactionSynchronizationManager.initSynchronization();
+        accountLedger.downCreditBalance(1, 150.00, persisted::incrementAndGet);
+        completeTransaction(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(3, accountLedger.findOpenTransactions(1).size());
+        for (TransactionDTO transaction : accountLedger.findOpenTransactions(1)) {
+            assertEquals(100.00, transaction.getBalance(), 0.001);
+        }
+
+        accountLedger.downCreditBalance(1, 150.00, persisted::incrementAndGet);
+
+        Map<Integer, Double> balances = new HashMap<>();
+        for (TransactionDTO transaction : accountLedger.findOpenTransactions(1)) {
+            balances.put(transaction.getTransactionId(), transaction.getBalance());
+        }
+        assertEquals(2, balances.size());
+        assertEquals(50.00, balances.get(11), 0.001);
+        assertEquals(100.00, balances.get(12), 0.001);
+    }
+
+    @Test
+    public void writesAreRefusedWhenWriterStopsAcceptingTest() {
+        when(ledgerWriter.isAccepting()).thenReturn(false);
+
+        try {
+            accountLedger.addBalances(1, -100.00, null, null, -100.00, persisted::incrementAndGet);
+            fail();
+        } catch (ResourceException e) {
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getHttpStatus());
+        }
+
+        assertEquals(1000.00, accountLedger.findAccount(1).getAvailableCreditLimit().getAmount(), 0.001);
+        verify(ledgerWriter, never()).enqueue(anyListOf(Runnable.class));
+    }
+
+    @Test
+    public void readsAreRefusedDuringRebuildTest() {
+        ReflectionTestUtils.setField(accountLedger, "ready", false);
+
+        try {
+            accountLedger.findAccount(1);
+            fail();
+        } catch (ResourceException e) {
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getHttpStatus());
+        }
+
+        try {
+            accountLedger.findCreditBalance(1);
+            fail();
+        } catch (ResourceException e) {
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getHttpStatus());
+        }
+    }
+
+    @Test
+    public void rebuildIsRefusedWhenAnotherNodeHoldsTheLedgerTest() throws SQLException {
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(contains("pg_try_advisory_lock"))).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true);
+        when(resultSet.getBoolean(1)).thenReturn(false);
+
+        try {
+            accountLedger.rebuild();
+            fail();
+        } catch (IllegalStateException e) {
+            verify(connection, times(1)).close();
+        }
+
+        assertTrue(accountLedger.isReady());
+        assertEquals(1, accountLedger.getAccounts());
+    }
+
+    private TransactionDTO transaction(int transactionId, OperationType operationType, Double balance, Long eventDate) {
+        return new TransactionBuilder().withTransactionId(transactionId).withAccountId(1).withOperationTypeId(operationType.getId())
+                .withAmount(balance).withBalance(balance).withEventDate(eventDate).build();
+    }
+
+    private void completeTransaction(int status) {
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.afterCompletion(status);
+        }
+        TransactionSynchronizationManager.clearSynchronization();
+    }
+}
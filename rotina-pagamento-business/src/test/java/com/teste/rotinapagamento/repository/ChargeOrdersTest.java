@@ -0,0 +1,110 @@
+package com.teste.rotinapagamento.repository;
+
+import com.teste.rotinapagamento.auxiliar.OperationType;
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.util.TransactionBuilder;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ChargeOrdersTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @InjectMocks
+    private ChargeOrders chargeOrders;
+
+    @Before
+    public void init() {
+        Map<Integer, Integer> orders = new HashMap<>();
+        orders.put(OperationType.COMPRA_A_VISTA.getId(), 2);
+        orders.put(OperationType.COMPRA_PARCELADA.getId(), 1);
+        orders.put(OperationType.PAGAMENTO.getId(), 0);
+        chargeOrders.set(orders);
+    }
+
+    @Test
+    public void knownOperationTypesAreSortedWithoutQueryTest() {
+        List<TransactionDTO> transactions = new ArrayList<>(Arrays.asList(
+                transaction(1, OperationType.COMPRA_A_VISTA, 1L),
+                transaction(2, OperationType.COMPRA_PARCELADA, 2L),
+                transaction(3, OperationType.COMPRA_PARCELADA, 1L)));
+
+        transactions.sort(chargeOrders.comparator(transactions));
+
+        assertEquals(Arrays.asList(3, 2, 1), ids(transactions));
+        verifyZeroInteractions(jdbcTemplate);
+    }
+
+    @Test
+    public void unknownOperationTypeIsLoadedOnceBeforeSortingTest() throws Exception {
+        ResultSet resultSet = mock(ResultSet.class);
+        when(resultSet.getInt("operation_type_id")).thenReturn(OperationType.COMPRA_A_VISTA.getId(), OperationType.SAQUE.getId());
+        when(resultSet.getInt("charge_order")).thenReturn(2, 0);
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = (RowCallbackHandler) invocation.getArguments()[1];
+            handler.processRow(resultSet);
+            handler.processRow(resultSet);
+            return null;
+        }).when(jdbcTemplate).query(anyString(), any(RowCallbackHandler.class));
+
+        List<TransactionDTO> transactions = new ArrayList<>(Arrays.asList(
+                transaction(1, OperationType.COMPRA_A_VISTA, 1L),
+                transaction(2, OperationType.SAQUE, 2L),
+                transaction(3, OperationType.SAQUE, 3L)));
+
+        transactions.sort(chargeOrders.comparator(transactions));
+
+        assertEquals(Arrays.asList(2, 3, 1), ids(transactions));
+        verify(jdbcTemplate, times(1)).query(anyString(), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    public void comparatorKeepsOrdersFromItsCreationTest() {
+        Comparator<TransactionDTO> comparator = chargeOrders.comparator();
+        chargeOrders.set(Collections.singletonMap(OperationType.COMPRA_A_VISTA.getId(), 0));
+
+        List<TransactionDTO> transactions = new ArrayList<>(Arrays.asList(
+                transaction(1, OperationType.COMPRA_A_VISTA, 1L),
+                transaction(2, OperationType.COMPRA_PARCELADA, 2L)));
+        transactions.sort(comparator);
+
+        assertEquals(Arrays.asList(2, 1), ids(transactions));
+    }
+
+    private TransactionDTO transaction(int transactionId, OperationType operationType, Long eventDate) {
+        return new TransactionBuilder().withTransactionId(transactionId).withAccountId(1).withOperationTypeId(operationType.getId())
+                .withAmount(-10.00).withBalance(-10.00).withEventDate(eventDate).build();
+    }
+
+    private List<Integer> ids(List<TransactionDTO> transactions) {
+        List<Integer> ids = new ArrayList<>();
+        for (TransactionDTO transaction : transactions) {
+            ids.add(transaction.getTransactionId());
+        }
+        return ids;
+    }
+}
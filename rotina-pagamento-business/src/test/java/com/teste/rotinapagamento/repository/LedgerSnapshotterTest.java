@@ -0,0 +1,58 @@
+package com.teste.rotinapagamento.repository;
+
+import com.teste.rotinapagamento.exception.ResourceException;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class LedgerSnapshotterTest {
+
+    @InjectMocks
+    private LedgerSnapshotter ledgerSnapshotter;
+
+    @Mock
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Test
+    public void accountsWithPendingEntriesAreSnapshottedTest() {
+        when(ledgerEntryRepository.findAccountsToSnapshot(20)).thenReturn(Arrays.asList(1, 2));
+        when(ledgerEntryRepository.snapshot(1)).thenReturn(25);
+        when(ledgerEntryRepository.snapshot(2)).thenReturn(30);
+
+        assertEquals(55, ledgerSnapshotter.snapshot(20));
+        assertEquals(2, ledgerSnapshotter.getSnapshots());
+        assertEquals(55, ledgerSnapshotter.getEntries());
+    }
+
+    @Test
+    public void failedSnapshotDoesNotStopOtherAccountsTest() {
+        when(ledgerEntryRepository.findAccountsToSnapshot(1)).thenReturn(Arrays.asList(1, 2));
+        when(ledgerEntryRepository.snapshot(1)).thenThrow(new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, "Erro"));
+        when(ledgerEntryRepository.snapshot(2)).thenReturn(3);
+
+        assertEquals(3, ledgerSnapshotter.snapshotAll());
+        verify(ledgerEntryRepository, times(1)).snapshot(2);
+    }
+
+    @Test
+    public void nothingIsSnapshottedWithoutPendingEntriesTest() {
+        when(ledgerEntryRepository.findAccountsToSnapshot(anyInt())).thenReturn(Collections.emptyList());
+
+        assertEquals(0, ledgerSnapshotter.snapshotAll());
+        verify(ledgerEntryRepository, never()).snapshot(anyInt());
+    }
+}
@@ -0,0 +1,110 @@
+package com.teste.rotinapagamento.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class LedgerWriterTest {
+
+    @InjectMocks
+    private LedgerWriter ledgerWriter;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Before
+    public void init() {
+        when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenAnswer(invocation -> new SimpleTransactionStatus());
+
+        ReflectionTestUtils.setField(ledgerWriter, "batchSize", 10);
+        ReflectionTestUtils.setField(ledgerWriter, "retryMillis", 10L);
+        ReflectionTestUtils.setField(ledgerWriter, "shutdownSeconds", 1L);
+        ReflectionTestUtils.setField(ledgerWriter, "maxWriteAttempts", 3);
+        ReflectionTestUtils.setField(ledgerWriter, "queueCapacity", 2);
+        ledgerWriter.start();
+    }
+
+    @After
+    public void destroy() throws InterruptedException {
+        release.countDown();
+        ledgerWriter.shutdown();
+    }
+
+    @Test
+    public void failingBatchStopsWriterAfterMaxAttemptsTest() throws InterruptedException {
+        AtomicBoolean failing = new AtomicBoolean(true);
+        ledgerWriter.enqueue(Collections.singletonList(() -> {
+            if (failing.get())
+                throw new IllegalStateException("violação de restrição");
+        }));
+
+        await(ledgerWriter::isStopped);
+        assertFalse(ledgerWriter.isAccepting());
+        assertEquals(3, ledgerWriter.getFailures());
+        assertEquals(0, ledgerWriter.getWritten());
+
+        failing.set(false);
+        ledgerWriter.resume();
+
+        await(() -> ledgerWriter.getWritten() == 1);
+        assertTrue(ledgerWriter.isAccepting());
+        assertEquals(3, ledgerWriter.getFailures());
+    }
+
+    @Test
+    public void fullQueueStopsAcceptingTest() throws InterruptedException {
+        CountDownLatch writing = new CountDownLatch(1);
+        ledgerWriter.enqueue(Collections.singletonList(() -> {
+            writing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        writing.await(1, TimeUnit.SECONDS);
+
+        ledgerWriter.enqueue(Collections.singletonList(() -> {}));
+        ledgerWriter.enqueue(Collections.singletonList(() -> {}));
+        assertFalse(ledgerWriter.isAccepting());
+        assertFalse(ledgerWriter.isStopped());
+
+        release.countDown();
+        await(() -> ledgerWriter.getPending() == 0);
+        assertTrue(ledgerWriter.isAccepting());
+    }
+
+    private void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
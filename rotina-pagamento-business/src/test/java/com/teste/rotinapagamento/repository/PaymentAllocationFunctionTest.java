@@ -0,0 +1,88 @@
+package com.teste.rotinapagamento.repository;
+
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.service.PaymentAllocation;
+import com.teste.rotinapagamento.util.PaymentAllocationCorpus;
+import com.teste.rotinapagamento.util.TransactionBuilder;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.util.StreamUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Verifica a função allocate_payment em uma base de dados PostgreSQL embarcada, com os mesmos casos do cálculo em
+ * memória. O teste é ignorado quando a base de dados não pode ser iniciada (por exemplo, executando como root).
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class PaymentAllocationFunctionTest {
+
+    private static EmbeddedPostgres postgres;
+
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeClass
+    public static void start() throws Exception {
+        try {
+            postgres = EmbeddedPostgres.builder().start();
+        } catch (Exception e) {
+            Assume.assumeNoException(e);
+        }
+
+        jdbcTemplate = new JdbcTemplate(postgres.getPostgresDatabase());
+        jdbcTemplate.execute("CREATE TABLE public.operations_types (operation_type_id integer PRIMARY KEY, charge_order integer NOT NULL);");
+        jdbcTemplate.execute("CREATE TABLE public.transactions (transaction_id integer PRIMARY KEY, account_id integer NOT NULL, " +
+                "operation_type_id integer NOT NULL REFERENCES public.operations_types, balance double precision NOT NULL, event_date timestamp NOT NULL);");
+        jdbcTemplate.execute(StreamUtils.copyToString(new ClassPathResource("allocate_payment.sql").getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    @AfterClass
+    public static void stop() throws Exception {
+        if (postgres != null)
+            postgres.close();
+    }
+
+    @Test
+    public void allocatePaymentMatchesCorpusTest() throws Exception {
+        PaymentAllocationCorpus corpus = PaymentAllocationCorpus.load();
+        for (Map.Entry<Integer, Integer> chargeOrder : corpus.chargeOrders.entrySet()) {
+            jdbcTemplate.update("INSERT INTO public.operations_types VALUES (?, ?);", chargeOrder.getKey(), chargeOrder.getValue());
+        }
+
+        int accountId = 0;
+        for (PaymentAllocationCorpus.Case allocationCase : corpus.cases) {
+            accountId++;
+            long eventDate = System.currentTimeMillis();
+            for (PaymentAllocationCorpus.Transaction transaction : allocationCase.transactions) {
+                jdbcTemplate.update("INSERT INTO public.transactions VALUES (?, ?, ?, ?, ?);", accountId * 100 + transaction.transactionId, accountId,
+                        transaction.operationTypeId, transaction.balance, new Timestamp(eventDate++));
+            }
+
+            TransactionDTO payment = new TransactionBuilder().withAccountId(accountId).withOperationTypeId(4).withAmount(allocationCase.payment).build();
+            PaymentAllocation allocation = PaymentAllocation.plan(payment, null);
+            int offset = accountId * 100;
+            jdbcTemplate.query("SELECT * FROM public.allocate_payment(?, ?, true);", new Object[]{accountId, allocationCase.payment},
+                    (RowCallbackHandler) resultSet -> allocation.record(resultSet.getInt("transaction_id") - offset, resultSet.getInt("operation_type_id"),
+                            resultSet.getDouble("down_value"), resultSet.getDouble("payment_balance")));
+
+            allocationCase.verify(allocation);
+            for (PaymentAllocationCorpus.Transaction transaction : allocationCase.transactions) {
+                Double expected = transaction.balance + allocation.getTransactionDeltas().getOrDefault(transaction.transactionId, 0.0);
+                assertEquals(allocationCase.name, expected, jdbcTemplate.queryForObject("SELECT balance FROM public.transactions WHERE transaction_id=?;",
+                        Double.class, offset + transaction.transactionId), 0.001);
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.teste.rotinapagamento.repository;
+
+import com.teste.rotinapagamento.auxiliar.QueryStatistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class QueryCountingJdbcTemplateTest {
+
+    private static final String SELECT_SQL = "SELECT account_id FROM public.accounts WHERE account_id > ?";
+    private static final String UPDATE_SQL = "UPDATE public.accounts SET debt_balance=0 WHERE account_id=?";
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement preparedStatement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    private QueryCountingJdbcTemplate jdbcTemplate;
+
+    @Before
+    public void init() throws Exception {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString())).thenReturn(preparedStatement);
+        when(preparedStatement.executeQuery()).thenReturn(resultSet);
+        when(preparedStatement.executeUpdate()).thenReturn(2);
+        when(resultSet.next()).thenReturn(true, true, true, false);
+        when(resultSet.getInt(1)).thenReturn(1, 2, 3);
+
+        jdbcTemplate = new QueryCountingJdbcTemplate(dataSource);
+    }
+
+    @After
+    public void finish() {
+        QueryStatistics.end();
+    }
+
+    @Test
+    public void queryCountsStatementAndRowsTest() {
+        QueryStatistics statistics = QueryStatistics.begin();
+
+        List<Integer> ids = jdbcTemplate.query(SELECT_SQL, new Object[]{0}, (rs, rowNum) -> rs.getInt(1));
+
+        assertEquals(3, ids.size());
+        assertEquals(1, statistics.getStatements());
+        assertEquals(3, statistics.getRows());
+    }
+
+    @Test
+    public void updateCountsAffectedRowsTest() {
+        QueryStatistics statistics = QueryStatistics.begin();
+
+        jdbcTemplate.update(UPDATE_SQL, 1);
+        jdbcTemplate.update(UPDATE_SQL, 2);
+
+        assertEquals(2, statistics.getStatements());
+        assertEquals(4, statistics.getRows());
+    }
+
+    @Test
+    public void repeatedStatementIsReportedTest() {
+        QueryStatistics statistics = QueryStatistics.begin();
+
+        jdbcTemplate.update(UPDATE_SQL, 1);
+        jdbcTemplate.update(UPDATE_SQL, 2);
+        jdbcTemplate.query(SELECT_SQL, new Object[]{0}, (rs, rowNum) -> rs.getInt(1));
+
+        assertEquals(UPDATE_SQL, statistics.getMostRepeatedStatement().getKey());
+        assertEquals(Long.valueOf(2), statistics.getMostRepeatedStatement().getValue());
+    }
+
+    @Test
+    public void nothingIsRecordedOutsideRequestTest() {
+        List<Integer> ids = jdbcTemplate.query(SELECT_SQL, new Object[]{0}, (rs, rowNum) -> rs.getInt(1));
+
+        assertEquals(3, ids.size());
+        assertNull(QueryStatistics.current());
+    }
+}
@@ -0,0 +1,130 @@
+package com.teste.rotinapagamento.repository;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class ReplicaRoutingDataSourceTest {
+
+    @Mock
+    private DataSource primary;
+
+    @Mock
+    private DataSource firstReplica;
+
+    @Mock
+    private DataSource secondReplica;
+
+    private ReplicaRoutingDataSource routingDataSource;
+
+    @Before
+    public void init() {
+        routingDataSource = new ReplicaRoutingDataSource(primary, Arrays.asList(firstReplica, secondReplica), 1000);
+        routingDataSource.updateLag(0, 0L);
+        routingDataSource.updateLag(1, 200L);
+    }
+
+    @After
+    public void finish() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(false);
+    }
+
+    @Test
+    public void writesGoToPrimaryTest() {
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, routingDataSource.determineCurrentLookupKey());
+        assertEquals(0, routingDataSource.getReplicaConnections());
+    }
+
+    @Test
+    public void readOnlyTransactionsAreBalancedBetweenReplicasTest() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+
+        Object first = routingDataSource.determineCurrentLookupKey();
+        Object second = routingDataSource.determineCurrentLookupKey();
+
+        assertEquals(2, Arrays.asList(first, second).stream().distinct().count());
+        assertEquals(first, routingDataSource.determineCurrentLookupKey());
+        assertEquals(3, routingDataSource.getReplicaConnections());
+    }
+
+    @Test
+    public void laggingReplicaLeavesRotationTest() {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        routingDataSource.updateLag(1, 5000L);
+
+        assertEquals("replica-0", routingDataSource.determineCurrentLookupKey());
+        assertEquals("replica-0", routingDataSource.determineCurrentLookupKey());
+        assertEquals(1, routingDataSource.getAvailableReplicas());
+    }
+
+    @Test
+    public void replicaWithDisconnectedReceiverLeavesRotationTest() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        // A réplica sem receptor de WAL em streaming responde com atraso nulo; a outra está em dia.
+        Statement statement = mockLag(firstReplica, null);
+        mockLag(secondReplica, 0L);
+
+        routingDataSource.checkReplicas();
+
+        verify(statement).executeQuery(contains("pg_stat_wal_receiver WHERE status = 'streaming'"));
+        assertNull(routingDataSource.getLags()[0]);
+        assertEquals(1, routingDataSource.getAvailableReplicas());
+        assertEquals("replica-1", routingDataSource.determineCurrentLookupKey());
+        assertEquals("replica-1", routingDataSource.determineCurrentLookupKey());
+    }
+
+    @Test
+    public void readsFallBackToPrimaryWithoutAvailableReplicaTest() throws SQLException {
+        TransactionSynchronizationManager.setCurrentTransactionReadOnly(true);
+        when(firstReplica.getConnection()).thenThrow(new SQLException("replica down"));
+        when(secondReplica.getConnection()).thenThrow(new SQLException("replica down"));
+
+        routingDataSource.checkReplicas();
+
+        assertEquals(ReplicaRoutingDataSource.PRIMARY, routingDataSource.determineCurrentLookupKey());
+        assertEquals(0, routingDataSource.getAvailableReplicas());
+        assertEquals(1, routingDataSource.getPrimaryFallbacks());
+    }
+
+    private Statement mockLag(DataSource replica, Long lagMillis) throws SQLException {
+        Connection connection = mock(Connection.class);
+        Statement statement = mock(Statement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+
+        when(replica.getConnection()).thenReturn(connection);
+        when(connection.createStatement()).thenReturn(statement);
+        when(statement.executeQuery(anyString())).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, false);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(resultSet.getLong(1)).thenReturn(lagMillis != null ? lagMillis : 0L);
+        when(resultSet.wasNull()).thenReturn(lagMillis == null);
+        return statement;
+    }
+}
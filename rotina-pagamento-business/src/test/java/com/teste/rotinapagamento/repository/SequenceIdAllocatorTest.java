@@ -0,0 +1,95 @@
+package com.teste.rotinapagamento.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class SequenceIdAllocatorTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private SequenceIdAllocator sequenceIdAllocator;
+
+    @Before
+    public void init() {
+        doReturn(10L).when(jdbcTemplate).queryForObject(startsWith("SELECT increment_by"), any(Object[].class), eq(Long.class));
+        when(jdbcTemplate.queryForObject("SELECT NEXTVAL('public.transactions_seq');", Long.class)).thenReturn(1L, 11L, 21L, 31L, 41L);
+
+        sequenceIdAllocator = new SequenceIdAllocator(jdbcTemplate, "public", "transactions_seq");
+    }
+
+    @Test
+    public void idsAreHandedOutFromReservedBlockTest() {
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(Integer.valueOf(i), sequenceIdAllocator.nextId());
+        }
+
+        verify(jdbcTemplate, times(1)).queryForObject("SELECT NEXTVAL('public.transactions_seq');", Long.class);
+    }
+
+    @Test
+    public void newBlockIsReservedWhenExhaustedTest() {
+        for (int i = 1; i <= 10; i++) sequenceIdAllocator.nextId();
+
+        assertEquals(Integer.valueOf(11), sequenceIdAllocator.nextId());
+        verify(jdbcTemplate, times(2)).queryForObject("SELECT NEXTVAL('public.transactions_seq');", Long.class);
+    }
+
+    @Test
+    public void idsForBatchAreReservedInSingleQueryTest() {
+        doReturn(Arrays.asList(101L, 111L, 121L)).when(jdbcTemplate)
+                .queryForList(eq("SELECT NEXTVAL('public.transactions_seq') FROM generate_series(1, ?);"), any(Object[].class), eq(Long.class));
+
+        int[] ids = sequenceIdAllocator.nextIds(25);
+
+        assertEquals(25, ids.length);
+        assertArrayEquals(new int[]{101, 102, 110, 111, 120, 121, 125}, new int[]{ids[0], ids[1], ids[9], ids[10], ids[19], ids[20], ids[24]});
+        verify(jdbcTemplate, times(1)).queryForList(anyString(), any(Object[].class), eq(Long.class));
+        verify(jdbcTemplate, never()).queryForObject("SELECT NEXTVAL('public.transactions_seq');", Long.class);
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void idPastIntegerRangeIsRefusedTest() {
+        when(jdbcTemplate.queryForObject("SELECT NEXTVAL('public.accounts_seq');", Long.class)).thenReturn(Integer.MAX_VALUE - 1L);
+        SequenceIdAllocator accountIdAllocator = new SequenceIdAllocator(jdbcTemplate, "public", "accounts_seq");
+
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE - 1), accountIdAllocator.nextId());
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE), accountIdAllocator.nextId());
+        accountIdAllocator.nextId();
+    }
+
+    @Test
+    public void concurrentAllocationHasNoDuplicatesTest() throws Exception {
+        Set<Integer> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        for (int i = 0; i < 50; i++) {
+            executor.submit(() -> ids.add(sequenceIdAllocator.nextId()));
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+
+        assertEquals(50, ids.size());
+    }
+}
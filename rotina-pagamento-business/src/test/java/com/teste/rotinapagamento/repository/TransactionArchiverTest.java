@@ -0,0 +1,77 @@
+package com.teste.rotinapagamento.repository;
+
+import com.teste.rotinapagamento.exception.ResourceException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TransactionArchiverTest {
+
+    @InjectMocks
+    private TransactionArchiver transactionArchiver;
+
+    @Mock
+    private TransactionRepository transactionRepository;
+
+    @Before
+    public void init() {
+        ReflectionTestUtils.setField(transactionArchiver, "minAgeDays", 90);
+        ReflectionTestUtils.setField(transactionArchiver, "chunkSize", 2);
+    }
+
+    @Test
+    public void settledTransactionsAreArchivedChunkByChunkTest() {
+        when(transactionRepository.archiveTransactions(eq(0), any(Timestamp.class), eq(2))).thenReturn(Arrays.asList(3, 7));
+        when(transactionRepository.archiveTransactions(eq(7), any(Timestamp.class), eq(2))).thenReturn(Arrays.asList(8, 12));
+        when(transactionRepository.archiveTransactions(eq(12), any(Timestamp.class), eq(2))).thenReturn(Collections.singletonList(15));
+
+        assertEquals(5, transactionArchiver.archive());
+        assertEquals(5, transactionArchiver.getArchivedTransactions());
+        assertEquals(1, transactionArchiver.getRuns());
+        verify(transactionRepository, times(3)).archiveTransactions(anyInt(), any(Timestamp.class), anyInt());
+    }
+
+    @Test
+    public void onlyTransactionsOlderThanMinimumAgeAreArchivedTest() {
+        when(transactionRepository.archiveTransactions(anyInt(), any(Timestamp.class), anyInt())).thenReturn(Collections.emptyList());
+
+        long start = System.currentTimeMillis();
+        transactionArchiver.archive();
+
+        ArgumentCaptor<Timestamp> before = ArgumentCaptor.forClass(Timestamp.class);
+        verify(transactionRepository).archiveTransactions(eq(0), before.capture(), eq(2));
+
+        long age = start - before.getValue().getTime();
+        assertTrue(age > TimeUnit.DAYS.toMillis(90) - 1000 && age <= TimeUnit.DAYS.toMillis(90));
+    }
+
+    @Test
+    public void failedChunkStopsTheRunTest() {
+        when(transactionRepository.archiveTransactions(eq(0), any(Timestamp.class), eq(2))).thenReturn(Arrays.asList(1, 2));
+        when(transactionRepository.archiveTransactions(eq(2), any(Timestamp.class), eq(2)))
+                .thenThrow(new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, "Erro"));
+
+        assertEquals(2, transactionArchiver.archive());
+        verify(transactionRepository, times(2)).archiveTransactions(anyInt(), any(Timestamp.class), anyInt());
+    }
+}
@@ -0,0 +1,96 @@
+package com.teste.rotinapagamento.repository;
+
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.StreamUtils;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * Verifica, em uma base de dados PostgreSQL embarcada, que o registro transaction_ids mantém transaction_id único na
+ * tabela transactions particionada por hash de account_id. O teste é ignorado quando a base de dados não pode ser
+ * iniciada (por exemplo, executando como root).
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class TransactionIdRegistryTest {
+
+    private static EmbeddedPostgres postgres;
+
+    private static JdbcTemplate jdbcTemplate;
+
+    @BeforeClass
+    public static void start() throws Exception {
+        try {
+            postgres = EmbeddedPostgres.builder().start();
+        } catch (Exception e) {
+            Assume.assumeNoException(e);
+        }
+
+        jdbcTemplate = new JdbcTemplate(postgres.getPostgresDatabase());
+        jdbcTemplate.execute("CREATE TABLE public.transactions (transaction_id integer NOT NULL, account_id integer NOT NULL, " +
+                "balance double precision NOT NULL, PRIMARY KEY (transaction_id, account_id)) PARTITION BY HASH (account_id);");
+        jdbcTemplate.execute("CREATE TABLE public.transactions_p0 PARTITION OF public.transactions FOR VALUES WITH (MODULUS 2, REMAINDER 0);");
+        jdbcTemplate.execute("CREATE TABLE public.transactions_p1 PARTITION OF public.transactions FOR VALUES WITH (MODULUS 2, REMAINDER 1);");
+        jdbcTemplate.execute("CREATE TABLE public.transactions_archive (transaction_id integer PRIMARY KEY, account_id integer NOT NULL, " +
+                "balance double precision NOT NULL);");
+
+        jdbcTemplate.update("INSERT INTO public.transactions VALUES (1, 1, -10.00), (2, 2, -10.00);");
+        jdbcTemplate.update("INSERT INTO public.transactions_archive VALUES (3, 1, 0.00);");
+
+        runScript();
+        runScript();
+    }
+
+    @AfterClass
+    public static void stop() throws Exception {
+        if (postgres != null)
+            postgres.close();
+    }
+
+    @Test
+    public void existingTransactionsAreRegisteredOnceTest() {
+        assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pg_trigger WHERE tgname = 'transactions_register_ids';", Integer.class));
+        assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM public.transaction_ids WHERE transaction_id = 1;", Integer.class));
+        assertEquals(Integer.valueOf(1), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM public.transaction_ids WHERE transaction_id = 3;", Integer.class));
+    }
+
+    @Test
+    public void repeatedIdInAnotherPartitionIsRefusedTest() {
+        String partitions = "SELECT COUNT(DISTINCT tableoid) FROM public.transactions WHERE account_id IN (11, 12);";
+        jdbcTemplate.update("INSERT INTO public.transactions VALUES (10, 11, -10.00);");
+        jdbcTemplate.update("INSERT INTO public.transactions VALUES (11, 12, -10.00);");
+        assertEquals(Integer.valueOf(2), jdbcTemplate.queryForObject(partitions, Integer.class));
+
+        try {
+            jdbcTemplate.update("INSERT INTO public.transactions VALUES (10, 12, -10.00);");
+            fail();
+        } catch (DuplicateKeyException e) {
+            assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM public.transactions WHERE transaction_id = 10 AND account_id = 12;", Integer.class));
+        }
+    }
+
+    @Test
+    public void archivedIdIsRefusedTest() {
+        try {
+            jdbcTemplate.update("INSERT INTO public.transactions VALUES (3, 2, -10.00);");
+            fail();
+        } catch (DuplicateKeyException e) {
+            assertEquals(Integer.valueOf(0), jdbcTemplate.queryForObject("SELECT COUNT(*) FROM public.transactions WHERE transaction_id = 3;", Integer.class));
+        }
+    }
+
+    private static void runScript() throws Exception {
+        jdbcTemplate.execute(StreamUtils.copyToString(new ClassPathResource("transaction_ids.sql").getInputStream(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,104 @@
+package com.teste.rotinapagamento.repository;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.jdbc.CannotGetJdbcConnectionException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TransactionPartitionMaintainerTest {
+
+    @InjectMocks
+    private TransactionPartitionMaintainer transactionPartitionMaintainer;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private String suffix;
+
+    private String range;
+
+    @Before
+    public void init() {
+        ReflectionTestUtils.setField(transactionPartitionMaintainer, "eventDateInterval", "month");
+        ReflectionTestUtils.setField(transactionPartitionMaintainer, "eventDatePeriodsAhead", 0);
+
+        LocalDate period = LocalDate.now().withDayOfMonth(1);
+        suffix = String.format("%d_%02d", period.getYear(), period.getMonthValue());
+        range = "FOR VALUES FROM ('" + period + "') TO ('" + period.plusMonths(1) + "')";
+
+        when(jdbcTemplate.queryForList(contains("pg_inherits"), eq(String.class))).thenReturn(Arrays.asList("transactions_p0", "transactions_p1"));
+        when(jdbcTemplate.queryForObject(contains("to_regclass"), eq(Boolean.class), eq("public.transactions_p0_" + suffix))).thenReturn(true);
+        when(jdbcTemplate.queryForObject(contains("to_regclass"), eq(Boolean.class), eq("public.transactions_p1_" + suffix))).thenReturn(false);
+        when(jdbcTemplate.queryForList(contains("pg_partitioned_table"), eq(String.class), eq("public.transactions_p1")))
+                .thenReturn(Collections.singletonList("transactions_p1_default"));
+    }
+
+    @Test
+    public void onlyMissingPartitionsAreCreatedTest() {
+        when(jdbcTemplate.queryForObject(contains("FROM public.transactions_p1_default"), eq(Boolean.class))).thenReturn(false);
+
+        assertEquals(1, transactionPartitionMaintainer.createUpcomingPartitions());
+
+        verify(jdbcTemplate).execute(contains("pg_advisory_xact_lock"));
+        verify(jdbcTemplate).execute("CREATE TABLE public.transactions_p1_" + suffix + " PARTITION OF public.transactions_p1 " + range + ";");
+        verify(jdbcTemplate, never()).execute(contains("transactions_p0_" + suffix));
+        verify(jdbcTemplate, never()).execute(contains("DETACH"));
+        assertEquals(1, transactionPartitionMaintainer.getCreatedPartitions());
+        assertEquals(1, transactionPartitionMaintainer.getRuns());
+    }
+
+    @Test
+    public void rowsInDefaultPartitionAreMovedToNewPartitionTest() {
+        when(jdbcTemplate.queryForObject(contains("FROM public.transactions_p1_default"), eq(Boolean.class))).thenReturn(true);
+        when(jdbcTemplate.update(contains("DELETE FROM public.transactions_p1_default"))).thenReturn(5);
+
+        assertEquals(1, transactionPartitionMaintainer.createUpcomingPartitions());
+
+        InOrder inOrder = inOrder(jdbcTemplate);
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE public.transactions_p1 DETACH PARTITION public.transactions_p1_default;");
+        inOrder.verify(jdbcTemplate).execute("CREATE TABLE public.transactions_p1_" + suffix + " PARTITION OF public.transactions_p1 " + range + ";");
+        inOrder.verify(jdbcTemplate).update(contains("INSERT INTO public.transactions_p1_" + suffix));
+        inOrder.verify(jdbcTemplate).execute("ALTER TABLE public.transactions_p1 ATTACH PARTITION public.transactions_p1_default DEFAULT;");
+        assertEquals(5, transactionPartitionMaintainer.getMovedTransactions());
+    }
+
+    @Test
+    public void failureIsNotSwallowedTest() {
+        when(jdbcTemplate.queryForObject(contains("FROM public.transactions_p1_default"), eq(Boolean.class))).thenReturn(false);
+        doThrow(new CannotGetJdbcConnectionException("Erro", null)).when(jdbcTemplate).execute(startsWith("CREATE TABLE"));
+
+        try {
+            transactionPartitionMaintainer.createUpcomingPartitions();
+            fail();
+        } catch (CannotGetJdbcConnectionException e) {
+            verify(transactionManager).rollback(any());
+        }
+
+        ReflectionTestUtils.invokeMethod(transactionPartitionMaintainer, "maintain");
+        assertEquals(1, transactionPartitionMaintainer.getFailures());
+        assertEquals(0, transactionPartitionMaintainer.getCreatedPartitions());
+    }
+}
@@ -1,19 +1,35 @@
 package com.teste.rotinapagamento.service;
 
 import com.teste.rotinapagamento.auxiliar.SourceMessage;
+import com.teste.rotinapagamento.auxiliar.UnitOfWork;
+import com.teste.rotinapagamento.dto.AccountBatchItemDTO;
 import com.teste.rotinapagamento.dto.AccountDTO;
 import com.teste.rotinapagamento.exception.ResourceException;
+import com.teste.rotinapagamento.repository.AccountCache;
+import com.teste.rotinapagamento.repository.AccountLimitsHandler;
 import com.teste.rotinapagamento.repository.AccountRepository;
 import com.teste.rotinapagamento.util.AccountBuilder;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Mockito.*;
 
 /**
@@ -32,6 +48,9 @@ public class AccountServiceTest {
     @Mock
     private SourceMessage sourceMessage;
 
+    @Spy
+    private AccountCache accountCache = new AccountCache(100, 60);
+
     private AccountBuilder accountBuilder;
 
     private AccountDTO nullAccount;
@@ -67,6 +86,15 @@ public class AccountServiceTest {
         accountWithNegativeWithdrawal = accountBuilder.withAccountId(1).withAvailableWithdrawalLimit(-2000.00).build();
     }
 
+    @After
+    public void finish() {
+        if (TransactionSynchronizationManager.isSynchronizationActive())
+            TransactionSynchronizationManager.clearSynchronization();
+
+        TransactionSynchronizationManager.unbindResourceIfPossible(UnitOfWork.class);
+        TransactionSynchronizationManager.unbindResourceIfPossible(accountCache);
+    }
+
     @Test(expected = ResourceException.class)
     public void insertAccountWithAvailableCreditAndWithdrawalLimitsNullTest() {
         accountService.insertAccount(nullAccount);
@@ -126,6 +154,115 @@ public class AccountServiceTest {
         updateAccount(accountWithNegativeWithdrawal.getAccountId(), accountWithNegativeWithdrawal, accountResponse);
     }
 
+    @Test(expected = ResourceException.class)
+    public void getAccountsWith_invalidLimitTest() {
+        accountService.getAccounts(null, 0, (accountId, creditLimit, withdrawalLimit, creditBalance) -> {});
+    }
+
+    @Test
+    public void getAccountsDelegatesToRepositoryTest() {
+        AccountLimitsHandler handler = (accountId, creditLimit, withdrawalLimit, creditBalance) -> {};
+        accountService.getAccounts(10, 50, handler);
+        verify(accountRepository).streamAccounts(10, 50, handler);
+    }
+
+    @Test
+    public void getAccountIsServedFromCacheTest() {
+        when(accountRepository.findAccount(existingAccount.getAccountId())).thenReturn(existingAccount);
+
+        assertEquals(existingAccount, accountService.getAccount(existingAccount.getAccountId()));
+        assertEquals(existingAccount.getAvailableCreditLimit().getAmount(),
+                accountService.getAccount(existingAccount.getAccountId()).getAvailableCreditLimit().getAmount());
+        verify(accountRepository, times(1)).findAccount(existingAccount.getAccountId());
+    }
+
+    @Test
+    public void readsAreMemoizedWithinTransactionTest() {
+        TransactionSynchronizationManager.initSynchronization();
+        when(accountRepository.findCreditBalance(5)).thenReturn(50.00);
+
+        accountService.getCreditBalance(5);
+        accountService.updateLimitAccount(5, null, null, -20.00, null);
+
+        assertEquals(30.00, accountService.getCreditBalance(5), 0.001);
+        verify(accountRepository, times(1)).findCreditBalance(5);
+        verify(accountRepository, never()).updateBalances(anyInt(), anyDouble(), anyDouble(), anyDouble(), anyDouble());
+    }
+
+    @Test
+    public void pendingBalancesAreWrittenOnceBeforeCommitTest() {
+        TransactionSynchronizationManager.initSynchronization();
+        when(accountRepository.findAccount(5)).thenReturn(existingAccount);
+
+        accountService.updateLimitAccount(5, null, null, -20.00, null);
+        accountService.updateLimitAccount(5, -100.00, null, null, -100.00);
+        assertEquals(4900.00, accountService.getAccount(5).getAvailableCreditLimit().getAmount(), 0.001);
+
+        for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+            synchronization.beforeCommit(false);
+        }
+
+        verify(accountRepository, times(1)).updateBalances(5, -100.00, null, -20.00, -100.00);
+    }
+
+    @Test
+    public void insertAccountsReportsInvalidItemsAndInsertsTheOthersTest() {
+        when(accountRepository.insertAccounts(anyListOf(AccountDTO.class))).thenAnswer(invocation -> {
+            List<?> accounts = (List<?>) invocation.getArguments()[0];
+            for (int i = 0; i < accounts.size(); i++) {
+                ((AccountDTO) accounts.get(i)).setAccountId(100 + i);
+            }
+
+            return accounts;
+        });
+
+        List<AccountBatchItemDTO> results = accountService.insertAccounts(Arrays.asList(
+                accountWithAvailableCredit, new AccountDTO(), accountWithAvailableWithdrawal));
+
+        assertEquals(3, results.size());
+        assertEquals(Integer.valueOf(201), results.get(0).getStatus());
+        assertEquals(Integer.valueOf(100), results.get(0).getAccount().getAccountId());
+        assertEquals(2000.00, results.get(0).getAccount().getAvailableCreditLimit().getAmount(), 0.001);
+        assertEquals(0.00, results.get(0).getAccount().getAvailableWithdrawalLimit().getAmount(), 0.001);
+        assertEquals(Integer.valueOf(406), results.get(1).getStatus());
+        assertNull(results.get(1).getAccount());
+        assertEquals(Integer.valueOf(101), results.get(2).getAccount().getAccountId());
+        verify(accountRepository, times(1)).insertAccounts(anyListOf(AccountDTO.class));
+        verify(accountRepository, never()).insertAccount(anyDouble(), anyDouble());
+    }
+
+    @Test
+    public void updateAccountsValidatesEachItemAgainstPreviousItemsTest() {
+        Map<Integer, AccountDTO> accountsDB = new HashMap<>();
+        accountsDB.put(5, existingAccount);
+        when(accountRepository.findAccounts(anyCollectionOf(Integer.class))).thenReturn(accountsDB);
+
+        AccountDTO firstDebit = accountBuilder.withAccountId(5).withAvailableCreditLimit(-3000.00).build();
+        AccountDTO secondDebit = accountBuilder.withAccountId(5).withAvailableCreditLimit(-3000.00).build();
+        AccountDTO credit = accountBuilder.withAccountId(5).withAvailableWithdrawalLimit(500.00).build();
+
+        List<AccountBatchItemDTO> results = accountService.updateAccounts(Arrays.asList(firstDebit, secondDebit, notExistAccount, credit));
+
+        assertEquals(2000.00, results.get(0).getAccount().getAvailableCreditLimit().getAmount(), 0.001);
+        assertEquals(Integer.valueOf(406), results.get(1).getStatus());
+        assertEquals(Integer.valueOf(406), results.get(2).getStatus());
+        assertEquals(2000.00, results.get(3).getAccount().getAvailableCreditLimit().getAmount(), 0.001);
+        assertEquals(5500.00, results.get(3).getAccount().getAvailableWithdrawalLimit().getAmount(), 0.001);
+        verify(accountRepository, times(1)).findAccounts(anyCollectionOf(Integer.class));
+        verify(accountRepository, times(1)).updateAccounts(Arrays.asList(firstDebit, credit));
+    }
+
+    @Test(expected = ResourceException.class)
+    public void insertAccountsAboveMaxSizeTest() {
+        ReflectionTestUtils.setField(accountService, "batchMaxSize", 1);
+        accountService.insertAccounts(Arrays.asList(accountWithAvailableCredit, accountWithAvailableWithdrawal));
+    }
+
+    @Test(expected = ResourceException.class)
+    public void updateAccountsWithEmptyListTest() {
+        accountService.updateAccounts(Collections.emptyList());
+    }
+
     private void updateAccount(Integer accountid, AccountDTO account, AccountDTO accountResponse){
         when(accountRepository.findAccount(anyInt())).thenReturn(accountResponse);
         accountService.updateAccount(accountid, account);
@@ -0,0 +1,208 @@
+package com.teste.rotinapagamento.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teste.rotinapagamento.auxiliar.IdempotencyKey;
+import com.teste.rotinapagamento.auxiliar.SourceMessage;
+import com.teste.rotinapagamento.dto.IdempotentResponseDTO;
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.exception.ResourceException;
+import com.teste.rotinapagamento.repository.IdempotencyRepository;
+import com.teste.rotinapagamento.util.TransactionBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.sql.Timestamp;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class IdempotencyServiceTest {
+
+    @InjectMocks
+    private IdempotencyService idempotencyService = new IdempotencyService(10, 24);
+
+    @Mock
+    private SourceMessage sourceMessage;
+
+    @Mock
+    private IdempotencyRepository idempotencyRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    private TransactionDTO purchase;
+
+    @Before
+    public void init() {
+        when(sourceMessage.getMessage(anyString())).thenReturn("Mensagem de erro retornada!");
+        when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenAnswer(invocation -> new SimpleTransactionStatus());
+        when(idempotencyRepository.insertKey(any(IdempotencyKey.class), anyInt(), any(Timestamp.class))).thenReturn(true);
+
+        purchase = new TransactionBuilder().withAccountId(1).withOperationTypeId(1).withAmount(-100.00).build();
+        idempotencyService.init();
+    }
+
+    @After
+    public void destroy() {
+        idempotencyService.shutdown();
+    }
+
+    @Test
+    public void repeatedKeyIsReplayedTest() {
+        AtomicInteger executions = new AtomicInteger();
+        IdempotencyKey key = idempotencyService.key("POST /transactions", "chave-1", purchase);
+
+        IdempotentResponseDTO executed = idempotencyService.execute(key, HttpStatus.CREATED, () -> executions.incrementAndGet());
+        IdempotentResponseDTO replayed = idempotencyService.find(idempotencyService.key("POST /transactions", "chave-1", purchase));
+
+        assertEquals(1, executions.get());
+        assertEquals(1, executed.getBody());
+        assertNull(replayed.getBody());
+        assertEquals("1", replayed.getResponse());
+        assertEquals(Integer.valueOf(201), replayed.getHttpStatus());
+        verify(idempotencyRepository, times(1)).updateResponse(key, "1");
+        verify(idempotencyRepository, never()).findResponse(any(IdempotencyKey.class), any(Timestamp.class));
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    public void reusedKeyWithDifferentRequestIsRejectedTest() {
+        idempotencyService.execute(idempotencyService.key("POST /transactions", "chave-1", purchase), HttpStatus.CREATED, () -> 1);
+
+        TransactionDTO withdrawal = new TransactionBuilder().withAccountId(1).withOperationTypeId(3).withAmount(-50.00).build();
+        try {
+            idempotencyService.find(idempotencyService.key("POST /transactions", "chave-1", withdrawal));
+            fail();
+        } catch (ResourceException e) {
+            assertEquals(HttpStatus.UNPROCESSABLE_ENTITY, e.getHttpStatus());
+        }
+    }
+
+    @Test
+    public void concurrentKeyReturnsStoredResponseTest() {
+        IdempotencyKey key = idempotencyService.key("POST /transactions", "chave-1", purchase);
+        IdempotentResponseDTO stored = new IdempotentResponseDTO();
+        stored.setFingerprint(key.getFingerprint());
+        stored.setHttpStatus(201);
+        stored.setResponse("1");
+        stored.setCreatedAt(System.currentTimeMillis());
+        when(idempotencyRepository.insertKey(any(IdempotencyKey.class), anyInt(), any(Timestamp.class))).thenReturn(false);
+        when(idempotencyRepository.findResponse(any(IdempotencyKey.class), any(Timestamp.class))).thenReturn(stored, (IdempotentResponseDTO) null);
+
+        IdempotentResponseDTO replayed = idempotencyService.execute(key, HttpStatus.CREATED, () -> {
+            throw new IllegalStateException("A operação não deveria ser executada.");
+        });
+        assertEquals("1", replayed.getResponse());
+
+        try {
+            idempotencyService.execute(idempotencyService.key("POST /transactions", "chave-2", purchase), HttpStatus.CREATED, () -> 1);
+            fail();
+        } catch (ResourceException e) {
+            assertEquals(HttpStatus.CONFLICT, e.getHttpStatus());
+        }
+    }
+
+    @Test
+    public void keyIsClaimedBeforeOperationOutsideTransactionTest() {
+        IdempotencyKey key = idempotencyService.key("POST /payments/batch", "chave-1", purchase);
+        InOrder inOrder = inOrder(idempotencyRepository, transactionManager);
+
+        IdempotentResponseDTO executed = idempotencyService.executeOutsideTransaction(key, HttpStatus.OK, () -> {
+            inOrder.verify(idempotencyRepository).insertKey(eq(key), eq(200), any(Timestamp.class));
+            inOrder.verify(transactionManager).commit(any());
+            return 1;
+        });
+
+        inOrder.verify(transactionManager).getTransaction(any(TransactionDefinition.class));
+        inOrder.verify(idempotencyRepository).updateResponse(key, "1");
+        inOrder.verify(transactionManager).commit(any());
+        assertEquals(1, executed.getBody());
+        assertEquals("1", idempotencyService.find(key).getResponse());
+    }
+
+    @Test
+    public void rejectedOperationOutsideTransactionReleasesKeyTest() {
+        IdempotencyKey key = idempotencyService.key("POST /payments/batch", "chave-1", purchase);
+
+        try {
+            idempotencyService.executeOutsideTransaction(key, HttpStatus.OK, () -> {
+                throw new ResourceException(HttpStatus.NOT_ACCEPTABLE, "erro");
+            });
+            fail();
+        } catch (ResourceException e) {
+            assertEquals(HttpStatus.NOT_ACCEPTABLE, e.getHttpStatus());
+        }
+
+        verify(idempotencyRepository, times(1)).deleteKey(key);
+        verify(idempotencyRepository, never()).updateResponse(any(IdempotencyKey.class), anyString());
+    }
+
+    @Test
+    public void failedResponseKeepsKeyClaimedTest() {
+        IdempotencyKey key = idempotencyService.key("POST /payments/batch", "chave-1", purchase);
+        doThrow(new ResourceException(HttpStatus.INTERNAL_SERVER_ERROR, "erro")).when(idempotencyRepository).updateResponse(key, "1");
+
+        try {
+            idempotencyService.executeOutsideTransaction(key, HttpStatus.OK, () -> 1);
+            fail();
+        } catch (ResourceException e) {
+            assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, e.getHttpStatus());
+        }
+        verify(idempotencyRepository, never()).deleteKey(key);
+
+        IdempotentResponseDTO pending = new IdempotentResponseDTO();
+        pending.setFingerprint(key.getFingerprint());
+        pending.setHttpStatus(200);
+        pending.setCreatedAt(System.currentTimeMillis());
+        when(idempotencyRepository.insertKey(any(IdempotencyKey.class), anyInt(), any(Timestamp.class))).thenReturn(false);
+        when(idempotencyRepository.findResponse(any(IdempotencyKey.class), any(Timestamp.class))).thenReturn(pending);
+
+        try {
+            idempotencyService.executeOutsideTransaction(key, HttpStatus.OK, () -> {
+                throw new IllegalStateException("A operação não deveria ser executada.");
+            });
+            fail();
+        } catch (ResourceException e) {
+            assertEquals(HttpStatus.CONFLICT, e.getHttpStatus());
+        }
+    }
+
+    @Test
+    public void requestWithoutKeyIsExecutedTest() {
+        IdempotentResponseDTO executed = idempotencyService.execute(idempotencyService.key("POST /transactions", null, purchase), HttpStatus.CREATED, () -> 1);
+
+        assertEquals(1, executed.getBody());
+        assertNull(idempotencyService.find(null));
+        verifyZeroInteractions(idempotencyRepository, transactionManager);
+    }
+
+    @Test
+    public void invalidKeyIsRejectedTest() {
+        try {
+            idempotencyService.key("POST /transactions", " ", purchase);
+            fail();
+        } catch (ResourceException e) {
+            assertEquals(HttpStatus.BAD_REQUEST, e.getHttpStatus());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.teste.rotinapagamento.service;
+
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.util.PaymentAllocationCorpus;
+import com.teste.rotinapagamento.util.TransactionBuilder;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class PaymentAllocationTest {
+
+    private TransactionBuilder transactionBuilder;
+
+    private TransactionDTO payment;
+    private List<TransactionDTO> transactions;
+
+    @Before
+    public void init() {
+        transactionBuilder = new TransactionBuilder();
+
+        payment = transactionBuilder.withAccountId(1).withOperationTypeId(4).withAmount(150.00).build();
+
+        transactions = new ArrayList<>();
+        transactions.add(transactionBuilder.withTransactionId(1).withAccountId(1).withOperationTypeId(3).withBalance(-50.00).build());
+        transactions.add(transactionBuilder.withTransactionId(2).withAccountId(1).withOperationTypeId(2).withBalance(-80.00).build());
+        transactions.add(transactionBuilder.withTransactionId(3).withAccountId(1).withOperationTypeId(1).withBalance(-100.00).build());
+        transactions.add(transactionBuilder.withTransactionId(4).withAccountId(1).withOperationTypeId(1).withBalance(-100.00).build());
+    }
+
+    @Test
+    public void planWithoutTransactionsTest() {
+        PaymentAllocation allocation = PaymentAllocation.plan(payment, null);
+
+        assertTrue(allocation.isEmpty());
+        assertEquals(150.00, allocation.getPaymentBalance(), 0.001);
+        assertNull(allocation.getCreditLimitDelta());
+        assertNull(allocation.getWithdrawalLimitDelta());
+        assertNull(allocation.getDebtBalanceDelta());
+        assertEquals(150.00, allocation.getCreditBalanceDelta(), 0.001);
+    }
+
+    @Test
+    public void planStopsWhenPaymentIsExhaustedTest() {
+        PaymentAllocation allocation = PaymentAllocation.plan(payment, transactions);
+
+        assertFalse(allocation.isEmpty());
+        assertEquals(0.00, allocation.getPaymentBalance(), 0.001);
+        assertEquals(3, allocation.getTransactionDeltas().size());
+        assertEquals(50.00, allocation.getTransactionDeltas().get(1), 0.001);
+        assertEquals(80.00, allocation.getTransactionDeltas().get(2), 0.001);
+        assertEquals(20.00, allocation.getTransactionDeltas().get(3), 0.001);
+        assertFalse(allocation.getTransactionDeltas().containsKey(4));
+    }
+
+    @Test
+    public void planSumsLimitsByOperationTest() {
+        PaymentAllocation allocation = PaymentAllocation.plan(payment, transactions);
+
+        assertEquals(50.00, allocation.getWithdrawalLimitDelta(), 0.001);
+        assertEquals(100.00, allocation.getCreditLimitDelta(), 0.001);
+        assertEquals(150.00, allocation.getDebtBalanceDelta(), 0.001);
+        assertNull(allocation.getCreditBalanceDelta());
+    }
+
+    @Test
+    public void planWithPaymentGreaterThanDebtsTest() {
+        payment.setAmount(500.00);
+        PaymentAllocation allocation = PaymentAllocation.plan(payment, transactions);
+
+        assertEquals(170.00, allocation.getPaymentBalance(), 0.001);
+        assertEquals(4, allocation.getTransactionDeltas().size());
+        assertEquals(280.00, allocation.getCreditLimitDelta(), 0.001);
+        assertEquals(330.00, allocation.getDebtBalanceDelta(), 0.001);
+        assertEquals(170.00, allocation.getCreditBalanceDelta(), 0.001);
+    }
+
+    @Test
+    public void planMatchesCorpusTest() throws Exception {
+        PaymentAllocationCorpus corpus = PaymentAllocationCorpus.load();
+
+        for (PaymentAllocationCorpus.Case allocationCase : corpus.cases) {
+            payment.setAmount(allocationCase.payment);
+
+            // Mesma seleção e ordem de findTransactionsToDownPayment; a ordenação é estável, o que mantém a ordem dos eventos.
+            List<TransactionDTO> pending = allocationCase.transactions.stream()
+                    .filter(transaction -> transaction.balance != 0)
+                    .sorted(Comparator.comparing(transaction -> corpus.chargeOrders.get(transaction.operationTypeId)))
+                    .map(transaction -> transactionBuilder.withTransactionId(transaction.transactionId).withAccountId(1)
+                            .withOperationTypeId(transaction.operationTypeId).withBalance(transaction.balance).build())
+                    .collect(Collectors.toList());
+
+            allocationCase.verify(PaymentAllocation.plan(payment, pending));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.teste.rotinapagamento.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teste.rotinapagamento.auxiliar.SourceMessage;
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.dto.TransactionImportDTO;
+import com.teste.rotinapagamento.exception.ResourceException;
+import com.teste.rotinapagamento.repository.AccountCache;
+import com.teste.rotinapagamento.repository.TransactionImportRepository;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TransactionImportServiceTest {
+
+    @InjectMocks
+    private TransactionImportService transactionImportService;
+
+    @Mock
+    private SourceMessage sourceMessage;
+
+    @Mock
+    private TransactionImportRepository transactionImportRepository;
+
+    @Mock
+    private AccountCache accountCache;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    private List<TransactionDTO> copied;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() {
+        copied = new ArrayList<>();
+        when(sourceMessage.getMessage(anyString())).thenReturn("Linha %d inválida");
+        when(transactionImportRepository.copyTransactions(any(Iterator.class))).thenAnswer(invocation -> {
+            ((Iterator<TransactionDTO>) invocation.getArguments()[0]).forEachRemaining(copied::add);
+            return (long) copied.size();
+        });
+        when(transactionImportRepository.findMissingAccount()).thenReturn(null);
+        when(transactionImportRepository.updateImportedAccounts()).thenReturn(Arrays.asList(1, 2));
+    }
+
+    @Test
+    public void csvTransactionsAreImportedTest() {
+        TransactionImportDTO result = transactionImportService.importTransactions(input(
+                "operation_type_id,account_id,amount,balance,event_date\n" +
+                "1,1,-50.0,-20.0,1553194800000\n" +
+                "\n" +
+                "4,2,60.0,,1553281200000\n"), TransactionImportService.CSV);
+
+        assertEquals(2, copied.size());
+        assertEquals(Integer.valueOf(1), copied.get(0).getOperationTypeId());
+        assertEquals(-20.00, copied.get(0).getBalance(), 0.001);
+        assertEquals(Long.valueOf(1553194800000L), copied.get(0).getEventDate());
+        assertEquals(Integer.valueOf(2), copied.get(1).getAccountId());
+        assertEquals(60.00, copied.get(1).getBalance(), 0.001);
+        assertNull(copied.get(1).getDueDate());
+
+        assertEquals(Long.valueOf(2), result.getImportedTransactions());
+        assertEquals(Integer.valueOf(2), result.getUpdatedAccounts());
+        verify(transactionImportRepository, times(1)).createImportTable();
+        verify(transactionImportRepository, times(1)).insertImportedTransactions();
+        verify(accountCache, times(1)).write(1, null);
+        verify(accountCache, times(1)).write(2, null);
+    }
+
+    @Test
+    public void ndjsonTransactionsAreImportedTest() {
+        transactionImportService.importTransactions(input(
+                "{\"account_id\": 1, \"operation_type_id\": 3, \"amount\": -30.0}\n" +
+                "{\"account_id\": 1, \"operation_type_id\": 2, \"amount\": -90.0, \"balance\": -45.0, \"due_date\": 1553194800000}\n"),
+                TransactionImportService.NDJSON);
+
+        assertEquals(2, copied.size());
+        assertEquals(-30.00, copied.get(0).getBalance(), 0.001);
+        assertEquals(-45.00, copied.get(1).getBalance(), 0.001);
+        assertEquals(Long.valueOf(1553194800000L), copied.get(1).getDueDate());
+    }
+
+    @Test
+    public void invalidLineRejectsImportTest() {
+        try {
+            transactionImportService.importTransactions(input(
+                    "account_id,operation_type_id,amount\n" +
+                    "1,1,-50.0\n" +
+                    "1,1,50.0\n"), TransactionImportService.CSV);
+            fail();
+        } catch (ResourceException e) {
+            assertEquals(HttpStatus.NOT_ACCEPTABLE, e.getHttpStatus());
+            assertEquals("Linha 3 inválida", e.getError().getMessage());
+        }
+
+        verify(transactionImportRepository, never()).insertImportedTransactions();
+        verify(transactionImportRepository, never()).updateImportedAccounts();
+    }
+
+    @Test
+    public void missingAccountRejectsImportTest() {
+        when(transactionImportRepository.findMissingAccount()).thenReturn(7);
+
+        try {
+            transactionImportService.importTransactions(input("account_id,operation_type_id,amount\n7,1,-50.0\n"), TransactionImportService.CSV);
+            fail();
+        } catch (ResourceException e) {
+            assertEquals(HttpStatus.NOT_ACCEPTABLE, e.getHttpStatus());
+        }
+
+        verify(transactionImportRepository, never()).insertImportedTransactions();
+    }
+
+    @Test
+    public void importIsRefusedWithMemoryLedgerTest() {
+        ReflectionTestUtils.setField(transactionImportService, "ledgerMode", "memory");
+
+        try {
+            transactionImportService.importTransactions(input("account_id,operation_type_id,amount\n1,1,-50.0\n"), TransactionImportService.CSV);
+            fail();
+        } catch (ResourceException e) {
+            assertEquals(HttpStatus.CONFLICT, e.getHttpStatus());
+        }
+
+        verify(transactionImportRepository, never()).createImportTable();
+    }
+
+    private InputStream input(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
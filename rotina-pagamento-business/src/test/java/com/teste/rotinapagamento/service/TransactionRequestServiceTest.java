@@ -0,0 +1,151 @@
+package com.teste.rotinapagamento.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teste.rotinapagamento.auxiliar.AccountLaneExecutor;
+import com.teste.rotinapagamento.auxiliar.GroupCommitExecutor;
+import com.teste.rotinapagamento.auxiliar.SourceMessage;
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.dto.TransactionRequestDTO;
+import com.teste.rotinapagamento.exception.ResourceException;
+import com.teste.rotinapagamento.repository.TransactionRequestRepository;
+import com.teste.rotinapagamento.util.TransactionBuilder;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.*;
+
+/**
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@RunWith(MockitoJUnitRunner.class)
+public class TransactionRequestServiceTest {
+
+    @InjectMocks
+    private TransactionRequestService transactionRequestService;
+
+    @Mock
+    private SourceMessage sourceMessage;
+
+    @Mock
+    private TransactionService transactionService;
+
+    @Mock
+    private TransactionRequestRepository transactionRequestRepository;
+
+    @Mock
+    private AccountLaneExecutor accountLaneExecutor;
+
+    @Mock
+    private GroupCommitExecutor groupCommitExecutor;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    private TransactionDTO purchase;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void init() throws Exception {
+        when(sourceMessage.getMessage(anyString())).thenReturn("Mensagem de erro retornada!");
+        when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenAnswer(invocation -> new SimpleTransactionStatus());
+        when(accountLaneExecutor.execute(anyInt(), any(Callable.class))).thenAnswer(invocation -> ((Callable) invocation.getArguments()[1]).call());
+        when(accountLaneExecutor.execute(anyCollection(), any(Callable.class))).thenAnswer(invocation -> ((Callable) invocation.getArguments()[1]).call());
+        when(groupCommitExecutor.execute(anyInt(), any(Callable.class))).thenAnswer(invocation -> ((Callable) invocation.getArguments()[1]).call());
+        when(transactionRequestRepository.insertRequest(anyString(), anyInt(), anyString()))
+                .thenAnswer(invocation -> request(1, (String) invocation.getArguments()[0], (String) invocation.getArguments()[2]));
+        when(transactionRequestRepository.completeRequest(anyInt(), anyString(), anyInt(), anyString())).thenReturn(true);
+
+        purchase = new TransactionBuilder().withAccountId(1).withOperationTypeId(1).withAmount(-100.00).build();
+        transactionRequestService.start(2, 1);
+    }
+
+    @After
+    public void destroy() throws InterruptedException {
+        transactionRequestService.shutdown();
+    }
+
+    @Test
+    public void acceptedTransactionIsSettledAndCompletedTest() {
+        TransactionDTO settled = new TransactionBuilder().withTransactionId(10).withAccountId(1).withOperationTypeId(1).withAmount(-100.00).build();
+        when(transactionService.insertTransaction(any(TransactionDTO.class))).thenReturn(settled);
+
+        TransactionRequestDTO request = transactionRequestService.acceptTransaction(purchase);
+
+        assertEquals(TransactionRequestDTO.PENDING, request.getStatus());
+        verify(transactionService, times(1)).validateTransaction(purchase);
+        verify(transactionRequestRepository, timeout(1000)).completeRequest(eq(1), eq(TransactionRequestDTO.COMPLETED), eq(201), contains("\"transaction_id\":10"));
+        verify(transactionManager, times(1)).commit(any());
+    }
+
+    @Test
+    public void rejectedTransactionIsRecordedTest() {
+        when(transactionService.insertTransaction(any(TransactionDTO.class))).thenThrow(new ResourceException(HttpStatus.NOT_ACCEPTABLE, "Limite insuficiente"));
+
+        transactionRequestService.acceptTransaction(purchase);
+
+        verify(transactionRequestRepository, timeout(1000)).completeRequest(eq(1), eq(TransactionRequestDTO.REJECTED), eq(406), contains("Limite insuficiente"));
+        verify(transactionManager, timeout(1000)).rollback(any());
+    }
+
+    @Test
+    public void fullQueueIsRejectedTest() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(transactionService.insertTransaction(any(TransactionDTO.class))).thenAnswer(invocation -> {
+            release.await();
+            return purchase;
+        });
+
+        transactionRequestService.acceptTransaction(purchase);
+        try {
+            transactionRequestService.acceptTransaction(purchase);
+            fail();
+        } catch (ResourceException e) {
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getHttpStatus());
+        } finally {
+            release.countDown();
+        }
+
+        verify(transactionRequestRepository, times(1)).insertRequest(anyString(), anyInt(), anyString());
+    }
+
+    @Test
+    public void pendingRequestsAreRecoveredTest() throws Exception {
+        String payload = objectMapper.writeValueAsString(Collections.singletonList(purchase));
+        when(transactionRequestRepository.findPendingRequests()).thenReturn(Collections.singletonList(request(5, TransactionRequestDTO.PAYMENTS, payload)));
+
+        transactionRequestService.recover();
+
+        verify(transactionService, timeout(1000)).insertPayments(anyListOf(TransactionDTO.class));
+        verify(transactionRequestRepository, timeout(1000)).completeRequest(eq(5), eq(TransactionRequestDTO.COMPLETED), eq(201), anyString());
+    }
+
+    private TransactionRequestDTO request(Integer requestId, String requestType, String payload) {
+        TransactionRequestDTO request = new TransactionRequestDTO();
+        request.setRequestId(requestId);
+        request.setRequestType(requestType);
+        request.setAccountId(1);
+        request.setPayload(payload);
+        request.setStatus(TransactionRequestDTO.PENDING);
+        return request;
+    }
+}
@@ -1,8 +1,10 @@
 package com.teste.rotinapagamento.service;
 
+import com.teste.rotinapagamento.auxiliar.AccountLaneExecutor;
 import com.teste.rotinapagamento.auxiliar.OperationType;
 import com.teste.rotinapagamento.auxiliar.SourceMessage;
 import com.teste.rotinapagamento.dto.AccountDTO;
+import com.teste.rotinapagamento.dto.PaymentBatchItemDTO;
 import com.teste.rotinapagamento.dto.TransactionDTO;
 import com.teste.rotinapagamento.exception.ResourceException;
 import com.teste.rotinapagamento.repository.TransactionRepository;
@@ -14,10 +16,18 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.sql.Date;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -42,6 +52,12 @@ public class TransactionServiceTest {
     @Mock
     private SourceMessage sourceMessage;
 
+    @Mock
+    private AccountLaneExecutor accountLaneExecutor;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
     private TransactionBuilder transactionBuilder;
     private AccountBuilder accountBuilder;
 
@@ -132,9 +148,9 @@ public class TransactionServiceTest {
 
     @Test(expected = ResourceException.class)
     public void insertNotNecessaryPaymentTest() {
-        doReturn(true)
-        .when(transactionRepository)
-                .hasBalanceByOperation(paymentWithPositiveAmount.getAccountId(), OperationType.getPositiveOperations());
+        doReturn(100.00)
+                .when(accountService)
+                .getCreditBalance(paymentWithPositiveAmount.getAccountId());
 
         transactionService.insertTransaction(paymentWithPositiveAmount);
     }
@@ -145,21 +161,17 @@ public class TransactionServiceTest {
                 .when(accountService)
                 .getAccount(payment.getAccountId());
 
-        doReturn(false)
-                .when(transactionRepository)
-                .hasBalanceByOperation(payment.getAccountId(), OperationType.getPositiveOperations());
+        doReturn(0.00)
+                .when(accountService)
+                .getCreditBalance(payment.getAccountId());
 
         doReturn(null)
                 .when(transactionRepository).findTransactionsToDownPayment(payment.getAccountId());
 
-        doReturn(payment.getTransactionId())
+        doReturn(payment)
                 .when(transactionRepository)
                 .insertTransaction(payment.getAccountId(), OperationType.PAGAMENTO.getId(), payment.getAmount(), payment.getAmount(), null);
 
-        Integer transactionId = payment.getTransactionId();
-        doReturn(payment)
-                .when(transactionRepository).getTransaction(transactionId, null, null, null);
-
         TransactionDTO transaction = transactionService.insertTransaction(payment);
 
         assertNotNull(transaction);
@@ -178,6 +190,71 @@ public class TransactionServiceTest {
         transactionService.insertPayments(transactions);
     }
 
+    @Test
+    @SuppressWarnings("unchecked")
+    public void settlePaymentsReturnsResultsInRequestOrderTest() {
+        settleInline();
+        doReturn(account).when(accountService).getAccount(1);
+        doAnswer(invocation -> new TransactionBuilder().withAccountId((Integer) invocation.getArguments()[0])
+                .withOperationTypeId(OperationType.PAGAMENTO.getId()).withAmount((Double) invocation.getArguments()[2]).build())
+                .when(transactionRepository).insertTransaction(anyInt(), anyInt(), anyDouble(), anyDouble(), any(Date.class));
+
+        List<TransactionDTO> payments = Arrays.asList(
+                new TransactionBuilder().withAccountId(1).withOperationTypeId(4).withAmount(10.00).build(),
+                new TransactionBuilder().withAccountId(2).withOperationTypeId(4).withAmount(20.00).build(),
+                new TransactionBuilder().withAccountId(1).withOperationTypeId(4).withAmount(30.00).build());
+
+        List<PaymentBatchItemDTO> results = transactionService.settlePayments(payments);
+
+        assertEquals(3, results.size());
+        assertEquals(201, results.get(0).getStatus().intValue());
+        assertEquals(10.00, results.get(0).getTransaction().getAmount(), 0.001);
+        assertEquals(406, results.get(1).getStatus().intValue());
+        assertNotNull(results.get(1).getError());
+        assertEquals(201, results.get(2).getStatus().intValue());
+        assertEquals(30.00, results.get(2).getTransaction().getAmount(), 0.001);
+        verify(accountLaneExecutor, times(1)).submit(eq(1), any(Callable.class));
+        verify(accountLaneExecutor, times(1)).submit(eq(2), any(Callable.class));
+    }
+
+    @Test
+    public void failedPaymentRollsBackPaymentsOfSameAccountTest() {
+        settleInline();
+        doReturn(account).when(accountService).getAccount(1);
+
+        List<TransactionDTO> payments = Arrays.asList(
+                new TransactionBuilder().withAccountId(1).withOperationTypeId(4).withAmount(10.00).build(),
+                new TransactionBuilder().withAccountId(1).withOperationTypeId(4).withAmount(-10.00).build());
+
+        List<PaymentBatchItemDTO> results = transactionService.settlePayments(payments);
+
+        assertEquals(406, results.get(0).getStatus().intValue());
+        assertEquals(406, results.get(1).getStatus().intValue());
+        verify(transactionManager, times(1)).rollback(any(TransactionStatus.class));
+        verify(transactionManager, never()).commit(any(TransactionStatus.class));
+    }
+
+    @Test(expected = ResourceException.class)
+    public void settlePaymentsWithEmptyListTest() {
+        ReflectionTestUtils.setField(transactionService, "paymentBatchMaxSize", 10);
+        transactionService.settlePayments(new ArrayList<>());
+    }
+
+    @Test(expected = ResourceException.class)
+    public void getTransactionsWithoutLimitTest() {
+        transactionService.getTransactions(1, null, 0);
+    }
+
+    @Test
+    public void getTransactionsLimitIsCappedTest() {
+        List<TransactionDTO> page = new ArrayList<>();
+        page.add(payment);
+        doReturn(page).when(transactionRepository).getTransactions(1, 10, TransactionService.MAX_PAGE_SIZE);
+
+        List<TransactionDTO> transactions = transactionService.getTransactions(1, 10, TransactionService.MAX_PAGE_SIZE + 1);
+        assertEquals(page, transactions);
+    }
+
     @Test(expected = ResourceException.class)
     public void insertPurchaseOrWithdrawalWithPositiveAmountTest() {
         transactionService.insertTransaction(purchaseOrWithdrawalWithPositiveAmount);
@@ -200,15 +277,12 @@ public class TransactionServiceTest {
 
     private void insertPurchaseOrWithdrawal(TransactionDTO transaction) {
         doReturn(account).when(accountService).getAccount(transaction.getAccountId());
-        doReturn(transactionWithCreditBalance).when(transactionRepository)
-                .getTransaction(null, account.getAccountId(), OperationType.PAGAMENTO.getId(), true);
+        doReturn(transactionWithCreditBalance.getBalance()).when(accountService)
+                .getCreditBalance(account.getAccountId());
 
         Date dueDate = transaction.getDueDate() != null ? new Date(transaction.getDueDate()) : null;
-        doReturn(transaction.getTransactionId()).when(transactionRepository)
-                .insertTransaction(transaction.getAccountId(), transaction.getOperationTypeId(), transaction.getAmount(), 0.0, dueDate);
-
         doReturn(transaction).when(transactionRepository)
-                .getTransaction(transaction.getTransactionId(), null, null, null);
+                .insertTransaction(transaction.getAccountId(), transaction.getOperationTypeId(), transaction.getAmount(), 0.0, dueDate);
 
         TransactionDTO transactionResponse = transactionService.insertTransaction(transaction);
         assertNotNull(transactionResponse);
@@ -219,4 +293,20 @@ public class TransactionServiceTest {
         assertEquals(transaction.getBalance(), transactionResponse.getBalance(), 0.001);
     }
 
+
+    /**
+     * Executa as tarefas enviadas às filas das contas na própria thread do teste, cada uma em uma transação.
+     */
+    @SuppressWarnings("unchecked")
+    private void settleInline() {
+        ReflectionTestUtils.setField(transactionService, "paymentBatchMaxSize", 10);
+        ReflectionTestUtils.setField(transactionService, "transactionTemplate", new TransactionTemplate(transactionManager));
+
+        when(accountLaneExecutor.submit(anyInt(), any(Callable.class))).thenAnswer(invocation -> {
+            FutureTask<Object> future = new FutureTask<>((Callable<Object>) invocation.getArguments()[1]);
+            future.run();
+            return future;
+        });
+        when(accountLaneExecutor.await(any(Future.class))).thenCallRealMethod();
+    }
 }
@@ -0,0 +1,85 @@
+package com.teste.rotinapagamento.util;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teste.rotinapagamento.service.PaymentAllocation;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Casos de abatimento de pagamentos (payment-allocation-corpus.json) verificados tanto no cálculo em memória
+ * (PaymentAllocation) quanto na função allocate_payment da base de dados. As transações de cada caso estão na ordem
+ * dos seus eventos e os abatimentos esperados, na ordem em que são realizados.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class PaymentAllocationCorpus {
+
+    @JsonProperty("charge_orders")
+    public Map<Integer, Integer> chargeOrders;
+
+    public List<Case> cases;
+
+    public static PaymentAllocationCorpus load() throws IOException {
+        try (InputStream input = PaymentAllocationCorpus.class.getResourceAsStream("/payment-allocation-corpus.json")) {
+            return new ObjectMapper().readValue(input, PaymentAllocationCorpus.class);
+        }
+    }
+
+    public static class Case {
+
+        public String name;
+
+        public Double payment;
+
+        public List<Transaction> transactions;
+
+        public List<Allocation> allocations;
+
+        @JsonProperty("payment_balance")
+        public Double paymentBalance;
+
+        /**
+         * Verifica se o abatimento calculado tem os abatimentos e o saldo do pagamento esperados.
+         *
+         * @param allocation abatimento calculado
+         */
+        public void verify(PaymentAllocation allocation) {
+            List<Integer> transactionIds = new ArrayList<>();
+            for (Allocation expected : allocations) {
+                transactionIds.add(expected.transactionId);
+                assertEquals(name, expected.downValue, allocation.getTransactionDeltas().get(expected.transactionId), 0.001);
+            }
+
+            assertEquals(name, transactionIds, new ArrayList<>(allocation.getTransactionDeltas().keySet()));
+            assertEquals(name, paymentBalance, allocation.getPaymentBalance(), 0.001);
+        }
+    }
+
+    public static class Transaction {
+
+        @JsonProperty("transaction_id")
+        public Integer transactionId;
+
+        @JsonProperty("operation_type_id")
+        public Integer operationTypeId;
+
+        public Double balance;
+    }
+
+    public static class Allocation {
+
+        @JsonProperty("transaction_id")
+        public Integer transactionId;
+
+        @JsonProperty("down_value")
+        public Double downValue;
+    }
+}
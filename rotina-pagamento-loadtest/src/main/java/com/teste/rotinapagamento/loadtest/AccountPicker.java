@@ -0,0 +1,51 @@
+package com.teste.rotinapagamento.loadtest;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Escolhe contas segundo uma distribuição de Zipf, para simular poucas contas concentrando a maior parte do tráfego.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class AccountPicker {
+
+    private final Integer[] accountIds;
+
+    private final double[] cumulative;
+
+    /**
+     * @param accountIds identificadores das contas, da mais acessada para a menos acessada
+     * @param skew       expoente da distribuição (0 = uniforme)
+     */
+    public AccountPicker(List<Integer> accountIds, double skew) {
+        if (accountIds.isEmpty())
+            throw new IllegalArgumentException("Nenhuma conta disponível para a carga.");
+
+        this.accountIds = accountIds.toArray(new Integer[accountIds.size()]);
+        this.cumulative = new double[this.accountIds.length];
+
+        double total = 0;
+        for (int rank = 0; rank < cumulative.length; rank++) {
+            total += 1 / Math.pow(rank + 1, skew);
+            cumulative[rank] = total;
+        }
+
+        for (int rank = 0; rank < cumulative.length; rank++) {
+            cumulative[rank] /= total;
+        }
+    }
+
+    public Integer next() {
+        int rank = Arrays.binarySearch(cumulative, ThreadLocalRandom.current().nextDouble());
+        if (rank < 0) rank = -rank - 1;
+
+        return accountIds[Math.min(rank, accountIds.length - 1)];
+    }
+
+    public Integer any() {
+        return accountIds[ThreadLocalRandom.current().nextInt(accountIds.length)];
+    }
+}
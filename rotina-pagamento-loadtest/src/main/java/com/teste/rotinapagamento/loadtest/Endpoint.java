@@ -0,0 +1,25 @@
+package com.teste.rotinapagamento.loadtest;
+
+/**
+ * Operações da API exercitadas pela carga.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public enum Endpoint {
+
+    PURCHASE("POST /transactions"),
+    PAYMENTS("POST /payments"),
+    TRANSACTIONS("GET /transactions"),
+    LIMITS("GET /accounts/limits");
+
+    private String description;
+
+    Endpoint(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+}
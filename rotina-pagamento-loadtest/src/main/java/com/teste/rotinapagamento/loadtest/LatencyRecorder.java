@@ -0,0 +1,76 @@
+package com.teste.rotinapagamento.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Acumula as latências, em microssegundos, e os resultados das requisições de uma operação.
+ * Cada cliente da carga possui o seu próprio recorder; os recorders são combinados ao final.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class LatencyRecorder {
+
+    private long[] latencies = new long[1024];
+
+    private int count;
+
+    private long rejected;
+
+    private long failed;
+
+    /**
+     * @param latencyMicros latência da requisição
+     * @param status        código HTTP da resposta ou 0 quando a requisição falhou sem resposta
+     */
+    public void record(long latencyMicros, int status) {
+        if (count == latencies.length)
+            latencies = Arrays.copyOf(latencies, count * 2);
+
+        latencies[count++] = latencyMicros;
+
+        if (status == 0 || status >= 500) {
+            failed++;
+        } else if (status >= 400) {
+            rejected++;
+        }
+    }
+
+    public void merge(LatencyRecorder other) {
+        if (count + other.count > latencies.length)
+            latencies = Arrays.copyOf(latencies, count + other.count);
+
+        System.arraycopy(other.latencies, 0, latencies, count, other.count);
+        count += other.count;
+        rejected += other.rejected;
+        failed += other.failed;
+    }
+
+    /**
+     * Retorna o percentil passado das latências registradas; deve ser chamado apenas após o fim da carga.
+     *
+     * @param percentile percentil entre 0 e 100
+     * @return long
+     */
+    public long percentile(double percentile) {
+        if (count == 0)
+            return 0;
+
+        Arrays.sort(latencies, 0, count);
+
+        int index = (int) Math.ceil(percentile / 100 * count) - 1;
+        return latencies[Math.max(0, Math.min(index, count - 1))];
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getRejected() {
+        return rejected;
+    }
+
+    public long getFailed() {
+        return failed;
+    }
+}
@@ -0,0 +1,231 @@
+package com.teste.rotinapagamento.loadtest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.teste.rotinapagamento.auxiliar.OperationType;
+import com.teste.rotinapagamento.dto.AccountDTO;
+import com.teste.rotinapagamento.dto.AvailableLimitDTO;
+import com.teste.rotinapagamento.dto.TransactionDTO;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.ResponseErrorHandler;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Gera carga concorrente sobre a API e registra a latência de cada requisição por operação.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class LoadGenerator {
+
+    private static final double SEED_LIMIT = 1_000_000_000.00;
+
+    private static final double OPERATION_AMOUNT = 10.00;
+
+    private static final OperationType[] PURCHASE_OPERATIONS = {OperationType.COMPRA_A_VISTA, OperationType.COMPRA_PARCELADA, OperationType.SAQUE};
+
+    private final LoadTestSettings settings;
+
+    private final String baseUrl;
+
+    private final RestTemplate restTemplate;
+
+    private final HttpHeaders headers;
+
+    private final HttpHeaders postHeaders;
+
+    private final Endpoint[] mix;
+
+    private List<Integer> accountIds;
+
+    private AccountPicker accountPicker;
+
+    public LoadGenerator(LoadTestSettings settings, String baseUrl) {
+        this.settings = settings;
+        this.baseUrl = baseUrl;
+
+        this.restTemplate = new RestTemplate(new SimpleClientHttpRequestFactory());
+        this.restTemplate.setErrorHandler(new ResponseErrorHandler() {
+            @Override
+            public boolean hasError(ClientHttpResponse response) throws IOException {
+                return false;
+            }
+
+            @Override
+            public void handleError(ClientHttpResponse response) throws IOException {
+            }
+        });
+
+        this.headers = new HttpHeaders();
+        this.headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        this.headers.setAccept(Collections.singletonList(MediaType.APPLICATION_JSON_UTF8));
+
+        this.postHeaders = new HttpHeaders();
+        this.postHeaders.putAll(headers);
+        if (settings.isRespondAsync())
+            this.postHeaders.add("Prefer", "respond-async");
+
+        List<Endpoint> mix = new ArrayList<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            for (int i = 0; i < settings.weightOf(endpoint); i++) mix.add(endpoint);
+        }
+        this.mix = mix.toArray(new Endpoint[mix.size()]);
+    }
+
+    /**
+     * Cadastra as contas usadas pela carga, com limites altos o bastante para que as compras não sejam recusadas.
+     */
+    public void seed() {
+        accountIds = new ArrayList<>(settings.getAccounts());
+
+        for (int i = 0; i < settings.getAccounts(); i++) {
+            AccountDTO account = new AccountDTO();
+            account.setAvailableCreditLimit(new AvailableLimitDTO(SEED_LIMIT));
+            account.setAvailableWithdrawalLimit(new AvailableLimitDTO(SEED_LIMIT));
+
+            ResponseEntity<AccountDTO> response = restTemplate.exchange(baseUrl + "/accounts", HttpMethod.POST, new HttpEntity<>(account, headers), AccountDTO.class);
+            if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null)
+                throw new IllegalStateException("Falha ao cadastrar conta da carga: HTTP " + response.getStatusCode());
+
+            accountIds.add(response.getBody().getAccountId());
+        }
+
+        accountPicker = new AccountPicker(accountIds, settings.getSkew());
+    }
+
+    /**
+     * Executa o aquecimento e a medição e retorna as latências registradas na medição, por operação.
+     *
+     * @return LoadReport
+     */
+    public LoadReport run() throws InterruptedException {
+        if (accountPicker == null)
+            throw new IllegalStateException("As contas da carga devem ser cadastradas antes da execução.");
+
+        long measureStart = System.nanoTime() + TimeUnit.SECONDS.toNanos(settings.getWarmupSeconds());
+        long measureEnd = measureStart + TimeUnit.SECONDS.toNanos(settings.getDurationSeconds());
+
+        ExecutorService executor = Executors.newFixedThreadPool(settings.getThreads());
+        try {
+            List<Future<Map<Endpoint, LatencyRecorder>>> clients = new ArrayList<>();
+            for (int i = 0; i < settings.getThreads(); i++) {
+                clients.add(executor.submit(client(measureStart, measureEnd)));
+            }
+
+            Map<Endpoint, LatencyRecorder> recorders = newRecorders();
+            for (Future<Map<Endpoint, LatencyRecorder>> client : clients) {
+                for (Map.Entry<Endpoint, LatencyRecorder> recorder : client.get().entrySet()) {
+                    recorders.get(recorder.getKey()).merge(recorder.getValue());
+                }
+            }
+
+            return new LoadReport(settings, recorders);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Falha em um dos clientes da carga.", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Callable<Map<Endpoint, LatencyRecorder>> client(long measureStart, long measureEnd) {
+        return () -> {
+            Map<Endpoint, LatencyRecorder> recorders = newRecorders();
+
+            long start;
+            while ((start = System.nanoTime()) < measureEnd) {
+                Endpoint endpoint = mix[ThreadLocalRandom.current().nextInt(mix.length)];
+                int status = call(endpoint);
+
+                if (start >= measureStart)
+                    recorders.get(endpoint).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start), status);
+            }
+
+            return recorders;
+        };
+    }
+
+    /**
+     * Executa uma requisição da operação passada e retorna o código HTTP da resposta, ou 0 quando não houve resposta.
+     *
+     * @param endpoint operação exercitada
+     * @return int
+     */
+    private int call(Endpoint endpoint) {
+        try {
+            ResponseEntity<byte[]> response;
+            switch (endpoint) {
+                case PURCHASE:
+                    response = post("/transactions", purchase());
+                    break;
+                case PAYMENTS:
+                    response = post("/payments", payments());
+                    break;
+                case TRANSACTIONS:
+                    response = get("/transactions?account_id=" + accountPicker.next() + "&limit=" + settings.getPageSize());
+                    break;
+                default:
+                    response = get("/accounts/limits?after=" + (accountPicker.any() - 1) + "&limit=" + settings.getPageSize());
+            }
+
+            return response.getStatusCode().value();
+        } catch (RestClientException e) {
+            return 0;
+        }
+    }
+
+    private TransactionDTO purchase() {
+        OperationType operation = PURCHASE_OPERATIONS[ThreadLocalRandom.current().nextInt(PURCHASE_OPERATIONS.length)];
+        return transaction(accountPicker.next(), operation);
+    }
+
+    private List<TransactionDTO> payments() {
+        List<TransactionDTO> payments = new ArrayList<>(settings.getPaymentBatchSize());
+        for (int i = 0; i < settings.getPaymentBatchSize(); i++) {
+            payments.add(transaction(accountPicker.next(), OperationType.PAGAMENTO));
+        }
+        return payments;
+    }
+
+    private TransactionDTO transaction(Integer accountId, OperationType operation) {
+        TransactionDTO transaction = new TransactionDTO();
+        transaction.setAccountId(accountId);
+        transaction.setOperationTypeId(operation.getId());
+        transaction.setAmount(OPERATION_AMOUNT);
+        return transaction;
+    }
+
+    private ResponseEntity<byte[]> post(String path, Object body) {
+        return restTemplate.exchange(baseUrl + path, HttpMethod.POST, new HttpEntity<>(body, postHeaders), byte[].class);
+    }
+
+    private ResponseEntity<byte[]> get(String path) {
+        return restTemplate.exchange(baseUrl + path, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
+    }
+
+    private static Map<Endpoint, LatencyRecorder> newRecorders() {
+        Map<Endpoint, LatencyRecorder> recorders = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : Endpoint.values()) {
+            recorders.put(endpoint, new LatencyRecorder());
+        }
+        return recorders;
+    }
+}
@@ -0,0 +1,48 @@
+package com.teste.rotinapagamento.loadtest;
+
+import java.io.PrintStream;
+import java.util.Map;
+
+/**
+ * Vazão e latências (p50, p99, p99.9 e máxima) de cada operação exercitada na medição.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class LoadReport {
+
+    private static final String ROW_FORMAT = "%-22s %10s %10s %10s %12s %10s %10s %10s %10s%n";
+
+    private final LoadTestSettings settings;
+
+    private final Map<Endpoint, LatencyRecorder> recorders;
+
+    public LoadReport(LoadTestSettings settings, Map<Endpoint, LatencyRecorder> recorders) {
+        this.settings = settings;
+        this.recorders = recorders;
+    }
+
+    public LatencyRecorder get(Endpoint endpoint) {
+        return recorders.get(endpoint);
+    }
+
+    public void print(PrintStream out) {
+        out.println();
+        out.println("Carga: " + settings);
+        out.printf(ROW_FORMAT, "Operação", "Requisições", "Recusadas", "Falhas", "Vazão (r/s)", "p50 (ms)", "p99 (ms)", "p99.9 (ms)", "máx (ms)");
+
+        for (Map.Entry<Endpoint, LatencyRecorder> entry : recorders.entrySet()) {
+            LatencyRecorder recorder = entry.getValue();
+            if (recorder.getCount() == 0)
+                continue;
+
+            out.printf(ROW_FORMAT, entry.getKey().getDescription(), recorder.getCount(), recorder.getRejected(), recorder.getFailed(),
+                    String.format("%.1f", (double) recorder.getCount() / settings.getDurationSeconds()),
+                    millis(recorder.percentile(50)), millis(recorder.percentile(99)), millis(recorder.percentile(99.9)), millis(recorder.percentile(100)));
+        }
+    }
+
+    private static String millis(long micros) {
+        return String.format("%.2f", micros / 1000.0);
+    }
+}
@@ -0,0 +1,65 @@
+package com.teste.rotinapagamento.loadtest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.teste.rotinapagamento.PaymentRoutineApplication;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
+
+/**
+ * Sobe um PostgreSQL embarcado local, inicia a PaymentRoutineApplication sobre ele e executa a carga configurada,
+ * imprimindo a vazão e as latências por operação ao final.
+ *
+ * Os argumentos --loadtest.* (ou propriedades de sistema -Dloadtest.*) configuram a carga (ver LoadTestSettings); os demais são repassados para a aplicação.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class LoadTestApplication {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadTestApplication.class);
+
+    public static void main(String[] args) throws Exception {
+        StandardEnvironment loadTestEnvironment = new StandardEnvironment();
+        loadTestEnvironment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        LoadTestSettings settings = LoadTestSettings.from(loadTestEnvironment);
+
+        try (EmbeddedPostgres postgres = EmbeddedPostgres.builder().setServerConfig("synchronous_commit", settings.getSynchronousCommit()).start()) {
+            log.info("PostgreSQL embarcado iniciado na porta {}.", postgres.getPort());
+
+            List<String> applicationArgs = new ArrayList<>();
+            applicationArgs.add("--spring.datasource.url=jdbc:postgresql://localhost:" + postgres.getPort() + "/postgres?stringtype=unspecified&reWriteBatchedInserts=true");
+            applicationArgs.add("--spring.datasource.username=postgres");
+            applicationArgs.add("--spring.datasource.password=postgres");
+            applicationArgs.add("--spring.datasource.max-active=" + Math.max(settings.getThreads() * 2, 10));
+            applicationArgs.add("--spring.datasource.max-idle=" + Math.max(settings.getThreads() * 2, 10));
+            applicationArgs.add("--server.port=0");
+            applicationArgs.addAll(Arrays.asList(args));
+
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(PaymentRoutineApplication.class)
+                    .run(applicationArgs.toArray(new String[applicationArgs.size()]));
+            try {
+                Environment environment = context.getEnvironment();
+                String baseUrl = "http://localhost:" + environment.getProperty("local.server.port") + environment.getProperty("server.context-path", "");
+
+                LoadGenerator generator = new LoadGenerator(settings, baseUrl);
+
+                log.info("Cadastrando {} contas para a carga.", settings.getAccounts());
+                generator.seed();
+
+                log.info("Executando a carga: {}.", settings);
+                generator.run().print(System.out);
+            } finally {
+                context.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.teste.rotinapagamento.loadtest;
+
+import org.springframework.core.env.PropertyResolver;
+
+/**
+ * Parâmetros da carga gerada. Todos podem ser passados na linha de comando no formato --loadtest.propriedade=valor.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+public class LoadTestSettings {
+
+    /** Quantidade de clientes concorrentes. */
+    private final int threads;
+
+    /** Duração do aquecimento, cujas requisições não entram no relatório. */
+    private final int warmupSeconds;
+
+    /** Duração da medição. */
+    private final int durationSeconds;
+
+    /** Quantidade de contas cadastradas antes da carga. */
+    private final int accounts;
+
+    /** Expoente da distribuição de Zipf usada na escolha das contas (0 = uniforme). */
+    private final double skew;
+
+    /** Quantidade de pagamentos em cada POST /payments. */
+    private final int paymentBatchSize;
+
+    /** Valor do parâmetro limit das consultas paginadas. */
+    private final int pageSize;
+
+    /** Envia os POSTs com o cabeçalho "Prefer: respond-async" (requer payment-routine.async.enabled). */
+    private final boolean respondAsync;
+
+    /** Valor de synchronous_commit do PostgreSQL embarcado: off (padrão do PostgreSQL embarcado) ou on, que espera a gravação do WAL em cada commit. */
+    private final String synchronousCommit;
+
+    private final int purchaseWeight;
+    private final int paymentWeight;
+    private final int transactionsQueryWeight;
+    private final int limitsQueryWeight;
+
+    private LoadTestSettings(PropertyResolver properties) {
+        this.threads = properties.getProperty("loadtest.threads", Integer.class, 8);
+        this.warmupSeconds = properties.getProperty("loadtest.warmup-seconds", Integer.class, 10);
+        this.durationSeconds = properties.getProperty("loadtest.duration-seconds", Integer.class, 60);
+        this.accounts = properties.getProperty("loadtest.accounts", Integer.class, 1000);
+        this.skew = properties.getProperty("loadtest.skew", Double.class, 1.0);
+        this.paymentBatchSize = properties.getProperty("loadtest.payment-batch-size", Integer.class, 5);
+        this.pageSize = properties.getProperty("loadtest.page-size", Integer.class, 50);
+        this.respondAsync = properties.getProperty("loadtest.respond-async", Boolean.class, false);
+        this.synchronousCommit = properties.getProperty("loadtest.synchronous-commit", "off");
+        this.purchaseWeight = properties.getProperty("loadtest.weight.purchase", Integer.class, 60);
+        this.paymentWeight = properties.getProperty("loadtest.weight.payments", Integer.class, 20);
+        this.transactionsQueryWeight = properties.getProperty("loadtest.weight.transactions", Integer.class, 15);
+        this.limitsQueryWeight = properties.getProperty("loadtest.weight.limits", Integer.class, 5);
+
+        if (threads <= 0 || durationSeconds <= 0 || accounts <= 0 || paymentBatchSize <= 0 || pageSize <= 0)
+            throw new IllegalArgumentException("Os parâmetros threads, duration-seconds, accounts, payment-batch-size e page-size devem ser positivos.");
+
+        if (purchaseWeight + paymentWeight + transactionsQueryWeight + limitsQueryWeight <= 0)
+            throw new IllegalArgumentException("Ao menos um dos pesos das operações deve ser positivo.");
+    }
+
+    public static LoadTestSettings from(PropertyResolver properties) {
+        return new LoadTestSettings(properties);
+    }
+
+    /**
+     * Retorna o peso da operação na mistura de requisições geradas.
+     *
+     * @param endpoint operação exercitada
+     * @return int
+     */
+    public int weightOf(Endpoint endpoint) {
+        switch (endpoint) {
+            case PURCHASE:
+                return purchaseWeight;
+            case PAYMENTS:
+                return paymentWeight;
+            case TRANSACTIONS:
+                return transactionsQueryWeight;
+            default:
+                return limitsQueryWeight;
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getAccounts() {
+        return accounts;
+    }
+
+    public double getSkew() {
+        return skew;
+    }
+
+    public int getPaymentBatchSize() {
+        return paymentBatchSize;
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public boolean isRespondAsync() {
+        return respondAsync;
+    }
+
+    public String getSynchronousCommit() {
+        return synchronousCommit;
+    }
+
+    @Override
+    public String toString() {
+        return "threads=" + threads + ", warmup=" + warmupSeconds + "s, duration=" + durationSeconds + "s, accounts=" + accounts
+                + ", skew=" + skew + ", payment-batch-size=" + paymentBatchSize + ", page-size=" + pageSize + ", respond-async=" + respondAsync
+                + ", synchronous-commit=" + synchronousCommit
+                + ", weights(purchase/payments/transactions/limits)=" + purchaseWeight + "/" + paymentWeight + "/"
+                + transactionsQueryWeight + "/" + limitsQueryWeight;
+    }
+}
@@ -1,17 +1,33 @@
 package com.teste.rotinapagamento;
 
+import com.teste.rotinapagamento.repository.AccountLedger;
+import com.teste.rotinapagamento.dto.TransactionImportDTO;
+import com.teste.rotinapagamento.repository.LedgerSnapshotter;
+import com.teste.rotinapagamento.repository.TransactionPartitionMaintainer;
+import com.teste.rotinapagamento.service.TransactionImportService;
+import com.teste.rotinapagamento.service.TransactionRequestService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.ApplicationContext;
 import org.springframework.context.MessageSource;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.support.ReloadableResourceBundleMessageSource;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.StreamUtils;
 import org.springframework.validation.beanvalidation.LocalValidatorFactoryBean;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
 /**
  * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
  * @since 18/03/19.
@@ -22,8 +38,45 @@ public class PaymentRoutineApplication implements CommandLineRunner {
     @Autowired
     JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    ApplicationContext applicationContext;
+
+    @Autowired
+    PlatformTransactionManager transactionManager;
+
+    @Value("${payment-routine.id-block-size:1000}")
+    int idBlockSize;
+
+    @Value("${payment-routine.import.file:}")
+    String importFile;
+
+    @Value("${payment-routine.transactions.partitions:0}")
+    int transactionPartitions;
+
+    @Value("${payment-routine.transactions.event-date-interval:none}")
+    String eventDateInterval;
+
     private static final Logger log = LoggerFactory.getLogger(PaymentRoutineApplication.class);
 
+    private static final String TRANSACTIONS_COLUMNS = "" +
+            "    transaction_id integer NOT NULL, " +
+            "    account_id integer NOT NULL, " +
+            "    operation_type_id integer NOT NULL, " +
+            "    amount double precision NOT NULL, " +
+            "    balance double precision NOT NULL, " +
+            "    event_date timestamp NOT NULL, " +
+            "    due_date timestamp, ";
+
+    private static final String TRANSACTIONS_FOREIGN_KEYS = "" +
+            "    CONSTRAINT account_id_fk FOREIGN KEY (account_id) " +
+            "        REFERENCES public.accounts (account_id) MATCH SIMPLE " +
+            "        ON UPDATE NO ACTION " +
+            "        ON DELETE NO ACTION, " +
+            "    CONSTRAINT operation_type_id_fk FOREIGN KEY (operation_type_id) " +
+            "        REFERENCES public.operations_types (operation_type_id) MATCH SIMPLE " +
+            "        ON UPDATE NO ACTION " +
+            "        ON DELETE NO ACTION ";
+
     public static void main(String[] args) {
         SpringApplication.run(PaymentRoutineApplication.class, args);
     }
@@ -48,10 +101,17 @@ public class PaymentRoutineApplication implements CommandLineRunner {
     public void run(String... strings) throws Exception {
         log.info("Criando/atualizando sequences das tabelas.");
 
-        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS public.accounts_seq INCREMENT BY 1 " +
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS public.accounts_seq INCREMENT BY " + idBlockSize + " " +
                 "MINVALUE 1 MAXVALUE 99999999999999 START 1 CACHE 1 NO CYCLE;");
 
-        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS public.transactions_seq INCREMENT BY 1 MINVALUE 1 MAXVALUE 99999999999999 START 1 CACHE 1 NO CYCLE;");
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS public.transactions_seq INCREMENT BY " + idBlockSize + " MINVALUE 1 MAXVALUE 99999999999999 START 1 CACHE 1 NO CYCLE;");
+
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS public.transaction_requests_seq INCREMENT BY " + idBlockSize + " MINVALUE 1 MAXVALUE 99999999999999 START 1 CACHE 1 NO CYCLE;");
+
+        // Lançamentos do livro-razão por eventos recebem um identificador por linha, sem reserva de blocos.
+        jdbcTemplate.execute("CREATE SEQUENCE IF NOT EXISTS public.ledger_entries_seq INCREMENT BY 1 MINVALUE 1 START 1 CACHE 1 NO CYCLE;");
+
+        checkIdBlockSize();
 
         log.info("Sequences das tabelas criados com sucesso!");
 
@@ -69,23 +129,41 @@ public class PaymentRoutineApplication implements CommandLineRunner {
                 "    charge_order integer NOT NULL, " +
                 "    CONSTRAINT operations_types_pk PRIMARY KEY (operation_type_id));");
 
-        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS public.transactions ( " +
-                "    transaction_id integer NOT NULL, " +
-                "    account_id integer NOT NULL, " +
-                "    operation_type_id integer NOT NULL, " +
-                "    amount double precision NOT NULL, " +
-                "    balance double precision NOT NULL, " +
-                "    event_date timestamp NOT NULL, " +
-                "    due_date timestamp, " +
-                "    CONSTRAINT transaction_id_pk PRIMARY KEY (transaction_id), " +
-                "    CONSTRAINT account_id_fk FOREIGN KEY (account_id) " +
-                "        REFERENCES public.accounts (account_id) MATCH SIMPLE " +
-                "        ON UPDATE NO ACTION " +
-                "        ON DELETE NO ACTION, " +
-                "    CONSTRAINT operation_type_id_fk FOREIGN KEY (operation_type_id) " +
-                "        REFERENCES public.operations_types (operation_type_id) MATCH SIMPLE " +
-                "        ON UPDATE NO ACTION " +
-                "        ON DELETE NO ACTION );");
+        createTransactions();
+
+        migrateAccountBalances();
+
+        createLedgerEntries();
+
+        createTransactionsArchive();
+
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS public.transaction_requests ( " +
+                "    request_id integer NOT NULL, " +
+                "    request_type character varying(20) NOT NULL, " +
+                "    account_id integer, " +
+                "    payload text NOT NULL, " +
+                "    status character varying(20) NOT NULL, " +
+                "    http_status integer, " +
+                "    response text, " +
+                "    created_at timestamp NOT NULL, " +
+                "    completed_at timestamp, " +
+                "    CONSTRAINT request_id_pk PRIMARY KEY (request_id) );");
+
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS transaction_requests_pending_idx ON public.transaction_requests (created_at, request_id) " +
+                "WHERE status = 'PENDING';");
+
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS public.idempotency_keys ( " +
+                "    scope character varying(100) NOT NULL, " +
+                "    idempotency_key character varying(255) NOT NULL, " +
+                "    fingerprint character varying(64) NOT NULL, " +
+                "    http_status integer NOT NULL, " +
+                "    response text, " +
+                "    created_at timestamp NOT NULL, " +
+                "    CONSTRAINT idempotency_keys_pk PRIMARY KEY (scope, idempotency_key) );");
+
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS idempotency_keys_created_at_idx ON public.idempotency_keys (created_at);");
+
+        createPaymentAllocationFunction();
 
         log.info("Tabelas criadas com sucesso!");
 
@@ -98,5 +176,293 @@ public class PaymentRoutineApplication implements CommandLineRunner {
 
         log.info("Tabela de tipos de operações populada com sucesso!");
 
+        // Lançamentos do livro-razão por eventos ainda não consolidados são somados às contas e transações.
+        applicationContext.getBean(LedgerSnapshotter.class).snapshotAll();
+
+        // Com payment-routine.import.file, a aplicação apenas importa as transações do arquivo e é encerrada.
+        if (!importFile.isEmpty()) {
+            log.info("Importando transações de {}.", importFile);
+            TransactionImportDTO result = applicationContext.getBean(TransactionImportService.class).importFile(importFile);
+            log.info("Importação concluída: {} transações, {} contas atualizadas, {} ms.", result.getImportedTransactions(),
+                    result.getUpdatedAccounts(), result.getElapsedMs());
+            System.exit(SpringApplication.exit(applicationContext));
+        }
+
+        // Com payment-routine.ledger.mode = memory, o livro-razão é reconstruído depois que o esquema está pronto.
+        for (AccountLedger accountLedger : applicationContext.getBeansOfType(AccountLedger.class).values()) {
+            accountLedger.rebuild();
+        }
+
+        // Requisições assíncronas que ficaram pendentes na última execução voltam para a fila.
+        applicationContext.getBean(TransactionRequestService.class).recover();
+    }
+
+    /**
+     * Cria a tabela transactions. Com payment-routine.transactions.partitions maior que zero, a tabela é particionada
+     * por hash de account_id e, com payment-routine.transactions.event-date-interval, cada partição é subparticionada
+     * por intervalos de event_date. Uma tabela existente sem particionamento é migrada para a tabela particionada.
+     *
+     * Tudo é feito em uma única transação, sob um advisory lock, e o estado da tabela só é lido depois de obtido o lock:
+     * um segundo nó iniciado ao mesmo tempo aguarda o primeiro e encontra a tabela já criada ou migrada, em vez de
+     * renomear e copiar a tabela ao mesmo tempo que ele.
+     */
+    private void createTransactions() {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            jdbcTemplate.execute("SELECT pg_advisory_xact_lock(hashtext('payment-routine.transactions'));");
+            createTransactionsLocked();
+            jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS transactions_account_id_idx ON public.transactions (account_id, transaction_id);");
+            if ("p".equals(transactionsTableKind()))
+                createTransactionIdRegistry();
+            return null;
+        });
+    }
+
+    /**
+     * Cria o registro de identificadores transaction_ids, que mantém transaction_id único na tabela transactions
+     * particionada, cuja chave primária inclui as colunas de partição. O registro é preenchido com as transações já
+     * cadastradas na primeira vez. O código fica no recurso transaction_ids.sql.
+     */
+    private void createTransactionIdRegistry() {
+        try {
+            jdbcTemplate.execute(StreamUtils.copyToString(new ClassPathResource("transaction_ids.sql").getInputStream(), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("Não foi possível ler transaction_ids.sql.", e);
+        }
+    }
+
+    /**
+     * Cria ou migra a tabela transactions, com o advisory lock de createTransactions já obtido.
+     */
+    private void createTransactionsLocked() {
+        String tableKind = transactionsTableKind();
+
+        if (transactionPartitions <= 0) {
+            if ("p".equals(tableKind))
+                log.warn("A tabela transactions é particionada e será mantida assim (payment-routine.transactions.partitions = 0).");
+
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS public.transactions ( " + TRANSACTIONS_COLUMNS +
+                    "    CONSTRAINT transaction_id_pk PRIMARY KEY (transaction_id), " + TRANSACTIONS_FOREIGN_KEYS + ");");
+            return;
+        }
+
+        if (tableKind == null) {
+            log.info("Criando a tabela transactions com {} partições.", transactionPartitions);
+            createPartitionedTransactions();
+        } else if ("r".equals(tableKind)) {
+            migrateToPartitionedTransactions();
+        } else {
+            Integer partitions = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pg_inherits WHERE inhparent = 'public.transactions'::regclass;", Integer.class);
+            if (partitions != transactionPartitions)
+                log.warn("A tabela transactions tem {} partições e não será reparticionada para {}.", partitions, transactionPartitions);
+        }
+
+        applicationContext.getBean(TransactionPartitionMaintainer.class).createUpcomingPartitions();
+    }
+
+    /**
+     * Tipo da tabela transactions no catálogo: r (tabela comum), p (tabela particionada) ou null, se ela não existir.
+     *
+     * @return String
+     */
+    private String transactionsTableKind() {
+        List<String> kinds = jdbcTemplate.queryForList("SELECT c.relkind::text FROM pg_class c JOIN pg_namespace n ON (n.oid = c.relnamespace) " +
+                "WHERE n.nspname='public' AND c.relname='transactions';", String.class);
+        return kinds.isEmpty() ? null : kinds.get(0);
+    }
+
+    /**
+     * Cria a tabela transactions particionada por hash de account_id, com uma partição por resto. Com subpartições
+     * por event_date, a chave primária inclui event_date, pois deve conter as colunas de todos os níveis de partição.
+     * A unicidade de transaction_id fica a cargo de transaction_ids (createTransactionIdRegistry).
+     */
+    private void createPartitionedTransactions() {
+        boolean byEventDate = !"none".equals(eventDateInterval);
+
+        jdbcTemplate.execute("CREATE TABLE public.transactions ( " + TRANSACTIONS_COLUMNS +
+                "    CONSTRAINT transaction_id_pk PRIMARY KEY (transaction_id, account_id" + (byEventDate ? ", event_date" : "") + "), " +
+                TRANSACTIONS_FOREIGN_KEYS + ") PARTITION BY HASH (account_id);");
+
+        for (int remainder = 0; remainder < transactionPartitions; remainder++) {
+            String partition = "public.transactions_p" + remainder;
+            jdbcTemplate.execute("CREATE TABLE " + partition + " PARTITION OF public.transactions " +
+                    "FOR VALUES WITH (MODULUS " + transactionPartitions + ", REMAINDER " + remainder + ")" +
+                    (byEventDate ? " PARTITION BY RANGE (event_date)" : "") + ";");
+
+            if (byEventDate)
+                jdbcTemplate.execute("CREATE TABLE " + partition + "_default PARTITION OF " + partition + " DEFAULT;");
+        }
+    }
+
+    /**
+     * Migra a tabela transactions sem particionamento para a tabela particionada, na transação de createTransactions:
+     * a tabela antiga é renomeada, as transações são copiadas para a nova tabela e a antiga é removida. A tabela fica
+     * bloqueada durante a cópia. As visões que dependem da tabela são recriadas logo em seguida (createLedgerEntries e
+     * createTransactionsArchive).
+     */
+    private void migrateToPartitionedTransactions() {
+        log.info("Migrando a tabela transactions para {} partições.", transactionPartitions);
+        long start = System.currentTimeMillis();
+
+        jdbcTemplate.execute("DROP VIEW IF EXISTS public.ledger_transactions_history, public.transactions_history, public.ledger_transactions;");
+        jdbcTemplate.execute("ALTER TABLE public.transactions RENAME TO transactions_unpartitioned;");
+        // A chave primária é renomeada para que o nome fique livre para a tabela particionada.
+        Boolean hasPrimaryKeyName = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM pg_constraint " +
+                "WHERE conrelid = 'public.transactions_unpartitioned'::regclass AND conname = 'transaction_id_pk');", Boolean.class);
+        if (hasPrimaryKeyName)
+            jdbcTemplate.execute("ALTER TABLE public.transactions_unpartitioned RENAME CONSTRAINT transaction_id_pk TO transactions_unpartitioned_pk;");
+        jdbcTemplate.execute("ALTER INDEX IF EXISTS public.transactions_account_id_idx RENAME TO transactions_unpartitioned_account_id_idx;");
+
+        createPartitionedTransactions();
+        applicationContext.getBean(TransactionPartitionMaintainer.class).createUpcomingPartitions();
+
+        int migrated = jdbcTemplate.update("INSERT INTO public.transactions(transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date) " +
+                "SELECT transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date FROM public.transactions_unpartitioned;");
+        jdbcTemplate.execute("DROP TABLE public.transactions_unpartitioned;");
+
+        log.info("{} transações migradas para a tabela particionada em {} ms.", migrated, System.currentTimeMillis() - start);
+    }
+
+    /**
+     * Cria as colunas de saldo credor e devedor mantidas na tabela accounts. Quando as colunas ainda não existem,
+     * os saldos são calculados uma única vez a partir das transações já cadastradas. A criação das colunas e o
+     * cálculo dos saldos são feitos em uma única transação (o DDL do PostgreSQL é transacional), sob um advisory lock:
+     * uma subida interrompida não deixa as colunas criadas com os saldos zerados, e um segundo nó iniciado ao mesmo
+     * tempo aguarda o primeiro e encontra as colunas já preenchidas.
+     */
+    private void migrateAccountBalances() {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            jdbcTemplate.execute("SELECT pg_advisory_xact_lock(hashtext('payment-routine.migrate-account-balances'));");
+
+            Boolean hasBalanceColumns = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM information_schema.columns " +
+                    "WHERE table_schema='public' AND table_name='accounts' AND column_name='credit_balance');", Boolean.class);
+            if (hasBalanceColumns)
+                return null;
+
+            log.info("Calculando saldos credor e devedor das contas.");
+
+            jdbcTemplate.execute("ALTER TABLE public.accounts " +
+                    "    ADD COLUMN credit_balance double precision NOT NULL DEFAULT 0, " +
+                    "    ADD COLUMN debt_balance double precision NOT NULL DEFAULT 0;");
+
+            jdbcTemplate.execute("UPDATE public.accounts a SET " +
+                    "    credit_balance = COALESCE((SELECT SUM(t.balance) FROM public.transactions t " +
+                    "        WHERE t.account_id = a.account_id AND t.operation_type_id = 4 AND t.balance > 0), 0), " +
+                    "    debt_balance = COALESCE((SELECT SUM(t.balance) FROM public.transactions t " +
+                    "        WHERE t.account_id = a.account_id AND t.operation_type_id <> 4), 0);");
+            return null;
+        });
+    }
+
+    /**
+     * Confere o INCREMENT BY das sequences com payment-routine.id-block-size. Cada nó guarda o tamanho do bloco lido na
+     * primeira reserva, então a sequence não pode mudar de tamanho com outros nós no ar: só as sequences antigas, de
+     * INCREMENT BY 1, são ajustadas (o que só aumenta os blocos já em uso); em qualquer outra diferença, a subida falha.
+     */
+    private void checkIdBlockSize() {
+        new TransactionTemplate(transactionManager).execute(status -> {
+            jdbcTemplate.execute("SELECT pg_advisory_xact_lock(hashtext('payment-routine.id-block-size'));");
+
+            for (String sequence : new String[]{"accounts_seq", "transactions_seq", "transaction_requests_seq"}) {
+                long incrementBy = jdbcTemplate.queryForObject("SELECT increment_by FROM pg_sequences WHERE schemaname='public' AND sequencename=?;",
+                        new Object[]{sequence}, Long.class);
+                if (incrementBy == idBlockSize)
+                    continue;
+
+                if (incrementBy != 1)
+                    throw new IllegalStateException("A sequence public." + sequence + " reserva blocos de " + incrementBy +
+                            " identificadores, diferente de payment-routine.id-block-size = " + idBlockSize + ".");
+
+                jdbcTemplate.execute("ALTER SEQUENCE public." + sequence + " INCREMENT BY " + idBlockSize + ";");
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Cria ou atualiza a função allocate_payment, usada no abatimento de pagamentos com
+     * payment-routine.payment-allocation.mode = sql. O código da função fica no recurso allocate_payment.sql.
+     */
+    private void createPaymentAllocationFunction() throws IOException {
+        jdbcTemplate.execute(StreamUtils.copyToString(new ClassPathResource("allocate_payment.sql").getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Cria a tabela de lançamentos do livro-razão por eventos e as visões que somam às contas e transações os
+     * lançamentos ainda não consolidados (payment-routine.ledger.mode = events).
+     */
+    private void createLedgerEntries() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS public.ledger_entries ( " +
+                "    entry_id bigint NOT NULL DEFAULT nextval('public.ledger_entries_seq'), " +
+                "    account_id integer NOT NULL, " +
+                "    transaction_id integer, " +
+                "    available_credit_limit double precision NOT NULL DEFAULT 0, " +
+                "    available_withdrawal_limit double precision NOT NULL DEFAULT 0, " +
+                "    credit_balance double precision NOT NULL DEFAULT 0, " +
+                "    debt_balance double precision NOT NULL DEFAULT 0, " +
+                "    balance double precision NOT NULL DEFAULT 0, " +
+                "    created_at timestamp NOT NULL, " +
+                "    snapshot_at timestamp, " +
+                "    CONSTRAINT entry_id_pk PRIMARY KEY (entry_id), " +
+                "    CONSTRAINT ledger_entries_account_id_fk FOREIGN KEY (account_id) " +
+                "        REFERENCES public.accounts (account_id) MATCH SIMPLE " +
+                "        ON UPDATE NO ACTION " +
+                "        ON DELETE NO ACTION );");
+
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS ledger_entries_account_pending_idx ON public.ledger_entries (account_id) " +
+                "WHERE snapshot_at IS NULL;");
+
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS ledger_entries_transaction_pending_idx ON public.ledger_entries (transaction_id) " +
+                "WHERE snapshot_at IS NULL AND transaction_id IS NOT NULL;");
+
+        jdbcTemplate.execute("CREATE OR REPLACE VIEW public.ledger_accounts AS " +
+                "SELECT a.account_id, " +
+                "    a.available_credit_limit + COALESCE(e.available_credit_limit, 0) AS available_credit_limit, " +
+                "    a.available_withdrawal_limit + COALESCE(e.available_withdrawal_limit, 0) AS available_withdrawal_limit, " +
+                "    a.credit_balance + COALESCE(e.credit_balance, 0) AS credit_balance, " +
+                "    a.debt_balance + COALESCE(e.debt_balance, 0) AS debt_balance " +
+                "FROM public.accounts a " +
+                "LEFT JOIN LATERAL ( " +
+                "    SELECT SUM(le.available_credit_limit) AS available_credit_limit, " +
+                "        SUM(le.available_withdrawal_limit) AS available_withdrawal_limit, " +
+                "        SUM(le.credit_balance) AS credit_balance, " +
+                "        SUM(le.debt_balance) AS debt_balance " +
+                "    FROM public.ledger_entries le " +
+                "    WHERE le.account_id = a.account_id AND le.snapshot_at IS NULL AND le.transaction_id IS NULL " +
+                ") e ON true;");
+
+        jdbcTemplate.execute("CREATE OR REPLACE VIEW public.ledger_transactions AS " +
+                "SELECT t.transaction_id, t.account_id, t.operation_type_id, t.amount, " +
+                "    t.balance + COALESCE((SELECT SUM(le.balance) FROM public.ledger_entries le " +
+                "        WHERE le.transaction_id = t.transaction_id AND le.snapshot_at IS NULL), 0) AS balance, " +
+                "    t.event_date, t.due_date " +
+                "FROM public.transactions t;");
+    }
+
+    /**
+     * Cria a tabela transactions_archive, para onde o TransactionArchiver move as transações quitadas, e as visões
+     * transactions_history e ledger_transactions_history, que unem as transações em aberto às arquivadas.
+     */
+    private void createTransactionsArchive() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS public.transactions_archive ( " +
+                "    transaction_id integer NOT NULL, " +
+                "    account_id integer NOT NULL, " +
+                "    operation_type_id integer NOT NULL, " +
+                "    amount double precision NOT NULL, " +
+                "    balance double precision NOT NULL, " +
+                "    event_date timestamp NOT NULL, " +
+                "    due_date timestamp, " +
+                "    CONSTRAINT transactions_archive_pk PRIMARY KEY (transaction_id) );");
+
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS transactions_archive_account_id_idx ON public.transactions_archive (account_id, transaction_id);");
+
+        jdbcTemplate.execute("CREATE OR REPLACE VIEW public.transactions_history AS " +
+                "SELECT transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date FROM public.transactions " +
+                "UNION ALL " +
+                "SELECT transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date FROM public.transactions_archive;");
+
+        jdbcTemplate.execute("CREATE OR REPLACE VIEW public.ledger_transactions_history AS " +
+                "SELECT transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date FROM public.ledger_transactions " +
+                "UNION ALL " +
+                "SELECT transaction_id, account_id, operation_type_id, amount, balance, event_date, due_date FROM public.transactions_archive;");
     }
 }
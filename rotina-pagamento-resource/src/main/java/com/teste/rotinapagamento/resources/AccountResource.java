@@ -1,16 +1,27 @@
 package com.teste.rotinapagamento.resources;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teste.rotinapagamento.auxiliar.AccountLaneExecutor;
+import com.teste.rotinapagamento.auxiliar.IdempotencyKey;
 import com.teste.rotinapagamento.dto.AccountDTO;
+import com.teste.rotinapagamento.dto.AvailableLimitDTO;
+import com.teste.rotinapagamento.dto.IdempotentResponseDTO;
 import com.teste.rotinapagamento.exception.ResourceException;
 import com.teste.rotinapagamento.service.AccountService;
+import com.teste.rotinapagamento.service.IdempotencyService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 /**
  * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
@@ -23,30 +34,144 @@ public class AccountResource {
     @Autowired
     AccountService accountService;
 
+    @Autowired
+    AccountLaneExecutor accountLaneExecutor;
+
+    @Autowired
+    IdempotencyService idempotencyService;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
     @ExceptionHandler(ResourceException.class)
     public ResponseEntity handleException(ResourceException e) {
         return ResponseEntity.status(e.getHttpStatus()).body(e.getError());
     }
 
     @RequestMapping(method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public ResponseEntity insertAccount(@RequestBody AccountDTO accountDTO) {
-        AccountDTO account = accountService.insertAccount(accountDTO);
-        return ResponseEntity.status(HttpStatus.CREATED).headers(new HttpHeaders()).body(account);
+    public ResponseEntity insertAccount(
+            @RequestBody AccountDTO accountDTO,
+            @RequestHeader(value = IdempotentResponses.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey
+    ) {
+        IdempotencyKey key = idempotencyService.key("POST /accounts", idempotencyKey, accountDTO);
+        IdempotentResponseDTO replay = idempotencyService.find(key);
+        if (replay != null)
+            return IdempotentResponses.toResponseEntity(replay);
+
+        IdempotentResponseDTO account = idempotencyService.execute(key, HttpStatus.CREATED, () -> accountService.insertAccount(accountDTO));
+        return IdempotentResponses.toResponseEntity(account);
+    }
+
+    @RequestMapping(value = "/batch", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity insertAccounts(
+            @RequestBody List<AccountDTO> accounts,
+            @RequestHeader(value = IdempotentResponses.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey
+    ) {
+        IdempotencyKey key = idempotencyService.key("POST /accounts/batch", idempotencyKey, accounts);
+        IdempotentResponseDTO replay = idempotencyService.find(key);
+        if (replay != null)
+            return IdempotentResponses.toResponseEntity(replay);
+
+        IdempotentResponseDTO results = idempotencyService.execute(key, HttpStatus.OK, () -> accountService.insertAccounts(accounts));
+        return IdempotentResponses.toResponseEntity(results);
+    }
+
+    @RequestMapping(value = "/batch", method = RequestMethod.PATCH, produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity updateAccounts(
+            @RequestBody List<AccountDTO> accounts,
+            @RequestHeader(value = IdempotentResponses.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey
+    ) {
+        IdempotencyKey key = idempotencyService.key("PATCH /accounts/batch", idempotencyKey, accounts);
+        IdempotentResponseDTO replay = idempotencyService.find(key);
+        if (replay != null)
+            return IdempotentResponses.toResponseEntity(replay);
+
+        IdempotentResponseDTO results = accountLaneExecutor.execute(accountIds(accounts),
+                () -> idempotencyService.execute(key, HttpStatus.OK, () -> accountService.updateAccounts(accounts)));
+        return IdempotentResponses.toResponseEntity(results);
     }
 
     @RequestMapping(value = "/{account_id}", method = RequestMethod.PATCH, produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
     public ResponseEntity updateAccount(
             @PathVariable("account_id") Integer accountId,
-            @RequestBody AccountDTO accountDTO
+            @RequestBody AccountDTO accountDTO,
+            @RequestHeader(value = IdempotentResponses.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey
     ) {
-        AccountDTO account = accountService.updateAccount(accountId, accountDTO);
-        return ResponseEntity.status(HttpStatus.CREATED).headers(new HttpHeaders()).body(account);
+        IdempotencyKey key = idempotencyService.key("PATCH /accounts/" + accountId, idempotencyKey, accountDTO);
+        IdempotentResponseDTO replay = idempotencyService.find(key);
+        if (replay != null)
+            return IdempotentResponses.toResponseEntity(replay);
+
+        IdempotentResponseDTO account = accountLaneExecutor.execute(accountId,
+                () -> idempotencyService.execute(key, HttpStatus.CREATED, () -> accountService.updateAccount(accountId, accountDTO)));
+        return IdempotentResponses.toResponseEntity(account);
     }
 
     @RequestMapping(value = "/limits", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public ResponseEntity listLimits() {
-        List<AccountDTO> accounts = accountService.getAccounts();
-        return ResponseEntity.status(HttpStatus.OK).headers(new HttpHeaders()).body(accounts);
+    public ResponseEntity<StreamingResponseBody> listLimits(
+            @RequestParam(value = "after", required = false) Integer after,
+            @RequestParam(value = "limit", required = false) Integer limit
+    ) {
+        accountService.pageValidate(limit);
+        return ResponseEntity.status(HttpStatus.OK).headers(new HttpHeaders()).body(streamLimits(after, limit));
+    }
+
+    /**
+     * Identificadores das contas atualizadas em lote, cujas filas de escrita são bloqueadas durante a atualização.
+     *
+     * @param accounts contas do lote
+     * @return List<Integer>
+     */
+    private static List<Integer> accountIds(List<AccountDTO> accounts) {
+        List<Integer> accountIds = new ArrayList<>();
+        if (accounts != null) {
+            for (AccountDTO account : accounts) {
+                if (account != null && account.getAccountId() != null)
+                    accountIds.add(account.getAccountId());
+            }
+        }
+
+        return accountIds;
+    }
+
+    /**
+     * Escreve os limites das contas no corpo da resposta à medida que são lidos do cursor da base de dados. Uma única
+     * instância de AccountDTO é reaproveitada para todas as linhas, mantendo o mesmo formato de resposta.
+     *
+     * @param after identificador da última conta já lida
+     * @param limit quantidade máxima de contas lidas
+     * @return StreamingResponseBody
+     */
+    private StreamingResponseBody streamLimits(Integer after, Integer limit) {
+        return outputStream -> {
+            AvailableLimitDTO availableCreditLimit = new AvailableLimitDTO();
+            AvailableLimitDTO availableWithdrawalLimit = new AvailableLimitDTO();
+            AvailableLimitDTO creditBalance = new AvailableLimitDTO();
+
+            AccountDTO account = new AccountDTO();
+            account.setAvailableCreditLimit(availableCreditLimit);
+            account.setAvailableWithdrawalLimit(availableWithdrawalLimit);
+            account.setCreditBalance(creditBalance);
+
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+            generator.writeStartArray();
+
+            accountService.getAccounts(after, limit, (accountId, creditLimit, withdrawalLimit, balance) -> {
+                account.setAccountId(accountId);
+                availableCreditLimit.setAmount(creditLimit);
+                availableWithdrawalLimit.setAmount(withdrawalLimit);
+                creditBalance.setAmount(balance);
+
+                try {
+                    generator.writeObject(account);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            generator.writeEndArray();
+            generator.flush();
+        };
     }
 
 }
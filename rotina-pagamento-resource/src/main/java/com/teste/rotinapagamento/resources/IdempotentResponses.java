@@ -0,0 +1,42 @@
+package com.teste.rotinapagamento.resources;
+
+import com.teste.rotinapagamento.dto.IdempotentResponseDTO;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+/**
+ * Monta as respostas das requisições que aceitam o cabeçalho Idempotency-Key (ver IdempotencyService).
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+final class IdempotentResponses {
+
+    static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    static final String IDEMPOTENT_REPLAYED_HEADER = "Idempotent-Replayed";
+
+    private IdempotentResponses() {
+    }
+
+    static ResponseEntity toResponseEntity(IdempotentResponseDTO response) {
+        return toResponseEntity(response, new HttpHeaders());
+    }
+
+    /**
+     * Devolve o objeto retornado pela operação ou, quando a requisição é uma repetição, a resposta gravada.
+     *
+     * @param response resposta da operação
+     * @param headers  cabeçalhos da resposta
+     * @return ResponseEntity
+     */
+    static ResponseEntity toResponseEntity(IdempotentResponseDTO response, HttpHeaders headers) {
+        if (response.getBody() != null)
+            return ResponseEntity.status(response.getHttpStatus()).headers(headers).body(response.getBody());
+
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        headers.add(IDEMPOTENT_REPLAYED_HEADER, "true");
+        return ResponseEntity.status(response.getHttpStatus()).headers(headers).body(response.getResponse());
+    }
+}
@@ -0,0 +1,83 @@
+package com.teste.rotinapagamento.resources;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.teste.rotinapagamento.auxiliar.QueryStatistics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+
+/**
+ * Orçamento de acesso à base de dados por requisição. Um limite igual a 0 desabilita a verificação correspondente.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Component
+public class QueryBudget {
+
+    static final String STATEMENTS_HEADER = "X-Query-Count";
+    static final String ROWS_HEADER = "X-Query-Rows";
+    static final String TIME_HEADER = "X-Query-Time-Ms";
+    static final String EXCEEDED_HEADER = "X-Query-Budget-Exceeded";
+
+    @Value("${payment-routine.query-budget.statements:0}")
+    private long maxStatements;
+
+    @Value("${payment-routine.query-budget.rows:0}")
+    private long maxRows;
+
+    @Value("${payment-routine.query-budget.millis:0}")
+    private long maxMillis;
+
+    @Value("${payment-routine.query-budget.repeated-statements:0}")
+    private long maxRepetitions;
+
+    @Value("${payment-routine.query-budget.debug-headers:false}")
+    private boolean debugHeaders;
+
+    /**
+     * Retorna a descrição de cada limite do orçamento excedido pela requisição, ou uma lista vazia quando ela está dentro do orçamento.
+     *
+     * @param statistics estatísticas da requisição
+     * @return List<String>
+     */
+    public List<String> violations(QueryStatistics statistics) {
+        List<String> violations = new ArrayList<>();
+
+        if (maxStatements > 0 && statistics.getStatements() > maxStatements)
+            violations.add(statistics.getStatements() + " comandos (limite " + maxStatements + ")");
+
+        if (maxRows > 0 && statistics.getRows() > maxRows)
+            violations.add(statistics.getRows() + " linhas (limite " + maxRows + ")");
+
+        if (maxMillis > 0 && statistics.getElapsedMillis() > maxMillis)
+            violations.add(statistics.getElapsedMillis() + " ms (limite " + maxMillis + ")");
+
+        Map.Entry<String, Long> mostRepeated = statistics.getMostRepeatedStatement();
+        if (maxRepetitions > 0 && mostRepeated != null && mostRepeated.getValue() > maxRepetitions)
+            violations.add("comando repetido " + mostRepeated.getValue() + " vezes (limite " + maxRepetitions + "): " + mostRepeated.getKey());
+
+        return violations;
+    }
+
+    /**
+     * Adiciona as contagens da requisição aos cabeçalhos da resposta quando o modo de depuração está habilitado.
+     *
+     * @param statistics estatísticas da requisição
+     * @param headers    cabeçalhos da resposta
+     */
+    public void writeHeaders(QueryStatistics statistics, HttpHeaders headers) {
+        if (!debugHeaders)
+            return;
+
+        headers.set(STATEMENTS_HEADER, String.valueOf(statistics.getStatements()));
+        headers.set(ROWS_HEADER, String.valueOf(statistics.getRows()));
+        headers.set(TIME_HEADER, String.valueOf(statistics.getElapsedMillis()));
+
+        if (!violations(statistics).isEmpty())
+            headers.set(EXCEEDED_HEADER, "true");
+    }
+}
@@ -0,0 +1,51 @@
+package com.teste.rotinapagamento.resources;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.teste.rotinapagamento.auxiliar.QueryStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+/**
+ * Contabiliza os comandos SQL executados em cada requisição e registra em log as que excedem o orçamento configurado.
+ *
+ * Nas respostas em streaming, apenas os comandos executados antes do início da escrita do corpo são contabilizados.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@Component
+public class QueryBudgetFilter extends OncePerRequestFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryBudgetFilter.class);
+
+    @Autowired
+    QueryBudget queryBudget;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+        QueryStatistics statistics = QueryStatistics.begin();
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            QueryStatistics.end();
+
+            List<String> violations = queryBudget.violations(statistics);
+            if (!violations.isEmpty()) {
+                log.warn("Requisição {} {} excedeu o orçamento de consultas: {}.", request.getMethod(), request.getRequestURI(), String.join("; ", violations));
+            } else if (log.isDebugEnabled()) {
+                log.debug("Requisição {} {}: {} comandos, {} linhas, {} ms.", request.getMethod(), request.getRequestURI(),
+                        statistics.getStatements(), statistics.getRows(), statistics.getElapsedMillis());
+            }
+        }
+    }
+}
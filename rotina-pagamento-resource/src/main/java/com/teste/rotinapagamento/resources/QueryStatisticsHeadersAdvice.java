@@ -0,0 +1,40 @@
+package com.teste.rotinapagamento.resources;
+
+import com.teste.rotinapagamento.auxiliar.QueryStatistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyAdvice;
+
+/**
+ * Escreve as contagens de comandos SQL da requisição nos cabeçalhos da resposta, imediatamente antes do corpo.
+ *
+ * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
+ * @since 17/10/26.
+ */
+@ControllerAdvice
+public class QueryStatisticsHeadersAdvice implements ResponseBodyAdvice<Object> {
+
+    @Autowired
+    QueryBudget queryBudget;
+
+    @Override
+    public boolean supports(MethodParameter returnType, Class<? extends HttpMessageConverter<?>> converterType) {
+        return true;
+    }
+
+    @Override
+    public Object beforeBodyWrite(Object body, MethodParameter returnType, MediaType selectedContentType,
+                                  Class<? extends HttpMessageConverter<?>> selectedConverterType,
+                                  ServerHttpRequest request, ServerHttpResponse response) {
+        QueryStatistics statistics = QueryStatistics.current();
+        if (statistics != null)
+            queryBudget.writeHeaders(statistics, response.getHeaders());
+
+        return body;
+    }
+}
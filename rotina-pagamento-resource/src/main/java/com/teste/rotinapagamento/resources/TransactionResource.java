@@ -1,7 +1,18 @@
 package com.teste.rotinapagamento.resources;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.teste.rotinapagamento.auxiliar.AccountLaneExecutor;
+import com.teste.rotinapagamento.auxiliar.GroupCommitExecutor;
+import com.teste.rotinapagamento.auxiliar.IdempotencyKey;
+import com.teste.rotinapagamento.dto.IdempotentResponseDTO;
 import com.teste.rotinapagamento.dto.TransactionDTO;
+import com.teste.rotinapagamento.dto.TransactionImportDTO;
+import com.teste.rotinapagamento.dto.TransactionRequestDTO;
 import com.teste.rotinapagamento.exception.ResourceException;
+import com.teste.rotinapagamento.service.IdempotencyService;
+import com.teste.rotinapagamento.service.TransactionImportService;
+import com.teste.rotinapagamento.service.TransactionRequestService;
 import com.teste.rotinapagamento.service.TransactionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
@@ -9,8 +20,15 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
 
 /**
  * @author Gusttavo Henrique (gusttavohnssilva@gmail.com)
@@ -19,33 +37,193 @@ import java.util.List;
 @RestController
 public class TransactionResource {
 
+    static final String NEXT_PAGE_HEADER = "X-Next-After";
+
+    static final String PREFER_HEADER = "Prefer";
+
+    static final String PREFERENCE_APPLIED_HEADER = "Preference-Applied";
+
+    static final String RESPOND_ASYNC = "respond-async";
+
+    static final String TEXT_CSV = "text/csv";
+
+    static final String APPLICATION_NDJSON = "application/x-ndjson";
+
     @Autowired
     TransactionService transactionService;
 
+    @Autowired
+    TransactionRequestService transactionRequestService;
+
+    @Autowired
+    TransactionImportService transactionImportService;
+
+    @Autowired
+    IdempotencyService idempotencyService;
+
+    @Autowired
+    AccountLaneExecutor accountLaneExecutor;
+
+    @Autowired
+    GroupCommitExecutor groupCommitExecutor;
+
+    @Autowired
+    ObjectMapper objectMapper;
+
     @ExceptionHandler(ResourceException.class)
     public ResponseEntity handleException(ResourceException e) {
         return ResponseEntity.status(e.getHttpStatus()).body(e.getError());
     }
 
-    @RequestMapping(value = "/transactions", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public ResponseEntity listTransactions(@RequestParam(value = "account_id", required = false) Integer account_id) {
-        List<TransactionDTO> transactions = transactionService.getTransactions(account_id);
-        return ResponseEntity.status(HttpStatus.OK).headers(new HttpHeaders()).body(transactions);
+    @RequestMapping(value = "/transactions", method = RequestMethod.GET, params = "!limit", produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<StreamingResponseBody> listAllTransactions(
+            @RequestParam(value = "account_id", required = false) Integer account_id,
+            @RequestParam(value = "after", required = false) Integer after
+    ) {
+        return ResponseEntity.status(HttpStatus.OK).headers(new HttpHeaders()).body(streamTransactions(account_id, after));
+    }
+
+    @RequestMapping(value = "/transactions", method = RequestMethod.GET, params = "limit", produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity listTransactions(
+            @RequestParam(value = "account_id", required = false) Integer account_id,
+            @RequestParam(value = "after", required = false) Integer after,
+            @RequestParam(value = "limit", required = false) Integer limit
+    ) {
+        List<TransactionDTO> transactions = transactionService.getTransactions(account_id, after, limit);
+
+        HttpHeaders headers = new HttpHeaders();
+        if (!transactions.isEmpty() && transactions.size() >= Math.min(limit, TransactionService.MAX_PAGE_SIZE))
+            headers.add(NEXT_PAGE_HEADER, transactions.get(transactions.size() - 1).getTransactionId().toString());
+
+        return ResponseEntity.status(HttpStatus.OK).headers(headers).body(transactions);
+    }
+
+    /**
+     * Escreve as transações no corpo da resposta à medida que são lidas do cursor da base de dados.
+     *
+     * @param accountId identificador da conta associada a transação
+     * @param after     identificador da última transação já lida
+     * @return StreamingResponseBody
+     */
+    private StreamingResponseBody streamTransactions(Integer accountId, Integer after) {
+        return outputStream -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(outputStream);
+            generator.writeStartArray();
+
+            transactionService.streamTransactions(accountId, after, transaction -> {
+                try {
+                    generator.writeObject(transaction);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+
+            generator.writeEndArray();
+            generator.flush();
+        };
     }
 
     @RequestMapping(value = "/transactions", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public ResponseEntity insertTransaction(@RequestBody TransactionDTO transaction) {
-        transaction = transactionService.insertTransaction(transaction);
-        return ResponseEntity.status(HttpStatus.CREATED).headers(new HttpHeaders()).body(transaction);
+    public ResponseEntity insertTransaction(
+            @RequestBody TransactionDTO request,
+            @RequestHeader(value = PREFER_HEADER, required = false) String prefer,
+            @RequestHeader(value = IdempotentResponses.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey
+    ) {
+        IdempotencyKey key = idempotencyService.key("POST /transactions", idempotencyKey, request);
+        IdempotentResponseDTO replay = idempotencyService.find(key);
+        if (replay != null)
+            return IdempotentResponses.toResponseEntity(replay);
+
+        if (respondAsync(prefer))
+            return accepted(idempotencyService.execute(key, HttpStatus.ACCEPTED, () -> transactionRequestService.acceptTransaction(request)));
+
+        Integer accountId = request != null ? request.getAccountId() : null;
+        IdempotentResponseDTO transaction = accountLaneExecutor.execute(accountId, () -> groupCommitExecutor.execute(accountId,
+                () -> idempotencyService.execute(key, HttpStatus.CREATED, () -> transactionService.insertTransaction(request))));
+        return IdempotentResponses.toResponseEntity(transaction);
     }
 
     @RequestMapping(value = "/payments", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
     public ResponseEntity insertPayments(
-            @RequestBody List<TransactionDTO> payments
+            @RequestBody List<TransactionDTO> request,
+            @RequestHeader(value = PREFER_HEADER, required = false) String prefer,
+            @RequestHeader(value = IdempotentResponses.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey
+    ) {
+        IdempotencyKey key = idempotencyService.key("POST /payments", idempotencyKey, request);
+        IdempotentResponseDTO replay = idempotencyService.find(key);
+        if (replay != null)
+            return IdempotentResponses.toResponseEntity(replay);
+
+        if (respondAsync(prefer))
+            return accepted(idempotencyService.execute(key, HttpStatus.ACCEPTED, () -> transactionRequestService.acceptPayments(request)));
+
+        List<Integer> accountIds = request == null ? new ArrayList<>() : request.stream()
+                .map(payment -> payment != null ? payment.getAccountId() : null)
+                .collect(Collectors.toList());
+
+        IdempotentResponseDTO payments = accountLaneExecutor.execute(accountIds,
+                () -> idempotencyService.execute(key, HttpStatus.CREATED, () -> transactionService.insertPayments(request)));
+        return IdempotentResponses.toResponseEntity(payments);
+    }
+
+    @RequestMapping(value = "/payments/batch", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity settlePayments(
+            @RequestBody List<TransactionDTO> request,
+            @RequestHeader(value = IdempotentResponses.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey
     ) {
-        payments = transactionService.insertPayments(payments);
-        return ResponseEntity.status(HttpStatus.CREATED).headers(new HttpHeaders()).body(payments);
+        IdempotencyKey key = idempotencyService.key("POST /payments/batch", idempotencyKey, request);
+        IdempotentResponseDTO replay = idempotencyService.find(key);
+        if (replay != null)
+            return IdempotentResponses.toResponseEntity(replay);
+
+        IdempotentResponseDTO results = idempotencyService.executeOutsideTransaction(key, HttpStatus.OK, () -> transactionService.settlePayments(request));
+        return IdempotentResponses.toResponseEntity(results);
+    }
+
+    @RequestMapping(value = "/transactions/import", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = TEXT_CSV)
+    public ResponseEntity importCsvTransactions(InputStream request) {
+        TransactionImportDTO result = transactionImportService.importTransactions(request, TransactionImportService.CSV);
+        return ResponseEntity.status(HttpStatus.CREATED).headers(new HttpHeaders()).body(result);
+    }
+
+    @RequestMapping(value = "/transactions/import", method = RequestMethod.POST, produces = MediaType.APPLICATION_JSON_UTF8_VALUE, consumes = APPLICATION_NDJSON)
+    public ResponseEntity importNdjsonTransactions(InputStream request) {
+        TransactionImportDTO result = transactionImportService.importTransactions(request, TransactionImportService.NDJSON);
+        return ResponseEntity.status(HttpStatus.CREATED).headers(new HttpHeaders()).body(result);
     }
 
+    @RequestMapping(value = "/transactions/requests/{request_id}", method = RequestMethod.GET, produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity getTransactionRequest(@PathVariable("request_id") Integer requestId) {
+        TransactionRequestDTO transactionRequest = transactionRequestService.getRequest(requestId);
+        return ResponseEntity.status(HttpStatus.OK).headers(new HttpHeaders()).body(transactionRequest);
+    }
+
+    /**
+     * Indica se o cliente pediu o processamento assíncrono (Prefer: respond-async) e se ele está habilitado.
+     *
+     * @param prefer valor do cabeçalho Prefer
+     * @return boolean
+     */
+    private boolean respondAsync(String prefer) {
+        return prefer != null && prefer.toLowerCase().contains(RESPOND_ASYNC) && transactionRequestService.isEnabled();
+    }
 
+    /**
+     * Responde 202 com a requisição aceita e o endereço onde o seu status pode ser consultado.
+     *
+     * @param response requisição aceita
+     * @return ResponseEntity
+     */
+    private ResponseEntity accepted(IdempotentResponseDTO response) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.add(PREFERENCE_APPLIED_HEADER, RESPOND_ASYNC);
+
+        if (response.getBody() instanceof TransactionRequestDTO) {
+            Integer requestId = ((TransactionRequestDTO) response.getBody()).getRequestId();
+            headers.setLocation(ServletUriComponentsBuilder.fromCurrentContextPath().path("/transactions/requests/{request_id}")
+                    .buildAndExpand(requestId).toUri());
+        }
+
+        return IdempotentResponses.toResponseEntity(response, headers);
+    }
 }